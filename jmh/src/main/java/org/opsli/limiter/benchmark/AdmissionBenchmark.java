@@ -0,0 +1,203 @@
+package org.opsli.limiter.benchmark;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.index.LimiterIndex;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.index.LimiterSlot;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-25 16:00
+ * @Description: 淘汰策略 W-TinyLFU vs 旧版 LRU 缓存
+ *
+ * 访问序列: 前半段只有 Zipf 分布的用户 (少数高频用户占大部分请求),
+ *          后半段一半请求来自只访问一次的扫描 IP
+ * 旧版: Guava Cache maximumSize (近似 LRU) + expireAfterWrite
+ * 新版: LimiterIndex 窗口 + 频率准入
+ *
+ * main 方法先回放访问序列输出命中率 (后半段用户请求的命中率, 未命中即拿到满桶) 与堆占用,
+ * 再执行 JMH 测试每次 get-or-create 的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class AdmissionBenchmark {
+
+    /** 限流器容量 */
+    private static final int CAPACITY = 10_000;
+    /** 用户数 */
+    private static final int USERS = 100_000;
+    /** Zipf 指数 */
+    private static final double SKEW = 0.9;
+    /** 访问序列长度 */
+    private static final int TRACE = 2_000_000;
+    /** 扫描 Key 起点 与用户 Key 不重叠 */
+    private static final long SCAN_BASE = 1L << 40;
+
+    @Param({"LRU", "TINY_LFU"})
+    public String policy;
+
+    private long[] trace;
+    private Table table;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        trace = trace(null);
+        table = "LRU".equals(policy) ? new LruTable() : new IndexTable();
+    }
+
+    @Benchmark
+    public boolean getOrCreate() {
+        long key = trace[cursor];
+        cursor = cursor + 1 == trace.length ? 0 : cursor + 1;
+        return table.getOrCreate(key);
+    }
+
+    // ==============
+
+    /**
+     * 生成访问序列 种子固定, 每次结果相同
+     * @param scans 不为 null 时标记扫描请求
+     */
+    static long[] trace(boolean[] scans) {
+        double[] cdf = new double[USERS];
+        double sum = 0d;
+        for (int i = 0; i < USERS; i++) {
+            sum += 1d / Math.pow(i + 1, SKEW);
+            cdf[i] = sum;
+        }
+        Random random = new Random(42L);
+        long[] trace = new long[TRACE];
+        long scan = SCAN_BASE;
+        for (int i = 0; i < TRACE; i++) {
+            if (i >= TRACE / 2 && random.nextBoolean()) {
+                trace[i] = LimiterKeys.mix64(scan++);
+                if (scans != null) {
+                    scans[i] = true;
+                }
+            } else {
+                int user = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                trace[i] = LimiterKeys.mix64(user < 0 ? -user - 1 : user);
+            }
+        }
+        return trace;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 被测结构
+     */
+    interface Table {
+
+        /**
+         * @return 是否命中 (未命中新建满桶)
+         */
+        boolean getOrCreate(long key);
+
+        long size();
+    }
+
+    static final class LruTable implements Table {
+
+        private final Cache<Long, TokenBucket> cache = CacheBuilder.newBuilder()
+                .maximumSize(CAPACITY)
+                .expireAfterWrite(5, TimeUnit.MINUTES).build();
+
+        @Override
+        public boolean getOrCreate(long key) {
+            if (cache.getIfPresent(key) != null) {
+                return true;
+            }
+            cache.put(key, new TokenBucket(10d));
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return cache.size();
+        }
+    }
+
+    static final class IndexTable implements Table {
+
+        private final LimiterIndex index = new LimiterIndex(CAPACITY, TimeUnit.MINUTES.toNanos(5));
+
+        @Override
+        public boolean getOrCreate(long key) {
+            if (index.get(key) != null) {
+                return true;
+            }
+            index.putIfAbsent(new LimiterSlot(key, 1, 10d, new TokenBucket(10d)));
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return index.size();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        boolean[] scans = new boolean[TRACE];
+        long[] trace = trace(scans);
+
+        for (String name : new String[]{"LRU", "TINY_LFU"}) {
+            long base = usedHeap();
+            Table table = "LRU".equals(name) ? new LruTable() : new IndexTable();
+            int requests = 0;
+            int hits = 0;
+            for (int i = 0; i < TRACE; i++) {
+                boolean hit = table.getOrCreate(trace[i]);
+                if (i >= TRACE / 2 && !scans[i]) {
+                    requests++;
+                    hits += hit ? 1 : 0;
+                }
+            }
+            long bytes = usedHeap() - base;
+            // 测量之后再使用 table, 保证测量时仍可达
+            System.out.printf("%-9s user hit rate under scan %.1f%%, %d limiters, heap %d KB (%d bytes/limiter)%n",
+                    name, hits * 100d / requests, table.size(), bytes / 1024, bytes / CAPACITY);
+        }
+
+        Options opt = new OptionsBuilder()
+                .include(AdmissionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.opsli.limiter.benchmark;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.annotation.Limiter;
+import org.opsli.limiter.core.aop.LimiterAop;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-13 14:40
+ * @Description: 限流 AOP 开销 (放行请求)
+ *
+ * DIRECT:   直接调用 不经过代理
+ * LEGACY:   旧版 Advice, 每次反射读取注解, QPS 装箱为 Double
+ * COMPILED: 当前 LimiterAop, 策略注册表一次查找
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdviceBenchmark {
+
+    @Param({"DIRECT", "LEGACY", "COMPILED"})
+    public String advice;
+
+    private Target target;
+
+    @Setup
+    public void setup() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bench");
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(request, new MockHttpServletResponse()));
+
+        if ("DIRECT".equals(advice)) {
+            target = new Target();
+            return;
+        }
+        AspectJProxyFactory factory = new AspectJProxyFactory(new Target());
+        factory.setProxyTargetClass(true);
+        factory.addAspect("LEGACY".equals(advice) ? new LegacyLimiterAop() : new LimiterAop());
+        target = factory.getProxy();
+    }
+
+    @Benchmark
+    public String accept() {
+        return target.call();
+    }
+
+    /**
+     * 被限流的方法 QPS 足够大 全部放行
+     */
+    public static class Target {
+
+        @Limiter(qps = 1_000_000_000d)
+        public String call() {
+            return "ok";
+        }
+    }
+
+    /**
+     * 旧版 Advice
+     */
+    @Aspect
+    public static class LegacyLimiterAop {
+
+        @Before("@annotation(org.opsli.limiter.core.annotation.Limiter)")
+        public void limiterHandle(JoinPoint point) {
+            ServletRequestAttributes sra = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+            MethodSignature signature = (MethodSignature) point.getSignature();
+            Method method = signature.getMethod();
+            if (sra != null) {
+                HttpServletRequest request = sra.getRequest();
+                Limiter limiter = method.getAnnotation(Limiter.class);
+                if (limiter != null) {
+                    double qps = limiter.qps();
+                    RateLimiterUtil.enter(request, qps, limiter.acquireMode(), limiter.timeout());
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(AdviceBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithm;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithms;
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.enums.BucketType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 14:00
+ * @Description: 限流算法对比
+ *
+ * acquire: 1024 个 Key 均匀访问 (放行 + 拒绝混合)
+ * main 方法先输出 10万个 Key 下每个 Key 的堆占用 (10 qps / 1 秒窗口), 再执行 JMH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlgorithmBenchmark {
+
+    private static final int KEYS = 1024;
+    private static final int FOOTPRINT_KEYS = 10_0000;
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    @Param({"TOKEN_BUCKET", "FIXED_WINDOW", "SLIDING_LOG", "SLIDING_WINDOW"})
+    public AlgorithmType algorithm;
+
+    private LimiterBucket[] buckets;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        buckets = create(algorithm, KEYS, 1000d);
+    }
+
+    @Benchmark
+    public boolean acquire() {
+        return buckets[ThreadLocalRandom.current().nextInt(KEYS)].tryAcquire();
+    }
+
+    // ==============
+
+    private static LimiterBucket[] create(AlgorithmType type, int count, double qps) {
+        LimiterAlgorithm algorithm = LimiterAlgorithms.of(type, BucketType.TOKEN_BUCKET);
+        LimiterBucket[] buckets = new LimiterBucket[count];
+        for (int i = 0; i < count; i++) {
+            buckets[i] = algorithm.create(qps, 0d, WINDOW);
+        }
+        return buckets;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (AlgorithmType type : AlgorithmType.values()) {
+            long base = usedHeap();
+            Object buckets = create(type, FOOTPRINT_KEYS, 10d);
+            long bytes = usedHeap() - base;
+            System.out.println(String.format("%-15s %d bytes/key", type, bytes / FOOTPRINT_KEYS));
+            buckets = null;
+        }
+
+        Options opt = new OptionsBuilder()
+                .include(AlgorithmBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.opsli.limiter.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-14 14:30
+ * @Description: 基准测试回归比对
+ *
+ * 对比两份 BenchmarkRunner 输出的 CSV, 按 基准,模式,线程,参数 对齐
+ * thrpt 越高越好, 其余模式 (avgt / sample / ss) 越低越好
+ * 退化超过阈值 (默认 10%) 时以状态码 1 退出
+ *
+ * java -cp benchmarks.jar org.opsli.limiter.benchmark.BenchmarkCompare baseline.csv current.csv [阈值%]
+ */
+public final class BenchmarkCompare {
+
+    /** 默认阈值 百分比 */
+    private static final double DEFAULT_THRESHOLD = 10d;
+    /** 吞吐量模式 */
+    private static final String THROUGHPUT = "thrpt";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: BenchmarkCompare baseline.csv current.csv [阈值%]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        Map<String, Double> baseline = read(args[0]);
+        Map<String, Double> current = read(args[1]);
+
+        int regressions = 0;
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            Double base = baseline.get(entry.getKey());
+            if (base == null || base == 0d) {
+                System.out.println("NEW        " + entry.getKey());
+                continue;
+            }
+            double change = changePercent(entry.getKey(), base, entry.getValue());
+            boolean regressed = change < -threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-10s %+8.2f%%  %s",
+                    regressed ? "REGRESSION" : "OK", change, entry.getKey()));
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println("MISSING    " + key);
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.println("退化超过 " + threshold + "% 的基准: " + regressions);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 改善百分比 正数为变好, 负数为变差
+     * @param key 结果标识
+     * @param base 基线得分
+     * @param current 当前得分
+     * @return double
+     */
+    static double changePercent(String key, double base, double current) {
+        double change = (current - base) / base * 100d;
+        return THROUGHPUT.equals(modeOf(key)) ? change : -change;
+    }
+
+    /**
+     * 读取 CSV  结果标识 -> 得分
+     * @param file 文件
+     * @return Map
+     */
+    private static Map<String, Double> read(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith(BenchmarkRunner.HEADER)) {
+                continue;
+            }
+            // benchmark,mode,threads,params,score,error,unit
+            String[] cols = line.split(",", -1);
+            String key = String.join(",", cols[0], cols[1], cols[2], cols[3]);
+            scores.put(key, Double.parseDouble(cols[4]));
+        }
+        return scores;
+    }
+
+    private static String modeOf(String key) {
+        int start = key.indexOf(',') + 1;
+        return key.substring(start, key.indexOf(',', start));
+    }
+
+    // ==========================
+
+    private BenchmarkCompare(){}
+
+}
@@ -0,0 +1,113 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-14 14:00
+ * @Description: 基准测试入口
+ *
+ * 按线程数 1 / 4 / 16 / 64 依次运行匹配的基准, 结果合并写入 CSV (按 基准, 模式, 线程, 参数 排序)
+ * 同一提交多次运行得到的文件可以直接 diff, 与 BenchmarkCompare 配合做回归比对
+ *
+ * java -cp benchmarks.jar org.opsli.limiter.benchmark.BenchmarkRunner [include正则] [输出文件]
+ */
+public final class BenchmarkRunner {
+
+    /** 线程档位 */
+    private static final int[] THREADS = {1, 4, 16, 64};
+    /** 默认输出文件 */
+    private static final String DEFAULT_OUTPUT = "jmh-results.csv";
+    /** CSV 表头 */
+    static final String HEADER = "benchmark,mode,threads,params,score,error,unit";
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+        String output = args.length > 1 ? args[1] : DEFAULT_OUTPUT;
+
+        // 排序后输出 保证行顺序稳定
+        Map<String, String> rows = new TreeMap<>();
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                String key = toKey(result);
+                rows.put(key, key + "," + toScore(result));
+            }
+        }
+
+        List<String> lines = new ArrayList<>(rows.size() + 1);
+        lines.add(HEADER);
+        lines.addAll(rows.values());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        }
+        System.out.println("基准测试结果已写入: " + output);
+    }
+
+    /**
+     * 结果标识 基准,模式,线程,参数(k=v;...)
+     * @param result 结果
+     * @return String
+     */
+    private static String toKey(RunResult result) {
+        BenchmarkParams benchmarkParams = result.getParams();
+        // 参数按名称排序
+        StringBuilder params = new StringBuilder();
+        for (String key : new TreeSet<>(benchmarkParams.getParamsKeys())) {
+            if (params.length() > 0) {
+                params.append(';');
+            }
+            params.append(key).append('=').append(benchmarkParams.getParam(key));
+        }
+        return String.join(",",
+                benchmarkParams.getBenchmark(),
+                benchmarkParams.getMode().shortLabel(),
+                String.valueOf(benchmarkParams.getThreads()),
+                params.toString());
+    }
+
+    /**
+     * 结果得分 得分,误差,单位
+     * @param result 结果
+     * @return String
+     */
+    private static String toScore(RunResult result) {
+        Result<?> primary = result.getPrimaryResult();
+        return String.join(",",
+                String.format(Locale.ROOT, "%.6f", primary.getScore()),
+                String.format(Locale.ROOT, "%.6f", primary.getScoreError()),
+                primary.getScoreUnit());
+    }
+
+    // ==========================
+
+    private BenchmarkRunner(){}
+
+}
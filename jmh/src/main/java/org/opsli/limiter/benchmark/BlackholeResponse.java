@@ -0,0 +1,103 @@
+package org.opsli.limiter.benchmark;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-23 14:00
+ * @Description: 只计数字节的响应
+ *
+ * MockHttpServletResponse 每次 setContentType 都解析 MediaType 并维护 Header 表, 开销远大于被测代码
+ * 这里只保留状态码、类型、长度, 输出流丢弃数据只计数; getWriter 按 UTF-8 编码 (与容器一致)
+ */
+final class BlackholeResponse extends HttpServletResponseWrapper {
+
+    private static final HttpServletResponse UNSUPPORTED = (HttpServletResponse) Proxy.newProxyInstance(
+            BlackholeResponse.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class},
+            (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    int status;
+    String contentType;
+    String characterEncoding;
+    long contentLength;
+    long written;
+
+    private final ServletOutputStream out = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            written += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    };
+
+    BlackholeResponse() {
+        super(UNSUPPORTED);
+    }
+
+    /**
+     * 复用前清空
+     */
+    BlackholeResponse clear() {
+        status = 200;
+        contentType = null;
+        characterEncoding = null;
+        contentLength = -1;
+        written = 0;
+        return this;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+    }
+
+    @Override
+    public void setContentType(String type) {
+        contentType = type;
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        characterEncoding = charset;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        contentLength = len;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        return new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.bucket.BucketFactory;
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.enums.BucketType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-08 14:30
+ * @Description: 单个热点 Key 争用测试
+ *
+ * 所有线程争抢同一个桶, 线程数 1 ~ 64
+ * accept: QPS 足够大 每次都拿到令牌 (每次 CAS 写)
+ * reject: QPS 很小 桶很快耗尽 (只读)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BucketContentionBenchmark {
+
+    @Param({"TOKEN_BUCKET", "GUAVA"})
+    public BucketType type;
+
+    private LimiterBucket acceptBucket;
+
+    private LimiterBucket rejectBucket;
+
+    @Setup
+    public void setup() {
+        acceptBucket = BucketFactory.create(type, 1_000_000_000d);
+        rejectBucket = BucketFactory.create(type, 1d);
+    }
+
+    @Benchmark
+    public boolean accept() {
+        return acceptBucket.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean reject() {
+        return rejectBucket.tryAcquire();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+            Options opt = new OptionsBuilder()
+                    .include(BucketContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithms;
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.bucket.SlidingWindowBucket;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.clock.LimiterClock;
+import org.opsli.limiter.core.enums.ClockType;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.index.LimiterIndex;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-29 15:00
+ * @Description: 精确时钟 vs 缓存时钟 单次判定耗时
+ *
+ * now:     只读时钟
+ * accept:  令牌桶 QPS 足够大 每次都拿到令牌 (读时钟 + CAS)
+ * reject:  令牌桶已耗尽 (读时钟, 只读)
+ * window:  滑动窗口计数 (读时钟 + 对象锁)
+ * enter:   已有 Key 的 getSlot + tryAcquire
+ * java -cp benchmarks.jar org.opsli.limiter.benchmark.ClockBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockBenchmark {
+
+    @Param({"PRECISE", "CACHED"})
+    public ClockType clock;
+
+    private LimiterClock limiterClock;
+    private LimiterBucket acceptBucket;
+    private LimiterBucket rejectBucket;
+    private LimiterBucket windowBucket;
+    private LimiterGroup group;
+
+    @Setup
+    public void setup() {
+        limiterClock = LimiterClock.of(clock);
+        acceptBucket = new TokenBucket(1_000_000_000d, 0d, limiterClock);
+        rejectBucket = new TokenBucket(1d, 0d, limiterClock);
+        rejectBucket.tryAcquire();
+        windowBucket = new SlidingWindowBucket(1_000_000_000d, TimeUnit.SECONDS.toNanos(1), limiterClock);
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        group = new LimiterGroup(index, 1_000_000_000d, 0d, LimiterAlgorithms.TOKEN_BUCKET,
+                TimeUnit.SECONDS.toNanos(1), limiterClock);
+        index.setProbation(false);
+        // 与 RateLimiterUtil.newGroup 一致 选择缓存时钟时索引也使用
+        if (clock == ClockType.CACHED) {
+            index.setClock(limiterClock);
+        }
+        group.getSlot("10.0.0.1", "/test");
+    }
+
+    @Benchmark
+    public long now() {
+        return limiterClock.nanoTime();
+    }
+
+    @Benchmark
+    public boolean accept() {
+        return acceptBucket.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean reject() {
+        return rejectBucket.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean window() {
+        return windowBucket.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean enter() {
+        return group.getSlot("10.0.0.1", "/test").getBucket().tryAcquire();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ClockBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
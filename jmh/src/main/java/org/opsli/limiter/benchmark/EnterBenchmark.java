@@ -0,0 +1,74 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-14 10:10
+ * @Description: RateLimiterUtil.enter
+ *
+ * HOT:  所有线程同一个 IP (同一个限流器)
+ * COLD: 200万个不同 IP 顺序轮询, 远大于索引容量, 每次都是新建 + 淘汰
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class EnterBenchmark {
+
+    static final int IP_COUNT = 200_0000;
+    static final String RESOURCE = "/bench";
+
+    @Param({"HOT", "COLD"})
+    public String keys;
+
+    String[] ips;
+    LimiterGroup group;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        group = RateLimiterUtil.newGroup(1_000_000_000d, 0d);
+        ips = "HOT".equals(keys) ? new String[]{"127.0.0.1"} : ips(IP_COUNT);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public boolean enter(Cursor cursor) {
+        String[] pool = ips;
+        String ip = pool[cursor.next++ % pool.length];
+        return RateLimiterUtil.enter(ip, RESOURCE, group, AcquireMode.REJECT, 0L);
+    }
+
+    static String[] ips(int count) {
+        String[] ips = new String[count];
+        for (int i = 0; i < count; i++) {
+            ips[i] = (10 + (i >>> 24)) + "." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+        }
+        return ips;
+    }
+
+}
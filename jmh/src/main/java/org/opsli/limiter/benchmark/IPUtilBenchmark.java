@@ -0,0 +1,104 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.ip.ClientIpResolver;
+import org.opsli.limiter.core.ip.IpAddress;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-14 10:30
+ * @Description: 客户端 IP 提取 (到限流器 IP 哈希为止)
+ *
+ * FORWARDED:   经内网代理转发, X-Forwarded-For 为 "客户端, 代理"
+ * REMOTE_ADDR: 没有代理头, 直连地址
+ *
+ * legacy:  旧版 12 个请求头依次读取, 原始字符串作为 Key
+ * string:  解析器返回规范化字符串, 再按字符串计算哈希
+ * binary:  解析器写入线程内复用的二进制地址, 直接计算哈希
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IPUtilBenchmark {
+
+    private static final String UNKNOWN = "unknown";
+    private static final String[] LEGACY_HEADERS = {
+            "X-Forwarded-For",
+            "Proxy-Client-IP",
+            "WL-Proxy-Client-IP",
+            "HTTP_X_FORWARDED_FOR",
+            "HTTP_X_FORWARDED",
+            "HTTP_X_CLUSTER_CLIENT_IP",
+            "HTTP_CLIENT_IP",
+            "HTTP_FORWARDED_FOR",
+            "HTTP_FORWARDED",
+            "HTTP_VIA",
+            "REMOTE_ADDR",
+            "X-Real-IP"};
+
+    @Param({"FORWARDED", "REMOTE_ADDR"})
+    public String source;
+
+    private MockHttpServletRequest request;
+    private final ClientIpResolver resolver = new ClientIpResolver();
+    private final IpAddress address = new IpAddress();
+
+    @Setup
+    public void setup() {
+        request = new MockHttpServletRequest("GET", "/bench");
+        if ("FORWARDED".equals(source)) {
+            request.setRemoteAddr("10.0.0.2");
+            request.addHeader("X-Forwarded-For", "203.0.113.7, 10.0.0.1");
+        } else {
+            request.setRemoteAddr("203.0.113.7");
+        }
+    }
+
+    @Benchmark
+    public long legacy() {
+        return LimiterKeys.hash(legacyClientIpAddress(request));
+    }
+
+    @Benchmark
+    public long string() {
+        return LimiterKeys.hashIp(resolver.resolve(request));
+    }
+
+    @Benchmark
+    public long binary() {
+        return resolver.resolve(request, address) ? LimiterKeys.hashIp(address) : 0L;
+    }
+
+    // ==============
+
+    private static String legacyClientIpAddress(HttpServletRequest request) {
+        for (String header : LEGACY_HEADERS) {
+            String ip = request.getHeader(header);
+            if (ip != null && ip.length() != 0 && !UNKNOWN.equalsIgnoreCase(ip)) {
+                return ip;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.index.LimiterIndex;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.index.LimiterSlot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-14 11:10
+ * @Description: 索引淘汰
+ *
+ * 索引容量 10万, 每次操作都是一个从未出现过的 Key (数百万不同客户端)
+ * 测量 查找未命中 + 新建 + 淘汰
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexChurnBenchmark {
+
+    private static final int CAPACITY = 10_0000;
+
+    private LimiterIndex index;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        index = new LimiterIndex(CAPACITY, TimeUnit.MINUTES.toNanos(5));
+    }
+
+    @Benchmark
+    public LimiterSlot churn() {
+        long key = LimiterKeys.mix64(sequence.incrementAndGet());
+        LimiterSlot slot = index.get(key);
+        if (slot == null) {
+            slot = index.putIfAbsent(new LimiterSlot(key, 1, 10d, new TokenBucket(10d)));
+        }
+        return slot;
+    }
+
+}
@@ -0,0 +1,157 @@
+package org.opsli.limiter.benchmark;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.index.LimiterIndex;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.index.LimiterSlot;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-09 15:10
+ * @Description: 限流器索引 vs 旧版嵌套缓存
+ *
+ * 旧版: Cache<String, Map<String, RateLimiterInner>>
+ * 新版: LimiterIndex 组合Key开放寻址
+ *
+ * main 方法先输出 100万客户端下每个客户端的堆占用, 再执行 JMH 查询测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class IndexFootprintBenchmark {
+
+    private static final int CLIENTS = 100_0000;
+    private static final String RESOURCE = "/test";
+
+    @Param({"NESTED", "INDEX"})
+    public String structure;
+
+    private String[] ips;
+    private Cache<String, Map<String, LegacyInner>> nested;
+    private LimiterIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() throws ExecutionException {
+        ips = ips(CLIENTS);
+        if ("NESTED".equals(structure)) {
+            nested = fillNested(ips);
+        } else {
+            index = fillIndex(ips);
+        }
+    }
+
+    @Benchmark
+    public Object hit() throws ExecutionException {
+        String ip = ips[ThreadLocalRandom.current().nextInt(CLIENTS)];
+        if (index != null) {
+            int resourceId = LimiterKeys.intern(RESOURCE);
+            return index.get(LimiterKeys.compose(LimiterKeys.hash(ip), resourceId));
+        }
+        return nested.get(ip, Maps::newConcurrentMap).get(RESOURCE);
+    }
+
+    // ==============
+
+    private static String[] ips(int count) {
+        String[] ips = new String[count];
+        for (int i = 0; i < count; i++) {
+            ips[i] = "10." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+        }
+        return ips;
+    }
+
+    private static Cache<String, Map<String, LegacyInner>> fillNested(String[] ips) throws ExecutionException {
+        Cache<String, Map<String, LegacyInner>> cache = CacheBuilder.newBuilder()
+                .maximumSize(ips.length)
+                .expireAfterWrite(5, TimeUnit.MINUTES).build();
+        for (String ip : ips) {
+            cache.get(ip, () -> {
+                Map<String, LegacyInner> tmpMap = Maps.newConcurrentMap();
+                LegacyInner inner = new LegacyInner();
+                inner.qps = 10d;
+                inner.rateLimiter = RateLimiter.create(10d);
+                tmpMap.put(RESOURCE, inner);
+                return tmpMap;
+            });
+        }
+        return cache;
+    }
+
+    private static LimiterIndex fillIndex(String[] ips) {
+        LimiterIndex index = new LimiterIndex(ips.length, TimeUnit.MINUTES.toNanos(5));
+        int resourceId = LimiterKeys.intern(RESOURCE);
+        for (String ip : ips) {
+            long key = LimiterKeys.compose(LimiterKeys.hash(ip), resourceId);
+            index.putIfAbsent(new LimiterSlot(key, resourceId, 10d, new TokenBucket(10d)));
+        }
+        return index;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 旧版限流器
+     */
+    static class LegacyInner {
+        Double qps;
+        RateLimiter rateLimiter;
+    }
+
+    public static void main(String[] args) throws RunnerException, ExecutionException {
+        String[] ips = ips(CLIENTS);
+
+        long base = usedHeap();
+        Object nested = fillNested(ips);
+        long nestedBytes = usedHeap() - base;
+        System.out.println("NESTED  " + CLIENTS + " clients, " + nestedBytes / CLIENTS + " bytes/client");
+        nested = null;
+
+        base = usedHeap();
+        Object index = fillIndex(ips);
+        long indexBytes = usedHeap() - base;
+        System.out.println("INDEX   " + CLIENTS + " clients, " + indexBytes / CLIENTS + " bytes/client");
+        index = null;
+
+        Options opt = new OptionsBuilder()
+                .include(IndexFootprintBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
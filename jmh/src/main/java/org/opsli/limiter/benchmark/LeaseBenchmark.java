@@ -0,0 +1,120 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.bucket.LeasedBucket;
+import org.opsli.limiter.core.store.LimiterStore;
+import org.opsli.limiter.core.store.LocalLimiterStore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-16 15:00
+ * @Description: 分布式租用批次大小
+ *
+ * 共享存储为进程内存储 + 模拟网络往返 (RTT_MICROS)
+ * acquire: 每次获取的耗时分布 (看 p99), 令牌充足, 只衡量租用带来的额外延迟
+ * main 方法先模拟 NODES 个节点在超额流量下的放行数, 与理论上限对比精度, 再执行 JMH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeaseBenchmark {
+
+    /** 模拟网络往返 微秒 */
+    private static final long RTT_MICROS = 200L;
+    private static final int NODES = 4;
+    private static final double ACCURACY_QPS = 1000d;
+    private static final long ACCURACY_SECONDS = 3L;
+
+    @Param({"1", "10", "100"})
+    public int leaseSize;
+
+    private LeasedBucket bucket;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        bucket = new LeasedBucket(delayed(new LocalLimiterStore()), "127.0.0.1:/bench",
+                1_000_000_000d, 0d, leaseSize);
+    }
+
+    @Benchmark
+    public boolean acquire() {
+        return bucket.tryAcquire();
+    }
+
+    // ==============
+
+    private static LimiterStore delayed(LimiterStore store) {
+        return (key, qps, burst, permits) -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(RTT_MICROS));
+            return store.lease(key, qps, burst, permits);
+        };
+    }
+
+    /**
+     * NODES 个节点 每个节点一个线程持续请求, 统计放行数
+     * 理论上限 = 突发 + QPS * 时长
+     */
+    private static void accuracy(int leaseSize) throws InterruptedException {
+        LimiterStore store = delayed(new LocalLimiterStore());
+        AtomicLong admitted = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ACCURACY_SECONDS);
+        Thread[] nodes = new Thread[NODES];
+        for (int i = 0; i < NODES; i++) {
+            LeasedBucket bucket = new LeasedBucket(store, "127.0.0.1:/bench", ACCURACY_QPS, 0d, leaseSize);
+            nodes[i] = new Thread(() -> {
+                long count = 0;
+                while (System.nanoTime() - deadline < 0) {
+                    if (bucket.tryAcquire()) {
+                        count++;
+                    } else {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                    }
+                }
+                admitted.addAndGet(count);
+            });
+            nodes[i].start();
+        }
+        for (Thread node : nodes) {
+            node.join();
+        }
+        double limit = ACCURACY_QPS + ACCURACY_QPS * ACCURACY_SECONDS;
+        System.out.println(String.format("lease %-4d admitted %d / limit %.0f (%.1f%%)",
+                leaseSize, admitted.get(), limit, admitted.get() * 100d / limit));
+    }
+
+    public static void main(String[] args) throws RunnerException, InterruptedException {
+        for (int leaseSize : new int[]{1, 10, 100}) {
+            accuracy(leaseSize);
+        }
+
+        Options opt = new OptionsBuilder()
+                .include(LeaseBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,186 @@
+package org.opsli.limiter.benchmark;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.enums.BucketType;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.index.LimiterIndex;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-27 15:00
+ * @Description: 堆外状态 vs 限流器索引 vs 旧版嵌套缓存 (500万 Key)
+ *
+ * 旧版: Cache<String, Map<String, RateLimiterInner>> (Guava RateLimiter)
+ * 索引: LimiterIndex 中每个 Key 一个限流器 (关闭一级计数)
+ * 堆外: LimiterSlab 每个 Key 16 字节
+ *
+ * main 方法依次建好 500万个 Key 的状态, 输出堆占用、堆外占用与 Full GC 停顿 (存活对象越多标记越久),
+ * 再执行 JMH 测试已有 Key 的 getSlot + tryAcquire 耗时
+ * 旧版需要约 2.2GB 堆: java -Xmx3500m -cp benchmarks.jar org.opsli.limiter.benchmark.OffHeapBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class OffHeapBenchmark {
+
+    private static final int KEYS = 500_0000;
+    private static final String RESOURCE = "/test";
+    /** 堆外模式下索引只放非本地令牌桶的限流器, 按默认容量 */
+    private static final int DEFAULT_INDEX_SIZE = 10_0000;
+    /** 测量 Full GC 的次数 */
+    private static final int GC_ROUNDS = 3;
+
+    @Param({"INDEX", "OFF_HEAP"})
+    public String store;
+
+    private String[] ips;
+    private LimiterGroup group;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ips = ips(KEYS);
+        group = fill(index(store, KEYS), ips);
+    }
+
+    @Benchmark
+    public boolean enter() {
+        String ip = ips[ThreadLocalRandom.current().nextInt(KEYS)];
+        return group.getSlot(ip, RESOURCE).getBucket().tryAcquire();
+    }
+
+    // ==============
+
+    private static String[] ips(int count) {
+        String[] ips = new String[count];
+        for (int i = 0; i < count; i++) {
+            ips[i] = "10." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+        }
+        return ips;
+    }
+
+    private static LimiterIndex index(String store, int keys) {
+        if ("OFF_HEAP".equals(store)) {
+            LimiterIndex index = new LimiterIndex(DEFAULT_INDEX_SIZE, TimeUnit.MINUTES.toNanos(5));
+            index.setOffHeap(keys);
+            return index;
+        }
+        LimiterIndex index = new LimiterIndex(keys, TimeUnit.MINUTES.toNanos(5));
+        index.setProbation(false);
+        return index;
+    }
+
+    private static LimiterGroup fill(LimiterIndex index, String[] ips) {
+        LimiterGroup group = new LimiterGroup(index, 10d, 10d, BucketType.TOKEN_BUCKET);
+        for (String ip : ips) {
+            group.getSlot(ip, RESOURCE).getBucket().tryAcquire();
+        }
+        return group;
+    }
+
+    private static Cache<String, Map<String, IndexFootprintBenchmark.LegacyInner>> fillLegacy(String[] ips)
+            throws ExecutionException {
+        Cache<String, Map<String, IndexFootprintBenchmark.LegacyInner>> cache = CacheBuilder.newBuilder()
+                .maximumSize(ips.length)
+                .expireAfterWrite(5, TimeUnit.MINUTES).build();
+        for (String ip : ips) {
+            Map<String, IndexFootprintBenchmark.LegacyInner> tmpMap = cache.get(ip, Maps::newConcurrentMap);
+            IndexFootprintBenchmark.LegacyInner inner = new IndexFootprintBenchmark.LegacyInner();
+            inner.qps = 10d;
+            inner.rateLimiter = RateLimiter.create(10d);
+            inner.rateLimiter.tryAcquire();
+            tmpMap.put(RESOURCE, inner);
+        }
+        return cache;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 平均每次 Full GC 的耗时 毫秒
+     */
+    private static long fullGcMillis() {
+        long before = gcMillis();
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+        }
+        return (gcMillis() - before) / GC_ROUNDS;
+    }
+
+    private static long gcMillis() {
+        long millis = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0L, bean.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static void report(String name, long heapBytes, long offHeapBytes, long gcMillis) {
+        System.out.printf("%-9s %d keys, heap %d MB (%d bytes/key), off-heap %d MB, full GC %d ms%n",
+                name, KEYS, heapBytes >> 20, heapBytes / KEYS, offHeapBytes >> 20, gcMillis);
+    }
+
+    public static void main(String[] args) throws RunnerException, ExecutionException {
+        String[] ips = ips(KEYS);
+
+        long base = usedHeap();
+        long baseGc = fullGcMillis();
+        Object legacy = fillLegacy(ips);
+        long bytes = usedHeap() - base;
+        report("LEGACY", bytes, 0L, fullGcMillis());
+        legacy = null;
+
+        for (String name : new String[]{"INDEX", "OFF_HEAP"}) {
+            base = usedHeap();
+            LimiterIndex index = index(name, KEYS);
+            fill(index, ips);
+            bytes = usedHeap() - base;
+            long gc = fullGcMillis();
+            // 测量之后再使用 index, 保证测量时仍可达
+            report(name, bytes, index.offHeapBytes(), gc);
+        }
+        System.out.println("empty heap full GC " + baseGc + " ms");
+
+        Options opt = new OptionsBuilder()
+                .include(OffHeapBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.enums.BucketType;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.index.LimiterIndex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-26 14:30
+ * @Description: 一级计数 开启 vs 关闭
+ *
+ * 访问序列: 100万个不同客户端各连续请求 2 次 (QPS 10, 远低于限流值),
+ *          每秒新出现 12.5万个客户端 (一级计数按 最大限流器数 / 8 估算的每秒 Key 数), 共 8 秒
+ * 关闭: 每个客户端第一次请求就建限流桶
+ * 开启: 只在一级计数超过阈值时建桶
+ *
+ * main 方法先输出两种方式的堆占用与建桶数, 再执行 JMH 测试未命中索引时 getSlot + tryAcquire 的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ProbationBenchmark {
+
+    private static final int CLIENTS = 100_0000;
+    private static final String RESOURCE = "/test";
+    /** 每秒新客户端数 */
+    private static final int CLIENTS_PER_SECOND = CLIENTS / 8;
+
+    @Param({"OFF", "ON"})
+    public String probation;
+
+    private String[] ips;
+    private LimiterGroup group;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ips = ips(CLIENTS);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        group = new LimiterGroup(index("ON".equals(probation)), 10d, 10d, BucketType.TOKEN_BUCKET);
+        cursor = 0;
+    }
+
+    /**
+     * 每次都是新客户端 (关闭时建桶, 开启时只计数)
+     */
+    @Benchmark
+    public boolean firstRequest() {
+        String ip = ips[cursor];
+        cursor = cursor + 1 == ips.length ? 0 : cursor + 1;
+        return group.getSlot(ip, RESOURCE).getBucket().tryAcquire();
+    }
+
+    // ==============
+
+    private static String[] ips(int count) {
+        String[] ips = new String[count];
+        for (int i = 0; i < count; i++) {
+            ips[i] = "10." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+        }
+        return ips;
+    }
+
+    private static LimiterIndex index(boolean probation) {
+        LimiterIndex index = new LimiterIndex(CLIENTS, TimeUnit.MINUTES.toNanos(5));
+        index.setProbation(probation);
+        return index;
+    }
+
+    /**
+     * 按每秒新客户端数放慢
+     */
+    private static void pace(long start, int clients) {
+        long due = start + clients * TimeUnit.SECONDS.toNanos(1) / CLIENTS_PER_SECOND;
+        long wait = due - System.nanoTime();
+        if (wait > 0L) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] ips = ips(CLIENTS);
+
+        for (String name : new String[]{"OFF", "ON"}) {
+            long base = usedHeap();
+            LimiterIndex index = index("ON".equals(name));
+            LimiterGroup group = new LimiterGroup(index, 10d, 10d, BucketType.TOKEN_BUCKET);
+            int rejected = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < CLIENTS; i++) {
+                if (i % 1000 == 0) {
+                    pace(start, i);
+                }
+                for (int n = 0; n < 2; n++) {
+                    rejected += group.getSlot(ips[i], RESOURCE).getBucket().tryAcquire() ? 0 : 1;
+                }
+            }
+            long bytes = usedHeap() - base;
+            // 测量之后再使用 index, 保证测量时仍可达
+            System.out.printf("%-4s %d clients x 2, %d limiters, %d rejected, heap %d KB (%d bytes/client)%n",
+                    name, CLIENTS, index.size(), rejected, bytes / 1024, bytes / CLIENTS);
+        }
+
+        Options opt = new OptionsBuilder()
+                .include(ProbationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,61 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-22 14:00
+ * @Description: 拒绝路径 (含拒绝日志)
+ *
+ * 限流器 QPS 极低, 预热后全部为拒绝请求
+ * HOT:    同一个 IP
+ * SPREAD: 1万个 IP 轮询
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RejectLogBenchmark {
+
+    static final String RESOURCE = "/bench/reject";
+
+    @Param({"HOT", "SPREAD"})
+    public String keys;
+
+    String[] ips;
+    LimiterGroup group;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        group = RateLimiterUtil.newGroup(0.001d, 1d);
+        ips = "HOT".equals(keys) ? new String[]{"127.0.0.1"} : EnterBenchmark.ips(10_000);
+    }
+
+    @Benchmark
+    public boolean reject(EnterBenchmark.Cursor cursor) {
+        String[] pool = ips;
+        String ip = pool[cursor.next++ % pool.length];
+        return RateLimiterUtil.enter(ip, RESOURCE, group, AcquireMode.REJECT, 0L);
+    }
+
+}
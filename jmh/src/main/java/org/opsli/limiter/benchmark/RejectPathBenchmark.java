@@ -0,0 +1,124 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.Application;
+import org.opsli.limiter.core.filter.LimiterFilter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.DefaultMockMvcBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-12 14:20
+ * @Description: 拒绝路径 AOP vs 过滤器
+ *
+ * 同一个 IP 持续请求 /test, 令牌耗尽后全部为拒绝请求
+ * AOP: DispatcherServlet -> Handler 查找 -> 参数解析 -> 代理 -> @Before 抛异常 -> GlobalExceptionHandler
+ * FILTER: LimiterFilter 直接写回
+ *
+ * main 方法额外输出每个被拒绝请求的线程 CPU 时间
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RejectPathBenchmark {
+
+    @Param({"AOP", "FILTER"})
+    public String path;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = start("FILTER".equals(path));
+        mockMvc = mockMvc(context, "FILTER".equals(path));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult reject() throws Exception {
+        return mockMvc.perform(get("/test")).andReturn();
+    }
+
+    // ==============
+
+    private static ConfigurableApplicationContext start(boolean filter) {
+        return new SpringApplicationBuilder(Application.class)
+                .run("--server.port=0",
+                        "--opsli.limiter.filter.enabled=" + filter,
+                        "--logging.level.org.opsli.limiter=OFF");
+    }
+
+    private static MockMvc mockMvc(ConfigurableApplicationContext context, boolean filter) {
+        DefaultMockMvcBuilder builder = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context);
+        if (filter) {
+            builder.addFilters(context.getBean(LimiterFilter.class));
+        }
+        return builder.build();
+    }
+
+    private static void cpuPerReject(String path, int count) throws Exception {
+        boolean filter = "FILTER".equals(path);
+        try (ConfigurableApplicationContext context = start(filter)) {
+            MockMvc mockMvc = mockMvc(context, filter);
+            // 预热并耗尽令牌
+            for (int i = 0; i < count; i++) {
+                mockMvc.perform(get("/test")).andReturn();
+            }
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            long cpu = bean.getCurrentThreadCpuTime();
+            long wall = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                mockMvc.perform(get("/test")).andReturn();
+            }
+            System.out.println(path + " cpu " + (bean.getCurrentThreadCpuTime() - cpu) / count
+                    + " ns/reject, wall " + (System.nanoTime() - wall) / count + " ns/reject");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        cpuPerReject("AOP", 100_000);
+        cpuPerReject("FILTER", 100_000);
+
+        Options opt = new OptionsBuilder()
+                .include(RejectPathBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
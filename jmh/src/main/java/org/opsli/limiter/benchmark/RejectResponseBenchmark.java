@@ -0,0 +1,86 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.exception.LimiterException;
+import org.opsli.limiter.core.exception.ServiceException;
+import org.opsli.limiter.core.handle.GlobalExceptionHandler;
+import org.opsli.limiter.core.msg.CommonMsg;
+import org.opsli.limiter.core.ret.ResultVo;
+import org.opsli.limiter.core.util.OutputStreamUtil;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-14 10:50
+ * @Description: 拒绝响应
+ *
+ * ALERT:     OutputStreamUtil.exceptionResponse
+ * JSON:      过滤器中的 OutputStreamUtil.jsonResponse
+ * EXCEPTION: AOP 中抛出 ServiceException 并由 GlobalExceptionHandler 转换 (不含 Jackson 输出)
+ *
+ * CACHED_ALERT / CACHED_JSON: OutputStreamUtil.rejectResponse 预编码响应体 (过滤器)
+ * LIMITER:                    AOP 中抛出无堆栈的 LimiterException, GlobalExceptionHandler 写出预编码响应体
+ *
+ * 响应使用 BlackholeResponse, 不计 MockHttpServletResponse 的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RejectResponseBenchmark {
+
+    @Param({"ALERT", "JSON", "EXCEPTION", "CACHED_ALERT", "CACHED_JSON", "LIMITER"})
+    public String response;
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+    private final BlackholeResponse blackhole = new BlackholeResponse();
+
+    @Benchmark
+    public Object reject() {
+        if ("EXCEPTION".equals(response)) {
+            try {
+                throw new ServiceException(CommonMsg.OTHER_EXCEPTION_LIMITER);
+            } catch (ServiceException e) {
+                return handler.bussinessException(e);
+            }
+        }
+        BlackholeResponse servletResponse = blackhole.clear();
+        if ("LIMITER".equals(response)) {
+            try {
+                throw new LimiterException(AlertType.JSON);
+            } catch (LimiterException e) {
+                handler.limiterException(e, servletResponse);
+            }
+        } else if ("CACHED_ALERT".equals(response)) {
+            OutputStreamUtil.rejectResponse(AlertType.ALERT, servletResponse);
+        } else if ("CACHED_JSON".equals(response)) {
+            OutputStreamUtil.rejectResponse(AlertType.JSON, servletResponse);
+        } else if ("ALERT".equals(response)) {
+            OutputStreamUtil.exceptionResponse(CommonMsg.OTHER_EXCEPTION_LIMITER.getMessage(), servletResponse);
+        } else {
+            OutputStreamUtil.jsonResponse(
+                    ResultVo.error(CommonMsg.OTHER_EXCEPTION_LIMITER.getCode(),
+                            CommonMsg.OTHER_EXCEPTION_LIMITER.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    servletResponse);
+        }
+        return servletResponse.written;
+    }
+
+}
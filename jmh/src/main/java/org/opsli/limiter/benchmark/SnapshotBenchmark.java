@@ -0,0 +1,96 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.enums.BucketType;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.index.LimiterIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-28 16:00
+ * @Description: 限流状态快照 恢复耗时与 Key 数无关
+ *
+ * restore: 打开快照 (只映射文件、读文件头与资源表), 启动时的耗时
+ * write:   写入快照 (后台线程, 不阻塞请求), 耗时与文件大小随未满的 Key 数线性增长
+ * java -cp benchmarks.jar org.opsli.limiter.benchmark.SnapshotBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SnapshotBenchmark {
+
+    private static final String RESOURCE = "/test";
+
+    @Param({"10000", "1000000"})
+    public int keys;
+
+    private Path dir;
+    private Path file;
+    private LimiterIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("limiter-snapshot");
+        file = dir.resolve("limiter.snapshot");
+        index = new LimiterIndex(keys, TimeUnit.MINUTES.toNanos(5));
+        index.setProbation(false);
+        // 每秒 1 个令牌 每个 Key 欠 10 秒, 测量期间不会补满
+        LimiterGroup group = new LimiterGroup(index, 1d, 10d, BucketType.TOKEN_BUCKET);
+        for (int i = 0; i < keys; i++) {
+            group.getSlot("10." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff), RESOURCE)
+                    .getBucket().tryAcquire(10, 0L, TimeUnit.NANOSECONDS);
+        }
+        index.writeSnapshot(file);
+        System.out.printf("%n%d keys, snapshot %d KB%n", keys, Files.size(file) >> 10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public boolean restore() throws IOException {
+        return new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5)).restoreSnapshot(file);
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        return index.writeSnapshot(file);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SnapshotBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opsli.limiter.core.enums.PrefixAction;
+import org.opsli.limiter.core.ip.IpAddress;
+import org.opsli.limiter.core.ip.SubnetLimiter;
+import org.opsli.limiter.core.ip.SubnetMatch;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-18 15:00
+ * @Description: 网段前缀树查询
+ *
+ * prefixes 个随机网段 (IPv4 /16 ~ /32, IPv6 /32 ~ /64), 黑名单 / 网段限流各半
+ * screen: 一次遍历得到黑白名单结论和命中的网段规则 (配合 -prof gc 确认不分配对象)
+ * main 方法先输出前缀树的节点数和堆占用
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SubnetTrieBenchmark {
+
+    private static final int ADDRESSES = 1 << 16;
+
+    @Param({"1000", "100000"})
+    public int prefixes;
+
+    private SubnetLimiter limiter;
+    private IpAddress[] addresses;
+    private final SubnetMatch match = new SubnetMatch();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(7);
+        limiter = build(prefixes, random);
+        addresses = new IpAddress[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            addresses[i] = IpAddress.parse(random.nextBoolean() ? ipv4(random) : ipv6(random));
+        }
+    }
+
+    @Benchmark
+    public PrefixAction screen() {
+        return limiter.screen(addresses[next++ & (ADDRESSES - 1)], match);
+    }
+
+    // ==============
+
+    private static SubnetLimiter build(int count, Random random) {
+        SubnetLimiter.Builder builder = SubnetLimiter.builder();
+        for (int i = 0; i < count; i++) {
+            String cidr = random.nextBoolean()
+                    ? ipv4(random) + "/" + (16 + random.nextInt(17))
+                    : ipv6(random) + "/" + (32 + random.nextInt(33));
+            if ((i & 1) == 0) {
+                builder.deny(cidr);
+            } else {
+                builder.limit(cidr, 100d);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String ipv4(Random random) {
+        int v = random.nextInt();
+        return (v >>> 24) + "." + ((v >>> 16) & 0xff) + "." + ((v >>> 8) & 0xff) + "." + (v & 0xff);
+    }
+
+    private static String ipv6(Random random) {
+        // 集中在 2001:db8::/24 附近 让前缀有公共部分
+        return String.format("2001:%x:%x:%x::%x", 0xd00 + random.nextInt(0x100),
+                random.nextInt(0x10000), random.nextInt(0x10000), random.nextInt(0x10000));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        long base = usedHeap();
+        Object limiter = build(100_000, new Random(7));
+        long bytes = usedHeap() - base;
+        System.out.println("100000 prefixes, " + bytes / 100_000 + " bytes/prefix (含网段限流桶)");
+        limiter = null;
+
+        Options opt = new OptionsBuilder()
+                .include(SubnetTrieBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(opt).run();
+    }
+
+}
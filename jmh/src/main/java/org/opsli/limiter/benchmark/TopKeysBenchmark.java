@@ -0,0 +1,78 @@
+package org.opsli.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.ip.IpAddress;
+import org.opsli.limiter.core.metrics.LimiterMetrics;
+import org.opsli.limiter.core.metrics.LimiterStats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.benchmark
+ * @Author: Parker
+ * @CreateTime: 2021-01-22 14:30
+ * @Description: 拒绝计数 (拒绝数 + 高频 Key 统计)
+ *
+ * 只测 LimiterStats#reject, 不含限流桶和拒绝日志
+ * HOT:  同一个 Key, 每次命中表中已有的计数器
+ * SCAN: 100万个 Key 轮询 (扫描攻击), 每次都是新 Key, 走替换路径
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKeysBenchmark {
+
+    static final String RESOURCE = "/bench/top";
+
+    @Param({"HOT", "SCAN"})
+    public String keys;
+
+    long[] hashes;
+    long[] lows;
+    LimiterStats stats;
+
+    /** 与请求路径一样 地址对象线程内复用 */
+    @State(Scope.Thread)
+    public static class Scratch {
+        final IpAddress address = new IpAddress();
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] ips = EnterBenchmark.ips("HOT".equals(keys) ? 1 : 1_000_000);
+        hashes = new long[ips.length];
+        lows = new long[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            IpAddress address = IpAddress.parse(ips[i]);
+            lows[i] = address.getLow();
+            hashes[i] = LimiterKeys.compose(LimiterKeys.hashIp(address), LimiterKeys.intern(RESOURCE));
+        }
+        stats = LimiterMetrics.of("TopKeysBenchmark#" + keys);
+    }
+
+    @Benchmark
+    public boolean reject(Scratch scratch) {
+        int i = scratch.next;
+        scratch.next = i + 1 == hashes.length ? 0 : i + 1;
+        scratch.address.set(0L, lows[i]);
+        return stats.reject(hashes[i], scratch.address, RESOURCE);
+    }
+
+}
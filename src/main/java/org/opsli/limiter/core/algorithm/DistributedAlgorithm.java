@@ -0,0 +1,51 @@
+package org.opsli.limiter.core.algorithm;
+
+import org.opsli.limiter.core.bucket.LeasedBucket;
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.store.LimiterStore;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.algorithm
+ * @Author: Parker
+ * @CreateTime: 2021-01-16 11:40
+ * @Description: 分布式令牌桶
+ *
+ * 所有节点共用共享存储中的令牌桶, Key 为 IP:URI
+ */
+public class DistributedAlgorithm implements LimiterAlgorithm {
+
+    /** 共享存储 */
+    private final LimiterStore store;
+
+    /** 每批租用的令牌数 */
+    private final int leaseSize;
+
+    public DistributedAlgorithm(LimiterStore store, int leaseSize) {
+        this.store = store;
+        this.leaseSize = leaseSize;
+    }
+
+    /**
+     * 分布式算法需要跨节点稳定的 Key
+     */
+    @Override
+    public LimiterBucket create(double qps, double burst, long windowNanos) {
+        throw new UnsupportedOperationException("distributed algorithm requires a key");
+    }
+
+    @Override
+    public LimiterBucket create(String clientIpAddress, String resource,
+                                double qps, double burst, long windowNanos) {
+        return new LeasedBucket(store, clientIpAddress + ":" + resource, qps, burst, leaseSize);
+    }
+
+    public LimiterStore getStore() {
+        return store;
+    }
+
+    public int getLeaseSize() {
+        return leaseSize;
+    }
+
+}
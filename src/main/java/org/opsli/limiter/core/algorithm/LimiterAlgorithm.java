@@ -0,0 +1,58 @@
+package org.opsli.limiter.core.algorithm;
+
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.clock.LimiterClock;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.algorithm
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 11:05
+ * @Description: 限流算法
+ *
+ * 为每个 Key (IP + URI) 创建一个限流桶, 自定义算法实现此接口
+ * 通过 RateLimiterUtil.newGroup(qps, burst, algorithm, window) 使用
+ */
+@FunctionalInterface
+public interface LimiterAlgorithm {
+
+    /**
+     * 创建限流桶
+     * @param qps QPS 大于0
+     * @param burst 突发令牌数 小于等于0 为默认值 (窗口算法忽略)
+     * @param windowNanos 窗口时长 纳秒 (令牌桶忽略)
+     * @return LimiterBucket
+     */
+    LimiterBucket create(double qps, double burst, long windowNanos);
+
+    /**
+     * 创建限流桶 需要跨节点稳定 Key 的算法 (如分布式) 重写此方法
+     * 只在限流器新建时调用, 不影响命中路径
+     * @param clientIpAddress IP
+     * @param resource URI
+     * @param qps QPS 大于0
+     * @param burst 突发令牌数 小于等于0 为默认值
+     * @param windowNanos 窗口时长 纳秒
+     * @return LimiterBucket
+     */
+    default LimiterBucket create(String clientIpAddress, String resource,
+                                 double qps, double burst, long windowNanos) {
+        return create(qps, burst, windowNanos);
+    }
+
+    /**
+     * 创建限流桶 使用限流器组的时钟, 不支持自定义时钟的算法忽略 clock
+     * @param clientIpAddress IP
+     * @param resource URI
+     * @param qps QPS 大于0
+     * @param burst 突发令牌数 小于等于0 为默认值
+     * @param windowNanos 窗口时长 纳秒
+     * @param clock 时钟
+     * @return LimiterBucket
+     */
+    default LimiterBucket create(String clientIpAddress, String resource,
+                                 double qps, double burst, long windowNanos, LimiterClock clock) {
+        return create(clientIpAddress, resource, qps, burst, windowNanos);
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.opsli.limiter.core.algorithm;
+
+import org.opsli.limiter.core.bucket.BucketFactory;
+import org.opsli.limiter.core.bucket.FixedWindowBucket;
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.bucket.SlidingLogBucket;
+import org.opsli.limiter.core.bucket.SlidingWindowBucket;
+import org.opsli.limiter.core.clock.LimiterClock;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.enums.BucketType;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.algorithm
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 11:10
+ * @Description: 内置限流算法
+ */
+public final class LimiterAlgorithms {
+
+    /** 无锁令牌桶 */
+    public static final LimiterAlgorithm TOKEN_BUCKET =
+            clocked((qps, burst, windowNanos, clock) -> BucketFactory.create(BucketType.TOKEN_BUCKET, qps, burst, clock));
+
+    /** Guava 令牌桶 (内部使用自己的 Stopwatch, 忽略时钟) */
+    public static final LimiterAlgorithm GUAVA =
+            (qps, burst, windowNanos) -> BucketFactory.create(BucketType.GUAVA, qps, burst);
+
+    /** 固定窗口计数 */
+    public static final LimiterAlgorithm FIXED_WINDOW =
+            clocked((qps, burst, windowNanos, clock) -> new FixedWindowBucket(qps, windowNanos, clock));
+
+    /** 滑动日志 */
+    public static final LimiterAlgorithm SLIDING_LOG =
+            clocked((qps, burst, windowNanos, clock) -> new SlidingLogBucket(qps, windowNanos, clock));
+
+    /** 滑动窗口计数 */
+    public static final LimiterAlgorithm SLIDING_WINDOW =
+            clocked((qps, burst, windowNanos, clock) -> new SlidingWindowBucket(qps, windowNanos, clock));
+
+    /**
+     * 按类型获得算法
+     * 分布式算法依赖共享存储, 由 RateLimiterUtil 持有, 这里退化为令牌桶
+     * @param type 算法类型 为空时为令牌桶
+     * @param bucketType 令牌桶类型
+     * @return LimiterAlgorithm
+     */
+    public static LimiterAlgorithm of(AlgorithmType type, BucketType bucketType) {
+        if (type == null || type == AlgorithmType.TOKEN_BUCKET || type == AlgorithmType.DISTRIBUTED) {
+            return bucketType == BucketType.GUAVA ? GUAVA : TOKEN_BUCKET;
+        }
+        switch (type) {
+            case FIXED_WINDOW:
+                return FIXED_WINDOW;
+            case SLIDING_LOG:
+                return SLIDING_LOG;
+            case SLIDING_WINDOW:
+                return SLIDING_WINDOW;
+            default:
+                throw new IllegalArgumentException("unknown algorithm: " + type);
+        }
+    }
+
+    // ==========================
+
+    /**
+     * 支持时钟的内置算法
+     */
+    private static LimiterAlgorithm clocked(ClockedFactory factory) {
+        return new LimiterAlgorithm() {
+            @Override
+            public LimiterBucket create(double qps, double burst, long windowNanos) {
+                return factory.create(qps, burst, windowNanos, LimiterClock.PRECISE);
+            }
+
+            @Override
+            public LimiterBucket create(String clientIpAddress, String resource,
+                                        double qps, double burst, long windowNanos, LimiterClock clock) {
+                return factory.create(qps, burst, windowNanos, clock);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface ClockedFactory {
+
+        LimiterBucket create(double qps, double burst, long windowNanos, LimiterClock clock);
+    }
+
+    private LimiterAlgorithms(){}
+
+}
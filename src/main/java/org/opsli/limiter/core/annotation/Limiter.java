@@ -2,7 +2,10 @@ package org.opsli.limiter.core.annotation;
 
 
 
+import org.opsli.limiter.core.enums.AcquireMode;
 import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.enums.ClockType;
 import org.opsli.limiter.core.util.RateLimiterUtil;
 
 import java.lang.annotation.*;
@@ -19,7 +22,56 @@ public @interface Limiter {
     /** QPS */
     double qps() default RateLimiterUtil.DEFAULT_QPS;
 
+    /** 突发令牌数 小于等于0 为 1 秒的令牌 */
+    double burst() default 0d;
+
     /** 提醒方式 */
     AlertType alertType() default AlertType.JSON;
 
+    /** 令牌获取方式 */
+    AcquireMode acquireMode() default AcquireMode.REJECT;
+
+    /** 等待时长 毫秒 (WAIT / DEADLINE 生效) */
+    long timeout() default RateLimiterUtil.DEFAULT_WAIT;
+
+    /** 限流算法 */
+    AlgorithmType algorithm() default AlgorithmType.TOKEN_BUCKET;
+
+    /** 窗口时长 毫秒 (窗口算法生效, 窗口内许可数 = qps * 窗口秒数) */
+    long window() default RateLimiterUtil.DEFAULT_WINDOW;
+
+    /** 时钟 CACHED 每毫秒更新一次, 省去每次判定读取系统时间 (令牌补充最多晚 1 毫秒) */
+    ClockType clock() default ClockType.PRECISE;
+
+    /**
+     * 限流 Key SpEL 表达式 每个元素一个维度, 为空按 IP 限流
+     * 根对象: request 请求, ip 客户端地址, args 方法参数; 方法参数也可以用 #参数名 / #p0
+     * 如 {"request.getHeader('X-Tenant-Id')", "#userId"} 每个租户下的每个用户一个限流器
+     */
+    String[] key() default {};
+
+    /**
+     * 每次请求消耗的令牌数 (请求代价), 多个令牌一次性获取 拿不全不扣减
+     * 超过桶容量 (突发令牌数 / 窗口内许可数) 的请求只能等待 (WAIT) 或被拒绝
+     */
+    int permits() default 1;
+
+    /**
+     * 令牌数 SpEL 表达式 不为空时代替 permits, 根对象与 key 相同
+     * 结果为数字取整, 集合 / 数组 取元素个数, 如 "#ids" 按批量参数的大小消耗令牌
+     */
+    String cost() default "";
+
+    /**
+     * 最大并发 (同时执行的请求数) 小于等于0 不限制, 与 QPS 同时生效
+     * 方法结束 (异步方法为返回的 Future 完成) 时归还
+     */
+    int maxConcurrent() default 0;
+
+    /**
+     * 并发已满时的最大排队数 按 FIFO 等待, 最长等待 timeout; 小于等于0 直接拒绝
+     * 异步方法不排队
+     */
+    int maxQueue() default 0;
+
 }
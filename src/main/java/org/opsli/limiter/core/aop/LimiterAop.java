@@ -17,31 +17,51 @@ package org.opsli.limiter.core.aop;
 
 
 import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.opsli.limiter.core.annotation.Limiter;
 import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.exception.LimiterException;
 import org.opsli.limiter.core.exception.ServiceException;
-import org.opsli.limiter.core.msg.CommonMsg;
+import org.opsli.limiter.core.filter.LimiterFilter;
+import org.opsli.limiter.core.index.LimiterQuota;
+import org.opsli.limiter.core.index.LimiterSlot;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.opsli.limiter.core.policy.LimiterPolicyRegistry;
 import org.opsli.limiter.core.util.OutputStreamUtil;
 import org.opsli.limiter.core.util.RateLimiterUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 
 /**
  * 限流器
  *
+ * 同步方法: @Around 中阻塞判断, 方法结束后归还并发许可
+ * 异步方法 (返回 CompletableFuture / DeferredResult): @Around 中异步准入,
+ * 需要等待令牌时直接返回 Future 释放请求线程, 拿到令牌后在执行器 (opsli.limiter.async.executor, 默认与
+ * Spring MVC 异步请求共用 applicationTaskExecutor) 中调用原方法, 返回的 Future 完成后归还并发许可;
+ * 此时原请求线程的请求上下文已结束, 按原请求 (异步处理中仍有效) 重新建立上下文
+ * 并发 (全局、maxConcurrent) 在通过 QPS 限流之后检查, 异步方法不排队
+ * 放行、拒绝都按限流桶状态输出 X-RateLimit-* / Retry-After 响应头
+ *
  * @author 周鹏程
  * @date 2020-09-16
  */
@@ -51,43 +71,161 @@ public class LimiterAop {
 
     private static final Logger log = LoggerFactory.getLogger(LimiterAop.class);
 
+    /** 默认执行器 Spring Boot 的 applicationTaskExecutor (Spring MVC 异步请求也使用它) */
+    public static final String DEFAULT_EXECUTOR = "applicationTaskExecutor";
+
+    private final BeanFactory beanFactory;
+
+    private final String executorName;
+
+    /** 等待令牌后调用原方法的执行器 第一次使用时按名称获取 */
+    private volatile Executor executor;
+
+    @Autowired
+    public LimiterAop(BeanFactory beanFactory,
+                      @Value("${opsli.limiter.async.executor:" + DEFAULT_EXECUTOR + "}") String executorName) {
+        this.beanFactory = beanFactory;
+        this.executorName = executorName;
+    }
+
+    /**
+     * @param executor 等待令牌后调用原方法的执行器
+     */
+    public LimiterAop(Executor executor) {
+        this.beanFactory = null;
+        this.executorName = null;
+        this.executor = executor;
+    }
+
     @Pointcut("@annotation(org.opsli.limiter.core.annotation.Limiter)")
     public void requestMapping() {
     }
 
+    @Pointcut("execution(java.util.concurrent.CompletionStage+ *(..)) " +
+            "|| execution(org.springframework.web.context.request.async.DeferredResult+ *(..))")
+    public void asyncReturn() {
+    }
+
     /**
      * 限流
      * @param point
      */
-    @Before("requestMapping()")
-    public void limiterHandle(JoinPoint point){
+    @Around("requestMapping() && !asyncReturn()")
+    public Object limiterHandle(ProceedingJoinPoint point) throws Throwable {
+        LimiterPolicy policy = admit(point);
+        if(policy == null){
+            return point.proceed();
+        }
+        try {
+            return point.proceed();
+        }finally {
+            RateLimiterUtil.exitConcurrent(policy);
+        }
+    }
+
+    /**
+     * 异步限流
+     * @param point
+     */
+    @Around("requestMapping() && asyncReturn()")
+    public Object asyncLimiterHandle(ProceedingJoinPoint point) throws Throwable {
+        RequestAttributes ra = RequestContextHolder.getRequestAttributes();
+        ServletRequestAttributes sra = (ServletRequestAttributes) ra;
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        LimiterPolicy policy = LimiterPolicyRegistry.get(method);
+        if(sra == null || policy == null){
+            return point.proceed();
+        }
+
+        Class<?> returnType = method.getReturnType();
+        boolean deferred = DeferredResult.class == returnType;
+        if(!deferred && !returnType.isAssignableFrom(CompletableFuture.class)){
+            // 无法包装的返回类型 按同步方式处理
+            return limiterHandle(point);
+        }
+
+        HttpServletRequest request = sra.getRequest();
+        CompletableFuture<Boolean> admission = RateLimiterUtil.enterAsync(request, policy, point.getArgs());
+        HttpServletResponse response = sra.getResponse();
+        LimiterQuota quota = RateLimiterUtil.quota();
+
+        // 已经有结果 直接在当前线程处理
+        if(admission.isDone()){
+            rateLimitHeaders(quota, response);
+            if(!admission.join() || !RateLimiterUtil.enterConcurrent(request, policy, false)){
+                throw new LimiterException(policy.getAlertType());
+            }
+            return proceedConcurrent(point, policy);
+        }
+
+        // 等待令牌 释放请求线程, 拿到结果后按当时的桶状态输出响应头
+        LimiterSlot slot = quota != null ? quota.getSlot() : null;
+        if(slot != null){
+            admission = admission.whenComplete((enterFlag, ex) -> {
+                LimiterQuota current = new LimiterQuota();
+                if(RateLimiterUtil.query(slot, current)){
+                    rateLimitHeaders(current, response);
+                }
+            });
+        }
+        Executor executor = executor();
+        if(deferred){
+            DeferredResult<Object> deferredResult = new DeferredResult<>();
+            admission.whenCompleteAsync((enterFlag, ex) -> {
+                if(!Boolean.TRUE.equals(enterFlag) || !RateLimiterUtil.enterConcurrent(request, policy, false)){
+                    deferredResult.setErrorResult(new LimiterException(policy.getAlertType()));
+                    return;
+                }
+                proceed(point, request, response).whenComplete((ret, e) -> {
+                    if(e != null){
+                        RateLimiterUtil.exitConcurrent(policy);
+                        deferredResult.setErrorResult(e);
+                    }else if(ret instanceof DeferredResult){
+                        ((DeferredResult<?>) ret).setResultHandler(result -> {
+                            RateLimiterUtil.exitConcurrent(policy);
+                            deferredResult.setResult(result);
+                        });
+                    }else {
+                        RateLimiterUtil.exitConcurrent(policy);
+                        deferredResult.setResult(ret);
+                    }
+                });
+            }, executor);
+            return deferredResult;
+        }
+        return admission.thenComposeAsync(enterFlag -> {
+            if(!enterFlag || !RateLimiterUtil.enterConcurrent(request, policy, false)){
+                CompletableFuture<Object> future = new CompletableFuture<>();
+                future.completeExceptionally(new LimiterException(policy.getAlertType()));
+                return future;
+            }
+            return proceed(point, request, response).thenCompose(LimiterAop::toStage)
+                    .whenComplete((ret, e) -> RateLimiterUtil.exitConcurrent(policy));
+        }, executor);
+    }
+
+    /**
+     * QPS + 并发准入
+     * @param point
+     * @return 需要在方法结束时归还并发许可的策略, 未限流或已由过滤器限流返回 null
+     */
+    private LimiterPolicy admit(JoinPoint point){
         try {
             RequestAttributes ra = RequestContextHolder.getRequestAttributes();
             ServletRequestAttributes sra = (ServletRequestAttributes) ra;
-            MethodSignature signature = (MethodSignature) point.getSignature();
-            Method method = signature.getMethod();
             if(sra != null) {
                 HttpServletRequest request = sra.getRequest();
-                HttpServletResponse response = sra.getResponse();
-                Limiter limiter = method.getAnnotation(Limiter.class);
-                if(limiter != null){
-                    AlertType alertType = limiter.alertType();
-                    double qps = limiter.qps();
-
+                LimiterPolicy policy = LimiterPolicyRegistry.get(
+                        ((MethodSignature) point.getSignature()).getMethod());
+                // 已经由过滤器限流
+                if(policy != null && request.getAttribute(LimiterFilter.APPLIED_ATTRIBUTE) == null){
                     // 限流
-                    boolean enterFlag = RateLimiterUtil.enter(request, qps);
-                    if(!enterFlag){
-                        // alert 弹出
-                        if(AlertType.ALERT == alertType){
-                            OutputStreamUtil.exceptionResponse(
-                                    CommonMsg.OTHER_EXCEPTION_LIMITER.getMessage(),
-                                    response
-                            );
-                        }else {
-                            // 异常返回
-                            throw new ServiceException(CommonMsg.OTHER_EXCEPTION_LIMITER);
-                        }
+                    boolean enterFlag = RateLimiterUtil.enter(request, policy, point.getArgs());
+                    rateLimitHeaders(RateLimiterUtil.quota(), sra.getResponse());
+                    if(!enterFlag || !RateLimiterUtil.enterConcurrent(request, policy, true)){
+                        reject(policy.getAlertType());
                     }
+                    return policy;
                 }
             }
         }catch (ServiceException e){
@@ -95,6 +233,106 @@ public class LimiterAop {
         }catch (Exception e){
             log.error(e.getMessage(),e);
         }
+        return null;
+    }
+
+    /**
+     * 在当前线程调用原方法 返回的 Future / DeferredResult 完成后归还并发许可
+     * @param point
+     * @param policy 限流策略
+     * @return 原方法返回值 (需要归还时包装)
+     */
+    private static Object proceedConcurrent(ProceedingJoinPoint point, LimiterPolicy policy) throws Throwable {
+        if(policy.getBulkhead() == null && RateLimiterUtil.getBulkhead() == null){
+            return point.proceed();
+        }
+        Object ret;
+        try {
+            ret = point.proceed();
+        }catch (Throwable e){
+            RateLimiterUtil.exitConcurrent(policy);
+            throw e;
+        }
+        if(ret instanceof CompletionStage){
+            return ((CompletionStage<?>) ret).whenComplete((r, e) -> RateLimiterUtil.exitConcurrent(policy));
+        }
+        if(ret instanceof DeferredResult){
+            DeferredResult<Object> deferredResult = new DeferredResult<>();
+            ((DeferredResult<?>) ret).setResultHandler(result -> {
+                RateLimiterUtil.exitConcurrent(policy);
+                deferredResult.setResult(result);
+            });
+            return deferredResult;
+        }
+        RateLimiterUtil.exitConcurrent(policy);
+        return ret;
+    }
+
+    /**
+     * 拒绝 中断原方法, 由 GlobalExceptionHandler 按提醒方式写出响应
+     * @param alertType 提醒方式
+     */
+    private static void reject(AlertType alertType) {
+        throw new LimiterException(alertType);
+    }
+
+    /**
+     * 限流响应头
+     * @param quota 配额 为 null 不输出
+     * @param response 为 null 不输出
+     */
+    private static void rateLimitHeaders(LimiterQuota quota, HttpServletResponse response) {
+        if (quota != null && response != null) {
+            OutputStreamUtil.rateLimitHeaders(quota, response);
+        }
+    }
+
+    /**
+     * 原方法返回值转为 CompletionStage
+     * @param ret 返回值
+     * @return CompletionStage
+     */
+    @SuppressWarnings("unchecked")
+    private static CompletionStage<Object> toStage(Object ret) {
+        return ret == null
+                ? CompletableFuture.completedFuture(null)
+                : (CompletionStage<Object>) ret;
+    }
+
+    /**
+     * 等待令牌后调用原方法的执行器
+     * @return Executor
+     */
+    private Executor executor() {
+        Executor current = executor;
+        if (current == null) {
+            current = beanFactory.getBean(executorName, Executor.class);
+            executor = current;
+        }
+        return current;
+    }
+
+    /**
+     * 在其他线程调用原方法
+     * 原请求线程结束时已调用 requestCompleted, 不能复用原来的上下文 (请求作用域不可用);
+     * 异步处理中请求本身仍有效, 与 Spring MVC 的 Callable 一样按请求新建上下文
+     * @param point
+     * @param request 请求
+     * @param response 响应
+     * @return CompletableFuture
+     */
+    private static CompletableFuture<Object> proceed(ProceedingJoinPoint point, HttpServletRequest request,
+                                                     HttpServletResponse response) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        try {
+            return CompletableFuture.completedFuture(point.proceed());
+        }catch (Throwable e){
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
     }
 
 }
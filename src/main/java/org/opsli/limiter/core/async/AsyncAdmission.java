@@ -0,0 +1,137 @@
+package org.opsli.limiter.core.async;
+
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.enums.AcquireMode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.async
+ * @Author: Parker
+ * @CreateTime: 2021-01-11 11:05
+ * @Description: 异步准入
+ *
+ * 拿不到令牌时不阻塞线程, 而是在时间轮上挂一个节点, 到点后完成 Future
+ * 多个令牌一次性获取, 拿不全时不扣减
+ * 每个等待中的请求只占用 一个 Future + 一个时间轮节点 (百字节级别)
+ *
+ * REJECT   立即完成
+ * WAIT     预定令牌, 到预定时间点完成 true
+ * DEADLINE 不预定, 按下一个令牌的时间点重试, 超过截止时间完成 false
+ */
+public final class AsyncAdmission extends CompletableFuture<Boolean> implements Runnable {
+
+    private final LimiterBucket bucket;
+    private final int permits;
+    /** 令牌是否已预定 */
+    private final boolean reserved;
+    private final long deadlineNanos;
+    private final TimerWheel timerWheel;
+
+    private AsyncAdmission(LimiterBucket bucket, int permits, boolean reserved, long deadlineNanos,
+                           TimerWheel timerWheel) {
+        this.bucket = bucket;
+        this.permits = permits;
+        this.reserved = reserved;
+        this.deadlineNanos = deadlineNanos;
+        this.timerWheel = timerWheel;
+    }
+
+    /**
+     * 异步获取一个令牌
+     * @param bucket 限流桶
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return CompletableFuture<Boolean>
+     */
+    public static CompletableFuture<Boolean> acquire(LimiterBucket bucket, AcquireMode acquireMode, long timeout) {
+        return acquire(bucket, 1, acquireMode, timeout, TimerWheel.getInstance());
+    }
+
+    /**
+     * 异步获取多个令牌
+     * @param bucket 限流桶
+     * @param permits 令牌数
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return CompletableFuture<Boolean>
+     */
+    public static CompletableFuture<Boolean> acquire(LimiterBucket bucket, int permits,
+                                                     AcquireMode acquireMode, long timeout) {
+        return acquire(bucket, permits, acquireMode, timeout, TimerWheel.getInstance());
+    }
+
+    /**
+     * 异步获取一个令牌
+     * @param bucket 限流桶
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @param timerWheel 时间轮
+     * @return CompletableFuture<Boolean>
+     */
+    public static CompletableFuture<Boolean> acquire(LimiterBucket bucket, AcquireMode acquireMode,
+                                                     long timeout, TimerWheel timerWheel) {
+        return acquire(bucket, 1, acquireMode, timeout, timerWheel);
+    }
+
+    /**
+     * 异步获取多个令牌
+     * @param bucket 限流桶
+     * @param permits 令牌数
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @param timerWheel 时间轮
+     * @return CompletableFuture<Boolean>
+     */
+    public static CompletableFuture<Boolean> acquire(LimiterBucket bucket, int permits, AcquireMode acquireMode,
+                                                     long timeout, TimerWheel timerWheel) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Requested permits (" + permits + ") must be positive");
+        }
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeout));
+        if (acquireMode == AcquireMode.WAIT) {
+            long waitNanos = bucket.reserve(permits, timeoutNanos);
+            if (waitNanos <= 0) {
+                return CompletableFuture.completedFuture(waitNanos == 0);
+            }
+            AsyncAdmission admission = new AsyncAdmission(bucket, permits, true, 0L, timerWheel);
+            timerWheel.schedule(admission, waitNanos);
+            return admission;
+        }
+        if (acquireMode == AcquireMode.DEADLINE) {
+            AsyncAdmission admission = new AsyncAdmission(bucket, permits, false,
+                    System.nanoTime() + timeoutNanos, timerWheel);
+            admission.run();
+            return admission;
+        }
+        return CompletableFuture.completedFuture(tryAcquire(bucket, permits));
+    }
+
+    /**
+     * 时间轮回调
+     */
+    @Override
+    public void run() {
+        // 令牌已预定 到点直接放行
+        if (reserved || tryAcquire(bucket, permits)) {
+            complete(Boolean.TRUE);
+            return;
+        }
+        long now = System.nanoTime();
+        long waitNanos = bucket.queryWaitNanos(permits);
+        if (now + waitNanos - deadlineNanos > 0) {
+            complete(Boolean.FALSE);
+            return;
+        }
+        timerWheel.schedule(this, waitNanos);
+    }
+
+    // ==============
+
+    private static boolean tryAcquire(LimiterBucket bucket, int permits) {
+        return permits == 1 ? bucket.tryAcquire() : bucket.reserve(permits, 0L) >= 0;
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.opsli.limiter.core.async;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.async
+ * @Author: Parker
+ * @CreateTime: 2021-01-11 10:20
+ * @Description: 时间轮
+ *
+ * 单个后台线程按 tick 推进, 等待中的任务只是链表上的一个节点, 不占用线程
+ * 新任务先压入无锁栈, 由后台线程在每个 tick 转移到对应的槽位
+ * 任务在后台线程执行, 必须足够轻量 (只做 complete / 重新调度)
+ */
+public final class TimerWheel {
+
+    /** 默认 tick 1毫秒 */
+    private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /** 默认槽位数 */
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    private static final TimerWheel INSTANCE = new TimerWheel(DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+
+    private final long tickNanos;
+    private final int mask;
+    private final Timeout[] wheel;
+    /** 待转移的任务 */
+    private final AtomicReference<Timeout> pending = new AtomicReference<>();
+
+    private volatile Thread worker;
+
+    public TimerWheel(long tickNanos, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of 2");
+        }
+        this.tickNanos = tickNanos;
+        this.mask = wheelSize - 1;
+        this.wheel = new Timeout[wheelSize];
+    }
+
+    /**
+     * 默认时间轮
+     * @return TimerWheel
+     */
+    public static TimerWheel getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 延迟执行
+     * @param task 任务
+     * @param delayNanos 延迟 纳秒
+     */
+    public void schedule(Runnable task, long delayNanos) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0L, delayNanos));
+        Timeout head;
+        do {
+            head = pending.get();
+            timeout.next = head;
+        } while (!pending.compareAndSet(head, timeout));
+        if (worker == null) {
+            start();
+        }
+    }
+
+    // ==============
+
+    private synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "limiter-timer");
+        thread.setDaemon(true);
+        thread.start();
+        worker = thread;
+    }
+
+    private void run() {
+        long startTime = System.nanoTime();
+        long tick = 0;
+        for (;;) {
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+            transferPending(startTime, tick);
+            expire((int) (tick & mask), System.nanoTime());
+            tick++;
+        }
+    }
+
+    /**
+     * 待转移任务放入对应槽位
+     */
+    private void transferPending(long startTime, long tick) {
+        Timeout timeout = pending.getAndSet(null);
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            // 已经过期的放入当前槽位
+            long ticks = Math.max(tick, (timeout.deadline - startTime) / tickNanos);
+            int index = (int) (ticks & mask);
+            timeout.next = wheel[index];
+            wheel[index] = timeout;
+            timeout = next;
+        }
+    }
+
+    /**
+     * 执行当前槽位中已到期的任务 未到期(下一圈)的保留
+     */
+    private void expire(int index, long now) {
+        Timeout timeout = wheel[index];
+        Timeout keep = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadline - now <= 0) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable ignored) {
+                    // 任务异常不能影响时间轮
+                }
+            } else {
+                timeout.next = keep;
+                keep = timeout;
+            }
+            timeout = next;
+        }
+        wheel[index] = keep;
+    }
+
+    /**
+     * 时间轮节点
+     */
+    private static final class Timeout {
+
+        private final Runnable task;
+        private final long deadline;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.opsli.limiter.core.bucket;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+import org.opsli.limiter.core.enums.BucketType;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-08 11:02
+ * @Description: 限流桶工厂
+ */
+public final class BucketFactory {
+
+    /**
+     * 创建限流桶
+     * @param type 桶类型
+     * @param qps QPS
+     * @return LimiterBucket
+     */
+    public static LimiterBucket create(BucketType type, double qps) {
+        return create(type, qps, 0d);
+    }
+
+    /**
+     * 创建限流桶
+     * @param type 桶类型
+     * @param qps QPS
+     * @param burst 突发令牌数 小于等于0 为 1 秒的令牌 (Guava 不支持, 固定 1 秒)
+     * @return LimiterBucket
+     */
+    public static LimiterBucket create(BucketType type, double qps, double burst) {
+        return create(type, qps, burst, LimiterClock.PRECISE);
+    }
+
+    /**
+     * 创建限流桶
+     * @param type 桶类型
+     * @param qps QPS
+     * @param burst 突发令牌数 小于等于0 为 1 秒的令牌 (Guava 不支持, 固定 1 秒)
+     * @param clock 时钟 (Guava 内部使用自己的 Stopwatch, 不支持)
+     * @return LimiterBucket
+     */
+    public static LimiterBucket create(BucketType type, double qps, double burst, LimiterClock clock) {
+        if (type == BucketType.GUAVA) {
+            return new GuavaBucket(qps);
+        }
+        return new TokenBucket(qps, burst, clock);
+    }
+
+    // ==========================
+
+    private BucketFactory(){}
+
+}
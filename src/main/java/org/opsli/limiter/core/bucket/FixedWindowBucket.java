@@ -0,0 +1,86 @@
+package org.opsli.limiter.core.bucket;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 09:50
+ * @Description: 固定窗口计数
+ *
+ * 状态打包在一个 long 中: 高 32 位为窗口编号, 低 32 位为窗口内已用许可数
+ * 进入新窗口时计数归零, 获取许可只有一次 CAS, 不加锁、不分配对象
+ *
+ * 窗口边界两侧可能各放行一次满额 (最坏 2N), 需要平滑时使用滑动窗口
+ */
+public class FixedWindowBucket extends WindowBucket {
+
+    private static final AtomicLongFieldUpdater<FixedWindowBucket> STATE =
+            AtomicLongFieldUpdater.newUpdater(FixedWindowBucket.class, "state");
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    /** 窗口编号 + 已用许可数 */
+    private volatile long state;
+
+    public FixedWindowBucket(double qps, long windowNanos) {
+        this(qps, windowNanos, LimiterClock.PRECISE);
+    }
+
+    public FixedWindowBucket(double qps, long windowNanos, LimiterClock clock) {
+        super(qps, windowNanos, clock);
+    }
+
+    @Override
+    protected boolean acquire(int permits, long now) {
+        // 计数只有 32 位
+        long max = Math.min(limit, Integer.MAX_VALUE);
+        int window = (int) windowOf(now);
+        for (;;) {
+            long s = state;
+            long count = (int) (s >>> 32) == window ? s & COUNT_MASK : 0L;
+            if (count + permits > max) {
+                return false;
+            }
+            long next = ((long) window << 32) | (count + permits);
+            if (STATE.compareAndSet(this, s, next)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    protected long waitNanos(int permits, long now) {
+        long max = Math.min(limit, Integer.MAX_VALUE);
+        long window = windowOf(now);
+        long s = state;
+        long count = (int) (s >>> 32) == (int) window ? s & COUNT_MASK : 0L;
+        if (count + permits <= max) {
+            return 0L;
+        }
+        // 下一个窗口开始
+        return origin + (window + 1) * windowNanos - now;
+    }
+
+    @Override
+    protected long available(long now) {
+        long max = Math.min(limit, Integer.MAX_VALUE);
+        long s = state;
+        long count = (int) (s >>> 32) == (int) windowOf(now) ? s & COUNT_MASK : 0L;
+        return Math.max(0L, max - count);
+    }
+
+    @Override
+    protected long resetNanos(long now) {
+        long window = windowOf(now);
+        long s = state;
+        if ((int) (s >>> 32) != (int) window || (s & COUNT_MASK) == 0L) {
+            return 0L;
+        }
+        return origin + (window + 1) * windowNanos - now;
+    }
+
+}
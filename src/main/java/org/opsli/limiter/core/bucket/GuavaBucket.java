@@ -0,0 +1,70 @@
+package org.opsli.limiter.core.bucket;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-08 10:45
+ * @Description: Guava 令牌桶
+ *
+ * 兼容旧版实现 SmoothBursty 内部每次获取都会加锁
+ */
+public class GuavaBucket implements LimiterBucket {
+
+    /** 限流器 */
+    private final RateLimiter rateLimiter;
+
+    public GuavaBucket(double qps) {
+        this.rateLimiter = RateLimiter.create(qps);
+    }
+
+    @Override
+    public double getRate() {
+        return rateLimiter.getRate();
+    }
+
+    @Override
+    public void setRate(double qps) {
+        rateLimiter.setRate(qps);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return rateLimiter.tryAcquire();
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        return rateLimiter.tryAcquire(permits, timeout, unit);
+    }
+
+    /**
+     * Guava 不支持不预定的等待, 退化为限时等待
+     */
+    @Override
+    public boolean tryAcquireUntil(int permits, long deadlineNanos) {
+        long remaining = deadlineNanos - System.nanoTime();
+        return rateLimiter.tryAcquire(permits, Math.max(0L, remaining), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Guava 无法在不阻塞的情况下预定未来的令牌, 只能立即获取
+     */
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        return rateLimiter.tryAcquire(permits) ? 0L : -1L;
+    }
+
+    /**
+     * Guava 不暴露内部状态, 按令牌间隔估算
+     */
+    @Override
+    public long queryWaitNanos(int permits) {
+        return (long) (TimeUnit.SECONDS.toNanos(1) * permits / rateLimiter.getRate());
+    }
+
+}
@@ -0,0 +1,232 @@
+package org.opsli.limiter.core.bucket;
+
+import org.opsli.limiter.core.store.LimiterStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-16 11:00
+ * @Description: 租用令牌桶
+ *
+ * 从共享存储按批次租用令牌, 在本地用一次 CAS 消费, 批次用完才访问一次共享存储
+ * 租约有效期 1 秒, 过期未用完的令牌直接丢弃 (宁少放不多放)
+ * 共享存储没有令牌时, 在下一个令牌产生前本地直接拒绝, 拒绝路径不走网络
+ * 共享存储不可用时, 1 秒内退化为本地令牌桶 (单机限流)
+ *
+ * 批次越大访问共享存储越少, 但各节点手里未用完的令牌越多, 限流越不精确
+ */
+public class LeasedBucket implements LimiterBucket {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeasedBucket.class);
+
+    /** 租约有效期 */
+    private static final long LEASE_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** 共享存储不可用时 退化为本地限流的时长 */
+    private static final long FALLBACK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AtomicLongFieldUpdater<LeasedBucket> TOKENS =
+            AtomicLongFieldUpdater.newUpdater(LeasedBucket.class, "tokens");
+
+    /** 共享存储 */
+    private final LimiterStore store;
+
+    /** 共享存储中的 Key */
+    private final String key;
+
+    /** 突发令牌数 小于等于0 为 1 秒的令牌 */
+    private final double burst;
+
+    /** 每批租用的令牌数 */
+    private final int leaseSize;
+
+    /** QPS */
+    private volatile double qps;
+
+    /** 本地剩余令牌 */
+    private volatile long tokens;
+
+    /** 租约到期时间 纳秒 */
+    private volatile long leaseExpire;
+
+    /** 共享存储无令牌 在此之前不再租用 */
+    private volatile long emptyUntil;
+
+    /** 退化用本地令牌桶 */
+    private TokenBucket fallback;
+
+    /** 退化截止时间 */
+    private long fallbackUntil;
+
+    public LeasedBucket(LimiterStore store, String key, double qps, double burst, int leaseSize) {
+        if (qps <= 0.0 || Double.isNaN(qps)) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.store = store;
+        this.key = key;
+        this.qps = qps;
+        this.burst = burst;
+        this.leaseSize = Math.max(1, leaseSize);
+        long now = System.nanoTime();
+        this.leaseExpire = now;
+        this.emptyUntil = now;
+    }
+
+    @Override
+    public double getRate() {
+        return qps;
+    }
+
+    @Override
+    public void setRate(double qps) {
+        if (qps <= 0.0 || Double.isNaN(qps)) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.qps = qps;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return acquire(1);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        return tryAcquireUntil(permits, System.nanoTime() + Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    @Override
+    public boolean tryAcquireUntil(int permits, long deadlineNanos) {
+        for (;;) {
+            if (acquire(permits)) {
+                return true;
+            }
+            long now = System.nanoTime();
+            long waitNanos = queryWaitNanos(permits);
+            if (now + waitNanos - deadlineNanos > 0) {
+                return false;
+            }
+            TokenBucket.sleepUninterruptibly(waitNanos);
+        }
+    }
+
+    /**
+     * 共享令牌不能预定 只能立即获取
+     */
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        return acquire(permits) ? 0L : -1L;
+    }
+
+    /**
+     * 不访问共享存储 按令牌间隔估算
+     */
+    @Override
+    public long queryWaitNanos(int permits) {
+        long now = System.nanoTime();
+        if (tokens >= permits && now - leaseExpire < 0) {
+            return 0L;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / qps);
+        return Math.max(emptyUntil - now, interval * permits);
+    }
+
+    @Override
+    public long getCapacity() {
+        return Math.max(1L, (long) Math.ceil(burst <= 0.0 ? qps : burst));
+    }
+
+    /**
+     * 只统计本地租到的令牌 不访问共享存储
+     * 本地用完但共享存储可能还有时 按 1 个计
+     */
+    @Override
+    public long availablePermits() {
+        long now = System.nanoTime();
+        long t = tokens;
+        if (t > 0 && now - leaseExpire < 0) {
+            return t;
+        }
+        return now - emptyUntil < 0 ? 0L : 1L;
+    }
+
+    // ==============
+
+    private boolean acquire(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Requested permits (" + permits + ") must be positive");
+        }
+        if (take(permits)) {
+            return true;
+        }
+        // 共享存储暂无令牌 本地直接拒绝
+        if (System.nanoTime() - emptyUntil < 0) {
+            return false;
+        }
+        return refill(permits);
+    }
+
+    /**
+     * 消费本地令牌
+     */
+    private boolean take(int permits) {
+        for (;;) {
+            long t = tokens;
+            if (t < permits || System.nanoTime() - leaseExpire >= 0) {
+                return false;
+            }
+            if (TOKENS.compareAndSet(this, t, t - permits)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 租用一批令牌 同一个 Key 同时只有一个线程访问共享存储
+     */
+    private synchronized boolean refill(int permits) {
+        // 等锁期间其他线程已经租到
+        if (take(permits)) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - emptyUntil < 0) {
+            return false;
+        }
+        if (fallback != null && now - fallbackUntil < 0) {
+            return fallback.reserve(permits, 0L) >= 0;
+        }
+
+        long granted;
+        try {
+            granted = store.lease(key, qps, burst <= 0.0 ? qps : burst, Math.max(leaseSize, permits));
+        } catch (RuntimeException e) {
+            logger.warn("限流器 - 共享存储不可用, 临时使用单机限流 Key: " + key, e);
+            if (fallback == null) {
+                fallback = new TokenBucket(qps, burst);
+            }
+            fallbackUntil = now + FALLBACK_NANOS;
+            return fallback.reserve(permits, 0L) >= 0;
+        }
+
+        now = System.nanoTime();
+        if (granted <= 0) {
+            // 下一个令牌产生之前不再访问共享存储
+            emptyUntil = now + (long) (TimeUnit.SECONDS.toNanos(1) / qps);
+            return false;
+        }
+        // 过期租约的剩余令牌作废
+        if (now - leaseExpire >= 0) {
+            TOKENS.set(this, 0L);
+        }
+        leaseExpire = now + LEASE_TTL_NANOS;
+        TOKENS.addAndGet(this, granted);
+        return take(permits);
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.opsli.limiter.core.bucket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-08 10:12
+ * @Description: 限流桶
+ *
+ * 单个 Key (IP + URI) 对应的限流状态, 实现必须线程安全
+ */
+public interface LimiterBucket {
+
+    /**
+     * 获得当前 QPS
+     * @return double
+     */
+    double getRate();
+
+    /**
+     * 调整 QPS
+     * @param qps QPS
+     */
+    void setRate(double qps);
+
+    /**
+     * 尝试获取一个令牌 (非阻塞)
+     * @return boolean
+     */
+    boolean tryAcquire();
+
+    /**
+     * 尝试获取令牌 最多等待 timeout
+     * @param permits 令牌数
+     * @param timeout 最长等待时长
+     * @param unit 时间单位
+     * @return boolean
+     */
+    boolean tryAcquire(int permits, long timeout, TimeUnit unit);
+
+    /**
+     * 尝试获取令牌 不预定, 截止时间前拿不到则放弃
+     * @param permits 令牌数
+     * @param deadlineNanos 截止时间 (System.nanoTime)
+     * @return boolean
+     */
+    boolean tryAcquireUntil(int permits, long deadlineNanos);
+
+    /**
+     * 预定令牌 不等待, 由调用方自行安排等待
+     * @param permits 令牌数
+     * @param maxWaitNanos 最长可接受的等待
+     * @return 需要等待的纳秒数, -1 为拒绝
+     */
+    long reserve(int permits, long maxWaitNanos);
+
+    /**
+     * 距离可获取 permits 个令牌的纳秒数 不预定
+     * @param permits 令牌数
+     * @return long
+     */
+    long queryWaitNanos(int permits);
+
+    /**
+     * 归还已获取的令牌 多层限流中后面的层拒绝时回滚前面的层
+     * 默认不归还 (只会更严格)
+     * @param permits 令牌数
+     */
+    default void release(int permits) {
+    }
+
+    /**
+     * 令牌上限 (突发令牌数 / 窗口内许可数)
+     * @return long
+     */
+    default long getCapacity() {
+        return Math.max(1L, (long) Math.ceil(getRate()));
+    }
+
+    /**
+     * 当前可立即获取的令牌数 不预定
+     * 不暴露内部状态的实现只区分 有 / 无
+     * @return long
+     */
+    default long availablePermits() {
+        return queryWaitNanos(1) == 0L ? 1L : 0L;
+    }
+
+    /**
+     * 距离令牌补满 (窗口重置) 的纳秒数 不预定
+     * @return long
+     */
+    default long queryResetNanos() {
+        return queryWaitNanos(1);
+    }
+
+}
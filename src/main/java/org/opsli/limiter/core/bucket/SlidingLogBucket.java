@@ -0,0 +1,126 @@
+package org.opsli.limiter.core.bucket;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 10:10
+ * @Description: 滑动日志
+ *
+ * 记录最近 N 次放行的时间戳 (long[] 环形数组), 任意长度为窗口的区间内都不超过 N 次, 最精确
+ * 代价是每个 Key 占用 8 * N 字节, 只适合窗口内许可数较小的场景 (上限 MAX_LOG_SIZE)
+ *
+ * 单个 Key 的竞争通常很小, 使用对象锁保护环形数组, 获取过程不分配对象
+ */
+public class SlidingLogBucket extends WindowBucket {
+
+    /** 日志最大长度 */
+    public static final int MAX_LOG_SIZE = 1 << 16;
+
+    /** 放行时间戳 环形数组 */
+    private long[] log;
+
+    /** 最早一条日志的位置 */
+    private int head;
+
+    /** 日志条数 */
+    private int size;
+
+    public SlidingLogBucket(double qps, long windowNanos) {
+        this(qps, windowNanos, LimiterClock.PRECISE);
+    }
+
+    public SlidingLogBucket(double qps, long windowNanos, LimiterClock clock) {
+        super(qps, windowNanos, clock);
+        this.log = new long[checkLogSize(limit)];
+    }
+
+    @Override
+    public synchronized void setRate(double qps) {
+        super.setRate(qps);
+        int capacity = checkLogSize(limit);
+        if (capacity == log.length) {
+            return;
+        }
+        // 保留最新的日志
+        long[] newLog = new long[capacity];
+        int keep = Math.min(size, capacity);
+        for (int i = 0; i < keep; i++) {
+            newLog[i] = log[(head + size - keep + i) % log.length];
+        }
+        log = newLog;
+        head = 0;
+        size = keep;
+    }
+
+    @Override
+    protected synchronized boolean acquire(int permits, long now) {
+        long[] ring = log;
+        if (permits > ring.length) {
+            return false;
+        }
+        // 清理窗口外的日志
+        while (size > 0 && now - ring[head] >= windowNanos) {
+            head = (head + 1) % ring.length;
+            size--;
+        }
+        if (size + permits > ring.length) {
+            return false;
+        }
+        for (int i = 0; i < permits; i++) {
+            ring[(head + size) % ring.length] = now;
+            size++;
+        }
+        return true;
+    }
+
+    @Override
+    protected synchronized long waitNanos(int permits, long now) {
+        long[] ring = log;
+        if (permits > ring.length) {
+            return windowNanos;
+        }
+        // 需要有 overflow 条日志滑出窗口
+        int overflow = size + permits - ring.length;
+        if (overflow <= 0) {
+            return 0L;
+        }
+        long expireAt = ring[(head + overflow - 1) % ring.length] + windowNanos;
+        return Math.max(0L, expireAt - now);
+    }
+
+    @Override
+    protected synchronized long available(long now) {
+        long[] ring = log;
+        int expired = 0;
+        while (expired < size && now - ring[(head + expired) % ring.length] >= windowNanos) {
+            expired++;
+        }
+        return ring.length - (size - expired);
+    }
+
+    /**
+     * 最新一条日志滑出窗口的时间
+     */
+    @Override
+    protected synchronized long resetNanos(long now) {
+        if (size == 0) {
+            return 0L;
+        }
+        long[] ring = log;
+        long newest = ring[(head + size - 1) % ring.length];
+        return Math.max(0L, newest + windowNanos - now);
+    }
+
+    // ==============
+
+    private static int checkLogSize(long limit) {
+        if (limit > MAX_LOG_SIZE) {
+            throw new IllegalArgumentException("sliding log limit (" + limit + ") exceeds " + MAX_LOG_SIZE);
+        }
+        return (int) limit;
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.opsli.limiter.core.bucket;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 10:40
+ * @Description: 滑动窗口计数
+ *
+ * 只保存 上一个窗口 / 当前窗口 两个计数, 按当前窗口已过去的比例加权估算滑动窗口内的次数
+ * 估算值 = 上一个窗口计数 * (1 - 已过比例) + 当前窗口计数
+ *
+ * 每个 Key 固定三个 long, 精度接近滑动日志, 内存与固定窗口相当
+ * 使用对象锁保护三个计数, 获取过程不分配对象
+ */
+public class SlidingWindowBucket extends WindowBucket {
+
+    /** 当前窗口编号 */
+    private long window;
+
+    /** 上一个窗口计数 */
+    private long previous;
+
+    /** 当前窗口计数 */
+    private long current;
+
+    public SlidingWindowBucket(double qps, long windowNanos) {
+        this(qps, windowNanos, LimiterClock.PRECISE);
+    }
+
+    public SlidingWindowBucket(double qps, long windowNanos, LimiterClock clock) {
+        super(qps, windowNanos, clock);
+        this.window = windowOf(origin);
+    }
+
+    @Override
+    protected synchronized boolean acquire(int permits, long now) {
+        roll(windowOf(now));
+        long max = limit;
+        if (estimate(now) + permits > max) {
+            return false;
+        }
+        current += permits;
+        return true;
+    }
+
+    @Override
+    protected synchronized long waitNanos(int permits, long now) {
+        long max = limit;
+        if (permits > max) {
+            return windowNanos;
+        }
+        long w = windowOf(now);
+        long prev = w == window ? previous : (w == window + 1 ? current : 0L);
+        long curr = w == window ? current : 0L;
+        long windowStart = origin + w * windowNanos;
+
+        // 当前窗口内 随着上一个窗口的权重下降即可满足
+        long room = max - curr - permits;
+        if (room >= 0) {
+            return Math.max(0L, waitInWindow(prev, room, windowStart) - now);
+        }
+        // 当前窗口已超 等到下一个窗口, 当前计数成为上一个窗口
+        return Math.max(0L, waitInWindow(curr, max - permits, windowStart + windowNanos) - now);
+    }
+
+    @Override
+    protected synchronized long available(long now) {
+        long w = windowOf(now);
+        long prev = w == window ? previous : (w == window + 1 ? current : 0L);
+        long curr = w == window ? current : 0L;
+        double elapsed = (double) (now - origin - w * windowNanos) / windowNanos;
+        return Math.max(0L, (long) (limit - prev * (1d - elapsed) - curr));
+    }
+
+    /**
+     * 当前窗口的计数在下一个窗口结束时完全滑出, 只剩上一个窗口的计数时在当前窗口结束时滑出
+     */
+    @Override
+    protected synchronized long resetNanos(long now) {
+        long w = windowOf(now);
+        long prev = w == window ? previous : (w == window + 1 ? current : 0L);
+        long curr = w == window ? current : 0L;
+        long windowStart = origin + w * windowNanos;
+        if (curr > 0L) {
+            return windowStart + 2 * windowNanos - now;
+        }
+        return prev > 0L ? windowStart + windowNanos - now : 0L;
+    }
+
+    // ==============
+
+    /**
+     * 进入新窗口时滚动计数
+     */
+    private void roll(long w) {
+        if (w == window) {
+            return;
+        }
+        previous = w == window + 1 ? current : 0L;
+        current = 0L;
+        window = w;
+    }
+
+    /**
+     * 滑动窗口内的估算次数
+     */
+    private double estimate(long now) {
+        double elapsed = (double) (now - origin - window * windowNanos) / windowNanos;
+        return previous * (1d - elapsed) + current;
+    }
+
+    /**
+     * 上一个窗口权重降到 prev * (1 - f) <= room 的时间点
+     * @param prev 上一个窗口计数
+     * @param room 可容纳的上一个窗口加权次数
+     * @param windowStart 窗口开始时间
+     * @return 时间点 纳秒
+     */
+    private long waitInWindow(long prev, long room, long windowStart) {
+        if (prev <= room) {
+            return windowStart;
+        }
+        double fraction = 1d - (double) room / prev;
+        return windowStart + (long) Math.ceil(fraction * windowNanos);
+    }
+
+}
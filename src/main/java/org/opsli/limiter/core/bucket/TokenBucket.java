@@ -0,0 +1,247 @@
+package org.opsli.limiter.core.bucket;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-08 10:20
+ * @Description: 无锁令牌桶
+ *
+ * 桶状态打包在一个 long 中: 理论到达时间 TAT (纳秒, GCRA)
+ * 剩余令牌 = (now + 突发容量 - TAT) / 令牌间隔, 令牌数与上次补充时间不再分开存储
+ *
+ * 获取令牌只有一次 CAS, 拒绝时只读不写, 整个过程不加锁、不分配对象
+ * 突发容量默认与 Guava SmoothBursty 保持一致: 1 秒的令牌, 最少 1 个
+ * 当前时间取自 LimiterClock (默认精确时钟), 等待仍按 System.nanoTime 计时
+ */
+public class TokenBucket implements LimiterBucket {
+
+    /** 最大突发时长 1秒 */
+    private static final long MAX_BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AtomicLongFieldUpdater<TokenBucket> STATE =
+            AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "state");
+
+    /** 桶状态 TAT */
+    private volatile long state;
+
+    /** 令牌间隔 纳秒 */
+    private volatile long intervalNanos;
+
+    /** 突发令牌数 小于等于0 为 1 秒的令牌 */
+    private final double maxBurstPermits;
+
+    /** 时钟 */
+    private final LimiterClock clock;
+
+    public TokenBucket(double qps) {
+        this(qps, 0d);
+    }
+
+    public TokenBucket(double qps, double maxBurstPermits) {
+        this(qps, maxBurstPermits, LimiterClock.PRECISE);
+    }
+
+    public TokenBucket(double qps, double maxBurstPermits, LimiterClock clock) {
+        this.intervalNanos = toInterval(qps);
+        this.maxBurstPermits = maxBurstPermits;
+        this.clock = clock;
+        // 初始为满桶
+        this.state = clock.nanoTime();
+    }
+
+    @Override
+    public double getRate() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+    }
+
+    @Override
+    public synchronized void setRate(double qps) {
+        long newInterval = toInterval(qps);
+        long oldInterval = intervalNanos;
+        // 按新速率换算已存令牌, 保持桶内令牌数不变
+        for (;;) {
+            long now = clock.nanoTime();
+            long tat = state;
+            long base = tat - now > 0 ? tat : now;
+            double stored = (double) (now + burst(oldInterval) - base) / oldInterval;
+            long newTat = now + burst(newInterval) - (long) (stored * newInterval);
+            if (STATE.compareAndSet(this, tat, newTat)) {
+                break;
+            }
+        }
+        this.intervalNanos = newInterval;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return reserve(1, 0L) >= 0;
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        long waitNanos = reserve(permits, Math.max(0L, unit.toNanos(timeout)));
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            sleepUninterruptibly(waitNanos);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAcquireUntil(int permits, long deadlineNanos) {
+        for (;;) {
+            if (reserve(permits, 0L) >= 0) {
+                return true;
+            }
+            long waitNanos = waitNanos(permits, clock.nanoTime());
+            // 截止时间按 System.nanoTime 计算
+            if (System.nanoTime() + waitNanos - deadlineNanos > 0) {
+                return false;
+            }
+            sleepUninterruptibly(waitNanos);
+        }
+    }
+
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Requested permits (" + permits + ") must be positive");
+        }
+        for (;;) {
+            long interval = intervalNanos;
+            long now = clock.nanoTime();
+            long tat = state;
+            long base = tat - now > 0 ? tat : now;
+            long newTat = base + interval * permits;
+            long waitNanos = newTat - now - burst(interval);
+            if (waitNanos > maxWaitNanos) {
+                return -1L;
+            }
+            if (STATE.compareAndSet(this, tat, newTat)) {
+                return waitNanos > 0 ? waitNanos : 0L;
+            }
+        }
+    }
+
+    @Override
+    public long queryWaitNanos(int permits) {
+        return waitNanos(permits, clock.nanoTime());
+    }
+
+    /**
+     * TAT 回退 permits 个令牌间隔 不早于当前时间 (满桶)
+     */
+    @Override
+    public void release(int permits) {
+        for (;;) {
+            long now = clock.nanoTime();
+            long tat = state;
+            if (tat - now <= 0) {
+                return;
+            }
+            long newTat = tat - intervalNanos * permits;
+            if (STATE.compareAndSet(this, tat, newTat - now > 0 ? newTat : now)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long getCapacity() {
+        long interval = intervalNanos;
+        return Math.max(1L, burst(interval) / interval);
+    }
+
+    /**
+     * 桶内令牌数 = (now + 突发时长 - TAT) / 令牌间隔
+     */
+    @Override
+    public long availablePermits() {
+        long interval = intervalNanos;
+        long now = clock.nanoTime();
+        long tat = state;
+        long base = tat - now > 0 ? tat : now;
+        long available = (now + burst(interval) - base) / interval;
+        return Math.max(0L, Math.min(available, Math.max(1L, burst(interval) / interval)));
+    }
+
+    /**
+     * TAT 不晚于当前时间时 桶是满的
+     */
+    @Override
+    public long queryResetNanos() {
+        return Math.max(0L, state - clock.nanoTime());
+    }
+
+    /**
+     * 令牌间隔 纳秒
+     * @return long
+     */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * 突发时长 纳秒 (TAT 领先当前时间不超过该值时放行)
+     * @return long
+     */
+    public long getBurstNanos() {
+        return burst(intervalNanos);
+    }
+
+    /**
+     * 距离可获取 permits 个令牌的纳秒数 不预定
+     */
+    private long waitNanos(int permits, long now) {
+        long interval = intervalNanos;
+        long tat = state;
+        long base = tat - now > 0 ? tat : now;
+        return Math.max(0L, base + interval * permits - now - burst(interval));
+    }
+
+    // ==============
+
+    private long burst(long interval) {
+        if (maxBurstPermits > 0.0) {
+            return Math.max(interval, (long) (maxBurstPermits * interval));
+        }
+        return Math.max(interval, MAX_BURST_NANOS);
+    }
+
+    private static long toInterval(double qps) {
+        if (qps <= 0.0 || Double.isNaN(qps)) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        return Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / qps));
+    }
+
+    /**
+     * 等待 不响应中断, 结束后恢复中断标记
+     * @param nanos 纳秒
+     */
+    public static void sleepUninterruptibly(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        boolean interrupted = false;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                interrupted = true;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package org.opsli.limiter.core.bucket;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bucket
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 09:30
+ * @Description: 窗口计数限流
+ *
+ * "每个窗口最多 N 次" 类型的限流, N = QPS * 窗口时长 (四舍五入, 最少 1 次)
+ * 窗口内的许可不能预定到未来: reserve 只做立即获取, 等待通过按窗口重试实现
+ *
+ * 子类只需实现 在某一时刻获取 / 查询等待时长 两个方法
+ */
+public abstract class WindowBucket implements LimiterBucket {
+
+    /** 窗口时长 纳秒 */
+    protected final long windowNanos;
+
+    /** 时间原点 窗口编号从这里开始计算 */
+    protected final long origin;
+
+    /** 窗口内许可数 */
+    protected volatile long limit;
+
+    /** 时钟 */
+    protected final LimiterClock clock;
+
+    protected WindowBucket(double qps, long windowNanos) {
+        this(qps, windowNanos, LimiterClock.PRECISE);
+    }
+
+    protected WindowBucket(double qps, long windowNanos, LimiterClock clock) {
+        if (windowNanos <= 0L) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.windowNanos = windowNanos;
+        this.clock = clock;
+        this.origin = clock.nanoTime();
+        this.limit = toLimit(qps, windowNanos);
+    }
+
+    @Override
+    public double getRate() {
+        return (double) limit * TimeUnit.SECONDS.toNanos(1) / windowNanos;
+    }
+
+    @Override
+    public void setRate(double qps) {
+        this.limit = toLimit(qps, windowNanos);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return acquire(1, clock.nanoTime());
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        return tryAcquireUntil(permits, System.nanoTime() + Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    @Override
+    public boolean tryAcquireUntil(int permits, long deadlineNanos) {
+        checkPermits(permits);
+        for (;;) {
+            long now = clock.nanoTime();
+            if (acquire(permits, now)) {
+                return true;
+            }
+            long waitNanos = waitNanos(permits, now);
+            // 截止时间按 System.nanoTime 计算
+            if (System.nanoTime() + waitNanos - deadlineNanos > 0) {
+                return false;
+            }
+            TokenBucket.sleepUninterruptibly(waitNanos);
+        }
+    }
+
+    /**
+     * 窗口许可不能预定 只能立即获取
+     */
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        checkPermits(permits);
+        return acquire(permits, clock.nanoTime()) ? 0L : -1L;
+    }
+
+    @Override
+    public long queryWaitNanos(int permits) {
+        return waitNanos(permits, clock.nanoTime());
+    }
+
+    @Override
+    public long getCapacity() {
+        return limit;
+    }
+
+    @Override
+    public long availablePermits() {
+        return available(clock.nanoTime());
+    }
+
+    @Override
+    public long queryResetNanos() {
+        return resetNanos(clock.nanoTime());
+    }
+
+    /**
+     * 窗口时长 纳秒
+     * @return long
+     */
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * 在 now 时刻获取许可
+     * @param permits 许可数
+     * @param now 当前时间 纳秒
+     * @return boolean
+     */
+    protected abstract boolean acquire(int permits, long now);
+
+    /**
+     * 距离可获取 permits 个许可的纳秒数 不获取
+     * 超过窗口上限的请求永远无法满足, 返回一个窗口时长 由调用方的截止时间兜底
+     * @param permits 许可数
+     * @param now 当前时间 纳秒
+     * @return long
+     */
+    protected abstract long waitNanos(int permits, long now);
+
+    /**
+     * 在 now 时刻可立即获取的许可数 不获取
+     * @param now 当前时间 纳秒
+     * @return long
+     */
+    protected abstract long available(long now);
+
+    /**
+     * 距离已用许可全部释放的纳秒数 不获取
+     * @param now 当前时间 纳秒
+     * @return long
+     */
+    protected abstract long resetNanos(long now);
+
+    /**
+     * 当前窗口编号
+     */
+    protected final long windowOf(long now) {
+        return (now - origin) / windowNanos;
+    }
+
+    // ==============
+
+    private static void checkPermits(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Requested permits (" + permits + ") must be positive");
+        }
+    }
+
+    private static long toLimit(double qps, long windowNanos) {
+        if (qps <= 0.0 || Double.isNaN(qps)) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        return Math.max(1L, Math.round(qps * windowNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+}
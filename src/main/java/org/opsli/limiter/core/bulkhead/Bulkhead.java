@@ -0,0 +1,257 @@
+package org.opsli.limiter.core.bulkhead;
+
+import org.opsli.limiter.core.index.LimiterKeys;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bulkhead
+ * @Author: Parker
+ * @CreateTime: 2021-01-25 10:10
+ * @Description: 并发隔离 (舱壁)
+ *
+ * 限制同时执行的请求数, 与 QPS 无关 (10 qps 的 30 秒请求会堆积 300 个线程)
+ *
+ * 许可分散在多个分段上 (分段之间隔开一个缓存行), 获取时从当前线程对应的分段开始 CAS 扣减,
+ * 本段用完再依次尝试其他分段, 各分段许可之和等于上限 不会超发
+ * 许可可以在任意线程归还 (异步方法在完成线程归还), 归还到当前线程对应的分段
+ *
+ * 排队 (maxQueue > 0): 许可用完时按 FIFO 排队, 队列满或等待超时拒绝
+ * 有请求排队时新请求不插队, 归还许可时直接交给队首
+ */
+public final class Bulkhead {
+
+    /** 分段间隔 16 个 int (64 字节) */
+    private static final int PAD = 16;
+    /** 最大分段数 */
+    private static final int MAX_STRIPES = 64;
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int CANCELLED = 2;
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final int mask;
+
+    /** 各分段剩余许可 第 i 段在 i * PAD */
+    private final AtomicIntegerArray permits;
+
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    /** 排队中的请求数 */
+    private final AtomicInteger queued = new AtomicInteger();
+    /** 拒绝数 (并发已满、队列已满、排队超时) */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name 名称 (指标标签)
+     * @param maxConcurrent 最大并发
+     * @param maxQueue 最大排队数 小于等于0 不排队
+     */
+    public Bulkhead(String name, int maxConcurrent, int maxQueue) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = Math.max(0, maxQueue);
+        int limit = Math.min(maxConcurrent,
+                Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()));
+        int stripes = 1;
+        while (stripes << 1 <= limit) {
+            stripes <<= 1;
+        }
+        this.mask = stripes - 1;
+        this.permits = new AtomicIntegerArray(stripes * PAD);
+        for (int i = 0; i < stripes; i++) {
+            permits.set(i * PAD, maxConcurrent / stripes + (i < maxConcurrent % stripes ? 1 : 0));
+        }
+    }
+
+    /**
+     * 获取许可 不排队
+     * @return boolean
+     */
+    public boolean tryAcquire() {
+        return acquire(0L);
+    }
+
+    /**
+     * 获取许可 许可用完时排队等待 (maxQueue > 0)
+     * @param timeoutNanos 最长排队时长 小于等于0 不排队
+     * @return boolean
+     */
+    public boolean acquire(long timeoutNanos) {
+        if (waiters.isEmpty() && take()) {
+            return true;
+        }
+        if (maxQueue <= 0 || timeoutNanos <= 0L || !enqueue()) {
+            rejected.increment();
+            return false;
+        }
+        Waiter waiter = new Waiter(Thread.currentThread());
+        waiters.add(waiter);
+        try {
+            // 入队前后可能有许可归还
+            dispatch();
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (waiter.state != GRANTED) {
+                long remaining = deadline - System.nanoTime();
+                boolean interrupted = Thread.interrupted();
+                if ((remaining <= 0L || interrupted) && waiter.compareAndSet(WAITING, CANCELLED)) {
+                    waiters.remove(waiter);
+                    rejected.increment();
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return false;
+                }
+                if (interrupted) {
+                    // 已经分配到许可 保留中断状态
+                    Thread.currentThread().interrupt();
+                    return true;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return true;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * 归还许可 有排队时直接交给队首
+     */
+    public void release() {
+        permits.getAndIncrement(home() * PAD);
+        if (!waiters.isEmpty()) {
+            dispatch();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    /**
+     * 执行中的请求数 (读取时汇总各分段)
+     * @return int
+     */
+    public int getInFlight() {
+        int available = 0;
+        for (int i = 0; i <= mask; i++) {
+            available += permits.get(i * PAD);
+        }
+        return Math.max(0, maxConcurrent - available);
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // ==============
+
+    /**
+     * 从当前线程对应的分段开始 扣减一个许可
+     */
+    private boolean take() {
+        int start = home();
+        for (int i = 0; i <= mask; i++) {
+            int index = ((start + i) & mask) * PAD;
+            for (;;) {
+                int p = permits.get(index);
+                if (p <= 0) {
+                    break;
+                }
+                if (permits.compareAndSet(index, p, p - 1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 占用一个排队位置
+     */
+    private boolean enqueue() {
+        for (;;) {
+            int q = queued.get();
+            if (q >= maxQueue) {
+                return false;
+            }
+            if (queued.compareAndSet(q, q + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 把空闲许可按 FIFO 分配给排队的请求
+     * 归还方入队检查、排队方入队后都会调用, 不会丢失唤醒
+     */
+    private void dispatch() {
+        while (!waiters.isEmpty()) {
+            if (!take()) {
+                return;
+            }
+            boolean granted = false;
+            Waiter waiter;
+            while ((waiter = waiters.poll()) != null) {
+                if (waiter.compareAndSet(WAITING, GRANTED)) {
+                    LockSupport.unpark(waiter.thread);
+                    granted = true;
+                    break;
+                }
+            }
+            if (!granted) {
+                permits.getAndIncrement(home() * PAD);
+            }
+        }
+    }
+
+    private int home() {
+        return (int) LimiterKeys.mix64(Thread.currentThread().getId()) & mask;
+    }
+
+    /**
+     * 排队的请求 状态: 等待 / 已分配 / 已取消
+     */
+    private static final class Waiter {
+
+        private static final AtomicIntegerFieldUpdater<Waiter> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Waiter.class, "state");
+
+        private final Thread thread;
+
+        private volatile int state;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        boolean compareAndSet(int expect, int update) {
+            return STATE.compareAndSet(this, expect, update);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.opsli.limiter.core.bulkhead;
+
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.bulkhead
+ * @Author: Parker
+ * @CreateTime: 2021-01-25 11:00
+ * @Description: 全局并发隔离配置
+ *
+ * opsli.limiter.bulkhead.max-concurrent  所有 @Limiter 方法合计的最大并发 小于等于0 不限制
+ * opsli.limiter.bulkhead.max-queue       并发已满时的最大排队数 (FIFO, 最长等待 @Limiter 的 timeout)
+ * 单个方法的并发见 @Limiter(maxConcurrent, maxQueue)
+ */
+@Configuration
+public class BulkheadConfig implements InitializingBean {
+
+    @Value("${opsli.limiter.bulkhead.max-concurrent:0}")
+    private int maxConcurrent;
+
+    @Value("${opsli.limiter.bulkhead.max-queue:0}")
+    private int maxQueue;
+
+    @Override
+    public void afterPropertiesSet() {
+        RateLimiterUtil.setBulkhead(maxConcurrent > 0
+                ? new Bulkhead("global", maxConcurrent, maxQueue)
+                : null);
+    }
+
+}
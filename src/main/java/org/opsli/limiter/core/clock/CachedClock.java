@@ -0,0 +1,100 @@
+package org.opsli.limiter.core.clock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.clock
+ * @Author: Parker
+ * @CreateTime: 2021-01-29 10:10
+ * @Description: 缓存时钟
+ *
+ * 单个后台线程每个 tick 读取一次 System.nanoTime 写入 volatile 字段, 请求线程只读字段 (不进入 vDSO / 系统调用)
+ * 读到的时间最多落后一个 tick 且单调不减: 令牌补充最多晚一个 tick, 只会更严格不会多放行
+ * 后台线程被饿死 (CPU 打满、GC) 时时间停止前进, 期间的请求按停止时的时间计算 (同样只会更严格)
+ */
+public final class CachedClock implements LimiterClock {
+
+    /** 默认 tick 1毫秒 */
+    private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long tickNanos;
+
+    private volatile long now = System.nanoTime();
+
+    private volatile Thread worker;
+
+    public CachedClock(long tickNanos) {
+        if (tickNanos <= 0L) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        this.tickNanos = tickNanos;
+    }
+
+    /**
+     * 默认缓存时钟 第一次使用时启动后台线程
+     * @return CachedClock
+     */
+    public static CachedClock getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * 精度 纳秒
+     * @return long
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * 启动后台线程
+     * @return this
+     */
+    public synchronized CachedClock start() {
+        if (worker == null) {
+            now = System.nanoTime();
+            Thread thread = new Thread(this::run, "limiter-clock");
+            thread.setDaemon(true);
+            thread.start();
+            worker = thread;
+        }
+        return this;
+    }
+
+    /**
+     * 停止后台线程 时间不再前进
+     */
+    public synchronized void stop() {
+        Thread thread = worker;
+        if (thread != null) {
+            worker = null;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // ==============
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        while (worker == self) {
+            LockSupport.parkNanos(this, tickNanos);
+            now = System.nanoTime();
+        }
+    }
+
+    /**
+     * 延迟初始化 只有选择了缓存时钟才启动线程
+     */
+    private static final class Holder {
+
+        private static final CachedClock INSTANCE = new CachedClock(DEFAULT_TICK_NANOS).start();
+    }
+
+}
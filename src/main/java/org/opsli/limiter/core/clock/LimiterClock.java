@@ -0,0 +1,36 @@
+package org.opsli.limiter.core.clock;
+
+import org.opsli.limiter.core.enums.ClockType;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.clock
+ * @Author: Parker
+ * @CreateTime: 2021-01-29 10:00
+ * @Description: 限流时钟
+ *
+ * 限流桶补充令牌、窗口计数读取的当前时间, 与 System.nanoTime 同一时间轴 (截止时间、等待仍用 System.nanoTime)
+ * 通过 LimiterGroup / RateLimiterUtil.newGroup 按规则选择, 测试时可以注入手动推进的时钟
+ */
+@FunctionalInterface
+public interface LimiterClock {
+
+    /** 精确时钟 每次读取 System.nanoTime */
+    LimiterClock PRECISE = System::nanoTime;
+
+    /**
+     * 当前时间 纳秒 只能用于计算时间差
+     * @return long
+     */
+    long nanoTime();
+
+    /**
+     * 按类型获得时钟
+     * @param type 时钟类型 为空时为精确时钟
+     * @return LimiterClock
+     */
+    static LimiterClock of(ClockType type) {
+        return type == ClockType.CACHED ? CachedClock.getInstance() : PRECISE;
+    }
+
+}
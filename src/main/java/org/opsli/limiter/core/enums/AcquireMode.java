@@ -0,0 +1,20 @@
+package org.opsli.limiter.core.enums;
+
+
+/**
+ * @Author: Parker
+ * @CreateTime: 2021-01-10 10:15
+ * @Description: 令牌获取方式
+ */
+public enum AcquireMode {
+
+    /** 立即拒绝 拿不到令牌直接返回, 不占用请求线程 */
+    REJECT,
+
+    /** 限时等待 预计等待超过 timeout 直接拒绝, 否则预定令牌后等待 */
+    WAIT,
+
+    /** 等待至截止时间 不预定令牌, 在 now + timeout 之前按下一个令牌的时间点重试 */
+    DEADLINE,
+    ;
+}
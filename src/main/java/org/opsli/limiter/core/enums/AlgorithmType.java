@@ -0,0 +1,26 @@
+package org.opsli.limiter.core.enums;
+
+
+/**
+ * @Author: Parker
+ * @CreateTime: 2021-01-15 11:00
+ * @Description: 限流算法
+ */
+public enum AlgorithmType {
+
+    /** 令牌桶 (按 BucketType 选择实现) */
+    TOKEN_BUCKET,
+
+    /** 固定窗口计数 */
+    FIXED_WINDOW,
+
+    /** 滑动日志 */
+    SLIDING_LOG,
+
+    /** 滑动窗口计数 */
+    SLIDING_WINDOW,
+
+    /** 分布式令牌桶 (共享存储 + 本地批量租用) */
+    DISTRIBUTED,
+    ;
+}
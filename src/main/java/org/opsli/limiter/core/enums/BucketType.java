@@ -0,0 +1,17 @@
+package org.opsli.limiter.core.enums;
+
+
+/**
+ * @Author: Parker
+ * @CreateTime: 2021-01-08 10:50
+ * @Description: 限流桶类型
+ */
+public enum BucketType {
+
+    /** 无锁令牌桶 */
+    TOKEN_BUCKET,
+
+    /** Guava RateLimiter */
+    GUAVA,
+    ;
+}
@@ -0,0 +1,17 @@
+package org.opsli.limiter.core.enums;
+
+
+/**
+ * @Author: Parker
+ * @CreateTime: 2021-01-29 10:00
+ * @Description: 限流时钟
+ */
+public enum ClockType {
+
+    /** 精确时钟 每次读取 System.nanoTime */
+    PRECISE,
+
+    /** 缓存时钟 后台线程每毫秒更新一次, 读取只是一次 volatile 读 (令牌补充最多晚 1 毫秒) */
+    CACHED,
+    ;
+}
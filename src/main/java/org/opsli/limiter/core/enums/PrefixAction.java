@@ -0,0 +1,20 @@
+package org.opsli.limiter.core.enums;
+
+
+/**
+ * @Author: Parker
+ * @CreateTime: 2021-01-18 10:00
+ * @Description: 网段规则
+ */
+public enum PrefixAction {
+
+    /** 白名单 不限流 */
+    ALLOW,
+
+    /** 黑名单 直接拒绝 */
+    DENY,
+
+    /** 整个网段共用一个限流桶 */
+    LIMIT,
+    ;
+}
@@ -0,0 +1,33 @@
+package org.opsli.limiter.core.enums;
+
+
+/**
+ * @Author: Parker
+ * @CreateTime: 2021-01-22 09:30
+ * @Description: 拒绝原因
+ */
+public enum RejectReason {
+
+    /** 单个限流器 访问频繁 */
+    RATE("访问频繁"),
+
+    /** 黑名单 */
+    DENY("黑名单"),
+
+    /** 网段 / 全局限流 */
+    SUBNET("网段访问频繁"),
+
+    /** 并发已满 (舱壁) */
+    CONCURRENT("并发已满"),
+    ;
+
+    private final String desc;
+
+    RejectReason(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
@@ -0,0 +1,32 @@
+package org.opsli.limiter.core.exception;
+
+import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.msg.CommonMsg;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.exception
+ * @Author: Parker
+ * @CreateTime: 2021-01-23 10:00
+ * @Description: 限流异常
+ *
+ * 拒绝是可预期的高频路径, 不填充堆栈、不记录抑制异常
+ * 由 GlobalExceptionHandler 按提醒方式写出预编码的响应体
+ */
+public class LimiterException extends ServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 提醒方式 */
+    private final AlertType alertType;
+
+    public LimiterException(AlertType alertType) {
+        super(CommonMsg.OTHER_EXCEPTION_LIMITER, false);
+        this.alertType = alertType == null ? AlertType.JSON : alertType;
+    }
+
+    public AlertType getAlertType() {
+        return alertType;
+    }
+
+}
@@ -43,6 +43,16 @@ public class ServiceException extends RuntimeException{
         this.errorMessage = msg.getMessage();
     }
 
+    /**
+     * @param msg 消息
+     * @param writableStackTrace 是否填充堆栈 (高频的可预期异常不需要)
+     */
+    protected ServiceException(BaseMsg msg, boolean writableStackTrace) {
+        super(msg.getMessage(), null, false, writableStackTrace);
+        this.code = msg.getCode();
+        this.errorMessage = msg.getMessage();
+    }
+
     public Integer getCode() {
         return code;
     }
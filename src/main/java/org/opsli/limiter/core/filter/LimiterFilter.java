@@ -0,0 +1,233 @@
+package org.opsli.limiter.core.filter;
+
+import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.index.LimiterQuota;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.opsli.limiter.core.policy.LimiterPolicyRegistry;
+import org.opsli.limiter.core.util.OutputStreamUtil;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.filter
+ * @Author: Parker
+ * @CreateTime: 2021-01-12 10:40
+ * @Description: 限流过滤器
+ *
+ * 在 DispatcherServlet 之前限流, 被拒绝的请求不再经过 Handler 查找、参数解析和 AOP 代理
+ * 启动时按 RequestMapping 解析 @Limiter, 生成 URI -> 策略 表 (精确路径走 HashMap, 通配路径走 AntPathMatcher)
+ * 所有映射都登记 (不限流的策略为空), 查找顺序与 Spring MVC 一致: 精确路径优先, 多个通配路径匹配时取最具体的
+ *
+ * 异步返回值的方法、Key / 令牌数表达式引用方法参数的方法在表中策略为空, 仍由 LimiterAop 限流
+ * 命中后把映射路径写入请求属性, 限流资源与 LimiterAop 一致 (按映射路径, 不按实际 URI)
+ * 已经由过滤器判断过的请求会打上标记, LimiterAop 不再重复计数
+ * 放行、拒绝都按限流桶状态输出 X-RateLimit-* / Retry-After 响应头
+ * 通过 QPS 限流后再检查并发 (全局、maxConcurrent), 请求处理完归还
+ */
+public class LimiterFilter extends OncePerRequestFilter implements ApplicationListener<ContextRefreshedEvent> {
+
+    /** 已限流标记 */
+    public static final String APPLIED_ATTRIBUTE = LimiterFilter.class.getName() + ".APPLIED";
+
+    private static final RequestMethod[] METHODS = RequestMethod.values();
+    private static final Map<String, RequestMethod> METHOD_NAMES = new HashMap<>();
+
+    static {
+        for (RequestMethod method : METHODS) {
+            METHOD_NAMES.put(method.name(), method);
+        }
+    }
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    /** 精确路径 -> 按 RequestMethod 下标的映射 */
+    private volatile Map<String, Route[]> exactTable = Collections.emptyMap();
+
+    /** 通配路径 */
+    private volatile List<PatternEntry> patternTable = Collections.emptyList();
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        load(event.getApplicationContext().getBeansOfType(RequestMappingHandlerMapping.class).values());
+    }
+
+    /**
+     * 按 RequestMapping 生成路由表
+     * 所有映射都登记 (不限流的映射策略为空), 避免不限流的精确路径落到限流的通配路径上
+     * @param mappings 映射
+     */
+    void load(Collection<RequestMappingHandlerMapping> mappings) {
+        Map<String, Route[]> exact = new HashMap<>();
+        Map<String, PatternEntry> patterns = new LinkedHashMap<>();
+        for (RequestMappingHandlerMapping mapping : mappings) {
+            for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : mapping.getHandlerMethods().entrySet()) {
+                HandlerMethod handlerMethod = entry.getValue();
+                LimiterPolicy policy = LimiterPolicyRegistry.get(handlerMethod.getMethod());
+                // 由 LimiterAop 限流的方法 过滤器放行
+                if (policy != null && (isAsync(handlerMethod.getMethod().getReturnType())
+                        || policy.isArgsRequired())) {
+                    policy = null;
+                }
+                Set<RequestMethod> methods = entry.getKey().getMethodsCondition().getMethods();
+                for (String pattern : entry.getKey().getPatternsCondition().getPatterns()) {
+                    Route[] routes;
+                    if (pathMatcher.isPattern(pattern)) {
+                        routes = patterns.computeIfAbsent(pattern,
+                                k -> new PatternEntry(k, new Route[METHODS.length])).routes;
+                    } else {
+                        routes = exact.computeIfAbsent(pattern, k -> new Route[METHODS.length]);
+                    }
+                    Route route = new Route(pattern, policy);
+                    for (RequestMethod method : METHODS) {
+                        // 指定了方法的映射优先于不限方法的映射 (与 Spring MVC 一致)
+                        if (methods.contains(method) || (methods.isEmpty() && routes[method.ordinal()] == null)) {
+                            routes[method.ordinal()] = route;
+                        }
+                    }
+                }
+            }
+        }
+        this.exactTable = exact;
+        this.patternTable = new ArrayList<>(patterns.values());
+        logger.info("限流过滤器 - 精确路径: " + exact.size() + ", 通配路径: " + patterns.size());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        LimiterPolicy policy = lookup(request);
+        if (policy != null) {
+            request.setAttribute(APPLIED_ATTRIBUTE, Boolean.TRUE);
+            boolean enterFlag = RateLimiterUtil.enter(request, policy);
+            LimiterQuota quota = RateLimiterUtil.quota();
+            if (quota != null) {
+                OutputStreamUtil.rateLimitHeaders(quota, response);
+            }
+            if (!enterFlag || !RateLimiterUtil.enterConcurrent(request, policy, true)) {
+                reject(policy.getAlertType(), response);
+                return;
+            }
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                RateLimiterUtil.exitConcurrent(policy);
+            }
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * 查找策略 与 Spring MVC 相同: 精确路径优先, 否则取匹配的通配路径中最具体的一个
+     * 命中映射时把映射路径写入请求属性
+     * @param request
+     * @return 没有映射或映射不限流返回 null
+     */
+    LimiterPolicy lookup(HttpServletRequest request) {
+        RequestMethod method = METHOD_NAMES.get(request.getMethod());
+        if (method == null) {
+            return null;
+        }
+        String path = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        if (!contextPath.isEmpty() && path.startsWith(contextPath)) {
+            path = path.substring(contextPath.length());
+        }
+        Route route = null;
+        Route[] routes = exactTable.get(path);
+        if (routes != null) {
+            route = routes[method.ordinal()];
+        }
+        if (route == null) {
+            Comparator<String> comparator = null;
+            for (PatternEntry entry : patternTable) {
+                Route candidate = entry.routes[method.ordinal()];
+                if (candidate == null || !pathMatcher.match(entry.pattern, path)) {
+                    continue;
+                }
+                if (route == null) {
+                    route = candidate;
+                    continue;
+                }
+                if (comparator == null) {
+                    comparator = pathMatcher.getPatternComparator(path);
+                }
+                if (comparator.compare(candidate.pattern, route.pattern) < 0) {
+                    route = candidate;
+                }
+            }
+        }
+        if (route == null) {
+            return null;
+        }
+        request.setAttribute(RateLimiterUtil.RESOURCE_ATTRIBUTE, route.pattern);
+        return route.policy;
+    }
+
+    /**
+     * 拒绝
+     */
+    private static void reject(AlertType alertType, HttpServletResponse response) {
+        OutputStreamUtil.rejectResponse(alertType, response);
+    }
+
+    private static boolean isAsync(Class<?> returnType) {
+        return CompletionStage.class.isAssignableFrom(returnType)
+                || DeferredResult.class.isAssignableFrom(returnType);
+    }
+
+    /**
+     * 映射 策略为 null 时不由过滤器限流
+     */
+    private static final class Route {
+
+        private final String pattern;
+        private final LimiterPolicy policy;
+
+        private Route(String pattern, LimiterPolicy policy) {
+            this.pattern = pattern;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * 通配路径 按 RequestMethod 下标的映射
+     */
+    private static final class PatternEntry {
+
+        private final String pattern;
+        private final Route[] routes;
+
+        private PatternEntry(String pattern, Route[] routes) {
+            this.pattern = pattern;
+            this.routes = routes;
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.opsli.limiter.core.filter;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.filter
+ * @Author: Parker
+ * @CreateTime: 2021-01-12 11:30
+ * @Description: 限流过滤器配置
+ *
+ * opsli.limiter.filter.enabled = true 时开启
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "opsli.limiter.filter", name = "enabled", havingValue = "true")
+public class LimiterFilterConfig {
+
+    @Bean
+    public LimiterFilter limiterFilter() {
+        return new LimiterFilter();
+    }
+
+    @Bean
+    public FilterRegistrationBean<LimiterFilter> limiterFilterRegistration(LimiterFilter limiterFilter) {
+        FilterRegistrationBean<LimiterFilter> registration = new FilterRegistrationBean<>(limiterFilter);
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+}
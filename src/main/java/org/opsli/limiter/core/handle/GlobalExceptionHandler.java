@@ -15,14 +15,18 @@
  */
 package org.opsli.limiter.core.handle;
 
+import org.opsli.limiter.core.exception.LimiterException;
 import org.opsli.limiter.core.exception.ServiceException;
 import org.opsli.limiter.core.ret.ResultVo;
+import org.opsli.limiter.core.util.OutputStreamUtil;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import javax.servlet.http.HttpServletResponse;
+
 /**
  * @author parker
  * @date 2020-09-13
@@ -32,6 +36,14 @@ public class GlobalExceptionHandler {
 
 
 
+    /**
+     * 拦截 限流异常 直接写出预编码的响应体
+     */
+    @ExceptionHandler(LimiterException.class)
+    public void limiterException(LimiterException e, HttpServletResponse response) {
+        OutputStreamUtil.rejectResponse(e.getAlertType(), response);
+    }
+
     /**
      * 拦截 业务异常
      */
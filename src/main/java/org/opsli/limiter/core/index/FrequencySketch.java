@@ -0,0 +1,159 @@
+package org.opsli.limiter.core.index;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-25 14:20
+ * @Description: 访问频率估算 (Count-Min Sketch, 4 位计数器)
+ *
+ * 每个 long 存 16 个计数器, 每个 Key 对应 4 个计数器, 频率取 4 个中的最小值 (最大 15)
+ * 同一个 Key 的 4 个计数器落在同一块 (8 个 long, 64 字节) 内, 一次访问只读一个缓存行
+ * 保守更新: 只递增等于最小值的计数器, 减少冲突带来的高估
+ * 计数器已满时不再写入; 递增使用 CAS, 不需要加锁
+ * 累计递增次数达到 10 倍容量时所有计数器减半 (老化), 过去的热点会逐渐冷却
+ * 每次老化周期号加一, 槽位自身的命中计数按周期号同步减半 (见 LimiterSlot#recordHit)
+ */
+final class FrequencySketch {
+
+    /** 每个 Key 的计数器数 */
+    private static final int DEPTH = 4;
+    /** 每块 long 数 */
+    private static final int BLOCK = 8;
+    /** 减半掩码 每个计数器右移一位后去掉借入的高位 */
+    private static final long RESET_MASK = 0x7777777777777777L;
+    /** 计数器上限 */
+    static final int MAX_COUNT = 15;
+    /** 老化周期 = 容量 * SAMPLE_FACTOR */
+    private static final int SAMPLE_FACTOR = 10;
+
+    private final AtomicLongArray table;
+    /** 块下标掩码 */
+    private final int blockMask;
+    /** 老化周期 */
+    private final int sampleSize;
+    /** 本周期内的递增次数 */
+    private final AtomicInteger additions = new AtomicInteger();
+    /** 老化周期号 */
+    private volatile int epoch;
+
+    /**
+     * @param maximumSize 需要区分的 Key 数 (分段容量)
+     */
+    FrequencySketch(int maximumSize) {
+        int words = BLOCK;
+        // 每个 Key 约 16 个计数器 (一个 long), 老化周期内的 10 倍 Key 数才不会把计数器填满
+        while (words < maximumSize && words < 1 << 30) {
+            words <<= 1;
+        }
+        this.table = new AtomicLongArray(words);
+        this.blockMask = words / BLOCK - 1;
+        this.sampleSize = Math.max(SAMPLE_FACTOR, maximumSize * SAMPLE_FACTOR);
+    }
+
+    /**
+     * 估算频率
+     * @param key 组合Key
+     * @return [0, 15]
+     */
+    int frequency(long key) {
+        long hash = spread(key);
+        int block = blockOf(hash);
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            int counter = counterOf(hash, i);
+            int count = (int) (table.get(block + (counter >>> 4)) >>> ((counter & 15) << 2)) & MAX_COUNT;
+            if (count < frequency) {
+                frequency = count;
+            }
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问
+     * @param key 组合Key
+     */
+    void increment(long key) {
+        int frequency = frequency(key);
+        if (frequency == MAX_COUNT) {
+            return;
+        }
+        long hash = spread(key);
+        int block = blockOf(hash);
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int counter = counterOf(hash, i);
+            added |= incrementAt(block + (counter >>> 4), (counter & 15) << 2, frequency);
+        }
+        if (added && additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 老化周期号
+     * @return int
+     */
+    int epoch() {
+        return epoch;
+    }
+
+    // ==============
+
+    /**
+     * 计数器等于 expected 时递增
+     */
+    private boolean incrementAt(int word, int shift, int expected) {
+        for (;;) {
+            long value = table.get(word);
+            if (((value >>> shift) & MAX_COUNT) != expected) {
+                return false;
+            }
+            if (table.compareAndSet(word, value, value + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 所有计数器减半 与并发递增交错时个别计数略有偏差, 只影响估算
+     */
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            for (;;) {
+                long value = table.get(i);
+                if (table.compareAndSet(i, value, (value >>> 1) & RESET_MASK)) {
+                    break;
+                }
+            }
+        }
+        additions.set(sampleSize >>> 1);
+        epoch++;
+    }
+
+    private static long spread(long key) {
+        long hash = (key ^ (key >>> 31)) * 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * 块的第一个 long 低 32 位选块
+     */
+    private int blockOf(long hash) {
+        return ((int) hash & blockMask) * BLOCK;
+    }
+
+    /**
+     * 第 i 个计数器在块内的位置: 第 2i / 2i+1 个 long 中的一个, 再选 16 个计数器之一
+     * 高 32 位每 8 位用于一个计数器
+     */
+    private static int counterOf(long hash, int i) {
+        int bits = (int) (hash >>> (32 + (i << 3)));
+        return ((i << 1) + (bits & 1)) << 4 | (bits >>> 1) & 15;
+    }
+
+}
@@ -0,0 +1,418 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.algorithm.LimiterAlgorithm;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithms;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.clock.LimiterClock;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.enums.BucketType;
+import org.opsli.limiter.core.ip.IpAddress;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-13 09:50
+ * @Description: 限流器组
+ *
+ * 同一个限流策略下的所有限流器, 持有共享索引的引用和新建限流桶所需的参数
+ *
+ * 组合Key 中带有策略标识 (scope): 不同策略即使资源相同, 限流器也互不共享.
+ * 规则重新加载后的新组沿用原策略的标识, 拿到旧组建的限流器时,
+ * 桶参数 (突发、算法、窗口、时钟) 相同只调整 QPS, 否则按新参数重建
+ *
+ * 一级计数 (本地令牌桶): 索引中没有的 Key 不立即建桶, 先在 ProbationSketch 中按秒计数,
+ *   上一秒 + 本秒 的令牌数不超过 阈值 = min(桶容量, QPS) / 2 时直接放行, 超过时才建桶并预扣已放行的令牌 (最多预扣阈值).
+ *   只来一两次的客户端不占用限流器对象.
+ *   准确性: 任意 1 秒内一级放行不超过阈值, 任意时长 t 内不超过 阈值 * (t + 2) <= 容量 + QPS * t,
+ *   即一级放行的请求换成从第一次请求起就建好的令牌桶也都会放行.
+ *   计数误差只会偏大: 偏大的结果是提前建桶, 预扣最多阈值, 新桶至少保留一半令牌, 不会误拒正常请求.
+ *   同一个 Key 同一时刻的并发请求可能各自按较小的计数放行, 多放行的数量不超过并发数
+ *   一级计数的限流器每线程复用一个, 命中一级计数不分配对象
+ *
+ * 快照恢复 (见 LimiterSnapshot): 新建的限流器、第一次出现的堆外状态按快照预扣, 快照中有记录的 Key 不经过一级计数
+ *
+ * 堆外状态 (本地令牌桶, 见 LimiterIndex#setOffHeap): 开启后不查索引、不经过一级计数,
+ *   每个 Key 的 TAT 存在 LimiterSlab 中, 与建桶的结果一致; 限流器每线程复用一个, 堆上没有每个 Key 的对象
+ */
+public class LimiterGroup {
+
+    /** 共享索引 */
+    private final LimiterIndex index;
+
+    /** qps 小于等于0 不限流 */
+    private final double qps;
+
+    /** 突发令牌数 */
+    private final double burst;
+
+    /** 限流算法 */
+    private final LimiterAlgorithm algorithm;
+
+    /** 窗口时长 纳秒 */
+    private final long windowNanos;
+
+    /** 时钟 */
+    private final LimiterClock clock;
+
+    /** 一级计数阈值 小于等于0 不使用一级计数 */
+    private final int probationThreshold;
+
+    /** 本地令牌桶的容量 (一级计数、堆外状态使用) */
+    private final long bucketCapacity;
+
+    /** 本地令牌桶的令牌间隔 纳秒 */
+    private final long intervalNanos;
+
+    /** 本地令牌桶的突发时长 纳秒 */
+    private final long burstNanos;
+
+    /** 策略标识 组合进 Key, 0 为未指定 (与不带标识的 Key 相同) */
+    private final long scope;
+
+    /** 按自定义 Key 单独配置的组 (规则) Key 哈希升序 */
+    private final long[] overrideKeys;
+    private final LimiterGroup[] overrideGroups;
+
+    /** 一级计数期间的限流器 每线程一个, 每次请求换 Key */
+    private final ThreadLocal<LimiterSlot> probationSlots =
+            ThreadLocal.withInitial(() -> new LimiterSlot(0L, 0, getQps(), new ProbationBucket(this), this));
+
+    /** 堆外状态的限流器 每线程一个, 每次请求换 Key */
+    private final ThreadLocal<LimiterSlot> slabSlots =
+            ThreadLocal.withInitial(() -> new LimiterSlot(0L, 0, getQps(), new SlabBucket(this), this));
+
+    public LimiterGroup(LimiterIndex index, double qps, double burst, BucketType bucketType) {
+        this(index, qps, burst, LimiterAlgorithms.of(AlgorithmType.TOKEN_BUCKET, bucketType),
+                TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public LimiterGroup(LimiterIndex index, double qps, double burst,
+                        LimiterAlgorithm algorithm, long windowNanos) {
+        this(index, qps, burst, algorithm, windowNanos, LimiterClock.PRECISE);
+    }
+
+    public LimiterGroup(LimiterIndex index, double qps, double burst,
+                        LimiterAlgorithm algorithm, long windowNanos, LimiterClock clock) {
+        this(index, qps, burst, algorithm, windowNanos, clock, 0L, new long[0], new LimiterGroup[0]);
+    }
+
+    private LimiterGroup(LimiterIndex index, double qps, double burst, LimiterAlgorithm algorithm,
+                         long windowNanos, LimiterClock clock, long scope,
+                         long[] overrideKeys, LimiterGroup[] overrideGroups) {
+        this.index = index;
+        this.qps = qps;
+        this.burst = burst;
+        this.algorithm = algorithm;
+        this.windowNanos = windowNanos;
+        this.clock = clock;
+        this.scope = scope;
+        this.overrideKeys = overrideKeys;
+        this.overrideGroups = overrideGroups;
+        // 只有本地令牌桶按容量 + QPS 放行, 窗口、分布式算法直接建桶
+        if (qps > 0.0 && algorithm == LimiterAlgorithms.TOKEN_BUCKET) {
+            TokenBucket template = new TokenBucket(qps, burst);
+            this.bucketCapacity = template.getCapacity();
+            this.intervalNanos = template.getIntervalNanos();
+            this.burstNanos = template.getBurstNanos();
+            // 计数封顶时一定超过阈值
+            this.probationThreshold = (int) Math.min(ProbationSketch.MAX_COUNT - 1,
+                    Math.floor(Math.min(bucketCapacity, qps) / 2));
+        } else {
+            this.bucketCapacity = 0L;
+            this.intervalNanos = 0L;
+            this.burstNanos = 0L;
+            this.probationThreshold = 0;
+        }
+    }
+
+    /**
+     * 按自定义 Key 单独配置限流参数
+     * @param keys 自定义 Key 哈希
+     * @param groups 对应的限流器组 (同一个索引)
+     * @return 新的限流器组 原组不变
+     */
+    public LimiterGroup withKeyOverrides(long[] keys, LimiterGroup[] groups) {
+        if (keys.length != groups.length) {
+            throw new IllegalArgumentException("keys and groups must have the same length");
+        }
+        // 按 Key 排序 查找时二分
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        long[] sortedKeys = new long[keys.length];
+        LimiterGroup[] sortedGroups = new LimiterGroup[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = keys[order[i]];
+            sortedGroups[i] = groups[order[i]];
+        }
+        return new LimiterGroup(index, qps, burst, algorithm, windowNanos, clock, scope, sortedKeys, sortedGroups);
+    }
+
+    /**
+     * 指定策略标识 同一策略的各个组 (规则重新加载) 使用相同标识, 不同策略使用不同标识
+     * @param scope 策略标识
+     * @return 新的限流器组 原组不变
+     */
+    public LimiterGroup withScope(long scope) {
+        return new LimiterGroup(index, qps, burst, algorithm, windowNanos, clock, scope, overrideKeys, overrideGroups);
+    }
+
+    /**
+     * 获得限流器 如果为空 则创建一个新的限流器
+     * @param clientIpAddress IP
+     * @param resource URI
+     * @return LimiterSlot
+     */
+    public LimiterSlot getSlot(String clientIpAddress, String resource) {
+        int resourceId = LimiterKeys.intern(resource);
+        long key = LimiterKeys.compose(LimiterKeys.hashIp(clientIpAddress) + scope, resourceId);
+
+        LimiterSlot slot = slabSlot(key, resourceId);
+        if (slot != null) {
+            return slot;
+        }
+        slot = index.get(key);
+        if(slot == null){
+            slot = isProbation(key, resourceId)
+                    ? probationSlot(key, resourceId, resource)
+                    : insert(newSlot(key, resourceId, clientIpAddress, resource));
+        }else if(slot.getOwner() != this){
+            slot = adopt(slot) ? slot : rebuild(slot, clientIpAddress, resource);
+        }
+        return slot;
+    }
+
+    /**
+     * 获得限流器 如果为空 则创建一个新的限流器
+     * 命中时不分配对象, 只有新建时才把地址转为字符串
+     * @param clientIp IP
+     * @param resource URI
+     * @return LimiterSlot
+     */
+    public LimiterSlot getSlot(IpAddress clientIp, String resource) {
+        int resourceId = LimiterKeys.intern(resource);
+        long key = LimiterKeys.compose(LimiterKeys.hashIp(clientIp) + scope, resourceId);
+
+        LimiterSlot slot = slabSlot(key, resourceId);
+        if (slot != null) {
+            return slot;
+        }
+        slot = index.get(key);
+        if(slot == null){
+            slot = isProbation(key, resourceId)
+                    ? probationSlot(key, resourceId, resource)
+                    : insert(newSlot(key, resourceId, clientIp.toString(), resource));
+        }else if(slot.getOwner() != this){
+            slot = adopt(slot) ? slot : rebuild(slot, clientIp.toString(), resource);
+        }
+        return slot;
+    }
+
+    /**
+     * 获得限流器 如果为空 则创建一个新的限流器
+     * 按自定义 Key (用户、租户、API Key 等) 的哈希限流, 与 IP 无关
+     * @param keyHash 自定义 Key 哈希
+     * @param resource URI
+     * @return LimiterSlot
+     */
+    public LimiterSlot getSlot(long keyHash, String resource) {
+        if (overrideKeys.length != 0) {
+            int i = Arrays.binarySearch(overrideKeys, keyHash);
+            if (i >= 0) {
+                return overrideGroups[i].getSlot(keyHash, resource);
+            }
+        }
+        int resourceId = LimiterKeys.intern(resource);
+        long key = LimiterKeys.compose(keyHash + scope, resourceId);
+
+        LimiterSlot slot = slabSlot(key, resourceId);
+        if (slot != null) {
+            return slot;
+        }
+        slot = index.get(key);
+        if(slot == null){
+            // 分布式存储需要字符串 Key, 只在新建时生成
+            slot = isProbation(key, resourceId)
+                    ? probationSlot(key, resourceId, resource)
+                    : insert(newSlot(key, resourceId, "key-" + Long.toHexString(keyHash), resource));
+        }else if(slot.getOwner() != this){
+            slot = adopt(slot) ? slot : rebuild(slot, "key-" + Long.toHexString(keyHash), resource);
+        }
+        return slot;
+    }
+
+    public double getQps() {
+        return qps;
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    public LimiterAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    public LimiterClock getClock() {
+        return clock;
+    }
+
+    public long getScope() {
+        return scope;
+    }
+
+    int getProbationThreshold() {
+        return probationThreshold;
+    }
+
+    long getBucketCapacity() {
+        return bucketCapacity;
+    }
+
+    long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    long getBurstNanos() {
+        return burstNanos;
+    }
+
+    /**
+     * 一级计数
+     * @return 计数后 上一秒 + 本秒 的令牌数
+     */
+    int probationAdd(long key, int permits) {
+        return index.probation().add(key, permits, clock.nanoTime());
+    }
+
+    /**
+     * 一级计数 上一秒 + 本秒 的令牌数
+     */
+    int probationCount(long key) {
+        return index.probation().estimate(key, clock.nanoTime());
+    }
+
+    /**
+     * 堆外状态第一次出现的 Key 按快照恢复
+     * @return TAT 领先量 纳秒, 没有记录返回 0
+     */
+    long restoreLead(long key, int resourceId) {
+        LimiterSnapshot snapshot = index.snapshot();
+        return snapshot == null ? 0L : snapshot.restoreLead(key, resourceId);
+    }
+
+    /**
+     * 一级计数超过阈值 建立限流器
+     * @param consumed 一级已放行的令牌数 从新桶中预扣
+     * @return 索引中的限流器
+     */
+    LimiterSlot promote(long key, int resourceId, String resource, int consumed) {
+        LimiterSlot fresh = newSlot(key, resourceId, null, resource);
+        LimiterSlot slot = index.putIfAbsent(fresh);
+        if (slot == fresh) {
+            int charge = Math.min(consumed, probationThreshold);
+            if (charge > 0) {
+                // 不超过半个容量 新桶一定拿得到
+                fresh.getBucket().reserve(charge, 0L);
+            }
+        } else if (slot.getOwner() != this && !adopt(slot)) {
+            slot = rebuild(slot, null, resource);
+        }
+        return slot;
+    }
+
+    // ==============
+
+    private boolean isProbation(long key, int resourceId) {
+        if (probationThreshold <= 0 || !index.isProbation()) {
+            return false;
+        }
+        // 快照中有记录的 Key 直接建桶恢复
+        LimiterSnapshot snapshot = index.snapshot();
+        return snapshot == null || !snapshot.contains(key, resourceId);
+    }
+
+    /**
+     * 一级计数期间的限流器 每线程复用, 不写入索引
+     */
+    private LimiterSlot probationSlot(long key, int resourceId, String resource) {
+        LimiterSlot slot = probationSlots.get();
+        ((ProbationBucket) slot.getBucket()).reset(key, resourceId, resource);
+        slot.reset(key, resourceId);
+        return slot;
+    }
+
+    /**
+     * 堆外状态的限流器 每线程复用, 不写入索引, 也不经过一级计数
+     * 快照在 Key 第一次写入状态表时恢复 (见 SlabBucket), 这里不查快照
+     * @return 未开启堆外状态或不是本地令牌桶时返回 null
+     */
+    private LimiterSlot slabSlot(long key, int resourceId) {
+        LimiterSlab slab = bucketCapacity > 0L ? index.slab() : null;
+        if (slab == null) {
+            return null;
+        }
+        LimiterSlot slot = slabSlots.get();
+        ((SlabBucket) slot.getBucket()).reset(slab, key, resourceId);
+        slot.reset(key, resourceId);
+        return slot;
+    }
+
+    /**
+     * 写入索引 写入的是新建的限流器时按快照恢复状态
+     * @return 索引中的限流器
+     */
+    private LimiterSlot insert(LimiterSlot fresh) {
+        LimiterSlot slot = index.putIfAbsent(fresh);
+        LimiterSnapshot snapshot = slot == fresh && fresh.getBucket() != null ? index.snapshot() : null;
+        if (snapshot != null) {
+            snapshot.restore(fresh.getKey(), fresh.getResourceId(), fresh.getBucket());
+        }
+        return slot;
+    }
+
+    private LimiterSlot newSlot(long key, int resourceId, String clientIpAddress, String resource) {
+        if(qps <= 0.0){
+            return new LimiterSlot(key, resourceId, 0d, null, this);
+        }
+        return new LimiterSlot(key, resourceId, qps,
+                algorithm.create(clientIpAddress, resource, qps, burst, windowNanos, clock), this);
+    }
+
+    /**
+     * 接管同一策略其他组 (规则重新加载前) 建的限流器 桶参数相同时只调整 QPS
+     * @return 桶参数不同或不是同一策略, 需要重建时返回 false
+     */
+    private boolean adopt(LimiterSlot slot) {
+        LimiterGroup owner = slot.getOwner();
+        boolean sameBucket = owner == null
+                ? (slot.getQps() > 0.0) == (qps > 0.0)
+                : owner.scope == scope
+                        && (owner.qps > 0.0) == (qps > 0.0) && owner.burst == burst
+                        && owner.algorithm == algorithm && owner.windowNanos == windowNanos
+                        && owner.clock == clock;
+        if (sameBucket) {
+            slot.sync(this);
+        }
+        return sameBucket;
+    }
+
+    /**
+     * 按本组参数重建限流器 原桶状态丢弃
+     * 只替换看到的旧槽位, 并发重建时只有一个新桶生效, 其余使用它
+     */
+    private LimiterSlot rebuild(LimiterSlot slot, String clientIpAddress, String resource) {
+        return index.replace(slot, newSlot(slot.getKey(), slot.getResourceId(), clientIpAddress, resource));
+    }
+
+}
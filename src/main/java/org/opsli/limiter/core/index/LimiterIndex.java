@@ -0,0 +1,310 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-09 10:05
+ * @Description: 限流器索引
+ *
+ * 组合Key(long) -> 限流器槽位, 按 Key 高位分段 (低位留给分段内的探测)
+ *
+ * 分段数按 CPU 核数取 2 的幂, 写入只锁所在分段, 不同 Key 的新建互不阻塞
+ * 读: 无锁, 不分配对象 (命中时整个 get-or-create 无对象分配)
+ * 写: 分段内加锁, 同一 Key 的并发新建在锁内再次确认, 只会有一个限流器生效
+ * 容量按分段均分, 淘汰、过期清理都在分段内完成
+ *
+ * 一级计数 (ProbationSketch): 低频 Key 先在这里计数, 不建限流器, 见 LimiterGroup
+ * 堆外状态 (LimiterSlab): 开启后本地令牌桶的状态都存在堆外, 不建限流器, 见 LimiterGroup
+ * 快照 (LimiterSnapshot): 未满的限流桶写入文件, 重启后按需恢复
+ */
+public class LimiterIndex {
+
+    /** 每个核对应的分段数 */
+    private static final int STRIPES_PER_CORE = 4;
+    /** 最大分段数 */
+    private static final int MAX_STRIPES = 1 << 10;
+    /** 一级计数按 最大限流器数 / 8 估算每秒的不同 Key 数 */
+    private static final int PROBATION_RATIO = 8;
+
+    /** 分段 */
+    private final LimiterSegment[] segments;
+    /** 分段选择位移 */
+    private final int shift;
+    /** 最大限流器数 */
+    private final int maximumSize;
+
+    /** 一级计数 首次使用时创建 */
+    private volatile ProbationSketch probation;
+    /** 是否开启一级计数 */
+    private volatile boolean probationEnabled = true;
+    /** 堆外状态 未开启为 null */
+    private volatile LimiterSlab slab;
+    /** 恢复中的快照 全部过期后丢弃 */
+    private volatile LimiterSnapshot snapshot;
+
+    public LimiterIndex(int maximumSize, long expireNanos) {
+        this(maximumSize, expireNanos,
+                Runtime.getRuntime().availableProcessors() * STRIPES_PER_CORE);
+    }
+
+    /**
+     * @param maximumSize 最大限流器数
+     * @param expireNanos 过期时长 纳秒
+     * @param concurrencyLevel 期望分段数 向上取 2 的幂, 不超过最大限流器数
+     */
+    public LimiterIndex(int maximumSize, long expireNanos, int concurrencyLevel) {
+        int stripes = 1;
+        int limit = Math.min(MAX_STRIPES, Math.max(1, maximumSize));
+        while (stripes < concurrencyLevel && stripes << 1 <= limit) {
+            stripes <<= 1;
+        }
+        this.maximumSize = maximumSize;
+        this.shift = 64 - Integer.numberOfTrailingZeros(stripes);
+        this.segments = new LimiterSegment[stripes];
+        // 余数分给前几个分段 总容量与 maximumSize 一致
+        int base = maximumSize / stripes;
+        int remainder = maximumSize % stripes;
+        for (int i = 0; i < stripes; i++) {
+            segments[i] = new LimiterSegment(base + (i < remainder ? 1 : 0), expireNanos);
+        }
+    }
+
+    /**
+     * 获得限流器 过期视为不存在
+     * @param key 组合Key
+     * @return LimiterSlot
+     */
+    public LimiterSlot get(long key) {
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * 不存在时写入
+     * @param slot 槽位
+     * @return 已存在(未过期)的槽位 或 本次写入的槽位
+     */
+    public LimiterSlot putIfAbsent(LimiterSlot slot) {
+        return segmentFor(slot.getKey()).putIfAbsent(slot);
+    }
+
+    /**
+     * 替换 当前槽位仍是 expected (或已不存在、已过期) 时换成 fresh, 在分段锁内完成
+     * @param expected 要替换的槽位
+     * @param fresh 新槽位 Key 与 expected 相同
+     * @return 本次写入的槽位 或 已被替换成的槽位
+     */
+    public LimiterSlot replace(LimiterSlot expected, LimiterSlot fresh) {
+        return segmentFor(fresh.getKey()).replace(expected, fresh);
+    }
+
+    /**
+     * 删除
+     * @param key 组合Key
+     * @return boolean
+     */
+    public boolean remove(long key) {
+        return segmentFor(key).remove(key);
+    }
+
+    /**
+     * 按条件删除 逐个分段全表扫描
+     * @param filter 条件
+     * @return 删除个数
+     */
+    public int removeIf(Predicate<LimiterSlot> filter) {
+        int count = 0;
+        for (LimiterSegment segment : segments) {
+            count += segment.removeIf(filter);
+        }
+        return count;
+    }
+
+    /**
+     * 遍历限流器 不加锁, 与写入并发时可能漏读或重复读
+     * @param action 操作
+     */
+    public void forEach(Consumer<LimiterSlot> action) {
+        for (LimiterSegment segment : segments) {
+            segment.forEach(action);
+        }
+    }
+
+    /**
+     * 限流器个数
+     * @return int
+     */
+    public int size() {
+        int size = 0;
+        for (LimiterSegment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 表容量
+     * @return int
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (LimiterSegment segment : segments) {
+            capacity += segment.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * 容量淘汰数 (累计)
+     * @return long
+     */
+    public long evictionCount() {
+        long count = 0;
+        for (LimiterSegment segment : segments) {
+            count += segment.evictionCount();
+        }
+        return count;
+    }
+
+    /**
+     * 过期清理数 (累计)
+     * @return long
+     */
+    public long expirationCount() {
+        long count = 0;
+        for (LimiterSegment segment : segments) {
+            count += segment.expirationCount();
+        }
+        return count;
+    }
+
+    /**
+     * 分段数
+     * @return int
+     */
+    public int stripes() {
+        return segments.length;
+    }
+
+    /**
+     * 开启 / 关闭堆外状态 开启时新建一张表, 之前的堆外状态丢弃
+     * @param maxKeys 预计同时保留状态的 Key 数, 小于等于0 关闭
+     */
+    public void setOffHeap(int maxKeys) {
+        this.slab = maxKeys > 0 ? new LimiterSlab(maxKeys) : null;
+    }
+
+    public boolean isOffHeap() {
+        return slab != null;
+    }
+
+    /**
+     * 堆外状态占用的字节数
+     * @return long
+     */
+    public long offHeapBytes() {
+        LimiterSlab current = slab;
+        return current != null ? current.bytes() : 0L;
+    }
+
+    /**
+     * 堆外状态容量淘汰的累计数
+     * @return long
+     */
+    public long offHeapEvictionCount() {
+        LimiterSlab current = slab;
+        return current != null ? current.evictionCount() : 0L;
+    }
+
+    /**
+     * 写入快照 只写未满的限流桶, 不阻塞请求
+     * @param file 快照文件
+     * @return 写入的记录数
+     */
+    public int writeSnapshot(Path file) throws IOException {
+        return LimiterSnapshot.write(this, file);
+    }
+
+    /**
+     * 恢复快照 只读取文件头, 记录在 Key 第一次出现时按需恢复
+     * @param file 快照文件
+     * @return 格式不对或已全部过期返回 false
+     */
+    public boolean restoreSnapshot(Path file) throws IOException {
+        LimiterSnapshot opened = LimiterSnapshot.open(file);
+        this.snapshot = opened;
+        return opened != null;
+    }
+
+    /**
+     * 设置过期判断的时钟 (每次查找读取一次) 访问时间精度为秒级, 可以使用缓存时钟
+     * @param clock 时钟
+     */
+    public void setClock(LimiterClock clock) {
+        for (LimiterSegment segment : segments) {
+            segment.setClock(clock);
+        }
+    }
+
+    /**
+     * 开启 / 关闭一级计数 关闭后新 Key 直接建限流器
+     * @param enabled 是否开启
+     */
+    public void setProbation(boolean enabled) {
+        this.probationEnabled = enabled;
+    }
+
+    public boolean isProbation() {
+        return probationEnabled;
+    }
+
+    /**
+     * 一级计数 限流器按过期时间 (分钟级) 保留, 每秒新出现的 Key 远少于最大限流器数
+     * @return ProbationSketch
+     */
+    ProbationSketch probation() {
+        ProbationSketch sketch = probation;
+        if (sketch == null) {
+            synchronized (this) {
+                sketch = probation;
+                if (sketch == null) {
+                    sketch = new ProbationSketch(maximumSize / PROBATION_RATIO);
+                    probation = sketch;
+                }
+            }
+        }
+        return sketch;
+    }
+
+    LimiterSlab slab() {
+        return slab;
+    }
+
+    /**
+     * 恢复中的快照 全部过期后丢弃
+     * @return 没有时返回 null
+     */
+    LimiterSnapshot snapshot() {
+        LimiterSnapshot current = snapshot;
+        if (current != null && current.isExpired()) {
+            snapshot = null;
+            return null;
+        }
+        return current;
+    }
+
+    // ==============
+
+    private LimiterSegment segmentFor(long key) {
+        // 分段数为 1 时 shift 为 64, Java 位移取模后等于不移位, 需要单独处理
+        return segments.length == 1 ? segments[0] : segments[(int) (key >>> shift)];
+    }
+
+}
@@ -0,0 +1,202 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.ip.IpAddress;
+import org.opsli.limiter.core.ip.IpScanner;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-09 09:52
+ * @Description: 限流器 Key 工具类
+ *
+ * 组合Key = mix64(IP哈希, 资源ID), 64位哈希冲突概率在千万级Key下可以忽略
+ * 资源(URI)驻留为 int ID, 超出上限后不再驻留 直接使用哈希(负数)
+ */
+public final class LimiterKeys {
+
+    /** 最大驻留资源数 */
+    private static final int MAX_RESOURCES = 10_000;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    /** 资源驻留表 */
+    private static final Map<String, Integer> RESOURCES = new ConcurrentHashMap<>();
+    private static final AtomicInteger RESOURCE_SEQ = new AtomicInteger();
+    /** 字符串 IP 解析用 线程内复用 */
+    private static final ThreadLocal<IpAddress> SCRATCH = ThreadLocal.withInitial(IpAddress::new);
+
+    /**
+     * 驻留资源
+     * @param resource URI
+     * @return 资源ID
+     */
+    public static int intern(String resource) {
+        Integer id = RESOURCES.get(resource);
+        if (id != null) {
+            return id;
+        }
+        if (RESOURCES.size() >= MAX_RESOURCES) {
+            return (int) hash(resource) | Integer.MIN_VALUE;
+        }
+        return RESOURCES.computeIfAbsent(resource, k -> RESOURCE_SEQ.incrementAndGet());
+    }
+
+    /**
+     * 已驻留的资源 (快照写入资源表用)
+     * @return URI -> 资源ID 只读
+     */
+    static Map<String, Integer> resources() {
+        return Collections.unmodifiableMap(RESOURCES);
+    }
+
+    /**
+     * 64位哈希 不分配对象
+     * @param s 字符串
+     * @return long
+     */
+    public static long hash(CharSequence s) {
+        long h = FNV_OFFSET;
+        for (int i = 0, len = s.length(); i < len; i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * IP 哈希 按二进制地址计算, 同一地址的不同写法 (如 IPv4 与 ::ffff:IPv4) 结果相同
+     * @param address 地址
+     * @return long
+     */
+    public static long hashIp(IpAddress address) {
+        return mix64(address.getLow() + mix64(address.getHigh() ^ GOLDEN));
+    }
+
+    /**
+     * IP 哈希 能解析为地址时与 hashIp(IpAddress) 一致, 否则按字符串计算
+     * @param ip IP
+     * @return long
+     */
+    public static long hashIp(String ip) {
+        IpAddress address = SCRATCH.get();
+        if (ip != null && IpScanner.scan(ip, 0, ip.length(), address)) {
+            return hashIp(address);
+        }
+        return hash(ip == null ? "" : ip);
+    }
+
+    /**
+     * 任意值的 64位哈希 (自定义 Key 表达式的结果)
+     * 按文本计算 与 hash(String.valueOf(value)) 一致, 规则文件中的字面量可以直接匹配 (如 "42" 与 42L)
+     * 字符串、整数、IP 直接按内容计算 不生成中间字符串, 数组 / 集合 逐个元素组合
+     * 其他类型按 toString 计算
+     * @param value 值
+     * @return long
+     */
+    public static long hashValue(Object value) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof CharSequence) {
+            return hash((CharSequence) value);
+        }
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return hashDecimal(((Number) value).longValue());
+        }
+        if (value instanceof IpAddress) {
+            return hashIp((IpAddress) value);
+        }
+        if (value instanceof Character) {
+            return mix64((FNV_OFFSET ^ (Character) value) * FNV_PRIME);
+        }
+        if (value instanceof Boolean) {
+            return hash((Boolean) value ? "true" : "false");
+        }
+        if (value instanceof Enum) {
+            return hash(((Enum<?>) value).name());
+        }
+        if (value instanceof Object[]) {
+            long h = GOLDEN;
+            for (Object element : (Object[]) value) {
+                h = combine(h, hashValue(element));
+            }
+            return h;
+        }
+        if (value instanceof Iterable) {
+            long h = GOLDEN;
+            for (Object element : (Iterable<?>) value) {
+                h = combine(h, hashValue(element));
+            }
+            return h;
+        }
+        return hash(value.toString());
+    }
+
+    /**
+     * 整数按十进制文本哈希 与 hash(Long.toString(v)) 一致, 不生成字符串
+     * @param v 整数
+     * @return long
+     */
+    public static long hashDecimal(long v) {
+        if (v == Long.MIN_VALUE) {
+            return hash(Long.toString(v));
+        }
+        long h = FNV_OFFSET;
+        if (v < 0) {
+            h = (h ^ '-') * FNV_PRIME;
+            v = -v;
+        }
+        long divisor = 1;
+        while (v / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            h ^= '0' + (v / divisor) % 10;
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * 组合两个哈希 有顺序 (a, b) 与 (b, a) 结果不同
+     * @param h 已有哈希
+     * @param value 追加的哈希
+     * @return long
+     */
+    public static long combine(long h, long value) {
+        return mix64(h * 31 + value);
+    }
+
+    /**
+     * 组合Key
+     * @param ipHash IP哈希
+     * @param resourceId 资源ID
+     * @return long
+     */
+    public static long compose(long ipHash, int resourceId) {
+        return mix64(ipHash + resourceId * GOLDEN);
+    }
+
+    /**
+     * murmur3 fmix64
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    // ==========================
+
+    private LimiterKeys(){}
+
+}
@@ -0,0 +1,103 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.bucket.LimiterBucket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-23 10:20
+ * @Description: 限流器配额
+ *
+ * 按限流桶当前状态计算 (令牌上限、剩余令牌、补满时间、下一个令牌时间), 不获取令牌
+ * 可变对象 线程内复用, 不能跨线程持有
+ */
+public final class LimiterQuota {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** 限流器 为 null 未限流 (白名单 / 黑名单) */
+    private LimiterSlot slot;
+
+    /** 令牌上限 */
+    private long limit;
+
+    /** 剩余令牌 */
+    private long remaining;
+
+    /** 距离令牌补满 纳秒 */
+    private long resetNanos;
+
+    /** 距离下一个令牌 纳秒 */
+    private long retryAfterNanos;
+
+    /**
+     * 绑定限流器
+     * @param slot 限流器 可以为 null
+     */
+    public void bind(LimiterSlot slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * 按限流桶当前状态刷新
+     * @return 未绑定限流器或不限流返回 false
+     */
+    public boolean refresh() {
+        LimiterSlot s = slot;
+        if (s == null || s.getQps() <= 0.0 || s.getBucket() == null) {
+            return false;
+        }
+        LimiterBucket bucket = s.getBucket();
+        limit = bucket.getCapacity();
+        remaining = Math.min(limit, bucket.availablePermits());
+        resetNanos = bucket.queryResetNanos();
+        retryAfterNanos = remaining > 0 ? 0L : bucket.queryWaitNanos(1);
+        return true;
+    }
+
+    public LimiterSlot getSlot() {
+        return slot;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+    public long getResetNanos() {
+        return resetNanos;
+    }
+
+    public long getRetryAfterNanos() {
+        return retryAfterNanos;
+    }
+
+    /**
+     * 距离令牌补满 秒 向上取整
+     * @return long
+     */
+    public long getResetSeconds() {
+        return toSeconds(resetNanos);
+    }
+
+    /**
+     * 距离下一个令牌 秒 向上取整, 已有令牌为 0
+     * @return long
+     */
+    public long getRetryAfterSeconds() {
+        return toSeconds(retryAfterNanos);
+    }
+
+    // ==============
+
+    private static long toSeconds(long nanos) {
+        return nanos <= 0L ? 0L : (nanos + SECOND_NANOS - 1) / SECOND_NANOS;
+    }
+
+}
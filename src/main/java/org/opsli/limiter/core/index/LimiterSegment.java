@@ -0,0 +1,426 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.clock.LimiterClock;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-09 10:05
+ * @Description: 限流器索引分段
+ *
+ * 组合Key(long) -> 限流器槽位, 开放寻址 + 线性探测
+ * 每个分段独立加锁, 由 LimiterIndex 按 Key 高位路由
+ *
+ * 读: 无锁, 不分配对象
+ * 写: 加锁, 删除使用后移(backward shift)不留墓碑
+ * 过期: 按空闲时长 (最近一次访问起), 每次写入顺带清理少量过期槽位
+ * 淘汰 (W-TinyLFU): 新槽位先进入 FIFO 窗口 (约 1% 容量), 窗口满了之后最早的槽位与主区的淘汰候选
+ *   (抽样中频率最低、最久未访问的) 比较访问频率, 频率高的留下. 只来一次的扫描 IP 在窗口里就被淘汰,
+ *   不会挤掉高频用户的限流器 (否则高频用户回来拿到的是满桶, 会放过一次突发)
+ * 频率 = 未命中次数 (FrequencySketch) + 命中次数 (记在槽位上, 命中时槽位已在缓存中, 不额外访问 Sketch)
+ *
+ * 读线程在扩容、后移时可能漏读, 漏读后会走加锁的 putIfAbsent 再次确认, 不会重复创建
+ */
+final class LimiterSegment {
+
+    /** 初始容量 */
+    private static final int INITIAL_CAPACITY = 16;
+    /** 每次写入顺带检查的槽位数 */
+    private static final int CLEAN_STEPS = 4;
+    /** 淘汰抽样数 */
+    private static final int EVICT_SAMPLES = 8;
+    /** 窗口占容量的比例 (1 / WINDOW_DIVISOR) */
+    private static final int WINDOW_DIVISOR = 100;
+    /** 访问时间最大精度 */
+    private static final long TOUCH_NANOS = 1_000_000_000L;
+
+    /** 区域: 不在表内 / 窗口 / 主区 */
+    private static final int REMOVED = 0;
+    private static final int WINDOW = 1;
+    private static final int MAIN = 2;
+
+    /** 过期时长 纳秒 */
+    private final long expireNanos;
+    /** 访问时间精度 纳秒 */
+    private final long touchNanos;
+    /** 主区容量 */
+    private final int mainMax;
+    /** 访问频率 */
+    private final FrequencySketch sketch;
+
+    /** 窗口 FIFO 环形队列 被删除的槽位出队时跳过 */
+    private final LimiterSlot[] window;
+    private int windowHead;
+    private int windowCount;
+    /** 主区槽位数 */
+    private int mainSize;
+
+    private volatile AtomicReferenceArray<LimiterSlot> table;
+    private volatile int size;
+    /** 清理游标 */
+    private int cursor;
+    /** 容量淘汰数 锁内写入 */
+    private volatile long evictions;
+    /** 过期清理数 锁内写入 */
+    private volatile long expirations;
+    /** 访问时间、过期判断的时钟 */
+    private volatile LimiterClock clock = LimiterClock.PRECISE;
+
+    LimiterSegment(int maximumSize, long expireNanos) {
+        this.expireNanos = expireNanos;
+        this.touchNanos = Math.min(TOUCH_NANOS, expireNanos >>> 3);
+        int windowMax = Math.max(1, maximumSize / WINDOW_DIVISOR);
+        this.mainMax = maximumSize - windowMax;
+        this.window = new LimiterSlot[windowMax];
+        this.sketch = new FrequencySketch(maximumSize);
+        this.table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 设置时钟 访问时间精度为秒级, 缓存时钟的误差可以忽略
+     * @param clock 时钟
+     */
+    void setClock(LimiterClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * 获得限流器 过期视为不存在, 命中与否都计入访问频率
+     * @param key 组合Key
+     * @return LimiterSlot
+     */
+    LimiterSlot get(long key) {
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        int mask = tab.length() - 1;
+        for (int i = indexFor(key, mask); ; i = (i + 1) & mask) {
+            LimiterSlot e = tab.get(i);
+            if (e == null) {
+                break;
+            }
+            if (e.getKey() == key) {
+                long now = clock.nanoTime();
+                if (isExpired(e, now)) {
+                    break;
+                }
+                e.touch(now, touchNanos);
+                e.recordHit(sketch.epoch());
+                return e;
+            }
+        }
+        sketch.increment(key);
+        return null;
+    }
+
+    /**
+     * 不存在时写入
+     * @param slot 槽位
+     * @return 已存在(未过期)的槽位 或 本次写入的槽位
+     */
+    synchronized LimiterSlot putIfAbsent(LimiterSlot slot) {
+        long now = clock.nanoTime();
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        int mask = tab.length() - 1;
+        for (int i = indexFor(slot.getKey(), mask); ; i = (i + 1) & mask) {
+            LimiterSlot e = tab.get(i);
+            if (e == null) {
+                break;
+            }
+            if (e.getKey() == slot.getKey()) {
+                if (!isExpired(e, now)) {
+                    return e;
+                }
+                // 过期 按新槽位重新进入窗口
+                deleteAt(tab, i);
+                expirations++;
+                break;
+            }
+        }
+        return add(slot, now);
+    }
+
+    /**
+     * 替换 当前槽位仍是 expected (或已不存在、已过期) 时换成 fresh
+     * 与删除后再写入不同, 并发替换同一个槽位只有一个成功, 其余拿到成功的那个
+     * @param expected 要替换的槽位
+     * @param fresh 新槽位
+     * @return 本次写入的槽位 或 已被替换成的槽位
+     */
+    synchronized LimiterSlot replace(LimiterSlot expected, LimiterSlot fresh) {
+        long now = clock.nanoTime();
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        int mask = tab.length() - 1;
+        for (int i = indexFor(fresh.getKey(), mask); ; i = (i + 1) & mask) {
+            LimiterSlot e = tab.get(i);
+            if (e == null) {
+                break;
+            }
+            if (e.getKey() == fresh.getKey()) {
+                if (e != expected && !isExpired(e, now)) {
+                    return e;
+                }
+                if (e != expected) {
+                    expirations++;
+                }
+                deleteAt(tab, i);
+                break;
+            }
+        }
+        return add(fresh, now);
+    }
+
+    /**
+     * 删除
+     * @param key 组合Key
+     * @return boolean
+     */
+    synchronized boolean remove(long key) {
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        int mask = tab.length() - 1;
+        for (int i = indexFor(key, mask); ; i = (i + 1) & mask) {
+            LimiterSlot e = tab.get(i);
+            if (e == null) {
+                return false;
+            }
+            if (e.getKey() == key) {
+                deleteAt(tab, i);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 按条件删除 全表扫描
+     * @param filter 条件
+     * @return 删除个数
+     */
+    synchronized int removeIf(Predicate<LimiterSlot> filter) {
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        int count = 0;
+        for (int i = 0; i < tab.length(); ) {
+            LimiterSlot e = tab.get(i);
+            if (e != null && filter.test(e)) {
+                // 后移后当前位置可能是新元素 需要重新检查
+                deleteAt(tab, i);
+                count++;
+            } else {
+                i++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 遍历限流器 不加锁, 与写入并发时可能漏读或重复读
+     * @param action 操作
+     */
+    void forEach(Consumer<LimiterSlot> action) {
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            LimiterSlot e = tab.get(i);
+            if (e != null) {
+                action.accept(e);
+            }
+        }
+    }
+
+    /**
+     * 限流器个数
+     * @return int
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 表容量
+     * @return int
+     */
+    int capacity() {
+        return table.length();
+    }
+
+    /**
+     * 容量淘汰数
+     * @return long
+     */
+    long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * 过期清理数
+     * @return long
+     */
+    long expirationCount() {
+        return expirations;
+    }
+
+    // ==============
+
+    private boolean isExpired(LimiterSlot e, long now) {
+        return now - e.getAccessTime() > expireNanos;
+    }
+
+    /**
+     * 从游标处检查少量槽位 清理过期
+     */
+    private void cleanUp(long now) {
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        int mask = tab.length() - 1;
+        int i = cursor & mask;
+        for (int step = 0; step < CLEAN_STEPS; step++) {
+            LimiterSlot e = tab.get(i);
+            if (e != null && isExpired(e, now)) {
+                deleteAt(tab, i);
+                expirations++;
+            } else {
+                i = (i + 1) & mask;
+            }
+        }
+        cursor = i;
+    }
+
+    /**
+     * 为新槽位腾出窗口位置
+     * 窗口满了取出最早的槽位: 主区未满直接晋升, 否则与主区淘汰候选比较访问频率, 低的淘汰
+     */
+    private void admit(long now) {
+        if (windowCount < window.length) {
+            return;
+        }
+        LimiterSlot candidate = window[windowHead];
+        window[windowHead] = null;
+        windowHead = (windowHead + 1) % window.length;
+        windowCount--;
+        if (candidate.region != WINDOW) {
+            // 已删除 / 已过期
+            return;
+        }
+        if (mainSize < mainMax) {
+            candidate.region = MAIN;
+            mainSize++;
+            return;
+        }
+        int victim = sampleMain(now);
+        if (victim >= 0 && frequency(candidate) > frequency(table.get(victim))) {
+            deleteAt(table, victim);
+            candidate.region = MAIN;
+            mainSize++;
+        } else {
+            remove(candidate.getKey());
+        }
+        evictions++;
+    }
+
+    /**
+     * 主区抽样中访问频率最低的槽位 频率相同取最久未访问的
+     * @return 下标 没有主区槽位返回 -1
+     */
+    private int sampleMain(long now) {
+        AtomicReferenceArray<LimiterSlot> tab = table;
+        int mask = tab.length() - 1;
+        int i = cursor & mask;
+        int victim = -1;
+        int frequency = 0;
+        long idle = 0L;
+        for (int seen = 0, scanned = 0; seen < EVICT_SAMPLES && scanned <= mask; scanned++) {
+            LimiterSlot e = tab.get(i);
+            if (e != null && e.region == MAIN) {
+                int f = frequency(e);
+                long d = now - e.getAccessTime();
+                if (victim < 0 || f < frequency || (f == frequency && d > idle)) {
+                    victim = i;
+                    frequency = f;
+                    idle = d;
+                }
+                seen++;
+            }
+            i = (i + 1) & mask;
+        }
+        cursor = i;
+        return victim;
+    }
+
+    private int frequency(LimiterSlot e) {
+        return Math.min(FrequencySketch.MAX_COUNT, sketch.frequency(e.getKey()) + e.hits(sketch.epoch()));
+    }
+
+    private void resize() {
+        AtomicReferenceArray<LimiterSlot> oldTab = table;
+        AtomicReferenceArray<LimiterSlot> newTab = new AtomicReferenceArray<>(oldTab.length() << 1);
+        for (int i = 0; i < oldTab.length(); i++) {
+            LimiterSlot e = oldTab.get(i);
+            if (e != null) {
+                insert(newTab, e);
+            }
+        }
+        table = newTab;
+    }
+
+    /**
+     * 新槽位进入窗口 (调用方已确认不存在)
+     */
+    private LimiterSlot add(LimiterSlot slot, long now) {
+        cleanUp(now);
+        admit(now);
+        slot.region = WINDOW;
+        window[(windowHead + windowCount++) % window.length] = slot;
+        if ((size + 1) << 1 > table.length()) {
+            resize();
+        }
+        insert(table, slot);
+        size++;
+        return slot;
+    }
+
+    private static void insert(AtomicReferenceArray<LimiterSlot> tab, LimiterSlot slot) {
+        int mask = tab.length() - 1;
+        int i = indexFor(slot.getKey(), mask);
+        while (tab.get(i) != null) {
+            i = (i + 1) & mask;
+        }
+        tab.set(i, slot);
+    }
+
+    /**
+     * 删除并后移 先写入新位置再覆盖旧位置, 只有最后一个空位会被置空
+     */
+    private void deleteAt(AtomicReferenceArray<LimiterSlot> tab, int i) {
+        LimiterSlot removed = tab.get(i);
+        if (removed.region == MAIN) {
+            mainSize--;
+        }
+        removed.region = REMOVED;
+        int mask = tab.length() - 1;
+        int hole = i;
+        int j = i;
+        for (;;) {
+            j = (j + 1) & mask;
+            LimiterSlot e = tab.get(j);
+            if (e == null) {
+                break;
+            }
+            int home = indexFor(e.getKey(), mask);
+            // home 不在 (hole, j] 区间内 才能后移到 hole
+            boolean movable = hole <= j
+                    ? (home <= hole || home > j)
+                    : (home <= hole && home > j);
+            if (movable) {
+                tab.set(hole, e);
+                hole = j;
+            }
+        }
+        tab.set(hole, null);
+        size--;
+    }
+
+    private static int indexFor(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+}
@@ -0,0 +1,265 @@
+package org.opsli.limiter.core.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-27 10:00
+ * @Description: 堆外令牌桶状态表
+ *
+ * 本地令牌桶的状态只有一个 TAT (见 TokenBucket), 速率、突发由限流器组决定, 每个 Key 只需 16 字节:
+ *   组合Key (8 字节) | TAT (8 字节), 存放在堆外 (direct ByteBuffer), 不产生堆对象, 不参与 GC 扫描
+ * 组相联: 每 8 个槽位一组 (128 字节, 两个缓存行), Key 只能落在 Key 低位选出的一组内, 组内顺序查找
+ * 组满时复用: 空槽位 > 满桶 (TAT 不晚于当前时间, 与不存在等价) > TAT 最早的槽位 (令牌最多, 记一次淘汰)
+ *   满桶随时可以复用, 不需要过期清理
+ *
+ * 组内读写加锁 (按组分段的 synchronized), Java 8 没有 VarHandle, 不使用 Unsafe 直接 CAS 堆外内存;
+ * 锁只覆盖一组 8 个槽位, 同一把锁上的竞争只来自哈希到同一分段的 Key
+ * 组合Key 为 0 表示空槽位, 真实的 0 按 1 存储 (冲突概率 2^-64)
+ */
+final class LimiterSlab {
+
+    /** 每个槽位字节数 */
+    private static final int SLOT_BYTES = 16;
+    /** 每组槽位数 */
+    private static final int WAYS = 8;
+    /** 每组字节数 */
+    private static final int GROUP_BYTES = SLOT_BYTES * WAYS;
+    /** 每页组数 (每页 128MB) ByteBuffer 单个最大 2GB */
+    private static final int PAGE_SHIFT = 20;
+    /** 最大锁数 */
+    private static final int MAX_LOCKS = 1 << 12;
+    /** 装载率 容量 / 槽位数 */
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final ByteBuffer[] pages;
+    /** 组下标掩码 */
+    private final int groupMask;
+    private final Object[] locks;
+    /** 容量淘汰数 */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxKeys 预计同时保留状态的 Key 数
+     */
+    LimiterSlab(int maxKeys) {
+        long target = (long) Math.ceil(Math.max(1, maxKeys) / (WAYS * LOAD_FACTOR));
+        int groups = 1;
+        while (groups < target && groups < 1 << 28) {
+            groups <<= 1;
+        }
+        this.groupMask = groups - 1;
+        int pageGroups = Math.min(groups, 1 << PAGE_SHIFT);
+        this.pages = new ByteBuffer[groups / pageGroups];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = ByteBuffer.allocateDirect(pageGroups * GROUP_BYTES).order(ByteOrder.nativeOrder());
+        }
+        this.locks = new Object[Math.min(groups, MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 预定令牌 与 TokenBucket#reserve 相同的 GCRA 计算, 拒绝时不写入
+     * @param key 组合Key
+     * @param intervalNanos 令牌间隔
+     * @param burstNanos 突发时长
+     * @param permits 令牌数
+     * @param maxWaitNanos 最长可接受的等待
+     * @param now 当前时间 纳秒
+     * @return 需要等待的纳秒数, -1 为拒绝
+     */
+    long reserve(long key, long intervalNanos, long burstNanos, int permits, long maxWaitNanos, long now) {
+        return reserve(key, intervalNanos, burstNanos, permits, maxWaitNanos, now, null);
+    }
+
+    /**
+     * 预定令牌 状态表中没有这个 Key 时先按 restorer 恢复 TAT (恢复的 TAT 拒绝时也写入)
+     * @param restorer 可以为 null
+     * @return 需要等待的纳秒数, -1 为拒绝
+     */
+    long reserve(long key, long intervalNanos, long burstNanos, int permits, long maxWaitNanos, long now,
+                 Restorer restorer) {
+        long stored = key == 0L ? 1L : key;
+        int group = (int) stored & groupMask;
+        ByteBuffer page = pages[group >>> PAGE_SHIFT];
+        int base = (group & (1 << PAGE_SHIFT) - 1) * GROUP_BYTES;
+        synchronized (locks[group & locks.length - 1]) {
+            int offset = find(page, base, stored);
+            long tat = now;
+            if (offset >= 0) {
+                tat = page.getLong(offset + 8);
+            } else if (restorer != null) {
+                long lead = restorer.restoreLead(key);
+                if (lead > 0L) {
+                    tat = now + lead;
+                    offset = claim(page, base, now);
+                    page.putLong(offset, stored);
+                    page.putLong(offset + 8, tat);
+                }
+            }
+            long start = tat - now > 0 ? tat : now;
+            long newTat = start + intervalNanos * permits;
+            long waitNanos = newTat - now - burstNanos;
+            if (waitNanos > maxWaitNanos) {
+                return -1L;
+            }
+            if (offset < 0) {
+                offset = claim(page, base, now);
+                page.putLong(offset, stored);
+            }
+            page.putLong(offset + 8, newTat);
+            return waitNanos > 0 ? waitNanos : 0L;
+        }
+    }
+
+    /**
+     * 归还令牌 TAT 回退 permits 个令牌间隔, 不早于当前时间
+     * @param key 组合Key
+     * @param intervalNanos 令牌间隔
+     * @param permits 令牌数
+     * @param now 当前时间 纳秒
+     */
+    void release(long key, long intervalNanos, int permits, long now) {
+        long stored = key == 0L ? 1L : key;
+        int group = (int) stored & groupMask;
+        ByteBuffer page = pages[group >>> PAGE_SHIFT];
+        int base = (group & (1 << PAGE_SHIFT) - 1) * GROUP_BYTES;
+        synchronized (locks[group & locks.length - 1]) {
+            int offset = find(page, base, stored);
+            if (offset >= 0) {
+                long newTat = page.getLong(offset + 8) - intervalNanos * permits;
+                page.putLong(offset + 8, newTat - now > 0 ? newTat : now);
+            }
+        }
+    }
+
+    /**
+     * 读取 TAT 不存在时为当前时间 (满桶)
+     * @param key 组合Key
+     * @param now 当前时间 纳秒
+     * @return long
+     */
+    long tat(long key, long now) {
+        long stored = key == 0L ? 1L : key;
+        int group = (int) stored & groupMask;
+        ByteBuffer page = pages[group >>> PAGE_SHIFT];
+        int base = (group & (1 << PAGE_SHIFT) - 1) * GROUP_BYTES;
+        synchronized (locks[group & locks.length - 1]) {
+            int offset = find(page, base, stored);
+            return offset >= 0 ? page.getLong(offset + 8) : now;
+        }
+    }
+
+    /**
+     * 遍历未满的状态 (TAT 晚于 now) 逐组加锁读取
+     * @param now 当前时间 纳秒
+     * @param visitor 操作
+     */
+    void forEachPending(long now, Visitor visitor) {
+        int pageGroups = Math.min(groupMask + 1, 1 << PAGE_SHIFT);
+        for (int group = 0; group <= groupMask; group++) {
+            ByteBuffer page = pages[group / pageGroups];
+            int base = (group % pageGroups) * GROUP_BYTES;
+            synchronized (locks[group & locks.length - 1]) {
+                for (int i = 0; i < WAYS; i++) {
+                    int offset = base + i * SLOT_BYTES;
+                    long key = page.getLong(offset);
+                    long tat = page.getLong(offset + 8);
+                    if (key != 0L && tat - now > 0) {
+                        visitor.visit(key, tat);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 槽位数
+     * @return long
+     */
+    long capacity() {
+        return (long) (groupMask + 1) * WAYS;
+    }
+
+    /**
+     * 堆外字节数
+     * @return long
+     */
+    long bytes() {
+        return capacity() * SLOT_BYTES;
+    }
+
+    /**
+     * 容量淘汰的状态累计数
+     * @return long
+     */
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 第一次写入状态表的 Key 的恢复 (快照)
+     */
+    interface Restorer {
+
+        /**
+         * @param key 组合Key
+         * @return TAT 领先量 纳秒, 没有记录返回 0
+         */
+        long restoreLead(long key);
+    }
+
+    /**
+     * 遍历操作
+     */
+    interface Visitor {
+
+        void visit(long key, long tat);
+    }
+
+    // ==============
+
+    /**
+     * 组内查找
+     * @return 槽位偏移, 不存在返回 -1
+     */
+    private static int find(ByteBuffer page, int base, long key) {
+        for (int i = 0; i < WAYS; i++) {
+            int offset = base + i * SLOT_BYTES;
+            if (page.getLong(offset) == key) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 选出复用的槽位 空槽位 > 满桶 > TAT 最早
+     */
+    private int claim(ByteBuffer page, int base, long now) {
+        int victim = base;
+        long victimLead = Long.MAX_VALUE;
+        for (int i = 0; i < WAYS; i++) {
+            int offset = base + i * SLOT_BYTES;
+            if (page.getLong(offset) == 0L) {
+                return offset;
+            }
+            long lead = page.getLong(offset + 8) - now;
+            if (lead < victimLead) {
+                victim = offset;
+                victimLead = lead;
+            }
+        }
+        if (victimLead > 0) {
+            evictions.increment();
+        }
+        return victim;
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.bucket.LimiterBucket;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-09 09:40
+ * @Description: 限流器槽位
+ *
+ * 索引中的一条记录 对应一个 (IP, URI) 组合
+ *
+ * 规则重新加载后 同一个 Key 会由新的限流器组访问, 只改了 QPS 时沿用原来的桶 (保留桶内状态)
+ *
+ * 一级计数、堆外状态的限流器不在索引中, 由限流器组每线程复用一个 (见 LimiterGroup), 只在获取它的这次调用内有效
+ */
+public class LimiterSlot {
+
+    /** 组合Key (每线程复用的限流器每次获取时重设) */
+    private long key;
+
+    /** 资源ID */
+    private int resourceId;
+
+    /** 写入时间 纳秒 */
+    private final long writeTime;
+
+    /** 最近访问时间 纳秒 (按分段的精度粗略更新) */
+    private volatile long accessTime;
+
+    /** 所在区域 分段锁内读写 */
+    int region;
+
+    /** 命中计数: 低 4 位次数 (最大 15), 高位为所属老化周期号; 并发下可能少记, 只用于估算 */
+    private int hits;
+
+    /** qps 小于等于0 不限流 */
+    private volatile double qps;
+
+    /** 限流桶 */
+    private final LimiterBucket bucket;
+
+    /** 最近一次同步的限流器组 并发下可能重复同步, 结果相同 */
+    private LimiterGroup owner;
+
+    public LimiterSlot(long key, int resourceId, double qps, LimiterBucket bucket) {
+        this(key, resourceId, qps, bucket, null);
+    }
+
+    LimiterSlot(long key, int resourceId, double qps, LimiterBucket bucket, LimiterGroup owner) {
+        this.key = key;
+        this.resourceId = resourceId;
+        this.writeTime = System.nanoTime();
+        this.accessTime = writeTime;
+        this.qps = qps;
+        this.bucket = bucket;
+        this.owner = owner;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    public int getResourceId() {
+        return resourceId;
+    }
+
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+    public long getAccessTime() {
+        return accessTime;
+    }
+
+    public double getQps() {
+        return qps;
+    }
+
+    public LimiterBucket getBucket() {
+        return bucket;
+    }
+
+    LimiterGroup getOwner() {
+        return owner;
+    }
+
+    /**
+     * 需要延后或在其他线程使用时 (异步等待) 调用: 每线程复用的限流器复制一份, 其他原样返回
+     * @return LimiterSlot
+     */
+    public LimiterSlot detach() {
+        if (bucket instanceof ProbationBucket) {
+            return new LimiterSlot(key, resourceId, qps, ((ProbationBucket) bucket).copy(), owner);
+        }
+        if (bucket instanceof SlabBucket) {
+            return new LimiterSlot(key, resourceId, qps, ((SlabBucket) bucket).copy(), owner);
+        }
+        return this;
+    }
+
+    /**
+     * 是否按该 IP 限流的限流器 (组合Key 按所属组的策略标识计算)
+     * @param ipHash IP哈希
+     * @return boolean
+     */
+    public boolean isIp(long ipHash) {
+        LimiterGroup group = owner;
+        long scope = group == null ? 0L : group.getScope();
+        return key == LimiterKeys.compose(ipHash + scope, resourceId);
+    }
+
+    /**
+     * 记录访问 距上次记录不足 granularity 时不写, 热点 Key 不会反复写同一缓存行
+     * @param now 当前时间 纳秒
+     * @param granularity 精度 纳秒
+     */
+    void touch(long now, long granularity) {
+        if (now - accessTime > granularity) {
+            accessTime = now;
+        }
+    }
+
+    /**
+     * 记录一次命中 跨过老化周期时先按周期数减半; 计数已满且周期未变时不写
+     * @param epoch 当前老化周期号
+     */
+    void recordHit(int epoch) {
+        int h = hits;
+        int count = hits(h, epoch);
+        if (count < FrequencySketch.MAX_COUNT) {
+            count++;
+        }
+        int updated = epoch << 4 | count;
+        if (updated != h) {
+            hits = updated;
+        }
+    }
+
+    /**
+     * 命中次数 按当前老化周期折算
+     * @param epoch 当前老化周期号
+     * @return [0, 15]
+     */
+    int hits(int epoch) {
+        return hits(hits, epoch);
+    }
+
+    /**
+     * 每线程复用的限流器 换成本次请求的 Key
+     */
+    void reset(long key, int resourceId) {
+        this.key = key;
+        this.resourceId = resourceId;
+    }
+
+    /**
+     * 按新的限流器组调整 QPS 桶内状态不变
+     * @param group 限流器组
+     */
+    void sync(LimiterGroup group) {
+        double newQps = group.getQps();
+        if (bucket != null && newQps != qps) {
+            bucket.setRate(newQps);
+            qps = newQps;
+        }
+        owner = group;
+    }
+
+    private static int hits(int h, int epoch) {
+        // 周期号只保留 28 位, 相减后取低 28 位
+        int age = (epoch - (h >>> 4)) & 0x0FFFFFFF;
+        return age >= 4 ? 0 : (h & FrequencySketch.MAX_COUNT) >>> age;
+    }
+}
@@ -0,0 +1,399 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.bucket.LeasedBucket;
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.bucket.TokenBucket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-28 10:00
+ * @Description: 限流状态快照
+ *
+ * 只保存未满的限流桶 (满桶与不存在等价), 重启后按剩余时长恢复, 避免重启瞬间所有客户端拿到满桶
+ * nanoTime 跨进程无意义, 每条记录存 距离补满的纳秒数 + 已用令牌数, 文件头记录写入时的墙上时间,
+ * 恢复时扣除停机时长
+ *
+ * 文件格式 (大端):
+ *   头: 魔数 int | 版本 int | 写入时间 毫秒 long | 最长剩余 纳秒 long | 资源数 int | 表长 int (2 的幂)
+ *   资源表: 资源ID int | 长度 short | URI (UTF-8)    资源ID 按驻留顺序分配, 恢复时按 ID 顺序重新驻留
+ *   记录表: 开放寻址 (线性探测) 每条 24 字节: 组合Key long | 资源ID int | 已用令牌 int | 剩余 纳秒 long
+ *           组合Key 为 0 表示空, 堆外状态的记录没有资源ID (0) 与已用令牌 (0), 只有剩余时长 (TAT 领先量)
+ *
+ * 写入: 两遍扫描 (计数、写入), 先写临时文件 (内存映射) 再原子改名, 不阻塞请求线程, 期间新增的记录可能漏写;
+ *   上次快照中还未恢复的记录一并写入
+ * 恢复: 启动时只映射文件、读文件头与资源表, 记录在 Key 第一次出现时按需查找 (操作系统按页读入),
+ *   启动耗时与 Key 数无关; 每条记录只恢复一次, 所有记录过期后丢弃快照
+ * 资源ID 与快照不一致 (恢复前已有其他资源驻留) 的记录跳过, 避免记到别的资源上
+ */
+final class LimiterSnapshot {
+
+    /** 魔数 OLSN */
+    private static final int MAGIC = 0x4F4C534E;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int ENTRY_BYTES = 24;
+    /** 表的最大装载率 超过后不再写入 */
+    private static final double MAX_LOAD = 0.75;
+
+    private final ByteBuffer buffer;
+    /** 写入时间 毫秒 */
+    private final long writeMillis;
+    /** 全部记录过期的时间 毫秒 */
+    private final long expireMillis;
+    private final int tableOffset;
+    private final int tableMask;
+    /** 资源ID 与当前进程不一致的资源 */
+    private final Set<Integer> mismatched;
+    /** 已恢复的记录 */
+    private final AtomicLongArray restored;
+
+    private LimiterSnapshot(ByteBuffer buffer, long writeMillis, long expireMillis, int tableOffset,
+                            int tableSize, Set<Integer> mismatched) {
+        this.buffer = buffer;
+        this.writeMillis = writeMillis;
+        this.expireMillis = expireMillis;
+        this.tableOffset = tableOffset;
+        this.tableMask = tableSize - 1;
+        this.mismatched = mismatched;
+        this.restored = new AtomicLongArray((tableSize + 63) >>> 6);
+    }
+
+    /**
+     * 写入快照
+     * @param index 限流器索引
+     * @param file 快照文件
+     * @return 写入的记录数
+     */
+    static int write(LimiterIndex index, Path file) throws IOException {
+        long wallMillis = System.currentTimeMillis();
+        LimiterSlab slab = index.slab();
+        LimiterSnapshot previous = index.snapshot();
+
+        // 第一遍 计数
+        int[] count = new int[1];
+        index.forEach(slot -> {
+            if (pending(slot.getBucket())) {
+                count[0]++;
+            }
+        });
+        if (slab != null) {
+            slab.forEachPending(System.nanoTime(), (key, tat) -> count[0]++);
+        }
+        if (previous != null) {
+            previous.forEachPending((key, resourceId, used, remaining) -> count[0]++);
+        }
+        int tableSize = 2;
+        while (tableSize < count[0] * 2L && tableSize < 1 << 26) {
+            tableSize <<= 1;
+        }
+
+        Map<Integer, byte[]> resources = new TreeMap<>();
+        int resourceBytes = 0;
+        for (Map.Entry<String, Integer> e : LimiterKeys.resources().entrySet()) {
+            byte[] bytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length <= Short.MAX_VALUE) {
+                resources.put(e.getValue(), bytes);
+                resourceBytes += 4 + 2 + bytes.length;
+            }
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long size = HEADER_BYTES + resourceBytes + (long) tableSize * ENTRY_BYTES;
+        Writer writer;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putInt(VERSION).putLong(wallMillis).putLong(0L)
+                    .putInt(resources.size()).putInt(tableSize);
+            for (Map.Entry<Integer, byte[]> e : resources.entrySet()) {
+                out.putInt(e.getKey()).putShort((short) e.getValue().length).put(e.getValue());
+            }
+
+            // 第二遍 写入
+            writer = new Writer(out, out.position(), tableSize);
+            index.forEach(slot -> {
+                LimiterBucket bucket = slot.getBucket();
+                if (pending(bucket)) {
+                    long used = bucket.getCapacity() - bucket.availablePermits();
+                    writer.put(slot.getKey(), slot.getResourceId(), (int) Math.max(1L, Math.min(Integer.MAX_VALUE, used)),
+                            bucket.queryResetNanos());
+                }
+            });
+            if (slab != null) {
+                long now = System.nanoTime();
+                slab.forEachPending(now, (key, tat) -> writer.put(key, 0, 0, tat - now));
+            }
+            // 上次快照中还没出现过的 Key 继续保留 (已写入的 Key 不覆盖)
+            if (previous != null) {
+                previous.forEachPending(writer::put);
+            }
+            out.putLong(16, writer.maxRemaining);
+            out.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return writer.count;
+    }
+
+    /**
+     * 打开快照 只读文件头与资源表, 并按快照的资源ID 顺序驻留资源
+     * @param file 快照文件
+     * @return 格式不对或已全部过期返回 null
+     */
+    static LimiterSnapshot open(Path file) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            return null;
+        }
+        long writeMillis = in.getLong();
+        long maxRemaining = in.getLong();
+        int resourceCount = in.getInt();
+        int tableSize = in.getInt();
+        if (tableSize < 2 || Integer.bitCount(tableSize) != 1) {
+            return null;
+        }
+        long expireMillis = writeMillis + TimeUnit.NANOSECONDS.toMillis(maxRemaining) + 1;
+        if (System.currentTimeMillis() >= expireMillis) {
+            return null;
+        }
+
+        Set<Integer> mismatched = new HashSet<>();
+        for (int i = 0; i < resourceCount; i++) {
+            int id = in.getInt();
+            byte[] bytes = new byte[in.getShort()];
+            in.get(bytes);
+            String resource = new String(bytes, StandardCharsets.UTF_8);
+            if (LimiterKeys.intern(resource) != id) {
+                mismatched.add(id);
+            }
+        }
+        int tableOffset = in.position();
+        if ((long) tableOffset + (long) tableSize * ENTRY_BYTES > in.capacity()) {
+            return null;
+        }
+        return new LimiterSnapshot(in, writeMillis, expireMillis, tableOffset, tableSize, mismatched);
+    }
+
+    /**
+     * 是否已全部过期
+     * @return boolean
+     */
+    boolean isExpired() {
+        return System.currentTimeMillis() >= expireMillis;
+    }
+
+    /**
+     * 是否有这个 Key 未恢复的记录 不标记
+     * @param key 组合Key
+     * @param resourceId 资源ID
+     * @return boolean
+     */
+    boolean contains(long key, int resourceId) {
+        int i = find(key, resourceId);
+        return i >= 0 && !isRestored(i);
+    }
+
+    /**
+     * 恢复到新建的限流桶 按剩余时长比例预扣已用令牌
+     * @param key 组合Key
+     * @param resourceId 资源ID
+     * @param bucket 新建的限流桶
+     */
+    void restore(long key, int resourceId, LimiterBucket bucket) {
+        int i = take(key, resourceId);
+        if (i < 0) {
+            return;
+        }
+        int offset = tableOffset + i * ENTRY_BYTES;
+        long reset = buffer.getLong(offset + 16);
+        long remaining = remaining(reset);
+        if (remaining <= 0L) {
+            return;
+        }
+        int used = buffer.getInt(offset + 12);
+        long charge;
+        if (used > 0) {
+            charge = (long) Math.ceil(used * ((double) remaining / reset));
+        } else if (bucket instanceof TokenBucket) {
+            // 堆外状态的记录 只有 TAT 领先量
+            charge = (long) Math.ceil((double) remaining / ((TokenBucket) bucket).getIntervalNanos());
+        } else {
+            return;
+        }
+        charge = Math.min(charge, bucket.getCapacity());
+        if (charge > 0L) {
+            bucket.reserve((int) charge, 0L);
+        }
+    }
+
+    /**
+     * 恢复到堆外状态
+     * @param key 组合Key
+     * @param resourceId 资源ID
+     * @return 剩余时长 纳秒 (TAT 领先量), 没有记录返回 0
+     */
+    long restoreLead(long key, int resourceId) {
+        int i = take(key, resourceId);
+        if (i < 0) {
+            return 0L;
+        }
+        return Math.max(0L, remaining(buffer.getLong(tableOffset + i * ENTRY_BYTES + 16)));
+    }
+
+    // ==============
+
+    /**
+     * 遍历未恢复、未过期的记录 跳过资源ID 不一致的记录
+     */
+    private void forEachPending(Visitor visitor) {
+        for (int i = 0; i <= tableMask; i++) {
+            int offset = tableOffset + i * ENTRY_BYTES;
+            long key = buffer.getLong(offset);
+            if (key == 0L || isRestored(i)) {
+                continue;
+            }
+            int id = buffer.getInt(offset + 8);
+            if (id == 0 ? !mismatched.isEmpty() : mismatched.contains(id)) {
+                continue;
+            }
+            long remaining = remaining(buffer.getLong(offset + 16));
+            if (remaining > 0L) {
+                visitor.visit(key, id, buffer.getInt(offset + 12), remaining);
+            }
+        }
+    }
+
+    /**
+     * 扣除停机时长后的剩余时长
+     */
+    private long remaining(long reset) {
+        long elapsed = Math.max(0L, System.currentTimeMillis() - writeMillis);
+        return reset - TimeUnit.MILLISECONDS.toNanos(elapsed);
+    }
+
+    /**
+     * 查找并标记为已恢复
+     * @return 记录下标, 没有或已恢复返回 -1
+     */
+    private int take(long key, int resourceId) {
+        int i = find(key, resourceId);
+        if (i < 0) {
+            return -1;
+        }
+        for (;;) {
+            long word = restored.get(i >>> 6);
+            long bit = 1L << i;
+            if ((word & bit) != 0L) {
+                return -1;
+            }
+            if (restored.compareAndSet(i >>> 6, word, word | bit)) {
+                return i;
+            }
+        }
+    }
+
+    private boolean isRestored(int i) {
+        return (restored.get(i >>> 6) & 1L << i) != 0L;
+    }
+
+    /**
+     * 线性探测
+     * @return 记录下标, 没有或资源ID 不一致返回 -1
+     */
+    private int find(long key, int resourceId) {
+        long stored = key == 0L ? 1L : key;
+        for (int i = (int) stored & tableMask; ; i = (i + 1) & tableMask) {
+            int offset = tableOffset + i * ENTRY_BYTES;
+            long k = buffer.getLong(offset);
+            if (k == 0L) {
+                return -1;
+            }
+            if (k == stored) {
+                int id = buffer.getInt(offset + 8);
+                // 堆外状态的记录没有资源ID, 只在资源ID 全部一致时使用
+                boolean valid = id == 0 ? mismatched.isEmpty() : !mismatched.contains(id);
+                return valid && (id == 0 || id == resourceId) ? i : -1;
+            }
+        }
+    }
+
+    /**
+     * 未满的限流桶 分布式租约的状态在共享存储中, 不保存
+     */
+    private static boolean pending(LimiterBucket bucket) {
+        return bucket != null && !(bucket instanceof LeasedBucket) && bucket.queryResetNanos() > 0L;
+    }
+
+    /**
+     * 记录遍历
+     */
+    private interface Visitor {
+
+        void visit(long key, int resourceId, int used, long remaining);
+    }
+
+    /**
+     * 记录表写入
+     */
+    private static final class Writer {
+
+        private final ByteBuffer out;
+        private final int tableOffset;
+        private final int tableMask;
+        private final int maxCount;
+        private int count;
+        private long maxRemaining;
+
+        Writer(ByteBuffer out, int tableOffset, int tableSize) {
+            this.out = out;
+            this.tableOffset = tableOffset;
+            this.tableMask = tableSize - 1;
+            this.maxCount = (int) (tableSize * MAX_LOAD);
+        }
+
+        void put(long key, int resourceId, int used, long remaining) {
+            if (remaining <= 0L || count >= maxCount) {
+                return;
+            }
+            long stored = key == 0L ? 1L : key;
+            for (int i = (int) stored & tableMask; ; i = (i + 1) & tableMask) {
+                int offset = tableOffset + i * ENTRY_BYTES;
+                long k = out.getLong(offset);
+                if (k == stored) {
+                    return;
+                }
+                if (k == 0L) {
+                    out.putLong(offset, stored).putInt(offset + 8, resourceId).putInt(offset + 12, used)
+                            .putLong(offset + 16, remaining);
+                    count++;
+                    maxRemaining = Math.max(maxRemaining, remaining);
+                    return;
+                }
+            }
+        }
+    }
+
+}
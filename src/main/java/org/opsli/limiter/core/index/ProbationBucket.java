@@ -0,0 +1,157 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.bucket.LimiterBucket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-26 10:50
+ * @Description: 未建桶 Key 的限流桶 (一级)
+ *
+ * 不写入索引, 由限流器组每线程复用一个, 每次获取时换成本次请求的 Key (异步等待时复制一份)
+ * 获取令牌时在一级计数中计数, 未超过阈值直接放行; 超过时建立真正的限流桶 (预扣一级已放行的令牌),
+ * 之后本对象的所有操作转给该桶, 同一个 Key 的后续请求直接命中索引中的桶
+ */
+final class ProbationBucket implements LimiterBucket {
+
+    private final LimiterGroup group;
+    private long key;
+    private int resourceId;
+    private String resource;
+
+    /** 建立的限流桶 */
+    private volatile LimiterBucket promoted;
+
+    ProbationBucket(LimiterGroup group) {
+        this.group = group;
+    }
+
+    /**
+     * 换成本次请求的 Key
+     */
+    void reset(long key, int resourceId, String resource) {
+        this.key = key;
+        this.resourceId = resourceId;
+        this.resource = resource;
+        this.promoted = null;
+    }
+
+    /**
+     * 复制 (带上已建立的限流桶)
+     */
+    ProbationBucket copy() {
+        ProbationBucket copy = new ProbationBucket(group);
+        copy.reset(key, resourceId, resource);
+        copy.promoted = promoted;
+        return copy;
+    }
+
+    @Override
+    public double getRate() {
+        LimiterBucket bucket = promoted;
+        return bucket != null ? bucket.getRate() : group.getQps();
+    }
+
+    @Override
+    public void setRate(double qps) {
+        LimiterBucket bucket = promoted;
+        if (bucket != null) {
+            bucket.setRate(qps);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        LimiterBucket bucket = admit(1);
+        return bucket == null || bucket.tryAcquire();
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        LimiterBucket bucket = admit(permits);
+        return bucket == null || bucket.tryAcquire(permits, timeout, unit);
+    }
+
+    @Override
+    public boolean tryAcquireUntil(int permits, long deadlineNanos) {
+        LimiterBucket bucket = admit(permits);
+        return bucket == null || bucket.tryAcquireUntil(permits, deadlineNanos);
+    }
+
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        LimiterBucket bucket = admit(permits);
+        return bucket == null ? 0L : bucket.reserve(permits, maxWaitNanos);
+    }
+
+    @Override
+    public long queryWaitNanos(int permits) {
+        LimiterBucket bucket = promoted;
+        if (bucket != null) {
+            return bucket.queryWaitNanos(permits);
+        }
+        long lacking = group.probationCount(key) + permits - group.getProbationThreshold();
+        return lacking <= 0L ? 0L : nanosFor(lacking);
+    }
+
+    /**
+     * 一级计数不能扣减 只归还建立的限流桶
+     */
+    @Override
+    public void release(int permits) {
+        LimiterBucket bucket = promoted;
+        if (bucket != null) {
+            bucket.release(permits);
+        }
+    }
+
+    @Override
+    public long getCapacity() {
+        LimiterBucket bucket = promoted;
+        return bucket != null ? bucket.getCapacity() : group.getBucketCapacity();
+    }
+
+    @Override
+    public long availablePermits() {
+        LimiterBucket bucket = promoted;
+        if (bucket != null) {
+            return bucket.availablePermits();
+        }
+        return Math.max(0L, group.getBucketCapacity() - group.probationCount(key));
+    }
+
+    @Override
+    public long queryResetNanos() {
+        LimiterBucket bucket = promoted;
+        return bucket != null ? bucket.queryResetNanos() : nanosFor(group.probationCount(key));
+    }
+
+    // ==============
+
+    /**
+     * 一级计数
+     * @return 一级放行返回 null, 否则返回需要继续获取令牌的限流桶
+     */
+    private LimiterBucket admit(int permits) {
+        LimiterBucket bucket = promoted;
+        if (bucket != null) {
+            return bucket;
+        }
+        int count = group.probationAdd(key, permits);
+        if (count <= group.getProbationThreshold()) {
+            return null;
+        }
+        // 并发建桶时索引只保留一个, 预扣只在写入索引的那次进行
+        bucket = group.promote(key, resourceId, resource, count - permits).getBucket();
+        promoted = bucket;
+        return bucket;
+    }
+
+    private long nanosFor(long permits) {
+        return (long) Math.ceil(permits * (double) TimeUnit.SECONDS.toNanos(1) / group.getQps());
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.opsli.limiter.core.index;
+
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.bucket.TokenBucket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.index
+ * @Author: Parker
+ * @CreateTime: 2021-01-27 10:40
+ * @Description: 堆外状态的令牌桶
+ *
+ * 不写入索引, 由限流器组每线程复用一个, 每次获取时换成本次请求的 Key (异步等待时复制一份);
+ * 状态 (TAT) 在 LimiterSlab 中, 速率、突发、时钟取限流器组的参数
+ * Key 第一次出现 (状态表中没有) 时按快照恢复, 之后的请求不再查快照
+ * 规则调整 QPS 后新组直接按新速率计算, 已有的 TAT 保留 (欠下的等待时长不变)
+ */
+final class SlabBucket implements LimiterBucket, LimiterSlab.Restorer {
+
+    private final LimiterGroup group;
+    private LimiterSlab slab;
+    private long key;
+    private int resourceId;
+
+    SlabBucket(LimiterGroup group) {
+        this.group = group;
+    }
+
+    /**
+     * 换成本次请求的 Key
+     */
+    void reset(LimiterSlab slab, long key, int resourceId) {
+        this.slab = slab;
+        this.key = key;
+        this.resourceId = resourceId;
+    }
+
+    /**
+     * 复制
+     */
+    SlabBucket copy() {
+        SlabBucket copy = new SlabBucket(group);
+        copy.reset(slab, key, resourceId);
+        return copy;
+    }
+
+    @Override
+    public double getRate() {
+        return group.getQps();
+    }
+
+    /**
+     * 速率由限流器组决定
+     */
+    @Override
+    public void setRate(double qps) {
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return reserve(1, 0L) >= 0;
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        long waitNanos = reserve(permits, Math.max(0L, unit.toNanos(timeout)));
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            TokenBucket.sleepUninterruptibly(waitNanos);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAcquireUntil(int permits, long deadlineNanos) {
+        for (;;) {
+            if (reserve(permits, 0L) >= 0) {
+                return true;
+            }
+            long waitNanos = waitNanos(permits, group.getClock().nanoTime());
+            // 截止时间按 System.nanoTime 计算
+            if (System.nanoTime() + waitNanos - deadlineNanos > 0) {
+                return false;
+            }
+            TokenBucket.sleepUninterruptibly(waitNanos);
+        }
+    }
+
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Requested permits (" + permits + ") must be positive");
+        }
+        return slab.reserve(key, group.getIntervalNanos(), group.getBurstNanos(), permits, maxWaitNanos,
+                group.getClock().nanoTime(), this);
+    }
+
+    @Override
+    public long queryWaitNanos(int permits) {
+        return waitNanos(permits, group.getClock().nanoTime());
+    }
+
+    @Override
+    public void release(int permits) {
+        slab.release(key, group.getIntervalNanos(), permits, group.getClock().nanoTime());
+    }
+
+    @Override
+    public long restoreLead(long key) {
+        return group.restoreLead(key, resourceId);
+    }
+
+    @Override
+    public long getCapacity() {
+        return group.getBucketCapacity();
+    }
+
+    @Override
+    public long availablePermits() {
+        long interval = group.getIntervalNanos();
+        long now = group.getClock().nanoTime();
+        long tat = slab.tat(key, now);
+        long start = tat - now > 0 ? tat : now;
+        long available = (now + group.getBurstNanos() - start) / interval;
+        return Math.max(0L, Math.min(available, getCapacity()));
+    }
+
+    @Override
+    public long queryResetNanos() {
+        long now = group.getClock().nanoTime();
+        return Math.max(0L, slab.tat(key, now) - now);
+    }
+
+    // ==============
+
+    private long waitNanos(int permits, long now) {
+        long tat = slab.tat(key, now);
+        long start = tat - now > 0 ? tat : now;
+        return Math.max(0L, start + group.getIntervalNanos() * permits - now - group.getBurstNanos());
+    }
+
+}
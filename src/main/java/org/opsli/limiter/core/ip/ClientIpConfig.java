@@ -0,0 +1,40 @@
+package org.opsli.limiter.core.ip;
+
+import org.opsli.limiter.core.util.IPUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-17 14:00
+ * @Description: 客户端 IP 解析配置
+ *
+ * opsli.limiter.ip.headers          转发头 按顺序读取, 逗号分隔
+ * opsli.limiter.ip.trusted-proxies  可信代理网段, 逗号分隔, * 为信任所有来源
+ */
+@Configuration
+public class ClientIpConfig {
+
+    @Bean
+    public ClientIpResolver clientIpResolver(@Value("${opsli.limiter.ip.headers:}") String[] headers,
+                                             @Value("${opsli.limiter.ip.trusted-proxies:}") String[] trustedProxies) {
+        ClientIpResolver resolver = new ClientIpResolver(
+                orDefault(headers, ClientIpResolver.DEFAULT_HEADERS),
+                orDefault(trustedProxies, ClientIpResolver.DEFAULT_TRUSTED_PROXIES));
+        IPUtil.setResolver(resolver);
+        return resolver;
+    }
+
+    // ==============
+
+    private static List<String> orDefault(String[] values, List<String> defaults) {
+        return values == null || values.length == 0 ? defaults : Arrays.asList(values);
+    }
+
+}
@@ -0,0 +1,138 @@
+package org.opsli.limiter.core.ip;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-17 11:00
+ * @Description: 客户端 IP 解析
+ *
+ * 只有直连地址 (remoteAddr) 是可信代理时才读取转发头, 防止客户端伪造请求头绕过限流
+ * 转发头按配置顺序读取 (构造时固定为数组), 列表型的头 (X-Forwarded-For) 从右往左跳过可信代理,
+ * 第一个不可信的地址即为客户端; 全部是可信代理时取最左侧的地址
+ *
+ * 可信代理配置为 "*" 时信任所有来源 (旧版行为, 直接取第一个合法地址)
+ */
+public class ClientIpResolver {
+
+    /** 默认转发头 */
+    public static final List<String> DEFAULT_HEADERS = Arrays.asList(
+            "X-Forwarded-For",
+            "X-Real-IP",
+            "Proxy-Client-IP",
+            "WL-Proxy-Client-IP");
+
+    /** 默认可信代理 回环 + 内网 */
+    public static final List<String> DEFAULT_TRUSTED_PROXIES = Arrays.asList(
+            "127.0.0.0/8",
+            "::1",
+            "10.0.0.0/8",
+            "172.16.0.0/12",
+            "192.168.0.0/16",
+            "fc00::/7");
+
+    /** 信任所有来源 */
+    public static final String TRUST_ALL = "*";
+
+    /** 转发头 按顺序读取 */
+    private final String[] headers;
+
+    /** 可信代理网段 */
+    private final IpRange[] trustedProxies;
+
+    /** 信任所有来源 */
+    private final boolean trustAll;
+
+    public ClientIpResolver() {
+        this(DEFAULT_HEADERS, DEFAULT_TRUSTED_PROXIES);
+    }
+
+    public ClientIpResolver(List<String> headers, List<String> trustedProxies) {
+        this.headers = headers.toArray(new String[0]);
+        this.trustAll = trustedProxies.contains(TRUST_ALL);
+        this.trustedProxies = trustAll ? new IpRange[0] : trustedProxies.stream()
+                .map(IpRange::parse)
+                .toArray(IpRange[]::new);
+    }
+
+    /**
+     * 解析客户端 IP
+     * @param request 请求
+     * @param out 解析结果
+     * @return 是否解析成功
+     */
+    public boolean resolve(HttpServletRequest request, IpAddress out) {
+        String remoteAddr = request.getRemoteAddr();
+        boolean remoteValid = remoteAddr != null && IpScanner.scan(remoteAddr, 0, remoteAddr.length(), out);
+        // 直连的不是代理 转发头不可信
+        if (remoteValid && !isTrusted(out)) {
+            return true;
+        }
+        for (String header : headers) {
+            String value = request.getHeader(header);
+            if (value != null && scanForwarded(value, out)) {
+                return true;
+            }
+        }
+        return remoteValid && IpScanner.scan(remoteAddr, 0, remoteAddr.length(), out);
+    }
+
+    /**
+     * 解析客户端 IP 无法解析时返回 remoteAddr 原值
+     * @param request 请求
+     * @return String
+     */
+    public String resolve(HttpServletRequest request) {
+        IpAddress address = new IpAddress();
+        return resolve(request, address) ? address.toString() : request.getRemoteAddr();
+    }
+
+    /**
+     * 是否可信代理
+     * @param address 地址
+     * @return boolean
+     */
+    public boolean isTrusted(IpAddress address) {
+        if (trustAll) {
+            return true;
+        }
+        for (IpRange range : trustedProxies) {
+            if (range.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ==============
+
+    /**
+     * 从右往左扫描逗号分隔的地址列表
+     */
+    private boolean scanForwarded(String value, IpAddress out) {
+        int leftStart = -1;
+        int leftEnd = -1;
+        int end = value.length();
+        while (end >= 0) {
+            int start = end - 1;
+            while (start >= 0 && value.charAt(start) != ',') {
+                start--;
+            }
+            if (IpScanner.scan(value, start + 1, end, out)) {
+                if (!isTrusted(out)) {
+                    return true;
+                }
+                leftStart = start + 1;
+                leftEnd = end;
+            }
+            end = start;
+        }
+        // 全部是可信代理 取最左侧的地址
+        return leftStart >= 0 && IpScanner.scan(value, leftStart, leftEnd, out);
+    }
+
+}
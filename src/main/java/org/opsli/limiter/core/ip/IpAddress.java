@@ -0,0 +1,158 @@
+package org.opsli.limiter.core.ip;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-17 09:30
+ * @Description: IP 地址
+ *
+ * 128 位地址拆成两个 long, IPv4 按 IPv4 映射地址 (::ffff:a.b.c.d) 存储, 与 IPv6 统一比较
+ * 可变对象, 解析时直接写入, 热路径上配合线程本地实例复用, 不分配对象
+ */
+public final class IpAddress {
+
+    /** IPv4 映射地址前缀 ::ffff:0:0/96 */
+    static final long IPV4_MAPPED = 0x0000FFFF00000000L;
+
+    /** 高 64 位 */
+    private long high;
+
+    /** 低 64 位 */
+    private long low;
+
+    /**
+     * 解析 无法解析返回 null
+     * @param text 地址
+     * @return IpAddress
+     */
+    public static IpAddress parse(String text) {
+        IpAddress address = new IpAddress();
+        return text != null && IpScanner.scan(text, 0, text.length(), address) ? address : null;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * 是否 IPv4
+     * @return boolean
+     */
+    public boolean isIpv4() {
+        return high == 0L && (low & 0xFFFFFFFF00000000L) == IPV4_MAPPED;
+    }
+
+    /**
+     * IPv4 地址 (isIpv4 为 true 时有效)
+     * @return int
+     */
+    public int toIpv4() {
+        return (int) low;
+    }
+
+    /**
+     * 复制为新对象 线程内复用的地址需要带入异步回调时使用
+     * @return IpAddress
+     */
+    public IpAddress copy() {
+        IpAddress copy = new IpAddress();
+        copy.set(high, low);
+        return copy;
+    }
+
+    /**
+     * 复制
+     * @param other 源地址
+     */
+    public void set(IpAddress other) {
+        set(other.high, other.low);
+    }
+
+    /**
+     * 按高低 64 位设置
+     * @param high 高 64 位
+     * @param low 低 64 位
+     */
+    public void set(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    void setIpv4(int ipv4) {
+        set(0L, IPV4_MAPPED | (ipv4 & 0xFFFFFFFFL));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpAddress)) {
+            return false;
+        }
+        IpAddress that = (IpAddress) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = high * 31 + low;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * IPv4 点分十进制, IPv6 按 RFC 5952 压缩最长的连续零组
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(39);
+        if (isIpv4()) {
+            int v = toIpv4();
+            return sb.append(v >>> 24).append('.').append((v >>> 16) & 0xff).append('.')
+                    .append((v >>> 8) & 0xff).append('.').append(v & 0xff).toString();
+        }
+        // 最长的连续零组 (至少 2 组)
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (group(i) != 0) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < 8 && group(j) == 0) {
+                j++;
+            }
+            if (j - i > bestLength) {
+                bestStart = i;
+                bestLength = j - i;
+            }
+            i = j;
+        }
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                sb.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(group(i)));
+        }
+        return sb.toString();
+    }
+
+    // ==============
+
+    private int group(int i) {
+        long word = i < 4 ? high : low;
+        return (int) (word >>> (16 * (3 - (i & 3)))) & 0xffff;
+    }
+
+}
@@ -0,0 +1,247 @@
+package org.opsli.limiter.core.ip;
+
+import java.util.Arrays;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-18 09:30
+ * @Description: IP 前缀树
+ *
+ * 128 位路径压缩二叉基数树 (Patricia), 节点按下标存放在平行数组中, 不为每个节点创建对象
+ * 每个节点 = 两个 long 前缀 + 前缀长度 + 左右子节点 + 值, 约 30 字节
+ *
+ * 查询沿地址的比特位自顶向下, 最多经过 129 个节点, 每个节点一次掩码比较, 不分配对象
+ * 构建后只读, 可以被多个线程同时查询; 修改需重新构建 (写时复制)
+ */
+public final class IpPrefixTrie {
+
+    /** 无值 / 无子节点 */
+    public static final int NONE = -1;
+    /** 最大匹配深度 (/0 ~ /128) */
+    public static final int MAX_DEPTH = 129;
+
+    private final long[] high;
+    private final long[] low;
+    private final short[] length;
+    private final int[] zero;
+    private final int[] one;
+    private final int[] value;
+    private final int size;
+
+    private IpPrefixTrie(Builder builder) {
+        int n = builder.nodes;
+        this.high = Arrays.copyOf(builder.high, n);
+        this.low = Arrays.copyOf(builder.low, n);
+        this.length = Arrays.copyOf(builder.length, n);
+        this.zero = Arrays.copyOf(builder.zero, n);
+        this.one = Arrays.copyOf(builder.one, n);
+        this.value = Arrays.copyOf(builder.value, n);
+        this.size = builder.size;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 前缀个数
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 节点个数
+     * @return int
+     */
+    public int nodeCount() {
+        return high.length;
+    }
+
+    /**
+     * 最长前缀匹配
+     * @param address 地址
+     * @return 值 无匹配为 NONE
+     */
+    public int longestMatch(IpAddress address) {
+        int found = NONE;
+        long h = address.getHigh();
+        long l = address.getLow();
+        int node = 0;
+        while (node != NONE && matches(node, h, l)) {
+            if (value[node] != NONE) {
+                found = value[node];
+            }
+            node = next(node, h, l);
+        }
+        return found;
+    }
+
+    /**
+     * 所有匹配的前缀 由短到长
+     * @param address 地址
+     * @param out 匹配到的值 长度至少 MAX_DEPTH
+     * @return 匹配个数
+     */
+    public int matchAll(IpAddress address, int[] out) {
+        int count = 0;
+        long h = address.getHigh();
+        long l = address.getLow();
+        int node = 0;
+        while (node != NONE && matches(node, h, l)) {
+            if (value[node] != NONE) {
+                out[count++] = value[node];
+            }
+            node = next(node, h, l);
+        }
+        return count;
+    }
+
+    // ==============
+
+    private boolean matches(int node, long h, long l) {
+        int len = length[node];
+        return (h & maskHigh(len)) == high[node] && (l & maskLow(len)) == low[node];
+    }
+
+    private int next(int node, long h, long l) {
+        int len = length[node];
+        if (len >= 128) {
+            return NONE;
+        }
+        return bit(h, l, len) == 0 ? zero[node] : one[node];
+    }
+
+    static long maskHigh(int len) {
+        return len <= 0 ? 0L : (len >= 64 ? -1L : -1L << (64 - len));
+    }
+
+    static long maskLow(int len) {
+        return len <= 64 ? 0L : (len >= 128 ? -1L : -1L << (128 - len));
+    }
+
+    /**
+     * 第 i 位 (从最高位开始)
+     */
+    static int bit(long h, long l, int i) {
+        return i < 64 ? (int) (h >>> (63 - i)) & 1 : (int) (l >>> (127 - i)) & 1;
+    }
+
+    /**
+     * 两个前缀的公共前缀长度
+     */
+    static int commonLength(long h1, long l1, long h2, long l2, int max) {
+        int common;
+        long dh = h1 ^ h2;
+        if (dh != 0L) {
+            common = Long.numberOfLeadingZeros(dh);
+        } else {
+            long dl = l1 ^ l2;
+            common = dl != 0L ? 64 + Long.numberOfLeadingZeros(dl) : 128;
+        }
+        return Math.min(common, max);
+    }
+
+    /**
+     * 构建器 插入时按需拆分节点
+     */
+    public static final class Builder {
+
+        private long[] high = new long[16];
+        private long[] low = new long[16];
+        private short[] length = new short[16];
+        private int[] zero = new int[16];
+        private int[] one = new int[16];
+        private int[] value = new int[16];
+        private int nodes;
+        private int size;
+
+        private Builder() {
+            // 根节点 /0
+            newNode(0L, 0L, 0, NONE);
+        }
+
+        /**
+         * 添加前缀 相同前缀后写入的值覆盖
+         * @param range 网段
+         * @param v 值 (大于等于0)
+         * @return Builder
+         */
+        public Builder put(IpRange range, int v) {
+            long h = range.getHigh();
+            long l = range.getLow();
+            int len = range.getPrefix();
+            int node = 0;
+            for (;;) {
+                if (length[node] == len) {
+                    if (value[node] == NONE) {
+                        size++;
+                    }
+                    value[node] = v;
+                    return this;
+                }
+                int b = bit(h, l, length[node]);
+                int child = b == 0 ? zero[node] : one[node];
+                if (child == NONE) {
+                    setChild(node, b, newNode(h, l, len, v));
+                    size++;
+                    return this;
+                }
+                int common = commonLength(h, l, high[child], low[child], Math.min(len, length[child]));
+                if (common == length[child]) {
+                    // 子节点是新前缀的前缀 继续向下
+                    node = child;
+                    continue;
+                }
+                // 拆分: 在公共前缀处插入中间节点
+                int middle = newNode(h & maskHigh(common), l & maskLow(common), common, NONE);
+                setChild(node, b, middle);
+                setChild(middle, bit(high[child], low[child], common), child);
+                if (common == len) {
+                    value[middle] = v;
+                } else {
+                    setChild(middle, bit(h, l, common), newNode(h, l, len, v));
+                }
+                size++;
+                return this;
+            }
+        }
+
+        public IpPrefixTrie build() {
+            return new IpPrefixTrie(this);
+        }
+
+        private int newNode(long h, long l, int len, int v) {
+            if (nodes == high.length) {
+                int capacity = nodes << 1;
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                length = Arrays.copyOf(length, capacity);
+                zero = Arrays.copyOf(zero, capacity);
+                one = Arrays.copyOf(one, capacity);
+                value = Arrays.copyOf(value, capacity);
+            }
+            int node = nodes++;
+            high[node] = h & maskHigh(len);
+            low[node] = l & maskLow(len);
+            length[node] = (short) len;
+            zero[node] = NONE;
+            one[node] = NONE;
+            value[node] = v;
+            return node;
+        }
+
+        private void setChild(int node, int b, int child) {
+            if (b == 0) {
+                zero[node] = child;
+            } else {
+                one[node] = child;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.opsli.limiter.core.ip;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-17 10:30
+ * @Description: IP 网段 (CIDR)
+ *
+ * 10.0.0.0/8, fc00::/7, 单个地址视为 /32 或 /128
+ * IPv4 网段按映射地址存储, 前缀长度 +96
+ */
+public final class IpRange {
+
+    private final long high;
+    private final long low;
+    private final long maskHigh;
+    private final long maskLow;
+    /** 前缀长度 (128 位) */
+    private final int prefix;
+
+    private IpRange(long high, long low, int prefix) {
+        this.maskHigh = mask(prefix);
+        this.maskLow = mask(prefix - 64);
+        this.high = high & maskHigh;
+        this.low = low & maskLow;
+        this.prefix = prefix;
+    }
+
+    /**
+     * 解析网段
+     * @param cidr 网段
+     * @return IpRange
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static IpRange parse(String cidr) {
+        String text = cidr.trim();
+        int slash = text.indexOf('/');
+        IpAddress address = new IpAddress();
+        if (!IpScanner.scan(text, 0, slash < 0 ? text.length() : slash, address)) {
+            throw new IllegalArgumentException("invalid ip range: " + cidr);
+        }
+        int max = address.isIpv4() ? 32 : 128;
+        int length = max;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(text.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid ip range: " + cidr, e);
+            }
+            if (length < 0 || length > max) {
+                throw new IllegalArgumentException("invalid ip range: " + cidr);
+            }
+        }
+        return new IpRange(address.getHigh(), address.getLow(), length + (128 - max));
+    }
+
+    /**
+     * 是否包含地址
+     * @param address 地址
+     * @return boolean
+     */
+    public boolean contains(IpAddress address) {
+        return (address.getHigh() & maskHigh) == high && (address.getLow() & maskLow) == low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * 前缀长度 (128 位, IPv4 网段已 +96)
+     * @return int
+     */
+    public int getPrefix() {
+        return prefix;
+    }
+
+    // ==============
+
+    /**
+     * 64 位掩码 高 bits 位为 1
+     */
+    private static long mask(int bits) {
+        if (bits <= 0) {
+            return 0L;
+        }
+        if (bits >= 64) {
+            return -1L;
+        }
+        return -1L << (64 - bits);
+    }
+
+}
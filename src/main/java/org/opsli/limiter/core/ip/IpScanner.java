@@ -0,0 +1,235 @@
+package org.opsli.limiter.core.ip;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-17 09:50
+ * @Description: IP 地址扫描
+ *
+ * 手写扫描, 直接在原字符串的 [from, to) 区间上解析, 不使用正则、不截取子串、不分配对象
+ *
+ * 支持:
+ * 1.2.3.4 / 1.2.3.4:8080
+ * 2001:db8::1 / [2001:db8::1]:8080 / fe80::1%eth0 / ::ffff:1.2.3.4
+ * 前后空白自动忽略, 其他内容 (如 unknown) 视为无效
+ */
+public final class IpScanner {
+
+    /**
+     * 扫描地址
+     * @param s 字符串
+     * @param from 开始位置 (含)
+     * @param to 结束位置 (不含)
+     * @param out 解析结果
+     * @return 是否为合法地址
+     */
+    public static boolean scan(CharSequence s, int from, int to, IpAddress out) {
+        while (from < to && s.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && s.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        if (from >= to) {
+            return false;
+        }
+        // [IPv6]:端口
+        if (s.charAt(from) == '[') {
+            for (int i = from + 1; i < to; i++) {
+                if (s.charAt(i) == ']') {
+                    return scanIpv6(s, from + 1, i, out);
+                }
+            }
+            return false;
+        }
+        int colons = 0;
+        int firstColon = -1;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == ':') {
+                if (colons++ == 0) {
+                    firstColon = i;
+                }
+            }
+        }
+        if (colons == 0) {
+            return scanIpv4(s, from, to, out);
+        }
+        // IPv4:端口
+        if (colons == 1) {
+            return scanIpv4(s, from, firstColon, out);
+        }
+        return scanIpv6(s, from, to, out);
+    }
+
+    // ==============
+
+    private static boolean scanIpv4(CharSequence s, int from, int to, IpAddress out) {
+        long v = parseIpv4(s, from, to);
+        if (v < 0) {
+            return false;
+        }
+        out.setIpv4((int) v);
+        return true;
+    }
+
+    /**
+     * 解析 IPv4
+     * @return 无符号地址 非法为 -1
+     */
+    private static long parseIpv4(CharSequence s, int from, int to) {
+        long value = 0L;
+        int octets = 0;
+        int part = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                if (++digits > 3 || part > 255) {
+                    return -1L;
+                }
+            } else if (c == '.') {
+                if (digits == 0 || ++octets > 3) {
+                    return -1L;
+                }
+                value = (value << 8) | part;
+                part = 0;
+                digits = 0;
+            } else {
+                return -1L;
+            }
+        }
+        if (digits == 0 || octets != 3) {
+            return -1L;
+        }
+        return (value << 8) | part;
+    }
+
+    private static boolean scanIpv6(CharSequence s, int from, int to, IpAddress out) {
+        // 去掉 zone (%eth0)
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == '%') {
+                to = i;
+                break;
+            }
+        }
+        if (to - from < 2) {
+            return false;
+        }
+
+        // 找到 :: 并统计其右侧的组数, 用于确定右侧各组的位置
+        int compress = -1;
+        for (int i = from; i + 1 < to; i++) {
+            if (s.charAt(i) == ':' && s.charAt(i + 1) == ':') {
+                compress = i;
+                break;
+            }
+        }
+        int rightGroups = 0;
+        if (compress >= 0 && compress + 2 < to) {
+            rightGroups = 1;
+            for (int i = compress + 2; i < to; i++) {
+                char c = s.charAt(i);
+                if (c == ':') {
+                    rightGroups++;
+                } else if (c == '.') {
+                    // IPv4 结尾占两组
+                    rightGroups++;
+                    break;
+                }
+            }
+        }
+
+        long high = 0L;
+        long low = 0L;
+        int position = 0;
+        int i = from;
+        if (compress == from) {
+            position = 8 - rightGroups;
+            i = from + 2;
+        }
+        while (i < to) {
+            int end = i;
+            boolean dotted = false;
+            while (end < to && s.charAt(end) != ':') {
+                if (s.charAt(end) == '.') {
+                    dotted = true;
+                }
+                end++;
+            }
+            if (dotted) {
+                // IPv4 结尾
+                if (end != to || position > 6) {
+                    return false;
+                }
+                long v4 = parseIpv4(s, i, end);
+                if (v4 < 0) {
+                    return false;
+                }
+                low |= v4;
+                position += 2;
+                break;
+            }
+            int group = parseHex(s, i, end);
+            if (group < 0 || position > 7) {
+                return false;
+            }
+            if (position < 4) {
+                high |= (long) group << (16 * (3 - position));
+            } else {
+                low |= (long) group << (16 * (7 - position));
+            }
+            position++;
+            if (end == to) {
+                break;
+            }
+            // 跳过分隔符, 遇到 :: 则跳到右侧的起始位置
+            if (end == compress) {
+                if (position > 8 - rightGroups) {
+                    return false;
+                }
+                position = 8 - rightGroups;
+                i = end + 2;
+                if (i >= to) {
+                    break;
+                }
+            } else {
+                i = end + 1;
+                if (i >= to) {
+                    return false;
+                }
+            }
+        }
+        if (position != 8) {
+            return false;
+        }
+        out.set(high, low);
+        return true;
+    }
+
+    /**
+     * 解析一组 1~4 位十六进制
+     * @return 组值 非法为 -1
+     */
+    private static int parseHex(CharSequence s, int from, int to) {
+        int length = to - from;
+        if (length < 1 || length > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int d = Character.digit(s.charAt(i), 16);
+            if (d < 0) {
+                return -1;
+            }
+            value = (value << 4) | d;
+        }
+        return value;
+    }
+
+    // ==========================
+
+    private IpScanner(){}
+
+}
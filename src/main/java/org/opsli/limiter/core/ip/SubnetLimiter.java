@@ -0,0 +1,259 @@
+package org.opsli.limiter.core.ip;
+
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.enums.PrefixAction;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-18 10:30
+ * @Description: 网段限流
+ *
+ * 在单 IP 限流之上增加三层, 防止攻击者在一个 /24 或 IPv6 /64 内轮换地址:
+ * 1. 黑白名单: 最长前缀匹配, 在任何限流桶之前判断 (白名单跳过所有限流, 黑名单直接拒绝)
+ * 2. 网段限流: 配置的网段整体共用一个桶 (多个网段嵌套时逐层检查);
+ *    另可按固定前缀长度聚合 (如每个 /24, 每个 /64 各自一个桶, 存放在共享索引中)
+ * 3. 全局限流: 所有请求共用一个桶
+ *
+ * 黑白名单与网段规则放在同一棵前缀树中, 一次遍历得到全部结果
+ */
+public class SubnetLimiter {
+
+    /** 聚合网段在索引中的资源名 */
+    private static final String SUBNET_RESOURCE = "#subnet";
+
+    /** 前缀树 值为规则下标 */
+    private final IpPrefixTrie trie;
+
+    /** 规则动作 */
+    private final PrefixAction[] actions;
+
+    /** 规则限流桶 (LIMIT) */
+    private final TokenBucket[] buckets;
+
+    /** IPv4 聚合前缀长度 */
+    private final int ipv4Prefix;
+
+    /** IPv6 聚合前缀长度 */
+    private final int ipv6Prefix;
+
+    /** 按前缀聚合的限流器组 为 null 不聚合 */
+    private final LimiterGroup subnetGroup;
+
+    /** 全局限流桶 为 null 不限流 */
+    private final TokenBucket globalBucket;
+
+    /** 聚合地址 线程内复用 */
+    private final ThreadLocal<IpAddress> masked = ThreadLocal.withInitial(IpAddress::new);
+
+    private SubnetLimiter(Builder builder) {
+        IpPrefixTrie.Builder trieBuilder = IpPrefixTrie.builder();
+        int n = builder.ranges.size();
+        this.actions = new PrefixAction[n];
+        this.buckets = new TokenBucket[n];
+        for (int i = 0; i < n; i++) {
+            trieBuilder.put(builder.ranges.get(i), i);
+            actions[i] = builder.actions.get(i);
+            double qps = builder.qps.get(i);
+            buckets[i] = actions[i] == PrefixAction.LIMIT ? new TokenBucket(qps) : null;
+        }
+        this.trie = trieBuilder.build();
+        this.ipv4Prefix = builder.ipv4Prefix;
+        this.ipv6Prefix = builder.ipv6Prefix;
+        this.subnetGroup = builder.subnetQps > 0.0 ? RateLimiterUtil.newGroup(builder.subnetQps, 0d) : null;
+        this.globalBucket = builder.globalQps > 0.0 ? new TokenBucket(builder.globalQps) : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 遍历前缀树 得到黑白名单结论和命中的网段规则
+     * @param address 地址
+     * @param match 匹配结果
+     * @return 黑白名单结论 都未命中为 null
+     */
+    public PrefixAction screen(IpAddress address, SubnetMatch match) {
+        int matched = trie.matchAll(address, match.rules);
+        PrefixAction verdict = null;
+        int limits = 0;
+        for (int i = 0; i < matched; i++) {
+            int rule = match.rules[i];
+            PrefixAction action = actions[rule];
+            if (action == PrefixAction.LIMIT) {
+                match.rules[limits++] = rule;
+            } else {
+                // 由短到长 后面的覆盖前面的
+                verdict = action;
+            }
+        }
+        match.count = limits;
+        match.verdict = verdict;
+        return verdict;
+    }
+
+    /**
+     * 获取网段、聚合网段、全局令牌 (非阻塞)
+     * @param address 地址
+     * @param match screen 的结果
+     * @return 放行为 true
+     */
+    public boolean tryAcquire(IpAddress address, SubnetMatch match) {
+        return tryAcquire(address, match, 1);
+    }
+
+    /**
+     * 获取网段、聚合网段、全局令牌 (非阻塞) 全部拿到才算放行
+     * 某一层拒绝时归还前面各层已获取的令牌
+     * @param address 地址
+     * @param match screen 的结果
+     * @param permits 令牌数
+     * @return 放行为 true
+     */
+    public boolean tryAcquire(IpAddress address, SubnetMatch match, int permits) {
+        // 由长到短 越具体的网段越先拒绝
+        for (int i = match.count - 1; i >= 0; i--) {
+            if (buckets[match.rules[i]].reserve(permits, 0L) < 0) {
+                releaseRules(match, i + 1, permits);
+                return false;
+            }
+        }
+        LimiterBucket subnetBucket = subnetGroup != null ? subnetBucket(address) : null;
+        if (subnetBucket != null && subnetBucket.reserve(permits, 0L) < 0) {
+            releaseRules(match, 0, permits);
+            return false;
+        }
+        if (globalBucket != null && globalBucket.reserve(permits, 0L) < 0) {
+            if (subnetBucket != null) {
+                subnetBucket.release(permits);
+            }
+            releaseRules(match, 0, permits);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 归还 tryAcquire 获取的令牌 (之后的单 IP 限流拒绝时调用)
+     * @param address 地址
+     * @param match screen 的结果
+     * @param permits 令牌数
+     */
+    public void release(IpAddress address, SubnetMatch match, int permits) {
+        if (globalBucket != null) {
+            globalBucket.release(permits);
+        }
+        if (subnetGroup != null) {
+            subnetBucket(address).release(permits);
+        }
+        releaseRules(match, 0, permits);
+    }
+
+    /**
+     * 前缀规则个数
+     * @return int
+     */
+    public int size() {
+        return trie.size();
+    }
+
+    // ==============
+
+    /**
+     * 归还网段规则 [from, count) 的令牌
+     */
+    private void releaseRules(SubnetMatch match, int from, int permits) {
+        for (int i = from; i < match.count; i++) {
+            buckets[match.rules[i]].release(permits);
+        }
+    }
+
+    /**
+     * 地址所在聚合网段的限流桶
+     */
+    private LimiterBucket subnetBucket(IpAddress address) {
+        IpAddress subnet = masked.get();
+        int prefix = address.isIpv4() ? 96 + ipv4Prefix : ipv6Prefix;
+        subnet.set(address.getHigh() & IpPrefixTrie.maskHigh(prefix),
+                address.getLow() & IpPrefixTrie.maskLow(prefix));
+        return subnetGroup.getSlot(subnet, SUBNET_RESOURCE).getBucket();
+    }
+
+    /**
+     * 构建器
+     */
+    public static final class Builder {
+
+        private final List<IpRange> ranges = new ArrayList<>();
+        private final List<PrefixAction> actions = new ArrayList<>();
+        private final List<Double> qps = new ArrayList<>();
+        private int ipv4Prefix = 24;
+        private int ipv6Prefix = 64;
+        private double subnetQps;
+        private double globalQps;
+
+        private Builder() {
+        }
+
+        /** 白名单 */
+        public Builder allow(String cidr) {
+            return rule(cidr, PrefixAction.ALLOW, 0d);
+        }
+
+        /** 黑名单 */
+        public Builder deny(String cidr) {
+            return rule(cidr, PrefixAction.DENY, 0d);
+        }
+
+        /** 网段整体限流 */
+        public Builder limit(String cidr, double limitQps) {
+            if (limitQps <= 0.0) {
+                throw new IllegalArgumentException("rate must be positive: " + cidr);
+            }
+            return rule(cidr, PrefixAction.LIMIT, limitQps);
+        }
+
+        /**
+         * 按前缀长度聚合限流 每个网段各自一个桶
+         * @param ipv4 IPv4 前缀长度
+         * @param ipv6 IPv6 前缀长度
+         * @param subnetQps 每个网段的 QPS 小于等于0 不限流
+         */
+        public Builder aggregate(int ipv4, int ipv6, double subnetQps) {
+            if (ipv4 < 0 || ipv4 > 32 || ipv6 < 0 || ipv6 > 128) {
+                throw new IllegalArgumentException("invalid prefix length");
+            }
+            this.ipv4Prefix = ipv4;
+            this.ipv6Prefix = ipv6;
+            this.subnetQps = subnetQps;
+            return this;
+        }
+
+        /** 全局限流 小于等于0 不限流 */
+        public Builder global(double globalQps) {
+            this.globalQps = globalQps;
+            return this;
+        }
+
+        public SubnetLimiter build() {
+            return new SubnetLimiter(this);
+        }
+
+        private Builder rule(String cidr, PrefixAction action, double ruleQps) {
+            ranges.add(IpRange.parse(cidr));
+            actions.add(action);
+            qps.add(ruleQps);
+            return this;
+        }
+
+    }
+
+}
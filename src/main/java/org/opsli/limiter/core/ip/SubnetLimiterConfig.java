@@ -0,0 +1,59 @@
+package org.opsli.limiter.core.ip;
+
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-18 14:00
+ * @Description: 网段限流配置
+ *
+ * opsli.limiter.subnet.enabled = true 时开启
+ * allow / deny 网段逗号分隔, limits 为 "网段=QPS" 逗号分隔
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "opsli.limiter.subnet", name = "enabled", havingValue = "true")
+public class SubnetLimiterConfig {
+
+    @Bean
+    public SubnetLimiter subnetLimiter(@Value("${opsli.limiter.subnet.allow:}") String[] allow,
+                                       @Value("${opsli.limiter.subnet.deny:}") String[] deny,
+                                       @Value("${opsli.limiter.subnet.limits:}") String[] limits,
+                                       @Value("${opsli.limiter.subnet.ipv4-prefix:24}") int ipv4Prefix,
+                                       @Value("${opsli.limiter.subnet.ipv6-prefix:64}") int ipv6Prefix,
+                                       @Value("${opsli.limiter.subnet.qps:0}") double subnetQps,
+                                       @Value("${opsli.limiter.subnet.global-qps:0}") double globalQps) {
+        SubnetLimiter.Builder builder = SubnetLimiter.builder()
+                .aggregate(ipv4Prefix, ipv6Prefix, subnetQps)
+                .global(globalQps);
+        for (String cidr : allow) {
+            if (!cidr.trim().isEmpty()) {
+                builder.allow(cidr);
+            }
+        }
+        for (String cidr : deny) {
+            if (!cidr.trim().isEmpty()) {
+                builder.deny(cidr);
+            }
+        }
+        for (String limit : limits) {
+            if (limit.trim().isEmpty()) {
+                continue;
+            }
+            int eq = limit.lastIndexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("invalid subnet limit: " + limit);
+            }
+            builder.limit(limit.substring(0, eq), Double.parseDouble(limit.substring(eq + 1).trim()));
+        }
+        SubnetLimiter limiter = builder.build();
+        RateLimiterUtil.setSubnetLimiter(limiter);
+        return limiter;
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.opsli.limiter.core.ip;
+
+import org.opsli.limiter.core.enums.PrefixAction;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.ip
+ * @Author: Parker
+ * @CreateTime: 2021-01-18 10:10
+ * @Description: 网段匹配结果
+ *
+ * 一次前缀树遍历的结果: 黑白名单结论 + 命中的网段限流规则, 可变对象, 线程内复用
+ */
+public final class SubnetMatch {
+
+    /** 命中的规则 由短到长 */
+    final int[] rules = new int[IpPrefixTrie.MAX_DEPTH];
+
+    /** 命中个数 */
+    int count;
+
+    /** 最长匹配的黑白名单 无则为 null */
+    PrefixAction verdict;
+
+    /**
+     * 黑白名单结论
+     * @return ALLOW / DENY, 都未命中为 null
+     */
+    public PrefixAction getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * 复制 线程内复用的结果需要带入异步回调时使用
+     * @return SubnetMatch
+     */
+    public SubnetMatch copy() {
+        SubnetMatch copy = new SubnetMatch();
+        System.arraycopy(rules, 0, copy.rules, 0, count);
+        copy.count = count;
+        copy.verdict = verdict;
+        return copy;
+    }
+
+}
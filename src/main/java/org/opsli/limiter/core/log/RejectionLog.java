@@ -0,0 +1,311 @@
+package org.opsli.limiter.core.log;
+
+import org.opsli.limiter.core.enums.RejectReason;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.ip.IpAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.log
+ * @Author: Parker
+ * @CreateTime: 2021-01-22 10:00
+ * @Description: 拒绝日志
+ *
+ * 拒绝路径只把事件写入无锁环形队列 (多生产者 单消费者, 每个槽位一个序号), 不做 IO 不拼接字符串
+ * 队列满时直接丢弃并计数, 拒绝路径永不阻塞
+ *
+ * 后台线程定期取出事件, 按限流器 Key 聚合, 每个窗口每个 Key 输出一行汇总
+ * 单个窗口最多输出 MAX_LINES 行 (按拒绝次数降序), 其余合并为一行
+ */
+public final class RejectionLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(RejectionLog.class);
+
+    /** 取事件的间隔 */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /** 单个窗口最多聚合的 Key 数 超出后只计数 */
+    private static final int MAX_KEYS = 10_000;
+    /** 单个窗口最多输出的行数 */
+    private static final int MAX_LINES = 100;
+
+    private final int mask;
+    private final long windowNanos;
+
+    /** 槽位序号 等于写入位置 + 1 时可读, 等于读取位置 + 容量 时可写 */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /** 读取位置 只有消费者修改 */
+    private long head;
+
+    private final RejectReason[] reasons;
+    private final long[] keys;
+    private final long[] ipHighs;
+    private final long[] ipLows;
+    /** 字符串 IP 为 null 时按 ipHighs / ipLows 还原 */
+    private final String[] ipTexts;
+    private final String[] resources;
+    private final long[] waits;
+
+    /** 丢弃的事件数 */
+    private final LongAdder dropped = new LongAdder();
+    private long droppedReported;
+
+    /** 当前窗口的聚合结果 只有消费者访问 */
+    private final Map<Long, Summary> summaries = new HashMap<>();
+    private long overflowCount;
+    private final IpAddress scratch = new IpAddress();
+
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    /**
+     * @param capacity 队列容量 向上取 2 的幂
+     * @param windowMillis 汇总窗口 毫秒
+     */
+    public RejectionLog(int capacity, long windowMillis) {
+        int n = 2;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        this.mask = n - 1;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, windowMillis));
+        this.sequences = new AtomicLongArray(n);
+        for (int i = 0; i < n; i++) {
+            sequences.set(i, i);
+        }
+        this.reasons = new RejectReason[n];
+        this.keys = new long[n];
+        this.ipHighs = new long[n];
+        this.ipLows = new long[n];
+        this.ipTexts = new String[n];
+        this.resources = new String[n];
+        this.waits = new long[n];
+    }
+
+    /**
+     * 记录一次拒绝 队列满时丢弃
+     * @param reason 拒绝原因
+     * @param key 限流器 Key
+     * @param clientIp IP (IpAddress 按地址复制, 线程内复用的实例可以直接传入)
+     * @param resource 资源
+     * @param waitNanos 等待时长
+     * @return 是否写入
+     */
+    public boolean offer(RejectReason reason, long key, Object clientIp, String resource, long waitNanos) {
+        long pos;
+        int index;
+        for (;;) {
+            pos = tail.get();
+            index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0L) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0L) {
+                // 消费者还没取走 队列已满
+                dropped.increment();
+                return false;
+            }
+        }
+        reasons[index] = reason;
+        keys[index] = key;
+        if (clientIp instanceof IpAddress) {
+            IpAddress address = (IpAddress) clientIp;
+            ipHighs[index] = address.getHigh();
+            ipLows[index] = address.getLow();
+            ipTexts[index] = null;
+        } else {
+            ipTexts[index] = String.valueOf(clientIp);
+        }
+        resources[index] = resource;
+        waits[index] = waitNanos;
+        // 发布
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * 启动后台线程
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::run, "limiter-reject-log");
+        thread.setDaemon(true);
+        thread.start();
+        worker = thread;
+    }
+
+    /**
+     * 停止后台线程 输出剩余的汇总
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+            worker = null;
+            running = false;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(POLL_NANOS) * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+        flush();
+    }
+
+    /**
+     * 取出队列中的事件 并聚合到当前窗口
+     * @return 取出的事件数
+     */
+    public synchronized int drain() {
+        int count = 0;
+        for (;;) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                return count;
+            }
+            aggregate(reasons[index], keys[index], ipHighs[index], ipLows[index],
+                    ipTexts[index], resources[index], waits[index]);
+            // 不持有引用
+            ipTexts[index] = null;
+            resources[index] = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            count++;
+        }
+    }
+
+    /**
+     * 输出当前窗口的汇总 并开始新窗口
+     * @return 输出的行
+     */
+    public synchronized List<String> flush() {
+        List<String> lines = new ArrayList<>();
+        List<Summary> sorted = new ArrayList<>(summaries.values());
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        long restKeys = 0;
+        long restCount = overflowCount;
+        for (Summary summary : sorted) {
+            if (lines.size() < MAX_LINES) {
+                lines.add(summary.toString());
+            } else {
+                restKeys++;
+                restCount += summary.count;
+            }
+        }
+        if (restCount > 0) {
+            lines.add("限流器 - 其余限流器 共拒绝: " + restCount + " 次"
+                    + (restKeys > 0 ? ", 限流器数: " + restKeys : ""));
+        }
+        long droppedTotal = dropped.sum();
+        if (droppedTotal > droppedReported) {
+            lines.add("限流器 - 拒绝日志队列已满 丢弃: " + (droppedTotal - droppedReported) + " 条");
+            droppedReported = droppedTotal;
+        }
+        summaries.clear();
+        overflowCount = 0;
+        for (String line : lines) {
+            logger.error(line);
+        }
+        return lines;
+    }
+
+    /**
+     * 丢弃的事件总数
+     * @return long
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // ==============
+
+    private void run() {
+        long windowEnd = System.nanoTime() + windowNanos;
+        while (running) {
+            LockSupport.parkNanos(POLL_NANOS);
+            try {
+                drain();
+                if (System.nanoTime() - windowEnd >= 0) {
+                    flush();
+                    windowEnd = System.nanoTime() + windowNanos;
+                }
+            } catch (Throwable e) {
+                // 日志异常不能让后台线程退出
+                logger.warn("限流器 - 拒绝日志输出失败", e);
+            }
+        }
+    }
+
+    private void aggregate(RejectReason reason, long key, long ipHigh, long ipLow,
+                           String ipText, String resource, long waitNanos) {
+        Long id = LimiterKeys.combine(key, reason.ordinal());
+        Summary summary = summaries.get(id);
+        if (summary == null) {
+            if (summaries.size() >= MAX_KEYS) {
+                overflowCount++;
+                return;
+            }
+            if (ipText == null) {
+                scratch.set(ipHigh, ipLow);
+                ipText = scratch.toString();
+            }
+            summary = new Summary(reason, ipText, resource);
+            summaries.put(id, summary);
+        }
+        summary.count++;
+        summary.maxWaitNanos = Math.max(summary.maxWaitNanos, waitNanos);
+    }
+
+    /**
+     * 单个 Key 的窗口汇总
+     */
+    private static final class Summary {
+
+        private final RejectReason reason;
+        private final String clientIp;
+        private final String resource;
+        private long count;
+        private long maxWaitNanos;
+
+        Summary(RejectReason reason, String clientIp, String resource) {
+            this.reason = reason;
+            this.clientIp = clientIp;
+            this.resource = resource;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(96)
+                    .append("限流器 - ").append(reason.getDesc())
+                    .append(" IP地址: ").append(clientIp)
+                    .append(", URI: ").append(resource)
+                    .append(", 拒绝: ").append(count).append(" 次");
+            if (maxWaitNanos > 0) {
+                sb.append(", 最长等待: ").append(TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)).append("ms");
+            }
+            return sb.toString();
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package org.opsli.limiter.core.log;
+
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.log
+ * @Author: Parker
+ * @CreateTime: 2021-01-22 11:00
+ * @Description: 拒绝日志配置
+ *
+ * opsli.limiter.reject-log.capacity  队列容量 满了丢弃
+ * opsli.limiter.reject-log.window    汇总窗口 毫秒, 每个窗口每个限流器输出一行
+ */
+@Configuration
+public class RejectionLogConfig {
+
+    @Bean(destroyMethod = "stop")
+    public RejectionLog rejectionLog(@Value("${opsli.limiter.reject-log.capacity:8192}") int capacity,
+                                     @Value("${opsli.limiter.reject-log.window:10000}") long window) {
+        RejectionLog log = new RejectionLog(capacity, window);
+        RateLimiterUtil.setRejectionLog(log);
+        return log;
+    }
+
+}
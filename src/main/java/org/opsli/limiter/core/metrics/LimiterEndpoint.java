@@ -0,0 +1,79 @@
+package org.opsli.limiter.core.metrics;
+
+import org.opsli.limiter.core.bulkhead.Bulkhead;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.metrics
+ * @Author: Parker
+ * @CreateTime: 2021-01-21 11:00
+ * @Description: 限流状态端点
+ *
+ * GET /actuator/limiter          汇总、各策略计数、被拒绝最多的限流器
+ * GET /actuator/limiter/{top}    被拒绝最多的 top 个限流器
+ */
+@Endpoint(id = "limiter")
+public class LimiterEndpoint {
+
+    /** 默认展示的高频 Key 数 */
+    private static final int DEFAULT_TOP = 20;
+
+    @ReadOperation
+    public Map<String, Object> limiter() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("active", RateLimiterUtil.getLimiterCount());
+        result.put("evictions", RateLimiterUtil.getEvictionCount());
+        result.put("expirations", RateLimiterUtil.getExpirationCount());
+        if (RateLimiterUtil.isOffHeap()) {
+            result.put("offHeapBytes", RateLimiterUtil.getOffHeapBytes());
+            result.put("offHeapEvictions", RateLimiterUtil.getOffHeapEvictionCount());
+        }
+        result.put("accepted", LimiterMetrics.totalAccepted());
+        result.put("rejected", LimiterMetrics.totalRejected());
+        result.put("waited", LimiterMetrics.totalWaited());
+        result.put("rejectLogDropped", RateLimiterUtil.getRejectionLog().getDropped());
+
+        Map<String, Object> policies = new LinkedHashMap<>();
+        for (LimiterStats stats : LimiterMetrics.all()) {
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("method", stats.getLabel());
+            counts.put("accepted", stats.getAccepted());
+            counts.put("rejected", stats.getRejected());
+            counts.put("waited", stats.getWaited());
+            counts.put("waitMillis", stats.getWaitNanos() / 1_000_000L);
+            Bulkhead bulkhead = stats.getBulkhead();
+            if (bulkhead != null) {
+                counts.put("inFlight", bulkhead.getInFlight());
+                counts.put("queued", bulkhead.getQueued());
+                counts.put("concurrentRejected", bulkhead.getRejected());
+            }
+            policies.put(stats.getName(), counts);
+        }
+        result.put("policies", policies);
+        result.put("topThrottled", top(DEFAULT_TOP));
+        return result;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> top(@Selector int top) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (TopKeys.Entry entry : LimiterMetrics.topThrottled(top)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", entry.getLabel());
+            item.put("rejected", entry.getCount());
+            item.put("error", entry.getError());
+            result.add(item);
+        }
+        return result;
+    }
+
+}
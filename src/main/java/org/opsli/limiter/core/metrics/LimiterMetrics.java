@@ -0,0 +1,132 @@
+package org.opsli.limiter.core.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.metrics
+ * @Author: Parker
+ * @CreateTime: 2021-01-21 10:00
+ * @Description: 限流指标
+ *
+ * 按策略名 (全类名#方法名(参数类型)) 的统计 + 被拒绝最多的限流器 Key
+ * 全局计数 = 各策略之和, 读取时汇总, 请求路径只写一份
+ * 与 Micrometer 解耦, 由 LimiterMetricsBinder 导出
+ */
+public final class LimiterMetrics {
+
+    /** 最大策略数 超出后归入 OVERFLOW */
+    private static final int MAX_STATS = 1000;
+    /** 每个线程分段的高频 Key 计数器数 */
+    private static final int TOP_CAPACITY = 32;
+
+    public static final String OVERFLOW = "other";
+
+    private static final TopKeys THROTTLED = new TopKeys(TOP_CAPACITY);
+
+    private static final Map<String, LimiterStats> STATS = new ConcurrentHashMap<>();
+
+    private static final List<Consumer<LimiterStats>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * 获得策略统计 不存在时创建
+     * @param name 策略名 (同时作为展示名)
+     * @return LimiterStats
+     */
+    public static LimiterStats of(String name) {
+        return of(name, name);
+    }
+
+    /**
+     * 获得策略统计 不存在时创建
+     * @param name 策略名 唯一
+     * @param label 展示名
+     * @return LimiterStats
+     */
+    public static LimiterStats of(String name, String label) {
+        LimiterStats stats = STATS.get(name);
+        if (stats != null) {
+            return stats;
+        }
+        if (STATS.size() >= MAX_STATS) {
+            name = OVERFLOW;
+            label = OVERFLOW;
+            stats = STATS.get(name);
+            if (stats != null) {
+                return stats;
+            }
+        }
+        LimiterStats created = new LimiterStats(name, label, THROTTLED);
+        stats = STATS.putIfAbsent(name, created);
+        if (stats != null) {
+            return stats;
+        }
+        for (Consumer<LimiterStats> listener : LISTENERS) {
+            listener.accept(created);
+        }
+        return created;
+    }
+
+    /**
+     * 所有策略统计
+     * @return 只读
+     */
+    public static Collection<LimiterStats> all() {
+        return Collections.unmodifiableCollection(STATS.values());
+    }
+
+    /**
+     * 监听新建的策略统计 (已有的立即回调)
+     * @param listener 监听
+     */
+    public static void addListener(Consumer<LimiterStats> listener) {
+        LISTENERS.add(listener);
+        for (LimiterStats stats : STATS.values()) {
+            listener.accept(stats);
+        }
+    }
+
+    /**
+     * 被拒绝最多的限流器
+     * @param n 个数
+     * @return 按拒绝次数降序
+     */
+    public static List<TopKeys.Entry> topThrottled(int n) {
+        return THROTTLED.top(n);
+    }
+
+    public static long totalAccepted() {
+        long sum = 0;
+        for (LimiterStats stats : STATS.values()) {
+            sum += stats.getAccepted();
+        }
+        return sum;
+    }
+
+    public static long totalRejected() {
+        long sum = 0;
+        for (LimiterStats stats : STATS.values()) {
+            sum += stats.getRejected();
+        }
+        return sum;
+    }
+
+    public static long totalWaited() {
+        long sum = 0;
+        for (LimiterStats stats : STATS.values()) {
+            sum += stats.getWaited();
+        }
+        return sum;
+    }
+
+    // ==========================
+
+    private LimiterMetrics(){}
+
+}
@@ -0,0 +1,108 @@
+package org.opsli.limiter.core.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.opsli.limiter.core.bulkhead.Bulkhead;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.metrics
+ * @Author: Parker
+ * @CreateTime: 2021-01-21 10:40
+ * @Description: 限流指标导出 (Micrometer)
+ *
+ * opsli.limiter.requests{policy, method, result}   按策略的放行 / 拒绝 计数
+ * opsli.limiter.global.requests{result}    全局 放行 / 拒绝 / 等待 计数
+ * opsli.limiter.wait{policy, method}       等待时长 (百分位直方图)
+ * opsli.limiter.active                     当前限流器个数
+ * opsli.limiter.evictions{cause}           容量淘汰 / 过期清理的限流器数
+ * opsli.limiter.reject.log.dropped        拒绝日志队列满 丢弃的事件数
+ * opsli.limiter.concurrent{policy, method, state}  执行中 / 排队中的请求数 (maxConcurrent), policy=global 为全局
+ * opsli.limiter.concurrent.rejected{policy, method} 并发已满、排队超时 拒绝数
+ *
+ * policy 为策略名 (全类名#方法名(参数类型)) 区分重载方法和同名类, method 为展示用的 类名#方法名
+ *
+ * 计数器为 FunctionCounter, 抓取时读取 LongAdder, 请求路径上不经过 Micrometer
+ * 之后新建的策略 (规则、懒加载) 通过监听注册
+ */
+public class LimiterMetricsBinder implements MeterBinder {
+
+    public static final String PREFIX = "opsli.limiter";
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(PREFIX + ".global.requests", LimiterMetrics.class, c -> LimiterMetrics.totalAccepted())
+                .tag("result", "accepted").description("限流放行总数").register(registry);
+        FunctionCounter.builder(PREFIX + ".global.requests", LimiterMetrics.class, c -> LimiterMetrics.totalRejected())
+                .tag("result", "rejected").description("限流拒绝总数").register(registry);
+        FunctionCounter.builder(PREFIX + ".global.requests", LimiterMetrics.class, c -> LimiterMetrics.totalWaited())
+                .tag("result", "waited").description("限流等待总数").register(registry);
+
+        Gauge.builder(PREFIX + ".active", RateLimiterUtil::getLimiterCount)
+                .description("当前限流器个数").register(registry);
+        FunctionCounter.builder(PREFIX + ".evictions", RateLimiterUtil.class, c -> RateLimiterUtil.getEvictionCount())
+                .tag("cause", "size").description("容量淘汰的限流器数").register(registry);
+        FunctionCounter.builder(PREFIX + ".evictions", RateLimiterUtil.class, c -> RateLimiterUtil.getExpirationCount())
+                .tag("cause", "expired").description("过期清理的限流器数").register(registry);
+        FunctionCounter.builder(PREFIX + ".reject.log.dropped", RateLimiterUtil.class,
+                c -> RateLimiterUtil.getRejectionLog().getDropped())
+                .description("拒绝日志丢弃的事件数").register(registry);
+
+        bindConcurrent(registry, "global", "global", RateLimiterUtil.class, c -> RateLimiterUtil.getBulkhead());
+
+        LimiterMetrics.addListener(stats -> bind(registry, stats));
+    }
+
+    // ==============
+
+    private static void bind(MeterRegistry registry, LimiterStats stats) {
+        FunctionCounter.builder(PREFIX + ".requests", stats, LimiterStats::getAccepted)
+                .tag("policy", stats.getName()).tag("method", stats.getLabel()).tag("result", "accepted")
+                .description("限流放行数").register(registry);
+        FunctionCounter.builder(PREFIX + ".requests", stats, LimiterStats::getRejected)
+                .tag("policy", stats.getName()).tag("method", stats.getLabel()).tag("result", "rejected")
+                .description("限流拒绝数").register(registry);
+        Timer timer = Timer.builder(PREFIX + ".wait")
+                .tag("policy", stats.getName()).tag("method", stats.getLabel())
+                .publishPercentileHistogram()
+                .description("限流等待时长").register(registry);
+        stats.setWaitRecorder(nanos -> timer.record(nanos, TimeUnit.NANOSECONDS));
+        bindConcurrent(registry, stats.getName(), stats.getLabel(), stats, LimiterStats::getBulkhead);
+    }
+
+    /**
+     * 并发指标 抓取时读取, 未开启并发限制时为 0
+     * @param source 指标持有的对象 (Micrometer 弱引用, 必须是长期存活的对象)
+     */
+    private static <T> void bindConcurrent(MeterRegistry registry, String policy, String method,
+                                           T source, Function<T, Bulkhead> bulkhead) {
+        Gauge.builder(PREFIX + ".concurrent", source, s -> inFlight(bulkhead.apply(s)))
+                .tag("policy", policy).tag("method", method).tag("state", "active")
+                .description("执行中的请求数").register(registry);
+        Gauge.builder(PREFIX + ".concurrent", source, s -> queued(bulkhead.apply(s)))
+                .tag("policy", policy).tag("method", method).tag("state", "queued")
+                .description("排队中的请求数").register(registry);
+        FunctionCounter.builder(PREFIX + ".concurrent.rejected", source, s -> rejected(bulkhead.apply(s)))
+                .tag("policy", policy).tag("method", method).description("并发已满拒绝数").register(registry);
+    }
+
+    private static double inFlight(Bulkhead bulkhead) {
+        return bulkhead == null ? 0 : bulkhead.getInFlight();
+    }
+
+    private static double queued(Bulkhead bulkhead) {
+        return bulkhead == null ? 0 : bulkhead.getQueued();
+    }
+
+    private static double rejected(Bulkhead bulkhead) {
+        return bulkhead == null ? 0 : bulkhead.getRejected();
+    }
+
+}
@@ -0,0 +1,33 @@
+package org.opsli.limiter.core.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.metrics
+ * @Author: Parker
+ * @CreateTime: 2021-01-21 11:10
+ * @Description: 限流指标配置
+ *
+ * 存在 Micrometer 时导出指标, 端点需在 management.endpoints.web.exposure.include 中开放
+ */
+@Configuration
+@ConditionalOnClass(MeterRegistry.class)
+public class LimiterMetricsConfig {
+
+    @Bean
+    public LimiterMetricsBinder limiterMetricsBinder() {
+        return new LimiterMetricsBinder();
+    }
+
+    @Bean
+    @ConditionalOnAvailableEndpoint
+    public LimiterEndpoint limiterEndpoint() {
+        return new LimiterEndpoint();
+    }
+
+}
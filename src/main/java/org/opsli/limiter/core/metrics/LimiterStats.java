@@ -0,0 +1,126 @@
+package org.opsli.limiter.core.metrics;
+
+import org.opsli.limiter.core.bulkhead.Bulkhead;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.metrics
+ * @Author: Parker
+ * @CreateTime: 2021-01-21 10:10
+ * @Description: 限流统计
+ *
+ * 一个限流策略 (方法) 一份, 规则重新加载后仍是同一份
+ * 计数使用 LongAdder: 多核并发累加时各线程写不同的 Cell, 放行路径只有一次累加
+ *
+ * accepted 放行 (包括等待后放行)
+ * rejected 拒绝 (包括等待超时、黑名单、网段限流)
+ * waited   需要等待的请求, 等待时长另外记录 (接入 Micrometer 后为 Timer 直方图)
+ * 并发 (舱壁) 的执行中、排队、拒绝数由 Bulkhead 自己统计, 这里只持有引用
+ */
+public final class LimiterStats {
+
+    private final String name;
+    private final String label;
+    private final TopKeys throttled;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /** 并发隔离 为 null 不限制并发 */
+    private volatile Bulkhead bulkhead;
+
+    /** 等待时长记录 (Micrometer Timer) */
+    private volatile LongConsumer waitRecorder;
+
+    LimiterStats(String name, String label, TopKeys throttled) {
+        this.name = name;
+        this.label = label;
+        this.throttled = throttled;
+    }
+
+    /**
+     * 放行
+     * @return true 调用方直接返回
+     */
+    public boolean accept() {
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * 拒绝
+     * @param key 限流器 Key
+     * @param clientIp IP (只在进入高频统计时转为字符串)
+     * @param resource 资源
+     * @return false 调用方直接返回
+     */
+    public boolean reject(long key, Object clientIp, String resource) {
+        rejected.increment();
+        throttled.add(key, clientIp, resource);
+        return false;
+    }
+
+    /**
+     * 等待结束 (结果另外按 accept / reject 计数)
+     * @param nanos 等待时长
+     */
+    public void onWait(long nanos) {
+        waited.increment();
+        waitNanos.add(nanos);
+        LongConsumer recorder = waitRecorder;
+        if (recorder != null) {
+            recorder.accept(nanos);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** 展示名 类名#方法名 (不唯一) */
+    public String getLabel() {
+        return label;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getWaited() {
+        return waited.sum();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * 设置并发隔离 (策略创建时设置)
+     * @param bulkhead 并发隔离
+     */
+    public void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * 设置等待时长记录
+     * @param recorder 纳秒
+     */
+    public void setWaitRecorder(LongConsumer recorder) {
+        this.waitRecorder = recorder;
+    }
+
+}
@@ -0,0 +1,286 @@
+package org.opsli.limiter.core.metrics;
+
+import org.opsli.limiter.core.ip.IpAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.metrics
+ * @Author: Parker
+ * @CreateTime: 2021-01-21 10:20
+ * @Description: 高频 Key 统计 (Space-Saving)
+ *
+ * 每个分段固定 capacity 个计数器, 满了以后新 Key 替换计数最小的一个并继承它的计数 (误差上界)
+ * 出现次数超过 总数 / capacity 的 Key 一定在表中, 计数偏大不超过 error
+ *
+ * 每个线程独占一个分段 (ThreadLocal), 计数路径只有普通读写, 没有锁和 CAS
+ * 读取时合并各分段, 不加锁: 与写入并发时正在替换的那一个计数器可能读到新旧混合的值, 只用于展示
+ * 线程结束后它的分段由下一个新线程接管 (计数保留), 分段数不超过同时存活的线程数
+ * 清空只递增代数, 各分段在下次写入时自己清零
+ * 只保存地址和资源的引用, 展示用的字符串在读取时生成, 计数路径不分配对象
+ */
+public final class TopKeys {
+
+    private final int capacity;
+
+    private final Queue<Stripe> stripes = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Stripe> local = ThreadLocal.withInitial(this::register);
+
+    /** 清空代数 */
+    private volatile int epoch;
+
+    /**
+     * @param capacity 每个分段的计数器数
+     */
+    public TopKeys(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * 计数一次
+     * @param key Key 哈希
+     * @param label Key 展示名 (IpAddress 按地址复制, 其他类型进入时调用 toString)
+     * @param resource 资源
+     */
+    public void add(long key, Object label, String resource) {
+        local.get().add(key, label, resource, epoch);
+    }
+
+    /**
+     * 计数最高的 n 个 Key
+     * @param n 个数
+     * @return 按计数降序
+     */
+    public List<Entry> top(int n) {
+        Map<Long, Entry> merged = new HashMap<>();
+        int current = epoch;
+        for (Stripe stripe : stripes) {
+            stripe.drainTo(merged, current);
+        }
+        List<Entry> entries = new ArrayList<>(merged.values());
+        entries.sort((a, b) -> Long.compare(b.count, a.count));
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+    }
+
+    /**
+     * 清空
+     */
+    public synchronized void clear() {
+        epoch++;
+    }
+
+    // ==============
+
+    /**
+     * 线程第一次计数: 优先接管已结束线程的分段
+     */
+    private Stripe register() {
+        Thread thread = Thread.currentThread();
+        for (Stripe stripe : stripes) {
+            if (stripe.adopt(thread)) {
+                return stripe;
+            }
+        }
+        Stripe stripe = new Stripe(capacity, thread, epoch);
+        stripes.add(stripe);
+        return stripe;
+    }
+
+    /**
+     * 统计结果
+     */
+    public static final class Entry {
+
+        private final long key;
+        private final String label;
+        private long count;
+        private long error;
+
+        Entry(long key, String label, long count, long error) {
+            this.key = key;
+            this.label = label;
+            this.count = count;
+            this.error = error;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /** 计数 (可能偏大, 不超过 error) */
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+
+    /**
+     * 分段 只由所属线程写入
+     */
+    private static final class Stripe {
+
+        private static final AtomicReferenceFieldUpdater<Stripe, Thread> OWNER =
+                AtomicReferenceFieldUpdater.newUpdater(Stripe.class, Thread.class, "owner");
+
+        private final long[] keys;
+        private final long[] counts;
+        private final long[] errors;
+        private final long[] ipHighs;
+        private final long[] ipLows;
+        /** 非 IpAddress 的展示名 为 null 时按 ipHighs / ipLows 还原 */
+        private final String[] labels;
+        private final String[] resources;
+        /** 按 Key 低位统计表中 Key 数, 为 0 时一定不在表中 (扫描攻击的新 Key 大多不用逐个比较) */
+        private final int[] filter;
+        private final int filterMask;
+        private int size;
+        /** 计数只增不减, 最小计数不会小于它 */
+        private long minCount;
+        /** 下次找最小计数器的起点 */
+        private int minHint;
+        /** 数据所属的清空代数 */
+        private volatile int epoch;
+
+        /** 所属线程 结束后可被接管 */
+        private volatile Thread owner;
+
+        Stripe(int capacity, Thread owner, int epoch) {
+            this.keys = new long[capacity];
+            this.counts = new long[capacity];
+            this.errors = new long[capacity];
+            this.ipHighs = new long[capacity];
+            this.ipLows = new long[capacity];
+            this.labels = new String[capacity];
+            this.resources = new String[capacity];
+            int n = 1;
+            while (n < capacity * 8) {
+                n <<= 1;
+            }
+            this.filter = new int[n];
+            this.filterMask = n - 1;
+            this.owner = owner;
+            this.epoch = epoch;
+        }
+
+        void add(long key, Object label, String resource, int current) {
+            if (epoch != current) {
+                size = 0;
+                minCount = 0L;
+                minHint = 0;
+                Arrays.fill(filter, 0);
+                epoch = current;
+            }
+            int n = size;
+            int f = (int) key & filterMask;
+            if (filter[f] != 0) {
+                for (int i = 0; i < n; i++) {
+                    if (keys[i] == key) {
+                        counts[i]++;
+                        return;
+                    }
+                }
+            }
+            int i = n;
+            if (i < keys.length) {
+                counts[i] = 0L;
+                errors[i] = 0L;
+            } else {
+                // 替换计数最小的
+                i = minSlot();
+                errors[i] = counts[i];
+                filter[(int) keys[i] & filterMask]--;
+            }
+            filter[f]++;
+            keys[i] = key;
+            counts[i]++;
+            if (label instanceof IpAddress) {
+                ipHighs[i] = ((IpAddress) label).getHigh();
+                ipLows[i] = ((IpAddress) label).getLow();
+                labels[i] = null;
+            } else {
+                labels[i] = label instanceof String ? (String) label : String.valueOf(label);
+            }
+            resources[i] = resource;
+            if (i == n) {
+                // 计数器写完再计入 size
+                size = n + 1;
+            }
+        }
+
+        void drainTo(Map<Long, Entry> merged, int current) {
+            if (epoch != current) {
+                return;
+            }
+            int n = Math.min(size, keys.length);
+            for (int i = 0; i < n; i++) {
+                Entry entry = merged.get(keys[i]);
+                if (entry == null) {
+                    merged.put(keys[i], new Entry(keys[i], label(i), counts[i], errors[i]));
+                } else {
+                    entry.count += counts[i];
+                    entry.error += errors[i];
+                }
+            }
+        }
+
+        /**
+         * 所属线程已结束时由新线程接管
+         */
+        boolean adopt(Thread thread) {
+            Thread previous = owner;
+            return !previous.isAlive() && OWNER.compareAndSet(this, previous, thread);
+        }
+
+        /**
+         * 计数最小的计数器: 从 minHint 往后遇到等于 minCount 的直接返回, 否则走完一圈取最小并更新 minCount
+         * 扫描攻击下各计数器轮流被替换, 均摊只看一两个
+         */
+        private int minSlot() {
+            int n = size;
+            int i = minHint;
+            int min = i;
+            for (int k = 0; k < n; k++) {
+                if (counts[i] == minCount) {
+                    min = i;
+                    break;
+                }
+                if (counts[i] < counts[min]) {
+                    min = i;
+                }
+                if (++i == n) {
+                    i = 0;
+                }
+            }
+            minCount = counts[min];
+            minHint = min + 1 == n ? 0 : min + 1;
+            return min;
+        }
+
+        private String label(int i) {
+            String label = labels[i];
+            if (label == null) {
+                IpAddress address = new IpAddress();
+                address.set(ipHighs[i], ipLows[i]);
+                label = address.toString();
+            }
+            return resources[i] == null ? label : label + " " + resources[i];
+        }
+    }
+
+}
@@ -27,7 +27,7 @@ public enum CommonMsg implements BaseMsg {
 
 
     /** 当前系统繁忙，请稍后再试 */
-    OTHER_EXCEPTION_LIMITER(500,"当前系统繁忙，请稍后再试"),
+    OTHER_EXCEPTION_LIMITER(429,"当前系统繁忙，请稍后再试"),
 
 
     ;
@@ -0,0 +1,117 @@
+package org.opsli.limiter.core.policy;
+
+import org.opsli.limiter.core.ip.IpAddress;
+import org.springframework.expression.spel.standard.SpelExpression;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.policy
+ * @Author: Parker
+ * @CreateTime: 2021-01-24 10:10
+ * @Description: 令牌数 (请求代价) 表达式
+ *
+ * @Limiter(cost = "#ids.size()") 或 @Limiter(cost = "#ids") 每次请求消耗的令牌数
+ * 根对象、方法参数与 Key 表达式相同, 共用同一个线程内的求值上下文
+ *
+ * 结果为数字取整, 集合 / 数组 / Map 取元素个数, 字符串按十进制解析
+ * 结果为 null、无法解析或小于 1 时按 1 个令牌计
+ */
+public final class LimiterCostExpression {
+
+    /** 单次最多消耗的令牌数 */
+    public static final int MAX_PERMITS = 1 << 20;
+
+    /** 原始表达式 */
+    private final String source;
+    private final SpelExpression expression;
+    /** 方法参数名 取不到时为 null (仍可用 #p0 / #a0) */
+    private final String[] parameterNames;
+    /** 是否引用了方法参数 (过滤器中没有方法参数) */
+    private final boolean argsRequired;
+
+    private LimiterCostExpression(String source, SpelExpression expression,
+                                  String[] parameterNames, boolean argsRequired) {
+        this.source = source;
+        this.expression = expression;
+        this.parameterNames = parameterNames;
+        this.argsRequired = argsRequired;
+    }
+
+    /**
+     * 解析
+     * @param method 方法 可以为 null
+     * @param source 表达式
+     * @return 没有表达式返回 null (按固定令牌数)
+     */
+    public static LimiterCostExpression of(Method method, String source) {
+        if (source == null || source.trim().isEmpty()) {
+            return null;
+        }
+        SpelExpression expression = LimiterKeyExpression.parser(method).parseRaw(source);
+        String[] parameterNames = method != null
+                ? LimiterKeyExpression.PARAMETER_NAMES.getParameterNames(method) : null;
+        return new LimiterCostExpression(source, expression, parameterNames,
+                LimiterKeyExpression.referencesArgs(expression.getAST()));
+    }
+
+    /**
+     * 求值
+     * @param request 请求
+     * @param ip 客户端地址 可以为 null
+     * @param args 方法参数 可以为 null
+     * @return 令牌数 [1, MAX_PERMITS]
+     */
+    public int evaluate(HttpServletRequest request, IpAddress ip, Object[] args) {
+        LimiterKeyContext context = LimiterKeyExpression.CONTEXT.get();
+        context.bind(parameterNames, request, ip, args);
+        try {
+            return toPermits(expression.getValue(context));
+        } finally {
+            // 不持有请求和参数的引用
+            context.clear();
+        }
+    }
+
+    /**
+     * 是否引用了方法参数
+     * @return boolean
+     */
+    public boolean isArgsRequired() {
+        return argsRequired;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    // ==============
+
+    private static int toPermits(Object value) {
+        long permits;
+        if (value instanceof Number) {
+            permits = ((Number) value).longValue();
+        } else if (value instanceof Collection) {
+            permits = ((Collection<?>) value).size();
+        } else if (value instanceof Map) {
+            permits = ((Map<?, ?>) value).size();
+        } else if (value != null && value.getClass().isArray()) {
+            permits = Array.getLength(value);
+        } else if (value instanceof CharSequence) {
+            try {
+                permits = Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                permits = 1L;
+            }
+        } else {
+            permits = 1L;
+        }
+        return (int) Math.max(1L, Math.min(permits, MAX_PERMITS));
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.opsli.limiter.core.policy;
+
+import org.opsli.limiter.core.ip.IpAddress;
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.ConstructorResolver;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.OperatorOverloader;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypeLocator;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.policy
+ * @Author: Parker
+ * @CreateTime: 2021-01-19 10:30
+ * @Description: 限流 Key 表达式求值上下文
+ *
+ * 每个线程一个, 求值前绑定请求和方法参数, 求值后清空 (请求路径上不新建上下文)
+ * 解析器、类型转换等无状态部分共用同一个 StandardEvaluationContext
+ * 方法参数按 #参数名 / #p0 / #a0 读取, 不写入变量表
+ */
+final class LimiterKeyContext implements EvaluationContext {
+
+    private final StandardEvaluationContext shared;
+    private final LimiterKeyRoot root = new LimiterKeyRoot();
+    private final TypedValue rootValue = new TypedValue(root);
+
+    private String[] parameterNames;
+    private Object[] args;
+    /** 表达式中赋值的变量 极少使用 */
+    private Map<String, Object> variables;
+
+    LimiterKeyContext(StandardEvaluationContext shared) {
+        this.shared = shared;
+    }
+
+    void bind(String[] parameterNames, HttpServletRequest request, IpAddress ip, Object[] args) {
+        this.parameterNames = parameterNames;
+        this.args = args;
+        root.set(request, ip, args);
+    }
+
+    void clear() {
+        this.parameterNames = null;
+        this.args = null;
+        this.variables = null;
+        root.set(null, null, null);
+    }
+
+    @Override
+    public TypedValue getRootObject() {
+        return rootValue;
+    }
+
+    @Override
+    public List<PropertyAccessor> getPropertyAccessors() {
+        return shared.getPropertyAccessors();
+    }
+
+    @Override
+    public List<ConstructorResolver> getConstructorResolvers() {
+        return shared.getConstructorResolvers();
+    }
+
+    @Override
+    public List<MethodResolver> getMethodResolvers() {
+        return shared.getMethodResolvers();
+    }
+
+    @Override
+    public BeanResolver getBeanResolver() {
+        return shared.getBeanResolver();
+    }
+
+    @Override
+    public TypeLocator getTypeLocator() {
+        return shared.getTypeLocator();
+    }
+
+    @Override
+    public TypeConverter getTypeConverter() {
+        return shared.getTypeConverter();
+    }
+
+    @Override
+    public TypeComparator getTypeComparator() {
+        return shared.getTypeComparator();
+    }
+
+    @Override
+    public OperatorOverloader getOperatorOverloader() {
+        return shared.getOperatorOverloader();
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        if (variables == null) {
+            variables = new HashMap<>(4);
+        }
+        variables.put(name, value);
+    }
+
+    @Override
+    public Object lookupVariable(String name) {
+        if (variables != null && variables.containsKey(name)) {
+            return variables.get(name);
+        }
+        if (args != null) {
+            if (parameterNames != null) {
+                for (int i = 0; i < parameterNames.length && i < args.length; i++) {
+                    if (name.equals(parameterNames[i])) {
+                        return args[i];
+                    }
+                }
+            }
+            int index = argIndex(name);
+            if (index >= 0 && index < args.length) {
+                return args[index];
+            }
+        }
+        return shared.lookupVariable(name);
+    }
+
+    // ==============
+
+    /**
+     * #p0 / #a0 的下标
+     * @return 不是下标变量返回 -1
+     */
+    private static int argIndex(String name) {
+        int len = name.length();
+        if (len < 2 || len > 4 || (name.charAt(0) != 'p' && name.charAt(0) != 'a')) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 1; i < len; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,197 @@
+package org.opsli.limiter.core.policy;
+
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.ip.IpAddress;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.policy
+ * @Author: Parker
+ * @CreateTime: 2021-01-19 10:40
+ * @Description: 限流 Key 表达式
+ *
+ * @Limiter(key = {"request.getHeader('X-Tenant-Id')", "#userId"}) 每个元素是一个维度,
+ * 各维度的结果直接哈希为 long 再按顺序组合, 不拼接字符串
+ *
+ * 每个方法解析一次, SpEL 编译模式 (MIXED): 前几次解释执行, 之后编译为字节码,
+ * 编译后的表达式因类型变化失败时自动退回解释执行
+ */
+public final class LimiterKeyExpression {
+
+    /** 与 IP 哈希区分 */
+    private static final long SEED = LimiterKeys.hash("opsli:limiter:key");
+
+    static final ParameterNameDiscoverer PARAMETER_NAMES = new DefaultParameterNameDiscoverer();
+
+    /** 无状态部分 所有表达式共用 (包括 LimiterCostExpression) */
+    static final StandardEvaluationContext SHARED = new StandardEvaluationContext();
+
+    static final ThreadLocal<LimiterKeyContext> CONTEXT =
+            ThreadLocal.withInitial(() -> new LimiterKeyContext(SHARED));
+
+    static {
+        // 提前初始化 之后多线程只读
+        SHARED.getPropertyAccessors();
+        SHARED.getConstructorResolvers();
+        SHARED.getMethodResolvers();
+    }
+
+    /** 原始表达式 */
+    private final String[] sources;
+    /** 维度 */
+    private final Expression[] expressions;
+    /** 方法参数名 取不到时为 null (仍可用 #p0 / #a0) */
+    private final String[] parameterNames;
+    /** 是否引用了方法参数 (过滤器中没有方法参数) */
+    private final boolean argsRequired;
+
+    private LimiterKeyExpression(String[] sources, Expression[] expressions,
+                                 String[] parameterNames, boolean argsRequired) {
+        this.sources = sources;
+        this.expressions = expressions;
+        this.parameterNames = parameterNames;
+        this.argsRequired = argsRequired;
+    }
+
+    /**
+     * 解析
+     * @param method 方法 可以为 null
+     * @param sources 表达式 每个元素一个维度
+     * @return 没有表达式返回 null (按 IP 限流)
+     */
+    public static LimiterKeyExpression of(Method method, String... sources) {
+        if (sources == null || sources.length == 0) {
+            return null;
+        }
+        SpelExpressionParser parser = parser(method);
+        Expression[] expressions = new Expression[sources.length];
+        boolean argsRequired = false;
+        for (int i = 0; i < sources.length; i++) {
+            SpelExpression expression = parser.parseRaw(sources[i]);
+            expressions[i] = expression;
+            argsRequired |= referencesArgs(expression.getAST());
+        }
+        String[] parameterNames = method != null ? PARAMETER_NAMES.getParameterNames(method) : null;
+        return new LimiterKeyExpression(sources.clone(), expressions, parameterNames, argsRequired);
+    }
+
+    /**
+     * 表达式解析器 编译模式 MIXED, 按方法所在类的类加载器编译
+     * @param method 方法 可以为 null
+     * @return SpelExpressionParser
+     */
+    static SpelExpressionParser parser(Method method) {
+        ClassLoader classLoader = method != null
+                ? method.getDeclaringClass().getClassLoader()
+                : LimiterKeyExpression.class.getClassLoader();
+        return new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, classLoader));
+    }
+
+    /**
+     * 设置 Bean 解析器 表达式中可以用 @beanName 引用 Bean
+     * @param beanResolver Bean 解析器
+     */
+    public static void setBeanResolver(BeanResolver beanResolver) {
+        SHARED.setBeanResolver(beanResolver);
+    }
+
+    /**
+     * 求值并哈希
+     * @param request 请求
+     * @param ip 客户端地址 可以为 null
+     * @param args 方法参数 可以为 null
+     * @return 自定义 Key 哈希
+     */
+    public long hash(HttpServletRequest request, IpAddress ip, Object[] args) {
+        LimiterKeyContext context = CONTEXT.get();
+        context.bind(parameterNames, request, ip, args);
+        try {
+            long h = SEED;
+            for (Expression expression : expressions) {
+                h = LimiterKeys.combine(h, LimiterKeys.hashValue(expression.getValue(context)));
+            }
+            return h;
+        } finally {
+            // 不持有请求和参数的引用
+            context.clear();
+        }
+    }
+
+    /**
+     * 字面量的 Key 哈希 与表达式结果相同时 hash 一致 (规则按 Key 匹配)
+     * 能解析为 IP 的字面量按地址计算, 其他按文本计算
+     * @param literals 每个维度的字面量
+     * @return 自定义 Key 哈希
+     */
+    public static long hashLiterals(List<String> literals) {
+        long h = SEED;
+        for (String literal : literals) {
+            IpAddress address = literal == null ? null : IpAddress.parse(literal);
+            h = LimiterKeys.combine(h, address != null
+                    ? LimiterKeys.hashIp(address)
+                    : LimiterKeys.hashValue(literal));
+        }
+        return h;
+    }
+
+    /**
+     * 维度数
+     * @return int
+     */
+    public int size() {
+        return expressions.length;
+    }
+
+    /**
+     * 是否引用了方法参数
+     * @return boolean
+     */
+    public boolean isArgsRequired() {
+        return argsRequired;
+    }
+
+    public String[] getSources() {
+        return sources.clone();
+    }
+
+    // ==============
+
+    /**
+     * 表达式中是否有 #变量 (#root / #this 除外) 或 args
+     */
+    static boolean referencesArgs(SpelNode node) {
+        if (node instanceof VariableReference) {
+            String name = node.toStringAST();
+            if (!"#root".equals(name) && !"#this".equals(name)) {
+                return true;
+            }
+        }
+        if (node instanceof PropertyOrFieldReference
+                && "args".equals(((PropertyOrFieldReference) node).getName())) {
+            return true;
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (referencesArgs(node.getChild(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
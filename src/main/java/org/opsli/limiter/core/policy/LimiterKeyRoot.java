@@ -0,0 +1,44 @@
+package org.opsli.limiter.core.policy;
+
+import org.opsli.limiter.core.ip.IpAddress;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.policy
+ * @Author: Parker
+ * @CreateTime: 2021-01-19 10:20
+ * @Description: 限流 Key 表达式的根对象
+ *
+ * request  当前请求          如 request.getHeader('X-Tenant-Id')
+ * ip       客户端地址 (二进制) 解析失败时为 null
+ * args     方法参数          过滤器中为 null, 方法参数也可以用 #参数名 / #p0 引用
+ *
+ * 线程内复用 只在表达式求值期间有效
+ */
+public final class LimiterKeyRoot {
+
+    private HttpServletRequest request;
+    private IpAddress ip;
+    private Object[] args;
+
+    public HttpServletRequest getRequest() {
+        return request;
+    }
+
+    public IpAddress getIp() {
+        return ip;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    void set(HttpServletRequest request, IpAddress ip, Object[] args) {
+        this.request = request;
+        this.ip = ip;
+        this.args = args;
+    }
+
+}
@@ -0,0 +1,403 @@
+package org.opsli.limiter.core.policy;
+
+import org.opsli.limiter.core.annotation.Limiter;
+import org.opsli.limiter.core.bulkhead.Bulkhead;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.enums.ClockType;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.metrics.LimiterMetrics;
+import org.opsli.limiter.core.metrics.LimiterStats;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.policy
+ * @Author: Parker
+ * @CreateTime: 2021-01-12 10:10
+ * @Description: 限流策略
+ *
+ * @Limiter 注解解析后的不可变对象, 直接持有对应的限流器组
+ * 规则覆盖注解参数时生成新的策略对象 (见 LimiterRuleRegistry), 原策略不变
+ *
+ * 每个策略的限流器组带有策略标识, 不同策略 (如同一路径的 GET / POST) 的限流器互不共享:
+ * 有方法的按方法签名计算 (重启后不变, 快照可以恢复), 手动创建的按创建顺序分配;
+ * 规则覆盖生成的策略沿用原策略的标识
+ */
+public final class LimiterPolicy {
+
+    /** 手动创建 (没有方法) 的策略统计名 */
+    public static final String MANUAL = "manual";
+
+    /** 手动创建的策略标识序号 */
+    private static final AtomicLong MANUAL_SCOPES = new AtomicLong();
+
+    /** QPS */
+    private final double qps;
+
+    /** 突发令牌数 */
+    private final double burst;
+
+    /** 提醒方式 */
+    private final AlertType alertType;
+
+    /** 令牌获取方式 */
+    private final AcquireMode acquireMode;
+
+    /** 等待时长 毫秒 */
+    private final long timeout;
+
+    /** 限流算法 */
+    private final AlgorithmType algorithm;
+
+    /** 窗口时长 毫秒 */
+    private final long window;
+
+    /** 时钟 */
+    private final ClockType clock;
+
+    /** 自定义 Key 为 null 按 IP 限流 */
+    private final LimiterKeyExpression key;
+
+    /** 每次请求消耗的令牌数 */
+    private final int permits;
+
+    /** 令牌数表达式 为 null 按 permits */
+    private final LimiterCostExpression cost;
+
+    /** 并发隔离 为 null 不限制, 规则覆盖后仍是同一个 */
+    private final Bulkhead bulkhead;
+
+    /** 方法 规则按方法匹配, 手动创建时为 null */
+    private final Method method;
+
+    /** 限流器组 */
+    private final LimiterGroup group;
+
+    /** 统计 按方法 规则覆盖后仍是同一份 */
+    private final LimiterStats stats;
+
+    private LimiterPolicy(Builder builder, LimiterGroup group) {
+        if (builder.permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        this.qps = builder.qps;
+        this.burst = builder.burst;
+        this.alertType = builder.alertType;
+        this.acquireMode = builder.acquireMode;
+        this.timeout = builder.timeout;
+        this.algorithm = builder.algorithm;
+        this.window = builder.window;
+        this.clock = builder.clock;
+        this.key = builder.key;
+        this.permits = builder.permits;
+        this.cost = builder.cost;
+        this.bulkhead = builder.bulkhead;
+        this.method = builder.method;
+        this.group = group != null ? group : RateLimiterUtil.newGroup(qps, burst, algorithm, window, clock)
+                .withScope(builder.scope != 0L ? builder.scope : scopeOf(method));
+        this.stats = LimiterMetrics.of(nameOf(method), labelOf(method));
+        if (bulkhead != null) {
+            stats.setBulkhead(bulkhead);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 以本策略的参数为初始值的构建器 (规则覆盖部分参数时使用)
+     * @return Builder
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.scope = group.getScope();
+        return builder
+                .qps(qps)
+                .burst(burst)
+                .alertType(alertType)
+                .acquireMode(acquireMode)
+                .timeout(timeout)
+                .algorithm(algorithm)
+                .window(window)
+                .clock(clock)
+                .key(key)
+                .permits(permits)
+                .cost(cost)
+                .bulkhead(bulkhead)
+                .method(method);
+    }
+
+    /**
+     * 解析注解
+     * @param limiter 注解
+     * @return LimiterPolicy
+     */
+    public static LimiterPolicy of(Limiter limiter) {
+        return of(null, limiter);
+    }
+
+    /**
+     * 解析注解 Key 表达式按方法参数名绑定
+     * @param method 方法
+     * @param limiter 注解
+     * @return LimiterPolicy
+     */
+    public static LimiterPolicy of(Method method, Limiter limiter) {
+        return builder()
+                .qps(limiter.qps())
+                .burst(limiter.burst())
+                .alertType(limiter.alertType())
+                .acquireMode(limiter.acquireMode())
+                .timeout(limiter.timeout())
+                .algorithm(limiter.algorithm())
+                .window(limiter.window())
+                .clock(limiter.clock())
+                .key(LimiterKeyExpression.of(method, limiter.key()))
+                .permits(limiter.permits())
+                .cost(LimiterCostExpression.of(method, limiter.cost()))
+                .bulkhead(limiter.maxConcurrent() > 0
+                        ? new Bulkhead(nameOf(method), limiter.maxConcurrent(), limiter.maxQueue())
+                        : null)
+                .method(method)
+                .build();
+    }
+
+    /**
+     * 部分 Key 使用其他策略的限流参数 (QPS、突发、算法、窗口、时钟)
+     * @param keys 自定义 Key 哈希
+     * @param policies 对应的策略
+     * @return 新的策略 原策略不变
+     */
+    public LimiterPolicy withKeyOverrides(long[] keys, LimiterPolicy[] policies) {
+        LimiterGroup[] groups = new LimiterGroup[policies.length];
+        for (int i = 0; i < policies.length; i++) {
+            groups[i] = policies[i].getGroup();
+        }
+        return new LimiterPolicy(toBuilder(), group.withKeyOverrides(keys, groups));
+    }
+
+    public double getQps() {
+        return qps;
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    public AlertType getAlertType() {
+        return alertType;
+    }
+
+    public AcquireMode getAcquireMode() {
+        return acquireMode;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public AlgorithmType getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    public ClockType getClock() {
+        return clock;
+    }
+
+    public LimiterKeyExpression getKey() {
+        return key;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    public LimiterCostExpression getCost() {
+        return cost;
+    }
+
+    /**
+     * Key 表达式或令牌数表达式是否引用了方法参数 (过滤器中没有方法参数)
+     * @return boolean
+     */
+    public boolean isArgsRequired() {
+        return (key != null && key.isArgsRequired()) || (cost != null && cost.isArgsRequired());
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public LimiterGroup getGroup() {
+        return group;
+    }
+
+    public LimiterStats getStats() {
+        return stats;
+    }
+
+    // ==============
+
+    /**
+     * 策略标识 有方法时按方法签名计算
+     */
+    private static long scopeOf(Method method) {
+        if (method == null) {
+            return LimiterKeys.mix64(MANUAL_SCOPES.incrementAndGet());
+        }
+        return LimiterKeys.hash(method.toGenericString());
+    }
+
+    /**
+     * 统计名 全类名#方法名(参数类型), 重载方法、不同包的同名类各自一份
+     */
+    private static String nameOf(Method method) {
+        if (method == null) {
+            return MANUAL;
+        }
+        StringBuilder name = new StringBuilder(method.getDeclaringClass().getName())
+                .append('#').append(method.getName()).append('(');
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                name.append(',');
+            }
+            name.append(types[i].getTypeName());
+        }
+        return name.append(')').toString();
+    }
+
+    /**
+     * 展示名 类名#方法名 (可能重复, 只用于展示)
+     */
+    private static String labelOf(Method method) {
+        if (method == null) {
+            return MANUAL;
+        }
+        return method.getDeclaringClass().getSimpleName() + "#" + method.getName();
+    }
+
+    /**
+     * 构建器 未设置的参数与 @Limiter 的默认值相同
+     */
+    public static final class Builder {
+
+        private double qps = RateLimiterUtil.DEFAULT_QPS;
+        private double burst;
+        private AlertType alertType = AlertType.JSON;
+        private AcquireMode acquireMode = AcquireMode.REJECT;
+        private long timeout = RateLimiterUtil.DEFAULT_WAIT;
+        private AlgorithmType algorithm = AlgorithmType.TOKEN_BUCKET;
+        private long window = RateLimiterUtil.DEFAULT_WINDOW;
+        private ClockType clock = ClockType.PRECISE;
+        private LimiterKeyExpression key;
+        private int permits = 1;
+        private LimiterCostExpression cost;
+        private Bulkhead bulkhead;
+        private Method method;
+        /** 策略标识 toBuilder 时沿用原策略的, 0 为按方法计算 */
+        private long scope;
+
+        private Builder() {
+        }
+
+        /** QPS 小于等于0 不限流 */
+        public Builder qps(double qps) {
+            this.qps = qps;
+            return this;
+        }
+
+        /** 突发令牌数 小于等于0 为 1 秒的令牌 */
+        public Builder burst(double burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        /** 提醒方式 */
+        public Builder alertType(AlertType alertType) {
+            this.alertType = alertType;
+            return this;
+        }
+
+        /** 令牌获取方式 */
+        public Builder acquireMode(AcquireMode acquireMode) {
+            this.acquireMode = acquireMode;
+            return this;
+        }
+
+        /** 等待时长 毫秒 */
+        public Builder timeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /** 限流算法 */
+        public Builder algorithm(AlgorithmType algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /** 窗口时长 毫秒 */
+        public Builder window(long window) {
+            this.window = window;
+            return this;
+        }
+
+        /** 时钟 */
+        public Builder clock(ClockType clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /** 自定义 Key 为 null 按 IP 限流 */
+        public Builder key(LimiterKeyExpression key) {
+            this.key = key;
+            return this;
+        }
+
+        /** 每次请求消耗的令牌数 */
+        public Builder permits(int permits) {
+            this.permits = permits;
+            return this;
+        }
+
+        /** 令牌数表达式 为 null 按 permits */
+        public Builder cost(LimiterCostExpression cost) {
+            this.cost = cost;
+            return this;
+        }
+
+        /** 并发隔离 为 null 不限制 */
+        public Builder bulkhead(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+            return this;
+        }
+
+        /** 方法 规则按方法匹配 */
+        public Builder method(Method method) {
+            this.method = method;
+            return this;
+        }
+
+        public LimiterPolicy build() {
+            return new LimiterPolicy(this, null);
+        }
+
+    }
+
+}
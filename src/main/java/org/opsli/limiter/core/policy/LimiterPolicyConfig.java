@@ -0,0 +1,59 @@
+package org.opsli.limiter.core.policy;
+
+import org.opsli.limiter.core.enums.ClockType;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.expression.BeanFactoryResolver;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.policy
+ * @Author: Parker
+ * @CreateTime: 2021-01-19 11:20
+ * @Description: 限流策略配置
+ *
+ * opsli.limiter.normalize-uri  按映射路径限流 (默认 true), false 按实际 URI
+ * opsli.limiter.headers        输出 X-RateLimit-* / Retry-After 响应头 (默认 true)
+ * opsli.limiter.probation      一级计数 低频 Key 不建限流器 (默认 true)
+ * opsli.limiter.off-heap.max-keys  堆外状态 预计同时保留状态的 Key 数 (默认 0 关闭)
+ * opsli.limiter.index-clock    索引过期判断的时钟 PRECISE / CACHED (默认 PRECISE)
+ * Key 表达式中可以用 @beanName 引用 Bean
+ */
+@Configuration
+public class LimiterPolicyConfig implements InitializingBean {
+
+    private final BeanFactory beanFactory;
+
+    @Value("${opsli.limiter.normalize-uri:true}")
+    private boolean normalizeUri;
+
+    @Value("${opsli.limiter.headers:true}")
+    private boolean rateLimitHeaders;
+
+    @Value("${opsli.limiter.probation:true}")
+    private boolean probation;
+
+    @Value("${opsli.limiter.off-heap.max-keys:0}")
+    private int offHeapMaxKeys;
+
+    @Value("${opsli.limiter.index-clock:PRECISE}")
+    private ClockType indexClock;
+
+    public LimiterPolicyConfig(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        RateLimiterUtil.setNormalizeUri(normalizeUri);
+        RateLimiterUtil.setRateLimitHeaders(rateLimitHeaders);
+        RateLimiterUtil.setProbation(probation);
+        RateLimiterUtil.setOffHeap(offHeapMaxKeys);
+        RateLimiterUtil.setIndexClock(indexClock);
+        LimiterKeyExpression.setBeanResolver(new BeanFactoryResolver(beanFactory));
+    }
+
+}
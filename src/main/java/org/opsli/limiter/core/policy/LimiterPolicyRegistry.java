@@ -0,0 +1,51 @@
+package org.opsli.limiter.core.policy;
+
+import org.opsli.limiter.core.annotation.Limiter;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.policy
+ * @Author: Parker
+ * @CreateTime: 2021-01-13 10:20
+ * @Description: 限流策略注册表
+ *
+ * 每个方法第一次调用时解析 @Limiter (包括编译 Key 表达式), 之后每次请求只有一次 Map 查找
+ * AOP 与 过滤器 共用同一个策略对象 (同一个限流器组)
+ */
+public final class LimiterPolicyRegistry {
+
+    private static final Map<Method, LimiterPolicy> POLICIES = new ConcurrentHashMap<>();
+
+    /**
+     * 获得方法的限流策略
+     * @param method 方法
+     * @return 没有 @Limiter 返回 null
+     */
+    public static LimiterPolicy get(Method method) {
+        LimiterPolicy policy = POLICIES.get(method);
+        if (policy != null) {
+            return policy;
+        }
+        Limiter limiter = method.getAnnotation(Limiter.class);
+        if (limiter == null) {
+            return null;
+        }
+        return POLICIES.computeIfAbsent(method, k -> LimiterPolicy.of(method, limiter));
+    }
+
+    /**
+     * 清空 下次调用重新解析
+     */
+    public static void clear() {
+        POLICIES.clear();
+    }
+
+    // ==========================
+
+    private LimiterPolicyRegistry(){}
+
+}
@@ -0,0 +1,236 @@
+package org.opsli.limiter.core.rule;
+
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.enums.ClockType;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.springframework.util.PathMatcher;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.rule
+ * @Author: Parker
+ * @CreateTime: 2021-01-20 10:10
+ * @Description: 限流规则
+ *
+ * 匹配条件 (都为空时匹配所有 @Limiter 方法, 多个条件同时满足才匹配):
+ *   pattern  映射路径 Ant 表达式, 如 /api/**
+ *   method   方法, 类名#方法名 (类名可以是简单类名或全限定名), 只写类名匹配类中所有方法
+ *   key      自定义 Key 的字面量, 每个维度一个, 只对配置了 @Limiter(key) 的方法生效
+ *
+ * 覆盖参数 (为空沿用注解): qps, burst, algorithm, window, clock, acquire-mode, timeout, permits
+ * permits 覆盖后不再使用注解的令牌数表达式 (cost)
+ * 按 Key 匹配的规则只覆盖桶参数 (qps, burst, algorithm, window, clock)
+ */
+public class LimiterRule {
+
+    private String pattern;
+    private String method;
+    private List<String> key = new ArrayList<>();
+
+    private Double qps;
+    private Double burst;
+    private AlgorithmType algorithm;
+    private Long window;
+    private ClockType clock;
+    private AcquireMode acquireMode;
+    private Long timeout;
+    private Integer permits;
+
+    /**
+     * 是否匹配
+     * @param policy 注解策略
+     * @param resource 映射路径
+     * @param pathMatcher 路径匹配
+     * @return boolean
+     */
+    public boolean matches(LimiterPolicy policy, String resource, PathMatcher pathMatcher) {
+        if (hasText(pattern) && (resource == null || !pathMatcher.match(pattern, resource))) {
+            return false;
+        }
+        if (hasText(method)) {
+            Method target = policy.getMethod();
+            if (target == null) {
+                return false;
+            }
+            int split = method.indexOf('#');
+            String className = split < 0 ? method : method.substring(0, split);
+            Class<?> type = target.getDeclaringClass();
+            if (!className.isEmpty() && !className.equals(type.getSimpleName())
+                    && !className.equals(type.getName())) {
+                return false;
+            }
+            return split < 0 || method.substring(split + 1).equals(target.getName());
+        }
+        return true;
+    }
+
+    /**
+     * 覆盖参数
+     * @param policy 原策略
+     * @return 新的策略
+     */
+    public LimiterPolicy applyTo(LimiterPolicy policy) {
+        LimiterPolicy.Builder builder = policy.toBuilder();
+        if (qps != null) {
+            builder.qps(qps);
+        }
+        if (burst != null) {
+            builder.burst(burst);
+        }
+        if (acquireMode != null) {
+            builder.acquireMode(acquireMode);
+        }
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        if (algorithm != null) {
+            builder.algorithm(algorithm);
+        }
+        if (window != null) {
+            builder.window(window);
+        }
+        if (permits != null) {
+            // 固定令牌数覆盖令牌数表达式
+            builder.permits(permits).cost(null);
+        }
+        if (clock != null) {
+            builder.clock(clock);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 是否按 Key 匹配
+     * @return boolean
+     */
+    public boolean isKeyed() {
+        return key != null && !key.isEmpty();
+    }
+
+    /**
+     * 复制 快照中的规则不受外部修改影响
+     * @return LimiterRule
+     */
+    public LimiterRule copy() {
+        LimiterRule rule = new LimiterRule();
+        rule.pattern = pattern;
+        rule.method = method;
+        rule.key = key == null ? new ArrayList<>() : new ArrayList<>(key);
+        rule.qps = qps;
+        rule.burst = burst;
+        rule.algorithm = algorithm;
+        rule.window = window;
+        rule.clock = clock;
+        rule.acquireMode = acquireMode;
+        rule.timeout = timeout;
+        rule.permits = permits;
+        return rule;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public List<String> getKey() {
+        return key;
+    }
+
+    public void setKey(List<String> key) {
+        this.key = key;
+    }
+
+    public Double getQps() {
+        return qps;
+    }
+
+    public void setQps(Double qps) {
+        this.qps = qps;
+    }
+
+    public Double getBurst() {
+        return burst;
+    }
+
+    public void setBurst(Double burst) {
+        this.burst = burst;
+    }
+
+    public AlgorithmType getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(AlgorithmType algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public Long getWindow() {
+        return window;
+    }
+
+    public void setWindow(Long window) {
+        this.window = window;
+    }
+
+    public ClockType getClock() {
+        return clock;
+    }
+
+    public void setClock(ClockType clock) {
+        this.clock = clock;
+    }
+
+    public AcquireMode getAcquireMode() {
+        return acquireMode;
+    }
+
+    public void setAcquireMode(AcquireMode acquireMode) {
+        this.acquireMode = acquireMode;
+    }
+
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    public Integer getPermits() {
+        return permits;
+    }
+
+    public void setPermits(Integer permits) {
+        this.permits = permits;
+    }
+
+    @Override
+    public String toString() {
+        return "LimiterRule{pattern=" + pattern + ", method=" + method + ", key=" + key
+                + ", qps=" + qps + ", burst=" + burst + ", algorithm=" + algorithm + ", window=" + window
+                + ", clock=" + clock + ", acquireMode=" + acquireMode + ", timeout=" + timeout + ", permits=" + permits + '}';
+    }
+
+    // ==============
+
+    private static boolean hasText(String s) {
+        return s != null && !s.trim().isEmpty();
+    }
+
+}
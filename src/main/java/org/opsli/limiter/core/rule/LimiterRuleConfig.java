@@ -0,0 +1,41 @@
+package org.opsli.limiter.core.rule;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.rule
+ * @Author: Parker
+ * @CreateTime: 2021-01-20 11:30
+ * @Description: 限流规则配置
+ *
+ * opsli.limiter.rules.items           规则 (见 LimiterRule)
+ * opsli.limiter.rules.file            规则文件 修改后自动重新加载, 为空不监听
+ * opsli.limiter.rules.watch-interval  检查文件的间隔 毫秒
+ */
+@Configuration
+public class LimiterRuleConfig {
+
+    @Bean(destroyMethod = "stop")
+    public LimiterRuleWatcher limiterRuleWatcher(Environment environment,
+                                                 @Value("${opsli.limiter.rules.file:}") String file,
+                                                 @Value("${opsli.limiter.rules.watch-interval:2000}") long interval) {
+        List<LimiterRule> rules = Binder.get(environment)
+                .bind("opsli.limiter.rules.items", Bindable.listOf(LimiterRule.class))
+                .orElse(Collections.emptyList());
+        LimiterRuleWatcher watcher = new LimiterRuleWatcher(rules,
+                file.trim().isEmpty() ? null : Paths.get(file.trim()), interval);
+        watcher.start();
+        return watcher;
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.opsli.limiter.core.rule;
+
+import org.opsli.limiter.core.policy.LimiterPolicy;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.rule
+ * @Author: Parker
+ * @CreateTime: 2021-01-20 10:50
+ * @Description: 限流规则注册表
+ *
+ * 当前规则快照, 重新加载时替换引用 (写时复制), 请求路径只读一次 volatile 引用
+ * 已有限流器不清空: 新策略第一次访问时接管, 只改 QPS 的保留桶内状态
+ */
+public final class LimiterRuleRegistry {
+
+    private static volatile RuleSnapshot snapshot = new RuleSnapshot(Collections.emptyList());
+
+    /**
+     * 生效策略 注解策略叠加匹配的规则
+     * @param policy 注解策略
+     * @param resource 映射路径
+     * @return LimiterPolicy
+     */
+    public static LimiterPolicy resolve(LimiterPolicy policy, String resource) {
+        return snapshot.resolve(policy, resource);
+    }
+
+    /**
+     * 替换规则 校验失败时抛出异常, 原规则不变
+     * @param rules 规则
+     */
+    public static void apply(List<LimiterRule> rules) {
+        snapshot = new RuleSnapshot(rules);
+    }
+
+    /**
+     * 当前规则
+     * @return 只读列表
+     */
+    public static List<LimiterRule> getRules() {
+        return snapshot.getRules();
+    }
+
+    // ==========================
+
+    private LimiterRuleRegistry(){}
+
+}
@@ -0,0 +1,134 @@
+package org.opsli.limiter.core.rule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.rule
+ * @Author: Parker
+ * @CreateTime: 2021-01-20 11:10
+ * @Description: 规则文件监听
+ *
+ * 按间隔检查文件修改时间和大小, 变化后重新读取, 与 application.yaml 中的规则合并 (文件在后)
+ * 文件格式与 application.yaml 相同:
+ *   rules:
+ *     - pattern: /api/**
+ *       qps: 50
+ * 读取或校验失败时保留原规则, 文件删除后只使用 application.yaml 中的规则
+ */
+public class LimiterRuleWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(LimiterRuleWatcher.class);
+
+    /** application.yaml 中的规则 */
+    private final List<LimiterRule> baseRules;
+    /** 规则文件 为 null 不监听 */
+    private final Path file;
+    /** 检查间隔 毫秒 */
+    private final long interval;
+
+    private ScheduledExecutorService executor;
+    /** 上次加载时的文件状态 文件不存在为 -1 */
+    private long lastModified = Long.MIN_VALUE;
+    private long lastSize = Long.MIN_VALUE;
+
+    public LimiterRuleWatcher(List<LimiterRule> baseRules, Path file, long interval) {
+        this.baseRules = new ArrayList<>(baseRules);
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * 加载规则 并按间隔监听文件
+     */
+    public synchronized void start() {
+        if (!check()) {
+            LimiterRuleRegistry.apply(baseRules);
+        }
+        if (file != null && interval > 0 && executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "limiter-rule-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 停止监听
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 检查文件 有变化时重新加载
+     * @return 是否重新加载
+     */
+    public synchronized boolean check() {
+        if (file == null) {
+            return false;
+        }
+        try {
+            long modified = -1L;
+            long size = -1L;
+            if (Files.isRegularFile(file)) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                modified = attributes.lastModifiedTime().toMillis();
+                size = attributes.size();
+            }
+            if (modified == lastModified && size == lastSize) {
+                return false;
+            }
+            List<LimiterRule> rules = new ArrayList<>(baseRules);
+            if (modified >= 0) {
+                rules.addAll(read(file));
+            }
+            LimiterRuleRegistry.apply(rules);
+            lastModified = modified;
+            lastSize = size;
+            log.info("限流规则 - 已加载: " + rules.size() + " 条, 文件: " + file);
+            return true;
+        } catch (Exception e) {
+            // 保留原规则 下次检查时重试
+            log.error("限流规则 - 加载失败, 保留原规则, 文件: " + file + ", " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取规则文件
+     * @param file 文件
+     * @return 规则
+     */
+    public static List<LimiterRule> read(Path file) throws IOException {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+                .load("limiter-rules", new FileSystemResource(file));
+        Binder binder = new Binder(ConfigurationPropertySources.from(sources));
+        return binder.bind("rules", Bindable.listOf(LimiterRule.class))
+                .orElse(Collections.emptyList());
+    }
+
+}
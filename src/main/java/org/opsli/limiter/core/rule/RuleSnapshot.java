@@ -0,0 +1,122 @@
+package org.opsli.limiter.core.rule;
+
+import org.opsli.limiter.core.policy.LimiterKeyExpression;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.rule
+ * @Author: Parker
+ * @CreateTime: 2021-01-20 10:30
+ * @Description: 规则快照
+ *
+ * 加载后不再修改, 重新加载时整体替换 (写时复制)
+ * (注解策略, 映射路径) -> 生效策略 按快照缓存, 请求路径上只有两次 Map 查找, 不加锁
+ * 规则按顺序叠加, 后面的规则覆盖前面规则设置过的参数
+ */
+final class RuleSnapshot {
+
+    /** 每个注解策略缓存的映射路径数 超出后不缓存 (关闭 URI 归一化时 URI 不可枚举) */
+    private static final int MAX_RESOURCES = 1024;
+
+    private final List<LimiterRule> rules;
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<LimiterPolicy, Map<String, LimiterPolicy>> cache = new ConcurrentHashMap<>();
+
+    RuleSnapshot(List<LimiterRule> rules) {
+        List<LimiterRule> copy = new ArrayList<>(rules.size());
+        for (LimiterRule rule : rules) {
+            validate(rule);
+            copy.add(rule.copy());
+        }
+        this.rules = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * 生效策略
+     * @param policy 注解策略
+     * @param resource 映射路径
+     * @return 没有匹配的规则时返回原策略
+     */
+    LimiterPolicy resolve(LimiterPolicy policy, String resource) {
+        if (rules.isEmpty()) {
+            return policy;
+        }
+        Map<String, LimiterPolicy> byResource = cache.get(policy);
+        if (byResource == null) {
+            byResource = cache.computeIfAbsent(policy, k -> new ConcurrentHashMap<>());
+        }
+        LimiterPolicy resolved = byResource.get(resource);
+        if (resolved != null) {
+            return resolved;
+        }
+        if (byResource.size() >= MAX_RESOURCES) {
+            return compute(policy, resource);
+        }
+        return byResource.computeIfAbsent(resource, r -> compute(policy, r));
+    }
+
+    List<LimiterRule> getRules() {
+        return rules;
+    }
+
+    // ==============
+
+    private LimiterPolicy compute(LimiterPolicy policy, String resource) {
+        LimiterPolicy effective = policy;
+        for (LimiterRule rule : rules) {
+            if (!rule.isKeyed() && rule.matches(policy, resource, pathMatcher)) {
+                effective = rule.applyTo(effective);
+            }
+        }
+        LimiterKeyExpression key = policy.getKey();
+        if (key == null) {
+            return effective;
+        }
+        // 按 Key 的规则叠加在路径、方法规则之上
+        Map<Long, LimiterPolicy> keyed = new LinkedHashMap<>();
+        for (LimiterRule rule : rules) {
+            if (rule.isKeyed() && rule.getKey().size() == key.size()
+                    && rule.matches(policy, resource, pathMatcher)) {
+                long hash = LimiterKeyExpression.hashLiterals(rule.getKey());
+                keyed.put(hash, rule.applyTo(keyed.getOrDefault(hash, effective)));
+            }
+        }
+        if (keyed.isEmpty()) {
+            return effective;
+        }
+        long[] keys = new long[keyed.size()];
+        LimiterPolicy[] policies = new LimiterPolicy[keyed.size()];
+        int i = 0;
+        for (Map.Entry<Long, LimiterPolicy> entry : keyed.entrySet()) {
+            keys[i] = entry.getKey();
+            policies[i++] = entry.getValue();
+        }
+        return effective.withKeyOverrides(keys, policies);
+    }
+
+    private static void validate(LimiterRule rule) {
+        if (rule.getWindow() != null && rule.getWindow() <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + rule);
+        }
+        if (rule.getPermits() != null && rule.getPermits() <= 0) {
+            throw new IllegalArgumentException("permits must be positive: " + rule);
+        }
+        if (rule.getTimeout() != null && rule.getTimeout() < 0) {
+            throw new IllegalArgumentException("timeout must not be negative: " + rule);
+        }
+        if (rule.getQps() != null && rule.getQps().isNaN()) {
+            throw new IllegalArgumentException("qps must be a number: " + rule);
+        }
+    }
+
+}
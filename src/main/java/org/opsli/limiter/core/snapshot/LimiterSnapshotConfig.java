@@ -0,0 +1,31 @@
+package org.opsli.limiter.core.snapshot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.snapshot
+ * @Author: Parker
+ * @CreateTime: 2021-01-28 14:20
+ * @Description: 限流状态快照配置
+ *
+ * opsli.limiter.snapshot.file      快照文件 启动时恢复, 为空不写入
+ * opsli.limiter.snapshot.interval  写入间隔 毫秒, 小于等于0 只在停止时写入
+ */
+@Configuration
+public class LimiterSnapshotConfig {
+
+    @Bean(destroyMethod = "stop")
+    public LimiterSnapshotWriter limiterSnapshotWriter(@Value("${opsli.limiter.snapshot.file:}") String file,
+                                                       @Value("${opsli.limiter.snapshot.interval:10000}") long interval) {
+        LimiterSnapshotWriter writer = new LimiterSnapshotWriter(
+                file.trim().isEmpty() ? null : Paths.get(file.trim()), interval);
+        writer.start();
+        return writer;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.opsli.limiter.core.snapshot;
+
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.snapshot
+ * @Author: Parker
+ * @CreateTime: 2021-01-28 14:00
+ * @Description: 限流状态快照定时写入
+ *
+ * 启动时恢复上次的快照, 之后按间隔写入, 停止时再写一次 (正常停机不丢状态)
+ * 写入在后台线程, 先写临时文件再改名, 进程中途退出时保留上一次完整的快照
+ */
+public class LimiterSnapshotWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(LimiterSnapshotWriter.class);
+
+    /** 快照文件 为 null 不写入 */
+    private final Path file;
+    /** 写入间隔 毫秒 */
+    private final long interval;
+
+    private ScheduledExecutorService executor;
+
+    public LimiterSnapshotWriter(Path file, long interval) {
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * 恢复快照 并按间隔写入
+     */
+    public synchronized void start() {
+        if (file == null || executor != null) {
+            return;
+        }
+        restore();
+        if (interval > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "limiter-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::write, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 停止定时写入 并写入最后一次
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        write();
+    }
+
+    /**
+     * 写入快照
+     * @return 写入的记录数, 失败返回 -1
+     */
+    public synchronized int write() {
+        if (file == null) {
+            return -1;
+        }
+        try {
+            return RateLimiterUtil.writeSnapshot(file);
+        } catch (Exception e) {
+            // 保留上一次的快照 下次写入时重试
+            log.error("限流快照 - 写入失败, 文件: " + file + ", " + e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    // ==============
+
+    /**
+     * 恢复快照 文件不存在、格式不对或已过期时从满桶开始
+     */
+    private void restore() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            if (RateLimiterUtil.restoreSnapshot(file)) {
+                log.info("限流快照 - 已恢复, 文件: " + file);
+            } else {
+                log.info("限流快照 - 已过期或格式不对, 忽略, 文件: " + file);
+            }
+        } catch (Exception e) {
+            log.error("限流快照 - 恢复失败, 忽略, 文件: " + file + ", " + e.getMessage(), e);
+        }
+    }
+
+}
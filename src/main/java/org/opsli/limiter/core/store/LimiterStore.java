@@ -0,0 +1,25 @@
+package org.opsli.limiter.core.store;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.store
+ * @Author: Parker
+ * @CreateTime: 2021-01-16 09:30
+ * @Description: 共享限流存储
+ *
+ * 多个节点共用同一份令牌桶状态 (GCRA 理论到达时间), 节点按批次租用令牌后在本地消费
+ * 实现必须保证单次租用是原子的
+ */
+public interface LimiterStore {
+
+    /**
+     * 租用令牌 能租多少给多少, 不等待
+     * @param key 限流Key (跨节点稳定)
+     * @param qps QPS 大于0
+     * @param burst 突发令牌数 大于等于1
+     * @param permits 期望租用的令牌数
+     * @return 实际租到的令牌数 0 ~ permits
+     */
+    long lease(String key, double qps, double burst, long permits);
+
+}
@@ -0,0 +1,35 @@
+package org.opsli.limiter.core.store;
+
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.store
+ * @Author: Parker
+ * @CreateTime: 2021-01-16 14:00
+ * @Description: 分布式限流存储配置
+ *
+ * opsli.limiter.store.type = redis 时开启, @Limiter(algorithm = DISTRIBUTED) 使用 Redis 共享令牌桶
+ * 未开启时 DISTRIBUTED 使用进程内存储 (等同单机限流)
+ */
+@Configuration
+@ConditionalOnClass(StringRedisTemplate.class)
+@ConditionalOnProperty(prefix = "opsli.limiter.store", name = "type", havingValue = "redis")
+public class LimiterStoreConfig {
+
+    @Bean
+    public RedisLimiterStore redisLimiterStore(StringRedisTemplate redisTemplate,
+                                               @Value("${opsli.limiter.store.key-prefix:opsli:limiter:}") String keyPrefix,
+                                               @Value("${opsli.limiter.store.lease-size:" + RateLimiterUtil.DEFAULT_LEASE_SIZE + "}") int leaseSize) {
+        RedisLimiterStore store = new RedisLimiterStore(redisTemplate, keyPrefix);
+        RateLimiterUtil.setStore(store, leaseSize);
+        return store;
+    }
+
+}
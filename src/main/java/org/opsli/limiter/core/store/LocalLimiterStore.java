@@ -0,0 +1,55 @@
+package org.opsli.limiter.core.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.store
+ * @Author: Parker
+ * @CreateTime: 2021-01-16 09:50
+ * @Description: 进程内共享存储
+ *
+ * 与 Redis 脚本 (scripts/limiter_lease.lua) 相同的租用算法, 状态保存在当前进程
+ * 未配置 Redis 时的默认存储, 也用于在单进程内模拟多节点
+ */
+public class LocalLimiterStore implements LimiterStore {
+
+    /** 默认缓存个数 */
+    private static final int DEFAULT_CACHE_COUNT = 100_000;
+    /** 默认缓存时效 分钟 */
+    private static final int DEFAULT_CACHE_TIME = 5;
+
+    /** Key -> 理论到达时间 */
+    private final Cache<String, long[]> states = CacheBuilder.newBuilder()
+            .maximumSize(DEFAULT_CACHE_COUNT)
+            .expireAfterAccess(DEFAULT_CACHE_TIME, TimeUnit.MINUTES)
+            .build();
+
+    @Override
+    public long lease(String key, double qps, double burst, long permits) {
+        long[] tat;
+        try {
+            tat = states.get(key, () -> new long[]{System.nanoTime()});
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        synchronized (tat) {
+            long now = System.nanoTime();
+            long interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / qps));
+            long burstNanos = (long) (Math.max(1d, burst) * interval);
+            long base = tat[0] - now > 0 ? tat[0] : now;
+            long available = (now + burstNanos - base) / interval;
+            long grant = Math.min(permits, available);
+            if (grant <= 0) {
+                return 0L;
+            }
+            tat[0] = base + grant * interval;
+            return grant;
+        }
+    }
+
+}
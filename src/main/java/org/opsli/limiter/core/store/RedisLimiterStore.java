@@ -0,0 +1,48 @@
+package org.opsli.limiter.core.store;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @BelongsProject: rate-limiter
+ * @BelongsPackage: org.opsli.limiter.core.store
+ * @Author: Parker
+ * @CreateTime: 2021-01-16 10:20
+ * @Description: Redis 共享存储
+ *
+ * 每次租用执行一次 Lua 脚本 (EVALSHA), 读取、计算、写回在 Redis 内原子完成
+ * 时间取自 Redis TIME, 各节点时钟不一致不影响结果
+ */
+public class RedisLimiterStore implements LimiterStore {
+
+    /** 租用脚本 */
+    private static final RedisScript<Long> LEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/limiter_lease.lua"), Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    /** Key 前缀 */
+    private final String keyPrefix;
+
+    public RedisLimiterStore(StringRedisTemplate redisTemplate, String keyPrefix) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public long lease(String key, double qps, double burst, long permits) {
+        // 脚本内时间单位为微秒
+        long interval = Math.max(1L, (long) (TimeUnit.SECONDS.toMicros(1) / qps));
+        long burstMicros = (long) (Math.max(1d, burst) * interval);
+        Long grant = redisTemplate.execute(LEASE_SCRIPT,
+                Collections.singletonList(keyPrefix + key),
+                String.valueOf(interval), String.valueOf(burstMicros), String.valueOf(permits));
+        return grant == null ? 0L : grant;
+    }
+
+}
@@ -15,6 +15,9 @@
  */
 package org.opsli.limiter.core.util;
 
+import org.opsli.limiter.core.ip.ClientIpResolver;
+import org.opsli.limiter.core.ip.IpAddress;
+
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -53,34 +56,37 @@ public final class IPUtil {
         }
         return ip;
     }
-    private static final String[] HEADERS_TO_TRY = {
-            "X-Forwarded-For",
-            "Proxy-Client-IP",
-            "WL-Proxy-Client-IP",
-            "HTTP_X_FORWARDED_FOR",
-            "HTTP_X_FORWARDED",
-            "HTTP_X_CLUSTER_CLIENT_IP",
-            "HTTP_CLIENT_IP",
-            "HTTP_FORWARDED_FOR",
-            "HTTP_FORWARDED",
-            "HTTP_VIA",
-            "REMOTE_ADDR",
-            "X-Real-IP"};
+    /** 客户端 IP 解析器 */
+    private static volatile ClientIpResolver resolver = new ClientIpResolver();
+
+    /**
+     * 设置客户端 IP 解析器 (转发头顺序、可信代理)
+     * @param clientIpResolver 解析器
+     */
+    public static void setResolver(ClientIpResolver clientIpResolver) {
+        resolver = clientIpResolver;
+    }
 
     /***
      * 获取客户端ip地址(可以穿透代理)
+     * 只有直连地址为可信代理时才读取转发头, X-Forwarded-For 等列表取第一个不可信的地址
      * @param request
-     * @return
+     * @return 规范化后的地址 无法解析时为 remoteAddr
      */
     public static String getClientIpAddress(HttpServletRequest request) {
-        for (String header : HEADERS_TO_TRY) {
-            String ip = request.getHeader(header);
-            if (ip != null && ip.length() != 0 && !UNKNOWN.equalsIgnoreCase(ip)) {
-                return ip;
-            }
-        }
-        return request.getRemoteAddr();
+        return resolver.resolve(request);
+    }
+
+    /***
+     * 获取客户端ip地址 不分配对象
+     * @param request
+     * @param out 解析结果
+     * @return 是否解析成功
+     */
+    public static boolean getClientIpAddress(HttpServletRequest request, IpAddress out) {
+        return resolver.resolve(request, out);
     }
+
     /***
      * 获取客户端ip地址(可以穿透代理)
      * @param request
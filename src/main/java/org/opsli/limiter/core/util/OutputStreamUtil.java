@@ -1,11 +1,20 @@
 package org.opsli.limiter.core.util;
 
 import cn.hutool.core.io.IoUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.index.LimiterQuota;
+import org.opsli.limiter.core.msg.CommonMsg;
+import org.opsli.limiter.core.ret.ResultVo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @BelongsProject: think-bboss-parent
@@ -18,6 +27,60 @@ public final class OutputStreamUtil {
 
     private static final Logger log = LoggerFactory.getLogger(OutputStreamUtil.class);
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 限流拒绝状态码 */
+    public static final int TOO_MANY_REQUESTS = HttpStatus.TOO_MANY_REQUESTS.value();
+
+    /** 限流响应头 */
+    public static final String HEADER_LIMIT = "X-RateLimit-Limit";
+    public static final String HEADER_REMAINING = "X-RateLimit-Remaining";
+    public static final String HEADER_RESET = "X-RateLimit-Reset";
+
+    /** 缓存的十进制文本 常见的令牌数、秒数直接取用 不生成字符串 */
+    private static final String[] DECIMALS = new String[1024];
+
+    static {
+        for (int i = 0; i < DECIMALS.length; i++) {
+            DECIMALS[i] = Integer.toString(i).intern();
+        }
+    }
+
+    private static final String HTML_CONTENT_TYPE = "text/html;charset=utf-8";
+    private static final String JSON_CONTENT_TYPE = "application/json;charset=utf-8";
+
+    /** 预编码的 alert 响应体 */
+    private static final byte[] ALERT_BODY;
+    /** 预编码的 JSON 响应体 时间戳之前 / 之后 两段 */
+    private static final byte[] JSON_HEAD;
+    private static final byte[] JSON_TAIL;
+    /** JSON 响应体 线程内复用, 开头固定为 JSON_HEAD, 每次只改写时间戳及之后的部分 */
+    private static final ThreadLocal<byte[]> JSON_BUFFER;
+
+    static {
+        String msg = CommonMsg.OTHER_EXCEPTION_LIMITER.getMessage();
+        ALERT_BODY = alertBody(msg).getBytes(StandardCharsets.UTF_8);
+
+        // 用占位时间戳序列化一次 拆成两段
+        ResultVo<Object> ret = ResultVo.error(CommonMsg.OTHER_EXCEPTION_LIMITER.getCode(), msg);
+        ret.setTimestamp(Long.MAX_VALUE);
+        String json;
+        try {
+            json = MAPPER.writeValueAsString(ret);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        String placeholder = Long.toString(Long.MAX_VALUE);
+        int i = json.indexOf(placeholder);
+        JSON_HEAD = json.substring(0, i).getBytes(StandardCharsets.UTF_8);
+        JSON_TAIL = json.substring(i + placeholder.length()).getBytes(StandardCharsets.UTF_8);
+        JSON_BUFFER = ThreadLocal.withInitial(() -> {
+            byte[] buffer = new byte[JSON_HEAD.length + placeholder.length() + JSON_TAIL.length];
+            System.arraycopy(JSON_HEAD, 0, buffer, 0, JSON_HEAD.length);
+            return buffer;
+        });
+    }
+
 
     /**
      * 返回异常值
@@ -27,8 +90,7 @@ public final class OutputStreamUtil {
             response.setCharacterEncoding("utf-8");
             response.setContentType("text/html;charset=utf-8;");
             PrintWriter writer = response.getWriter();
-            writer.write(
-                    "<script type=\"text/javascript\">alert('"+msg+"');</script>");
+            writer.write(alertBody(msg));
             writer.flush();
             // 关闭流
             IoUtil.close(writer);
@@ -38,6 +100,96 @@ public final class OutputStreamUtil {
     }
 
 
+    /**
+     * 返回 JSON (DispatcherServlet 之外使用, 无法走 GlobalExceptionHandler)
+     */
+    public static void jsonResponse(ResultVo<?> ret, int status, HttpServletResponse response){
+        try {
+            response.setStatus(status);
+            response.setCharacterEncoding("utf-8");
+            response.setContentType("application/json;charset=utf-8");
+            MAPPER.writeValue(response.getOutputStream(), ret);
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * 限流拒绝 429 + 预编码的响应体
+     * 不经过 Writer / Jackson, JSON 只改写时间戳
+     * @param alertType 提醒方式
+     * @param response
+     */
+    public static void rejectResponse(AlertType alertType, HttpServletResponse response){
+        try {
+            response.setStatus(TOO_MANY_REQUESTS);
+            if (AlertType.ALERT == alertType) {
+                response.setContentType(HTML_CONTENT_TYPE);
+                response.setContentLength(ALERT_BODY.length);
+                response.getOutputStream().write(ALERT_BODY);
+                return;
+            }
+            byte[] buffer = JSON_BUFFER.get();
+            int length = writeDecimal(buffer, JSON_HEAD.length, System.currentTimeMillis());
+            System.arraycopy(JSON_TAIL, 0, buffer, length, JSON_TAIL.length);
+            length += JSON_TAIL.length;
+            response.setContentType(JSON_CONTENT_TYPE);
+            response.setContentLength(length);
+            response.getOutputStream().write(buffer, 0, length);
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 限流响应头 放行、拒绝都输出
+     * X-RateLimit-Limit 令牌上限, X-RateLimit-Remaining 剩余令牌, X-RateLimit-Reset 距离令牌补满的秒数
+     * 没有剩余令牌时 Retry-After 为距离下一个令牌的秒数 (向上取整)
+     * @param quota 配额
+     * @param response
+     */
+    public static void rateLimitHeaders(LimiterQuota quota, HttpServletResponse response){
+        response.setHeader(HEADER_LIMIT, decimal(quota.getLimit()));
+        response.setHeader(HEADER_REMAINING, decimal(quota.getRemaining()));
+        response.setHeader(HEADER_RESET, decimal(quota.getResetSeconds()));
+        if (quota.getRemaining() <= 0) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, decimal(Math.max(1L, quota.getRetryAfterSeconds())));
+        }
+    }
+
+    /**
+     * 非负整数的十进制文本 常见值取缓存
+     * @param v 整数
+     * @return String
+     */
+    static String decimal(long v) {
+        return v >= 0 && v < DECIMALS.length ? DECIMALS[(int) v] : Long.toString(v);
+    }
+
+    // ==============
+
+    private static String alertBody(String msg) {
+        return "<script type=\"text/javascript\">alert('"+msg+"');</script>";
+    }
+
+    /**
+     * 非负整数写为十进制 ASCII
+     * @return 写入后的位置
+     */
+    private static int writeDecimal(byte[] buffer, int offset, long v) {
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return end;
+    }
+
     // ==========================
 
     private OutputStreamUtil(){}
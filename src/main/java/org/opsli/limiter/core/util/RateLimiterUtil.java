@@ -1,16 +1,43 @@
 package org.opsli.limiter.core.util;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Maps;
-import com.google.common.util.concurrent.RateLimiter;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.opsli.limiter.core.algorithm.DistributedAlgorithm;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithm;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithms;
+import org.opsli.limiter.core.async.AsyncAdmission;
+import org.opsli.limiter.core.bucket.LimiterBucket;
+import org.opsli.limiter.core.bulkhead.Bulkhead;
+import org.opsli.limiter.core.clock.LimiterClock;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.enums.BucketType;
+import org.opsli.limiter.core.enums.ClockType;
+import org.opsli.limiter.core.enums.RejectReason;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.index.LimiterIndex;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.index.LimiterQuota;
+import org.opsli.limiter.core.index.LimiterSlot;
+import org.opsli.limiter.core.enums.PrefixAction;
+import org.opsli.limiter.core.ip.IpAddress;
+import org.opsli.limiter.core.ip.SubnetLimiter;
+import org.opsli.limiter.core.ip.SubnetMatch;
+import org.opsli.limiter.core.log.RejectionLog;
+import org.opsli.limiter.core.metrics.LimiterMetrics;
+import org.opsli.limiter.core.metrics.LimiterStats;
+import org.opsli.limiter.core.policy.LimiterCostExpression;
+import org.opsli.limiter.core.policy.LimiterKeyExpression;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.opsli.limiter.core.rule.LimiterRuleRegistry;
+import org.opsli.limiter.core.store.LimiterStore;
+import org.opsli.limiter.core.store.LocalLimiterStore;
+import org.springframework.web.servlet.HandlerMapping;
 
 import javax.servlet.http.HttpServletRequest;
-import java.time.Duration;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -22,32 +49,322 @@ import java.util.concurrent.TimeUnit;
  */
 public final class RateLimiterUtil {
 
-    private static final Logger logger = LoggerFactory.getLogger(RateLimiterUtil.class);
-
     /** 默认QPS */
     public static final double DEFAULT_QPS = 10d;
-    /** 默认缓存个数 超出后流量自动清理 */
+    /** 默认缓存个数(按限流器计数) 超出后流量自动清理 */
     private static final int DEFAULT_CACHE_COUNT = 10_0000;
-    /** 默认缓存时效 超出后自动清理 */
+    /** 默认缓存时效 分钟 空闲(最近一次访问起)超出后自动清理 */
     private static final int DEFAULT_CACHE_TIME = 5;
-    /** 默认等待时长 */
-    private static final int DEFAULT_WAIT = 5000;
-    /** 限流器单机缓存 */
-    private static final Cache<String, Map<String, RateLimiterInner> > LFU_CACHE;
+    /** 默认等待时长 毫秒 */
+    public static final long DEFAULT_WAIT = 5000L;
+    /** 默认窗口时长 毫秒 */
+    public static final long DEFAULT_WINDOW = 1000L;
+    /** 默认令牌获取方式 */
+    public static final AcquireMode DEFAULT_ACQUIRE_MODE = AcquireMode.REJECT;
+    /** 限流器单机索引 (IP, URI) -> 限流器 */
+    private static final LimiterIndex LIMITER_INDEX;
+    /** 限流桶类型 */
+    private static volatile BucketType bucketType = BucketType.TOKEN_BUCKET;
+    /** 默认每批租用的令牌数 */
+    public static final int DEFAULT_LEASE_SIZE = 10;
+    /** 分布式算法 未配置共享存储时使用进程内存储 */
+    private static volatile DistributedAlgorithm distributedAlgorithm =
+            new DistributedAlgorithm(new LocalLimiterStore(), DEFAULT_LEASE_SIZE);
+    /** 请求 IP 解析结果 线程内复用 */
+    private static final ThreadLocal<IpAddress> CLIENT_IP = ThreadLocal.withInitial(IpAddress::new);
+    /** 网段限流 为 null 不开启 */
+    private static volatile SubnetLimiter subnetLimiter;
+    /** 网段匹配结果 线程内复用 */
+    private static final ThreadLocal<SubnetMatch> SUBNET_MATCH = ThreadLocal.withInitial(SubnetMatch::new);
+    /** 资源 (映射路径) 请求属性, 过滤器在 DispatcherServlet 之前写入 */
+    public static final String RESOURCE_ATTRIBUTE = RateLimiterUtil.class.getName() + ".RESOURCE";
+    /** URI 归一化为映射路径 (/user/{id}), 路径变量不再各自一个限流器 */
+    private static volatile boolean normalizeUri = true;
+    /** 手动指派QPS 的限流器组 */
+    private static final Map<Double, LimiterGroup> QPS_GROUPS = new ConcurrentHashMap<>();
+    /** 默认拒绝日志队列容量 */
+    public static final int DEFAULT_REJECT_LOG_CAPACITY = 8192;
+    /** 默认拒绝日志汇总窗口 毫秒 */
+    public static final long DEFAULT_REJECT_LOG_WINDOW = 10_000L;
+    /** 拒绝日志 异步汇总输出 */
+    private static volatile RejectionLog rejectionLog =
+            new RejectionLog(DEFAULT_REJECT_LOG_CAPACITY, DEFAULT_REJECT_LOG_WINDOW);
+    /** 手动限流 (不经过限流策略) 的统计 */
+    private static final LimiterStats MANUAL_STATS = LimiterMetrics.of(LimiterPolicy.MANUAL);
+    /** 记录请求准入的限流器 (限流响应头使用) */
+    private static volatile boolean rateLimitHeaders = true;
+    /** 全局并发隔离 所有 @Limiter 方法共用, 为 null 不限制 */
+    private static volatile Bulkhead bulkhead;
+    /** 本线程最近一次请求准入的配额 线程内复用 */
+    private static final ThreadLocal<LimiterQuota> QUOTA = ThreadLocal.withInitial(LimiterQuota::new);
 
     static{
-        LFU_CACHE = CacheBuilder
-                        .newBuilder().maximumSize(DEFAULT_CACHE_COUNT)
-                        .expireAfterWrite(DEFAULT_CACHE_TIME, TimeUnit.MINUTES).build();
+        LIMITER_INDEX = new LimiterIndex(DEFAULT_CACHE_COUNT,
+                TimeUnit.MINUTES.toNanos(DEFAULT_CACHE_TIME));
+        rejectionLog.start();
+    }
+
+
+    /**
+     * 设置限流桶类型 只对新建的限流器组生效
+     * @param type 桶类型
+     */
+    public static void setBucketType(BucketType type) {
+        bucketType = type == null ? BucketType.TOKEN_BUCKET : type;
+        QPS_GROUPS.clear();
+    }
+
+    /**
+     * 设置分布式限流的共享存储 只对新建的限流器组生效
+     * @param store 共享存储
+     * @param leaseSize 每批租用的令牌数
+     */
+    public static void setStore(LimiterStore store, int leaseSize) {
+        distributedAlgorithm = new DistributedAlgorithm(store, leaseSize);
+    }
+
+    /**
+     * 设置网段限流 (黑白名单、网段、全局) 为 null 关闭
+     * @param limiter 网段限流
+     */
+    public static void setSubnetLimiter(SubnetLimiter limiter) {
+        subnetLimiter = limiter;
+    }
+
+    /**
+     * 设置拒绝日志 原日志输出剩余汇总后停止
+     * @param log 拒绝日志
+     */
+    public static void setRejectionLog(RejectionLog log) {
+        RejectionLog old = rejectionLog;
+        log.start();
+        rejectionLog = log;
+        if (old != log) {
+            old.stop();
+        }
+    }
+
+    /**
+     * 拒绝日志
+     * @return RejectionLog
+     */
+    public static RejectionLog getRejectionLog() {
+        return rejectionLog;
+    }
+
+    /**
+     * 设置是否将 URI 归一化为映射路径
+     * 关闭后按实际 URI 限流 (/user/1 与 /user/2 各自一个限流器)
+     * @param normalize 是否归一化
+     */
+    public static void setNormalizeUri(boolean normalize) {
+        normalizeUri = normalize;
+    }
+
+    /**
+     * 设置全局并发隔离 为 null 关闭, 只在启动时设置 (执行中的请求归还到新的实例)
+     * @param global 并发隔离
+     */
+    public static void setBulkhead(Bulkhead global) {
+        bulkhead = global;
+    }
+
+    /**
+     * 全局并发隔离
+     * @return 未开启为 null
+     */
+    public static Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * 设置是否输出限流响应头 (X-RateLimit-* / Retry-After)
+     * @param enabled 是否输出
+     */
+    public static void setRateLimitHeaders(boolean enabled) {
+        rateLimitHeaders = enabled;
     }
 
+    /**
+     * 是否输出限流响应头
+     * @return boolean
+     */
+    public static boolean isRateLimitHeaders() {
+        return rateLimitHeaders;
+    }
+
+    /**
+     * 设置是否开启一级计数 (低频 Key 不建限流器, 见 LimiterGroup)
+     * @param enabled 是否开启
+     */
+    public static void setProbation(boolean enabled) {
+        LIMITER_INDEX.setProbation(enabled);
+    }
+
+    /**
+     * 是否开启一级计数
+     * @return boolean
+     */
+    public static boolean isProbation() {
+        return LIMITER_INDEX.isProbation();
+    }
+
+    /**
+     * 设置索引过期判断的时钟 (访问时间精度为秒级, 可以使用缓存时钟), 与各规则的限流时钟无关
+     * @param clockType 时钟
+     */
+    public static void setIndexClock(ClockType clockType) {
+        LIMITER_INDEX.setClock(LimiterClock.of(clockType));
+    }
+
+    /**
+     * 设置堆外状态 (本地令牌桶的状态存在堆外, 不建限流器, 见 LimiterGroup)
+     * @param maxKeys 预计同时保留状态的 Key 数, 小于等于0 关闭
+     */
+    public static void setOffHeap(int maxKeys) {
+        LIMITER_INDEX.setOffHeap(maxKeys);
+    }
+
+    /**
+     * 是否开启堆外状态
+     * @return boolean
+     */
+    public static boolean isOffHeap() {
+        return LIMITER_INDEX.isOffHeap();
+    }
+
+    /**
+     * 堆外状态占用的字节数
+     * @return long
+     */
+    public static long getOffHeapBytes() {
+        return LIMITER_INDEX.offHeapBytes();
+    }
+
+    /**
+     * 堆外状态容量淘汰的累计数
+     * @return long
+     */
+    public static long getOffHeapEvictionCount() {
+        return LIMITER_INDEX.offHeapEvictionCount();
+    }
+
+    /**
+     * 写入限流状态快照 (未满的本地限流桶, 见 LimiterIndex#writeSnapshot)
+     * @param file 快照文件
+     * @return 写入的记录数
+     */
+    public static int writeSnapshot(Path file) throws IOException {
+        return LIMITER_INDEX.writeSnapshot(file);
+    }
+
+    /**
+     * 恢复限流状态快照 需在处理请求之前调用, 记录在 Key 第一次出现时恢复
+     * @param file 快照文件
+     * @return 格式不对或已全部过期返回 false
+     */
+    public static boolean restoreSnapshot(Path file) throws IOException {
+        return LIMITER_INDEX.restoreSnapshot(file);
+    }
 
     /**
-     * 删除IP
+     * 新建限流器组
+     * @param qps QPS 小于等于0 不限流
+     * @param burst 突发令牌数 小于等于0 为 1 秒的令牌
+     * @return LimiterGroup
+     */
+    public static LimiterGroup newGroup(double qps, double burst) {
+        return new LimiterGroup(LIMITER_INDEX, qps, burst, bucketType);
+    }
+
+    /**
+     * 新建限流器组
+     * @param qps QPS 小于等于0 不限流
+     * @param burst 突发令牌数 小于等于0 为 1 秒的令牌 (窗口算法忽略)
+     * @param algorithmType 限流算法 令牌桶按当前桶类型创建
+     * @param window 窗口时长 毫秒 (令牌桶忽略)
+     * @return LimiterGroup
+     */
+    public static LimiterGroup newGroup(double qps, double burst, AlgorithmType algorithmType, long window) {
+        return newGroup(qps, burst, algorithmType, window, ClockType.PRECISE);
+    }
+
+    /**
+     * 新建限流器组
+     * @param qps QPS 小于等于0 不限流
+     * @param burst 突发令牌数 小于等于0 为 1 秒的令牌 (窗口算法忽略)
+     * @param algorithmType 限流算法 令牌桶按当前桶类型创建
+     * @param window 窗口时长 毫秒 (令牌桶忽略)
+     * @param clockType 时钟 (Guava 令牌桶、分布式忽略)
+     * @return LimiterGroup
+     */
+    public static LimiterGroup newGroup(double qps, double burst, AlgorithmType algorithmType, long window,
+                                        ClockType clockType) {
+        LimiterAlgorithm algorithm = algorithmType == AlgorithmType.DISTRIBUTED
+                ? distributedAlgorithm
+                : LimiterAlgorithms.of(algorithmType, bucketType);
+        return newGroup(qps, burst, algorithm, window, LimiterClock.of(clockType));
+    }
+
+    /**
+     * 新建限流器组 使用自定义算法
+     * @param qps QPS 小于等于0 不限流
+     * @param burst 突发令牌数
+     * @param algorithm 限流算法
+     * @param window 窗口时长 毫秒
+     * @return LimiterGroup
+     */
+    public static LimiterGroup newGroup(double qps, double burst, LimiterAlgorithm algorithm, long window) {
+        return newGroup(qps, burst, algorithm, window, LimiterClock.PRECISE);
+    }
+
+    /**
+     * 新建限流器组 使用自定义算法、时钟
+     * @param qps QPS 小于等于0 不限流
+     * @param burst 突发令牌数
+     * @param algorithm 限流算法
+     * @param window 窗口时长 毫秒
+     * @param clock 时钟
+     * @return LimiterGroup
+     */
+    public static LimiterGroup newGroup(double qps, double burst, LimiterAlgorithm algorithm, long window,
+                                        LimiterClock clock) {
+        return new LimiterGroup(LIMITER_INDEX, qps, burst, algorithm,
+                TimeUnit.MILLISECONDS.toNanos(window), clock);
+    }
+
+    /**
+     * 删除IP 需要扫描全表
+     * 堆外状态只存组合Key, 不按 IP 删除 (满桶后自然复用)
      * @param ip
      */
     public static void removeIp(String ip) {
-        LFU_CACHE.invalidate(ip);
+        long ipHash = LimiterKeys.hashIp(ip);
+        LIMITER_INDEX.removeIf(slot -> slot.isIp(ipHash));
+    }
+
+    /**
+     * 当前限流器个数
+     * @return int
+     */
+    public static int getLimiterCount() {
+        return LIMITER_INDEX.size();
+    }
+
+    /**
+     * 容量淘汰的限流器累计数
+     * @return long
+     */
+    public static long getEvictionCount() {
+        return LIMITER_INDEX.evictionCount();
+    }
+
+    /**
+     * 过期清理的限流器累计数
+     * @return long
+     */
+    public static long getExpirationCount() {
+        return LIMITER_INDEX.expirationCount();
     }
 
     /**
@@ -56,11 +373,7 @@ public final class RateLimiterUtil {
      * @return
      */
     public static boolean enter(HttpServletRequest request) {
-        // 获得IP
-        String clientIpAddress = IPUtil.getClientIpAddress(request);
-        // 获得URI
-        String clientURI = request.getRequestURI();
-        return RateLimiterUtil.enter(clientIpAddress, clientURI);
+        return RateLimiterUtil.enter(request, (Double) null);
     }
 
     /**
@@ -69,11 +382,137 @@ public final class RateLimiterUtil {
      * @return
      */
     public static boolean enter(HttpServletRequest request, Double dfQps) {
-        // 获得IP
-        String clientIpAddress = IPUtil.getClientIpAddress(request);
-        // 获得URI
-        String clientURI = request.getRequestURI();
-        return RateLimiterUtil.enter(clientIpAddress, clientURI, dfQps);
+        return RateLimiterUtil.enter(request, dfQps, DEFAULT_ACQUIRE_MODE, DEFAULT_WAIT);
+    }
+
+    /**
+     * 方法进入
+     * @param request
+     * @param dfQps 手动指派QPS
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return
+     */
+    public static boolean enter(HttpServletRequest request, Double dfQps,
+                                AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enter(request, getGroup(dfQps), acquireMode, timeout);
+    }
+
+    /**
+     * 方法进入
+     * @param request
+     * @param policy 限流策略
+     * @return
+     */
+    public static boolean enter(HttpServletRequest request, LimiterPolicy policy) {
+        return RateLimiterUtil.enter(request, policy, null);
+    }
+
+    /**
+     * 方法进入
+     * @param request
+     * @param policy 限流策略
+     * @param args 方法参数 (Key 表达式使用) 可以为 null
+     * @return
+     */
+    public static boolean enter(HttpServletRequest request, LimiterPolicy policy, Object[] args) {
+        String resource = resourceOf(request);
+        // 叠加规则 (热加载)
+        LimiterPolicy effective = LimiterRuleRegistry.resolve(policy, resource);
+        return RateLimiterUtil.enter(request, resource, effective.getGroup(), effective.getKey(), args,
+                effective.getPermits(), effective.getCost(),
+                effective.getAcquireMode(), effective.getTimeout(), effective.getStats());
+    }
+
+    /**
+     * 方法进入
+     * @param request
+     * @param group 限流器组
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return
+     */
+    public static boolean enter(HttpServletRequest request, LimiterGroup group,
+                                AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enter(request, group, 1, acquireMode, timeout);
+    }
+
+    /**
+     * 方法进入 一次获取多个令牌, 拿不全时不扣减
+     * @param request
+     * @param group 限流器组
+     * @param permits 令牌数
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return
+     */
+    public static boolean enter(HttpServletRequest request, LimiterGroup group, int permits,
+                                AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enter(request, resourceOf(request), group, null, null, checkPermits(permits), null,
+                acquireMode, timeout, MANUAL_STATS);
+    }
+
+    /**
+     * 方法进入
+     * @param request
+     * @param clientURI 资源
+     * @param group 限流器组
+     * @param key 自定义 Key 为 null 按 IP 限流
+     * @param args 方法参数
+     * @param permits 令牌数
+     * @param cost 令牌数表达式 为 null 按 permits
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @param stats 统计
+     * @return
+     */
+    private static boolean enter(HttpServletRequest request, String clientURI, LimiterGroup group,
+                                 LimiterKeyExpression key, Object[] args, int permits, LimiterCostExpression cost,
+                                 AcquireMode acquireMode, long timeout, LimiterStats stats) {
+        // 获得IP 解析为二进制地址, 线程内复用
+        IpAddress clientIp = CLIENT_IP.get();
+        if (!IPUtil.getClientIpAddress(request, clientIp)) {
+            String remoteAddr = request.getRemoteAddr();
+            LimiterSlot slot = key == null
+                    ? group.getSlot(remoteAddr, clientURI)
+                    : group.getSlot(key.hash(request, null, args), clientURI);
+            track(slot);
+            int n = cost == null ? permits : cost.evaluate(request, null, args);
+            return RateLimiterUtil.enter(slot, remoteAddr, clientURI, n, acquireMode, timeout, stats);
+        }
+
+        // 黑白名单 在任何限流桶之前判断
+        SubnetLimiter subnet = subnetLimiter;
+        SubnetMatch match = null;
+        if (subnet != null) {
+            match = SUBNET_MATCH.get();
+            PrefixAction verdict = subnet.screen(clientIp, match);
+            if (verdict == PrefixAction.DENY) {
+                return rejectSubnet(RejectReason.DENY, clientIp, clientURI, stats);
+            }
+            if (verdict == PrefixAction.ALLOW) {
+                track(null);
+                return stats.accept();
+            }
+        }
+
+        int n = cost == null ? permits : cost.evaluate(request, clientIp, args);
+        // 网段、全局 (不等待) 先于单 IP (可能等待) 检查, 与异步进入顺序一致
+        if (match != null && !subnet.tryAcquire(clientIp, match, n)) {
+            return rejectSubnet(RejectReason.SUBNET, clientIp, clientURI, stats);
+        }
+        LimiterSlot slot = key == null
+                ? group.getSlot(clientIp, clientURI)
+                : group.getSlot(key.hash(request, clientIp, args), clientURI);
+        track(slot);
+        if (!RateLimiterUtil.admit(slot, clientIp, clientURI, n, acquireMode, timeout, stats)) {
+            // 单 IP 拒绝 归还网段、全局令牌
+            if (match != null) {
+                subnet.release(clientIp, match, n);
+            }
+            return stats.reject(slot.getKey(), clientIp, clientURI);
+        }
+        return stats.accept();
     }
 
     /**
@@ -92,107 +531,468 @@ public final class RateLimiterUtil {
      * @return
      */
     public static boolean enter(String clientIpAddress, String resource, Double dfQps) {
-        // 计时器
-        long t1 = System.currentTimeMillis();
-
-        Map<String, RateLimiterInner> rateLimiterInnerMap;
-        try {
-            rateLimiterInnerMap = LFU_CACHE.get(clientIpAddress, ()->{
-                // 当缓存取不到时 重新加载缓存
-                Map<String, RateLimiterInner> tmpMap = Maps.newConcurrentMap();
-                // 设置限流器
-                RateLimiterInner rateLimiterInner = new RateLimiterInner();
-                rateLimiterInner.setQps(dfQps);
-                rateLimiterInner.setRateLimiter(RateLimiter.create(dfQps));
-                tmpMap.put(resource, rateLimiterInner);
-                return tmpMap;
-            });
-        }catch (ExecutionException e){
-            logger.error(e.getMessage(), e);
-            return false;
-        }
+        return RateLimiterUtil.enter(clientIpAddress, resource, dfQps, DEFAULT_ACQUIRE_MODE, DEFAULT_WAIT);
+    }
 
-        RateLimiterInner rateLimiterObj;
+    /**
+     * 方法进入
+     * @param clientIpAddress IP
+     * @param dfQps 手动指派QPS
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒 (WAIT / DEADLINE 生效)
+     * @return
+     */
+    public static boolean enter(String clientIpAddress, String resource, Double dfQps,
+                                AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enter(clientIpAddress, resource, getGroup(dfQps), acquireMode, timeout);
+    }
 
-        Double qps = dfQps;
-        // 初始化过程
-        RateLimiterInner rateLimiterInner = rateLimiterInnerMap.get(resource);
-        // 如果为空 则创建一个新的限流器
-        if(rateLimiterInner == null){
-            System.out.println(456);
-            rateLimiterInner = new RateLimiterInner();
-            rateLimiterInner.setQps(dfQps);
-            rateLimiterInner.setRateLimiter(RateLimiter.create(dfQps));
-            rateLimiterInnerMap.put(resource, rateLimiterInner);
+    /**
+     * 方法进入
+     * @param clientIpAddress IP
+     * @param group 限流器组
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒 (WAIT / DEADLINE 生效)
+     * @return
+     */
+    public static boolean enter(String clientIpAddress, String resource, LimiterGroup group,
+                                AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enter(clientIpAddress, resource, group, 1, acquireMode, timeout);
+    }
 
-        }else{
-            qps = rateLimiterInner.getQps();
-        }
-        rateLimiterObj = rateLimiterInner;
+    /**
+     * 方法进入 一次获取多个令牌, 拿不全时不扣减
+     * @param clientIpAddress IP
+     * @param group 限流器组
+     * @param permits 令牌数
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒 (WAIT / DEADLINE 生效)
+     * @return
+     */
+    public static boolean enter(String clientIpAddress, String resource, LimiterGroup group, int permits,
+                                AcquireMode acquireMode, long timeout) {
+        LimiterSlot slot = group.getSlot(clientIpAddress, resource);
+        return RateLimiterUtil.enter(slot, clientIpAddress, resource, checkPermits(permits),
+                acquireMode, timeout, MANUAL_STATS);
+    }
 
+    /**
+     * 方法进入 并计数
+     */
+    private static boolean enter(LimiterSlot slot, Object clientIp, String resource, int permits,
+                                 AcquireMode acquireMode, long timeout, LimiterStats stats) {
+        return RateLimiterUtil.admit(slot, clientIp, resource, permits, acquireMode, timeout, stats)
+                ? stats.accept()
+                : stats.reject(slot.getKey(), clientIp, resource);
+    }
+
+    /**
+     * 限流器准入 (不计放行 / 拒绝, 由调用方计数)
+     * 先非阻塞尝试一次, 拿到令牌时不计时; 需要等待时记录等待时长
+     * 多个令牌一次性获取 (桶内原子扣减), 拿不全时不扣减
+     * @param slot 限流器
+     * @param clientIp IP (只在拒绝日志中使用)
+     * @param permits 令牌数
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒 (WAIT / DEADLINE 生效)
+     * @param stats 统计
+     * @return
+     */
+    private static boolean admit(LimiterSlot slot, Object clientIp, String resource, int permits,
+                                 AcquireMode acquireMode, long timeout, LimiterStats stats) {
         //不限流
-        if (qps == null || qps == 0.0) {
+        if (slot.getQps() <= 0.0) {
             return true;
         }
 
-        RateLimiter rateLimiter = rateLimiterObj.getRateLimiter();
-
-        //非阻塞
-        if (!rateLimiter.tryAcquire(Duration.ofMillis(DEFAULT_WAIT))) {
-            //限速中，提示用户
-            logger.error("限流器 - 访问频繁 耗时: "+ (System.currentTimeMillis() - t1) + "ms, IP地址: " + clientIpAddress + ", URI: " + resource);
-            return false;
-        } else {
+        LimiterBucket bucket = slot.getBucket();
+        if (permits == 1 ? bucket.tryAcquire() : bucket.reserve(permits, 0L) >= 0) {
             return true;
         }
+        long waitNanos = 0L;
+        if (acquireMode != AcquireMode.REJECT) {
+            long start = System.nanoTime();
+            boolean acquired = acquire(bucket, permits, acquireMode, timeout);
+            waitNanos = System.nanoTime() - start;
+            stats.onWait(waitNanos);
+            if (acquired) {
+                return true;
+            }
+        }
+        //限速中 异步汇总输出
+        rejectionLog.offer(RejectReason.RATE, slot.getKey(), clientIp, resource, waitNanos);
+        return false;
     }
 
+    /**
+     * 异步进入 拿不到令牌时不阻塞当前线程
+     * @param request
+     * @param dfQps 手动指派QPS
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return 放行为 true
+     */
+    public static CompletableFuture<Boolean> enterAsync(HttpServletRequest request, Double dfQps,
+                                                        AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enterAsync(request, getGroup(dfQps), acquireMode, timeout);
+    }
 
+    /**
+     * 异步进入 拿不到令牌时不阻塞当前线程
+     * @param request
+     * @param policy 限流策略
+     * @return 放行为 true
+     */
+    public static CompletableFuture<Boolean> enterAsync(HttpServletRequest request, LimiterPolicy policy) {
+        return RateLimiterUtil.enterAsync(request, policy, null);
+    }
 
-    // ==============
+    /**
+     * 异步进入 拿不到令牌时不阻塞当前线程
+     * @param request
+     * @param policy 限流策略
+     * @param args 方法参数 (Key 表达式使用) 可以为 null
+     * @return 放行为 true
+     */
+    public static CompletableFuture<Boolean> enterAsync(HttpServletRequest request, LimiterPolicy policy,
+                                                        Object[] args) {
+        String resource = resourceOf(request);
+        // 叠加规则 (热加载)
+        LimiterPolicy effective = LimiterRuleRegistry.resolve(policy, resource);
+        return RateLimiterUtil.enterAsync(request, resource, effective.getGroup(), effective.getKey(), args,
+                effective.getPermits(), effective.getCost(),
+                effective.getAcquireMode(), effective.getTimeout(), effective.getStats());
+    }
 
+    /**
+     * 异步进入 拿不到令牌时不阻塞当前线程
+     * @param request
+     * @param group 限流器组
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return 放行为 true
+     */
+    public static CompletableFuture<Boolean> enterAsync(HttpServletRequest request, LimiterGroup group,
+                                                        AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enterAsync(request, resourceOf(request), group, null, null, 1, null,
+                acquireMode, timeout, MANUAL_STATS);
+    }
 
+    /**
+     * 异步进入 拿不到令牌时不阻塞当前线程
+     * @param request
+     * @param clientURI 资源
+     * @param group 限流器组
+     * @param key 自定义 Key 为 null 按 IP 限流
+     * @param args 方法参数
+     * @param permits 令牌数
+     * @param cost 令牌数表达式 为 null 按 permits
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @param stats 统计
+     * @return 放行为 true
+     */
+    private static CompletableFuture<Boolean> enterAsync(HttpServletRequest request, String clientURI,
+                                                         LimiterGroup group, LimiterKeyExpression key, Object[] args,
+                                                         int permits, LimiterCostExpression cost,
+                                                         AcquireMode acquireMode, long timeout, LimiterStats stats) {
+        // 获得IP
+        IpAddress clientIp = CLIENT_IP.get();
+        if (!IPUtil.getClientIpAddress(request, clientIp)) {
+            String remoteAddr = request.getRemoteAddr();
+            // 异步回调中使用 复用的限流器复制一份
+            LimiterSlot slot = (key == null
+                    ? group.getSlot(remoteAddr, clientURI)
+                    : group.getSlot(key.hash(request, null, args), clientURI)).detach();
+            track(slot);
+            int n = cost == null ? permits : cost.evaluate(request, null, args);
+            return RateLimiterUtil.enterAsync(slot, remoteAddr, clientURI, n, acquireMode, timeout, stats);
+        }
 
-    public static void main(String[] args) {
-        RateLimiterUtil.removeIp("127.0.0.1");
-        for (int i = 0; i < 500; i++) {
-            int j = i;
-            new Thread(()->{
-                boolean enter = RateLimiterUtil.enter("127.0.0.1","/api/v1", 2d);
-                System.out.println(enter);
-            }).start();
+        // 黑白名单 在任何限流桶之前判断
+        SubnetLimiter subnet = subnetLimiter;
+        SubnetMatch match = null;
+        if (subnet != null) {
+            match = SUBNET_MATCH.get();
+            PrefixAction verdict = subnet.screen(clientIp, match);
+            if (verdict == PrefixAction.DENY) {
+                return CompletableFuture.completedFuture(
+                        rejectSubnet(RejectReason.DENY, clientIp, clientURI, stats));
+            }
+            if (verdict == PrefixAction.ALLOW) {
+                track(null);
+                return CompletableFuture.completedFuture(stats.accept());
+            }
+        }
+
+        int n = cost == null ? permits : cost.evaluate(request, clientIp, args);
+        // 网段、全局 (不等待) 先于单 IP (异步排队) 检查, 与同步进入顺序一致
+        if (match != null && !subnet.tryAcquire(clientIp, match, n)) {
+            return CompletableFuture.completedFuture(
+                    rejectSubnet(RejectReason.SUBNET, clientIp, clientURI, stats));
+        }
+        LimiterSlot slot = (key == null
+                ? group.getSlot(clientIp, clientURI)
+                : group.getSlot(key.hash(request, clientIp, args), clientURI)).detach();
+        track(slot);
+        // 线程内复用的地址、限流器不能带入异步回调
+        CompletableFuture<Boolean> future = RateLimiterUtil.enterAsync(slot, clientIp.toString(), clientURI, n,
+                acquireMode, timeout, stats);
+        if (match != null) {
+            // 单 IP 拒绝 归还网段、全局令牌; 已完成时回调在当前线程执行, 否则带入副本
+            boolean done = future.isDone();
+            IpAddress heldIp = done ? clientIp : clientIp.copy();
+            SubnetMatch heldMatch = done ? match : match.copy();
+            future.thenAccept(enterFlag -> {
+                if (!enterFlag) {
+                    subnet.release(heldIp, heldMatch, n);
+                }
+            });
         }
+        return future;
     }
 
-}
+    /**
+     * 异步进入 拿不到令牌时不阻塞当前线程
+     * @param clientIpAddress IP
+     * @param dfQps 手动指派QPS
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return 放行为 true
+     */
+    public static CompletableFuture<Boolean> enterAsync(String clientIpAddress, String resource, Double dfQps,
+                                                        AcquireMode acquireMode, long timeout) {
+        return RateLimiterUtil.enterAsync(clientIpAddress, resource, getGroup(dfQps), acquireMode, timeout);
+    }
 
-/**
- * 限流器
- */
-class RateLimiterInner {
+    /**
+     * 异步进入 拿不到令牌时不阻塞当前线程
+     * @param clientIpAddress IP
+     * @param group 限流器组
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return 放行为 true
+     */
+    public static CompletableFuture<Boolean> enterAsync(String clientIpAddress, String resource, LimiterGroup group,
+                                                        AcquireMode acquireMode, long timeout) {
+        LimiterSlot slot = group.getSlot(clientIpAddress, resource).detach();
+        return RateLimiterUtil.enterAsync(slot, clientIpAddress, resource, 1, acquireMode, timeout, MANUAL_STATS);
+    }
 
-    /** qps */
-    private Double qps;
+    private static CompletableFuture<Boolean> enterAsync(LimiterSlot slot, String clientIpAddress, String resource,
+                                                         int permits, AcquireMode acquireMode, long timeout,
+                                                         LimiterStats stats) {
 
-    /** 限流器 */
-    private RateLimiter rateLimiter;
+        //不限流
+        if (slot.getQps() <= 0.0) {
+            return CompletableFuture.completedFuture(stats.accept());
+        }
 
-    public Double getQps() {
-        return qps;
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> future = AsyncAdmission.acquire(slot.getBucket(), permits, acquireMode, timeout);
+        // 立即完成的不计等待
+        boolean immediate = future.isDone();
+        future.thenAccept(enterFlag -> {
+            long waitNanos = immediate ? 0L : System.nanoTime() - start;
+            if (!immediate) {
+                stats.onWait(waitNanos);
+            }
+            if (enterFlag) {
+                stats.accept();
+            } else {
+                stats.reject(slot.getKey(), clientIpAddress, resource);
+                //限速中 异步汇总输出
+                rejectionLog.offer(RejectReason.RATE, slot.getKey(), clientIpAddress, resource, waitNanos);
+            }
+        });
+        return future;
     }
 
-    public void setQps(Double qps) {
-        this.qps = qps;
+    /**
+     * 并发准入 策略 -> 全局, 通过 QPS 限流之后调用
+     * 先拿方法许可: 某个方法并发已满排队时不占用全局许可, 不影响其他方法
+     * 两次排队共用一个截止时间, 合计最长等待 timeout
+     * 放行后必须在方法结束 (异步方法为 Future 完成) 时调用 exitConcurrent
+     * @param request
+     * @param policy 限流策略
+     * @param wait 并发已满时是否排队 (配置了 maxQueue, 最长等待 timeout), 异步方法不排队
+     * @return 放行为 true
+     */
+    public static boolean enterConcurrent(HttpServletRequest request, LimiterPolicy policy, boolean wait) {
+        Bulkhead global = bulkhead;
+        Bulkhead local = policy.getBulkhead();
+        if (global == null && local == null) {
+            return true;
+        }
+        long timeoutNanos = wait ? TimeUnit.MILLISECONDS.toNanos(Math.max(0L, policy.getTimeout())) : 0L;
+        long deadline = timeoutNanos > 0L ? System.nanoTime() + timeoutNanos : 0L;
+        if (local != null && !local.acquire(timeoutNanos)) {
+            rejectConcurrent(request);
+            return false;
+        }
+        if (global != null) {
+            // 扣除排队方法许可已用的时间
+            long remaining = timeoutNanos > 0L && local != null
+                    ? Math.max(0L, deadline - System.nanoTime())
+                    : timeoutNanos;
+            if (!global.acquire(remaining)) {
+                if (local != null) {
+                    local.release();
+                }
+                rejectConcurrent(request);
+                return false;
+            }
+        }
+        return true;
     }
 
-    public RateLimiter getRateLimiter() {
-        return rateLimiter;
+    /**
+     * 并发退出 归还 enterConcurrent 获取的许可
+     * @param policy 限流策略
+     */
+    public static void exitConcurrent(LimiterPolicy policy) {
+        Bulkhead global = bulkhead;
+        if (global != null) {
+            global.release();
+        }
+        Bulkhead local = policy.getBulkhead();
+        if (local != null) {
+            local.release();
+        }
     }
 
-    public void setRateLimiter(RateLimiter rateLimiter) {
-        this.rateLimiter = rateLimiter;
+    /**
+     * 本线程最近一次请求准入的配额 按限流桶当前状态计算, 不获取令牌
+     * 在同一线程 enter / enterAsync 之后调用, 返回线程内复用的对象 不能跨线程持有
+     * @return 未开启、不限流、白名单 / 黑名单 返回 null
+     */
+    public static LimiterQuota quota() {
+        if (!rateLimitHeaders) {
+            return null;
+        }
+        LimiterQuota quota = QUOTA.get();
+        return quota.refresh() ? quota : null;
     }
-}
 
+    /**
+     * 查询限流器配额 不获取令牌
+     * @param slot 限流器
+     * @param quota 结果
+     * @return 不限流返回 false
+     */
+    public static boolean query(LimiterSlot slot, LimiterQuota quota) {
+        quota.bind(slot);
+        return quota.refresh();
+    }
 
+    /**
+     * 请求对应的资源
+     * 归一化时优先取映射路径 (过滤器写入 或 Spring MVC 匹配结果), 取不到时为 URI
+     * @param request
+     * @return String
+     */
+    private static String resourceOf(HttpServletRequest request) {
+        if (normalizeUri) {
+            Object pattern = request.getAttribute(RESOURCE_ATTRIBUTE);
+            if (pattern == null) {
+                pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            }
+            if (pattern instanceof String) {
+                return (String) pattern;
+            }
+        }
+        return request.getRequestURI();
+    }
+
+    /**
+     * 手动指派QPS 对应的限流器组
+     * @param dfQps QPS 为空不限流
+     * @return LimiterGroup
+     */
+    private static LimiterGroup getGroup(Double dfQps) {
+        Double qps = dfQps == null ? 0d : dfQps;
+        LimiterGroup group = QPS_GROUPS.get(qps);
+        if (group == null) {
+            // 不同 QPS 的组互不共享限流器
+            group = QPS_GROUPS.computeIfAbsent(qps,
+                    k -> newGroup(k, 0d).withScope(LimiterKeys.hash("qps:" + k)));
+        }
+        return group;
+    }
 
+    /**
+     * 按获取方式拿令牌
+     * @param bucket 限流桶
+     * @param permits 令牌数
+     * @param acquireMode 令牌获取方式
+     * @param timeout 等待时长 毫秒
+     * @return boolean
+     */
+    private static boolean acquire(LimiterBucket bucket, int permits, AcquireMode acquireMode, long timeout) {
+        if (acquireMode == AcquireMode.WAIT) {
+            return bucket.tryAcquire(permits, timeout, TimeUnit.MILLISECONDS);
+        }
+        if (acquireMode == AcquireMode.DEADLINE) {
+            return bucket.tryAcquireUntil(permits,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+        }
+        // 非阻塞
+        return bucket.reserve(permits, 0L) >= 0;
+    }
+
+    // ==============
+
+    /**
+     * 并发已满 写入拒绝日志
+     */
+    private static void rejectConcurrent(HttpServletRequest request) {
+        String resource = resourceOf(request);
+        IpAddress clientIp = CLIENT_IP.get();
+        if (IPUtil.getClientIpAddress(request, clientIp)) {
+            rejectionLog.offer(RejectReason.CONCURRENT, LimiterKeys.hashIp(clientIp), clientIp, resource, 0L);
+        } else {
+            String remoteAddr = request.getRemoteAddr();
+            rejectionLog.offer(RejectReason.CONCURRENT, LimiterKeys.hashIp(remoteAddr), remoteAddr, resource, 0L);
+        }
+    }
+
+    /**
+     * 黑名单、网段、全局拒绝 按 IP 记录
+     */
+    private static boolean rejectSubnet(RejectReason reason, IpAddress clientIp, String clientURI,
+                                        LimiterStats stats) {
+        track(null);
+        long ipHash = LimiterKeys.hashIp(clientIp);
+        rejectionLog.offer(reason, ipHash, clientIp, clientURI, 0L);
+        return stats.reject(ipHash, clientIp, clientURI);
+    }
+
+    private static int checkPermits(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Requested permits (" + permits + ") must be positive");
+        }
+        return permits;
+    }
+
+    /**
+     * 记录本线程请求准入的限流器
+     * @param slot 限流器 未限流为 null
+     */
+    private static void track(LimiterSlot slot) {
+        if (rateLimitHeaders) {
+            QUOTA.get().bind(slot);
+        }
+    }
+
+    public static void main(String[] args) {
+        RateLimiterUtil.removeIp("127.0.0.1");
+        for (int i = 0; i < 500; i++) {
+            int j = i;
+            new Thread(()->{
+                boolean enter = RateLimiterUtil.enter("127.0.0.1","/api/v1", 2d);
+                System.out.println(enter);
+            }).start();
+        }
+    }
+
+}
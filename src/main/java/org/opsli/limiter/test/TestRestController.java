@@ -1,10 +1,16 @@
 package org.opsli.limiter.test;
 
 import org.opsli.limiter.core.annotation.Limiter;
+import org.opsli.limiter.core.enums.AcquireMode;
 import org.opsli.limiter.core.ret.ResultVo;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @BelongsProject: rate-limiter
  * @BelongsPackage: org.opsli.limiter.test
@@ -25,4 +31,45 @@ public class TestRestController {
         return ResultVo.success("HelloWorld!");
     }
 
+    /**
+     * 测试 异步限流器 等待令牌时不占用请求线程
+     * @return
+     */
+    @Limiter(acquireMode = AcquireMode.WAIT, timeout = 3000)
+    @GetMapping("/test/async")
+    public CompletableFuture<ResultVo<?>> testAsync(){
+        return CompletableFuture.completedFuture(ResultVo.success("HelloWorld!"));
+    }
+
+    /**
+     * 测试 按租户 + 用户限流 (/test/user/{id} 不再按每个 id 一个 URI)
+     * @return
+     */
+    @Limiter(qps = 5, key = {"request.getHeader('X-Tenant-Id')", "#id"})
+    @GetMapping("/test/user/{id}")
+    public ResultVo<?> testUser(@PathVariable("id") Long id){
+        return ResultVo.success("HelloWorld " + id + "!");
+    }
+
+    /**
+     * 测试 按批量大小消耗令牌 (ids 有几个就消耗几个令牌, 拿不全时不扣减)
+     * @return
+     */
+    @Limiter(qps = 20, burst = 50, cost = "#ids")
+    @GetMapping("/test/export")
+    public ResultVo<?> testExport(@RequestParam("ids") List<Long> ids){
+        return ResultVo.success("Export " + ids.size() + "!");
+    }
+
+    /**
+     * 测试 并发隔离 同时最多 2 个请求执行, 最多 10 个排队 (排队最长 timeout)
+     * @return
+     */
+    @Limiter(maxConcurrent = 2, maxQueue = 10, timeout = 3000)
+    @GetMapping("/test/slow")
+    public ResultVo<?> testSlow() throws InterruptedException {
+        Thread.sleep(1000L);
+        return ResultVo.success("HelloWorld!");
+    }
+
 }
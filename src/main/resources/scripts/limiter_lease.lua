@@ -0,0 +1,28 @@
+-- 限流器 令牌租用 (GCRA)
+-- KEYS[1] 限流Key
+-- ARGV[1] 令牌间隔 微秒
+-- ARGV[2] 突发容量 微秒
+-- ARGV[3] 期望租用的令牌数
+-- 返回实际租到的令牌数
+
+-- TIME 是非确定命令, 按效果复制 (Redis 3.2+)
+redis.replicate_commands()
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local interval = tonumber(ARGV[1])
+local burst = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+local base = math.max(tat, now)
+local available = math.floor((now + burst - base) / interval)
+local grant = math.min(permits, available)
+if grant <= 0 then
+    return 0
+end
+
+local newTat = base + grant * interval
+-- 桶回满 (TAT 到达) 后 Key 自动过期
+redis.call('SET', KEYS[1], string.format('%.0f', newTat), 'PX', math.ceil((newTat - now) / 1000) + 1)
+return grant
@@ -0,0 +1,80 @@
+package org.opsli.limiter.core.aop;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.annotation.Limiter;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LimiterAopTests {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "limiter-aop-test"));
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static class Handler {
+
+        @Limiter(qps = 2, burst = 1, acquireMode = AcquireMode.WAIT, timeout = 2000)
+        public CompletableFuture<String> user() {
+            Object user = RequestContextHolder.currentRequestAttributes()
+                    .getAttribute("user", RequestAttributes.SCOPE_REQUEST);
+            return CompletableFuture.completedFuture(user + "@" + Thread.currentThread().getName());
+        }
+    }
+
+    @Test
+    void delayedAdmissionRunsOnExecutorWithActiveRequest() throws Exception {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new Handler());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new LimiterAop(executor));
+        Handler handler = factory.getProxy();
+
+        // 另一个 IP 先调用一次 (类加载、解析策略), 避免两次调用间隔过长补满令牌
+        bind("203.0.113.41", handler::user).join();
+        // 第一次用掉突发 在请求线程调用
+        assertEquals("parker@" + Thread.currentThread().getName(),
+                bind("203.0.113.40", handler::user).get(1, TimeUnit.SECONDS));
+
+        // 2 QPS 第二次约等待 500ms, 请求线程先返回并结束请求上下文
+        CompletableFuture<String> future = bind("203.0.113.40", handler::user);
+        assertFalse(future.isDone());
+        assertEquals("parker@limiter-aop-test", future.get(2, TimeUnit.SECONDS));
+        assertNull(RequestContextHolder.getRequestAttributes());
+    }
+
+    // ==============
+
+    private static <T> T bind(String remoteAddr, Supplier<T> call) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/aop/user");
+        request.setRemoteAddr(remoteAddr);
+        request.setAttribute("user", "parker");
+        ServletRequestAttributes ra = new ServletRequestAttributes(request, new MockHttpServletResponse());
+        RequestContextHolder.setRequestAttributes(ra);
+        try {
+            return call.get();
+        } finally {
+            // 模拟 DispatcherServlet 结束本次分派
+            ra.requestCompleted();
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.opsli.limiter.core.async;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.enums.AcquireMode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncAdmissionTests {
+
+    @Test
+    void rejectCompletesImmediately() {
+        TokenBucket bucket = new TokenBucket(1d);
+        bucket.tryAcquire();
+        CompletableFuture<Boolean> future = AsyncAdmission.acquire(bucket, AcquireMode.REJECT, 1000);
+        assertTrue(future.isDone());
+        assertFalse(future.join());
+    }
+
+    @Test
+    void waitCompletesOnTimer() throws Exception {
+        TokenBucket bucket = new TokenBucket(10d);
+        for (int i = 0; i < 10; i++) {
+            bucket.tryAcquire();
+        }
+        CompletableFuture<Boolean> future = AsyncAdmission.acquire(bucket, AcquireMode.WAIT, 500);
+        assertFalse(future.isDone());
+        assertTrue(future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deadlineExpires() throws Exception {
+        TokenBucket bucket = new TokenBucket(1d);
+        bucket.tryAcquire();
+        CompletableFuture<Boolean> future = AsyncAdmission.acquire(bucket, AcquireMode.DEADLINE, 50);
+        assertFalse(future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void manyWaitersWithoutThreads() throws Exception {
+        TokenBucket bucket = new TokenBucket(20_000d);
+        while (bucket.tryAcquire()) {
+            // 耗尽
+        }
+        int threads = Thread.activeCount();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[10_000];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = AsyncAdmission.acquire(bucket, AcquireMode.WAIT, 2000);
+        }
+        // 只多了一个时间轮线程
+        assertTrue(Thread.activeCount() - threads <= 1);
+        CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<?> future : futures) {
+            assertTrue((Boolean) future.join());
+        }
+    }
+
+}
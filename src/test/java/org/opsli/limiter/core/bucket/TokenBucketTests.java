@@ -0,0 +1,106 @@
+package org.opsli.limiter.core.bucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTests {
+
+    @Test
+    void burstThenReject() {
+        TokenBucket bucket = new TokenBucket(10d);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void quotaFromState() {
+        TokenBucket bucket = new TokenBucket(10d, 5d);
+        assertEquals(5, bucket.getCapacity());
+        assertEquals(5, bucket.availablePermits());
+        assertEquals(0L, bucket.queryResetNanos());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertEquals(3, bucket.availablePermits());
+        long reset = bucket.queryResetNanos();
+        assertTrue(reset > 0 && reset <= TimeUnit.MILLISECONDS.toNanos(200));
+        // 查询不消耗令牌
+        assertEquals(3, bucket.availablePermits());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertEquals(0, bucket.availablePermits());
+        assertTrue(bucket.queryWaitNanos(1) > 0);
+    }
+
+    @Test
+    void waitForNextPermit() {
+        TokenBucket bucket = new TokenBucket(10d);
+        for (int i = 0; i < 10; i++) {
+            bucket.tryAcquire();
+        }
+        long t1 = System.nanoTime();
+        assertTrue(bucket.tryAcquire(1, 500, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - t1 >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void acquireUntilDeadline() {
+        TokenBucket bucket = new TokenBucket(10d);
+        for (int i = 0; i < 10; i++) {
+            bucket.tryAcquire();
+        }
+        // 下一个令牌在 100ms 后
+        assertFalse(bucket.tryAcquireUntil(1, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20)));
+        assertTrue(bucket.tryAcquireUntil(1, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500)));
+    }
+
+    @Test
+    void setRateKeepsStoredPermits() {
+        TokenBucket bucket = new TokenBucket(10d);
+        for (int i = 0; i < 5; i++) {
+            bucket.tryAcquire();
+        }
+        bucket.setRate(100d);
+        assertEquals(100d, bucket.getRate(), 0.01d);
+        int count = 0;
+        while (bucket.tryAcquire()) {
+            count++;
+        }
+        // 剩余 5 个令牌 + 新速率下的少量补充
+        assertTrue(count >= 5 && count < 10, "count=" + count);
+    }
+
+    @Test
+    void concurrentAcquireNeverOverAdmits() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100d);
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        CountDownLatch latch = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            executorService.execute(()->{
+                for (int j = 0; j < 100; j++) {
+                    if (bucket.tryAcquire()) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+        executorService.shutdown();
+        // 满桶 100 + 测试期间的补充
+        assertTrue(accepted.get() >= 100 && accepted.get() < 150, "accepted=" + accepted.get());
+    }
+
+}
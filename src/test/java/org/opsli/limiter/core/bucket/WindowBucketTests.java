@@ -0,0 +1,88 @@
+package org.opsli.limiter.core.bucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowBucketTests {
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    void fixedWindowResetsOnNextWindow() {
+        // 200ms 窗口 50 qps -> 每个窗口 10 次
+        FixedWindowBucket bucket = new FixedWindowBucket(50d, WINDOW);
+        assertEquals(10, drain(bucket));
+        long wait = bucket.queryWaitNanos(1);
+        assertTrue(wait > 0 && wait <= WINDOW);
+        assertTrue(bucket.tryAcquire(1, 400, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void windowQuotaFromState() {
+        FixedWindowBucket fixed = new FixedWindowBucket(50d, WINDOW);
+        SlidingLogBucket log = new SlidingLogBucket(50d, WINDOW);
+        for (WindowBucket bucket : new WindowBucket[]{fixed, log}) {
+            assertEquals(10, bucket.getCapacity());
+            assertEquals(10, bucket.availablePermits());
+            assertEquals(0L, bucket.queryResetNanos());
+            assertTrue(bucket.tryAcquire());
+            assertEquals(9, bucket.availablePermits());
+            long reset = bucket.queryResetNanos();
+            assertTrue(reset > 0 && reset <= WINDOW);
+        }
+    }
+
+    @Test
+    void slidingLogLimitsAnyWindow() throws InterruptedException {
+        SlidingLogBucket bucket = new SlidingLogBucket(50d, WINDOW);
+        assertEquals(10, drain(bucket));
+        // 半个窗口后 日志都还在窗口内
+        Thread.sleep(100);
+        assertFalse(bucket.tryAcquire());
+        long wait = bucket.queryWaitNanos(1);
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(bucket.tryAcquireUntil(1, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300)));
+    }
+
+    @Test
+    void slidingLogRejectsOversizedLimit() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SlidingLogBucket(SlidingLogBucket.MAX_LOG_SIZE * 2d, TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    void slidingWindowWeighsPreviousWindow() {
+        SlidingWindowBucket bucket = new SlidingWindowBucket(50d, WINDOW);
+        assertEquals(10, drain(bucket));
+        // 进入下一个窗口的前段, 上一个窗口权重仍然较高, 不能放行满额
+        long wait = bucket.queryWaitNanos(1);
+        assertTrue(wait > 0);
+        assertTrue(bucket.tryAcquire(1, 400, TimeUnit.MILLISECONDS));
+        assertTrue(drain(bucket) < 10);
+    }
+
+    @Test
+    void setRateChangesLimit() {
+        FixedWindowBucket bucket = new FixedWindowBucket(50d, WINDOW);
+        bucket.setRate(100d);
+        assertEquals(100d, bucket.getRate(), 0.01d);
+        assertEquals(20, drain(bucket));
+    }
+
+    // ==============
+
+    private static int drain(LimiterBucket bucket) {
+        int count = 0;
+        while (bucket.tryAcquire()) {
+            count++;
+        }
+        return count;
+    }
+
+}
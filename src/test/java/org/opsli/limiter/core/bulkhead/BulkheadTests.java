@@ -0,0 +1,218 @@
+package org.opsli.limiter.core.bulkhead;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkheadTests {
+
+    @Test
+    void limitsInFlight() {
+        Bulkhead bulkhead = new Bulkhead("test", 3, 0);
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        // 不排队时不等待
+        assertFalse(bulkhead.acquire(TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(3, bulkhead.getInFlight());
+        assertEquals(2, bulkhead.getRejected());
+
+        bulkhead.release();
+        assertEquals(2, bulkhead.getInFlight());
+        assertTrue(bulkhead.tryAcquire());
+    }
+
+    @Test
+    void queueHandsOffInOrder() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("queue", 1, 2);
+        assertTrue(bulkhead.tryAcquire());
+
+        FutureTask<Boolean> first = new FutureTask<>(() -> bulkhead.acquire(TimeUnit.SECONDS.toNanos(5)));
+        FutureTask<Boolean> second = new FutureTask<>(() -> bulkhead.acquire(TimeUnit.SECONDS.toNanos(5)));
+        Thread firstThread = new Thread(first);
+        Thread secondThread = new Thread(second);
+        try {
+            // 第一个排队的线程挂起后 再启动第二个, 保证入队顺序
+            firstThread.start();
+            awaitParked(firstThread);
+            secondThread.start();
+            awaitParked(secondThread);
+            assertEquals(2, bulkhead.getQueued());
+            // 队列已满
+            assertFalse(bulkhead.acquire(TimeUnit.SECONDS.toNanos(5)));
+            // 有排队时不插队
+            bulkhead.release();
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertFalse(second.isDone());
+            assertFalse(bulkhead.tryAcquire());
+
+            bulkhead.release();
+            assertTrue(second.get(5, TimeUnit.SECONDS));
+            assertEquals(0, bulkhead.getQueued());
+
+            // 排队超时
+            assertFalse(bulkhead.acquire(TimeUnit.MILLISECONDS.toNanos(20)));
+            assertEquals(0, bulkhead.getQueued());
+            assertEquals(1, bulkhead.getInFlight());
+        } finally {
+            firstThread.interrupt();
+            secondThread.interrupt();
+        }
+    }
+
+    @Test
+    void neverExceedsLimit() throws Exception {
+        int threads = 16;
+        Bulkhead bulkhead = new Bulkhead("stress", 4, 64);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 2_000; i++) {
+                        if (bulkhead.acquire(TimeUnit.SECONDS.toNanos(5))) {
+                            int now = running.incrementAndGet();
+                            peak.accumulateAndGet(now, Math::max);
+                            running.decrementAndGet();
+                            admitted.incrementAndGet();
+                            bulkhead.release();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(peak.get() <= 4);
+        assertEquals(threads * 2_000, admitted.get());
+        assertEquals(0, bulkhead.getInFlight());
+        assertEquals(0, bulkhead.getQueued());
+    }
+
+    @Test
+    void globalAndPolicyPermits() {
+        Bulkhead local = new Bulkhead("policy", 1, 0);
+        LimiterPolicy policy = LimiterPolicy.builder().qps(100d).burst(100d).timeout(0L).bulkhead(local).build();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bulkhead");
+        request.setRemoteAddr("198.51.100.20");
+
+        Bulkhead global = new Bulkhead("global", 2, 0);
+        RateLimiterUtil.setBulkhead(global);
+        try {
+            assertTrue(RateLimiterUtil.enterConcurrent(request, policy, true));
+            // 方法并发已满 不占用全局许可
+            assertFalse(RateLimiterUtil.enterConcurrent(request, policy, true));
+            assertEquals(1, global.getInFlight());
+            assertEquals(1, local.getInFlight());
+
+            RateLimiterUtil.exitConcurrent(policy);
+            assertEquals(0, global.getInFlight());
+            assertEquals(0, local.getInFlight());
+        } finally {
+            RateLimiterUtil.setBulkhead(null);
+        }
+    }
+
+    @Test
+    void queuedPolicyHoldsNoGlobalPermit() throws Exception {
+        Bulkhead local = new Bulkhead("queued", 1, 1);
+        LimiterPolicy queued = LimiterPolicy.builder().qps(100d).burst(100d).timeout(5_000L).bulkhead(local).build();
+        LimiterPolicy other = LimiterPolicy.builder().qps(100d).burst(100d).timeout(0L).build();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bulkhead");
+        request.setRemoteAddr("198.51.100.21");
+
+        Bulkhead global = new Bulkhead("global", 2, 0);
+        RateLimiterUtil.setBulkhead(global);
+        FutureTask<Boolean> waiter = new FutureTask<>(() -> RateLimiterUtil.enterConcurrent(request, queued, true));
+        Thread waiterThread = new Thread(waiter);
+        try {
+            assertTrue(RateLimiterUtil.enterConcurrent(request, queued, true));
+            waiterThread.start();
+            awaitParked(waiterThread);
+            assertEquals(1, local.getQueued());
+            // 排队的请求不占全局许可 其他方法仍可进入
+            assertEquals(1, global.getInFlight());
+            assertTrue(RateLimiterUtil.enterConcurrent(request, other, true));
+            RateLimiterUtil.exitConcurrent(other);
+
+            RateLimiterUtil.exitConcurrent(queued);
+            assertTrue(waiter.get(5, TimeUnit.SECONDS));
+            RateLimiterUtil.exitConcurrent(queued);
+            assertEquals(0, global.getInFlight());
+            assertEquals(0, local.getInFlight());
+        } finally {
+            waiterThread.interrupt();
+            RateLimiterUtil.setBulkhead(null);
+        }
+    }
+
+    @Test
+    void oneDeadlineForBothQueues() throws Exception {
+        Bulkhead local = new Bulkhead("deadline", 1, 1);
+        LimiterPolicy policy = LimiterPolicy.builder().qps(100d).burst(100d).timeout(200L).bulkhead(local).build();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bulkhead");
+        request.setRemoteAddr("198.51.100.22");
+
+        Bulkhead global = new Bulkhead("global", 1, 1);
+        RateLimiterUtil.setBulkhead(global);
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(150L);
+            } catch (InterruptedException e) {
+                return;
+            }
+            local.release();
+        });
+        try {
+            assertTrue(local.tryAcquire());
+            assertTrue(global.tryAcquire());
+            releaser.start();
+            long start = System.nanoTime();
+            // 方法许可排队约 150ms, 全局只再等剩下的约 50ms
+            assertFalse(RateLimiterUtil.enterConcurrent(request, policy, true));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsed >= 190L && elapsed < 300L, "elapsed " + elapsed);
+            // 全局拒绝 方法许可退回
+            assertEquals(0, local.getInFlight());
+            global.release();
+        } finally {
+            releaser.interrupt();
+            RateLimiterUtil.setBulkhead(null);
+        }
+    }
+
+    // ==============
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertEquals(Thread.State.TIMED_WAITING, thread.getState());
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.opsli.limiter.core.clock;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.bucket.FixedWindowBucket;
+import org.opsli.limiter.core.bucket.SlidingWindowBucket;
+import org.opsli.limiter.core.bucket.TokenBucket;
+import org.opsli.limiter.core.enums.ClockType;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.opsli.limiter.core.rule.LimiterRule;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimiterClockTests {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void tokenBucketRefillsOnInjectedClock() {
+        AtomicLong time = new AtomicLong(-TimeUnit.SECONDS.toNanos(5));
+        TokenBucket bucket = new TokenBucket(10d, 10d, time::get);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+        assertEquals(100 * MILLIS, bucket.queryWaitNanos(1));
+
+        // 时间不动 不补充
+        time.addAndGet(99 * MILLIS);
+        assertFalse(bucket.tryAcquire());
+        time.addAndGet(MILLIS);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // 补满后不超过容量
+        time.addAndGet(10_000 * MILLIS);
+        assertEquals(10, bucket.availablePermits());
+        assertEquals(0L, bucket.queryResetNanos());
+    }
+
+    @Test
+    void windowBucketsFollowInjectedClock() {
+        AtomicLong time = new AtomicLong();
+        long window = 200 * MILLIS;
+        FixedWindowBucket fixed = new FixedWindowBucket(50d, window, time::get);
+        SlidingWindowBucket sliding = new SlidingWindowBucket(50d, window, time::get);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(fixed.tryAcquire());
+            assertTrue(sliding.tryAcquire());
+        }
+        assertFalse(fixed.tryAcquire());
+        assertFalse(sliding.tryAcquire());
+
+        // 下一个窗口过半: 固定窗口清零, 滑动窗口上一个窗口按一半计
+        time.addAndGet(window + window / 2);
+        assertEquals(10, fixed.availablePermits());
+        assertEquals(5, sliding.availablePermits());
+    }
+
+    /**
+     * 只验证不超前、单调、停止后不动; 落后不超过一个 tick 依赖后台线程按时被调度, 不在测试中断言
+     */
+    @Test
+    void cachedClockNeverRunsAheadOrBackwards() throws InterruptedException {
+        CachedClock clock = new CachedClock(MILLIS).start();
+        try {
+            long first = clock.nanoTime();
+            assertTrue(first - System.nanoTime() <= 0);
+            Thread.sleep(20);
+            long second = clock.nanoTime();
+            assertTrue(second - first > 0);
+            assertTrue(second - System.nanoTime() <= 0);
+        } finally {
+            clock.stop();
+        }
+        Thread.sleep(10);
+        long stopped = clock.nanoTime();
+        Thread.sleep(10);
+        assertEquals(stopped, clock.nanoTime());
+    }
+
+    @Test
+    void clockIsSelectedPerRule() {
+        LimiterPolicy policy = LimiterPolicy.builder().qps(10d).timeout(0L).window(1000L).build();
+        assertEquals(ClockType.PRECISE, policy.getClock());
+        assertSame(LimiterClock.PRECISE, policy.getGroup().getClock());
+
+        LimiterRule rule = new LimiterRule();
+        rule.setClock(ClockType.CACHED);
+        LimiterPolicy cached = rule.applyTo(policy);
+        assertEquals(ClockType.CACHED, cached.getClock());
+        assertSame(CachedClock.getInstance(), cached.getGroup().getClock());
+        assertTrue(cached.getGroup().getSlot("203.0.113.9", "/clock").getBucket().tryAcquire());
+    }
+
+}
@@ -0,0 +1,138 @@
+package org.opsli.limiter.core.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.annotation.Limiter;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LimiterFilterTests {
+
+    private LimiterFilter filter;
+
+    @BeforeEach
+    void setUp() throws NoSuchMethodException {
+        RequestMappingHandlerMapping mapping = new RequestMappingHandlerMapping();
+        Handlers handlers = new Handlers();
+        // 通配路径先登记宽泛的, 查找结果不能依赖登记顺序
+        register(mapping, handlers, "files", "/files/**", null);
+        register(mapping, handlers, "json", "/files/*.json", null);
+        register(mapping, handlers, "user", "/user/{id}", RequestMethod.GET);
+        register(mapping, handlers, "me", "/user/me", RequestMethod.GET);
+        register(mapping, handlers, "listItems", "/items", RequestMethod.GET);
+        register(mapping, handlers, "createItem", "/items", RequestMethod.POST);
+        filter = new LimiterFilter();
+        filter.load(Collections.singletonList(mapping));
+    }
+
+    @Test
+    void exactPathUsesItsOwnPolicy() {
+        MockHttpServletRequest request = request("GET", "/items");
+        assertEquals(5d, filter.lookup(request).getQps());
+        assertEquals("/items", request.getAttribute(RateLimiterUtil.RESOURCE_ATTRIBUTE));
+    }
+
+    @Test
+    void patternPathUsesMostSpecificMatch() {
+        MockHttpServletRequest request = request("GET", "/user/42");
+        assertEquals(1d, filter.lookup(request).getQps());
+        assertEquals("/user/{id}", request.getAttribute(RateLimiterUtil.RESOURCE_ATTRIBUTE));
+
+        request = request("GET", "/files/a.json");
+        assertEquals(3d, filter.lookup(request).getQps());
+        assertEquals("/files/*.json", request.getAttribute(RateLimiterUtil.RESOURCE_ATTRIBUTE));
+        assertEquals(2d, filter.lookup(request("GET", "/files/a/b.txt")).getQps());
+    }
+
+    @Test
+    void unlimitedExactPathDoesNotFallThroughToPattern() throws IOException, ServletException {
+        MockHttpServletRequest request = request("GET", "/user/me");
+        assertNull(filter.lookup(request));
+        assertEquals("/user/me", request.getAttribute(RateLimiterUtil.RESOURCE_ATTRIBUTE));
+
+        // 不限流的映射 过滤器不拦截
+        for (int i = 0; i < 5; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request("GET", "/user/me"), response, chain);
+            assertNotNull(chain.getRequest());
+            assertEquals(200, response.getStatus());
+        }
+    }
+
+    @Test
+    void methodSpecificMappings() throws IOException, ServletException {
+        assertEquals(4d, filter.lookup(request("POST", "/items")).getQps());
+        assertEquals(5d, filter.lookup(request("GET", "/items")).getQps());
+        // 没有映射的方法
+        assertNull(filter.lookup(request("DELETE", "/items")));
+        assertNull(filter.lookup(request("POST", "/user/42")));
+
+        // /user/{id} 每秒 1 次 第二次在 DispatcherServlet 之前被拒绝
+        MockFilterChain first = new MockFilterChain();
+        filter.doFilter(request("GET", "/user/filter-7"), new MockHttpServletResponse(), first);
+        assertNotNull(first.getRequest());
+        MockFilterChain second = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("GET", "/user/filter-7"), response, second);
+        assertNull(second.getRequest());
+        assertEquals(429, response.getStatus());
+    }
+
+    // ==============
+
+    private static MockHttpServletRequest request(String method, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setRemoteAddr("198.51.100.20");
+        return request;
+    }
+
+    private static void register(RequestMappingHandlerMapping mapping, Handlers handlers, String name,
+                                 String pattern, RequestMethod method) throws NoSuchMethodException {
+        RequestMappingInfo.Builder info = RequestMappingInfo.paths(pattern);
+        if (method != null) {
+            info.methods(method);
+        }
+        mapping.registerMapping(info.build(), handlers, Handlers.class.getDeclaredMethod(name));
+    }
+
+    static class Handlers {
+
+        @Limiter(qps = 1, burst = 1)
+        public void user() {
+        }
+
+        public void me() {
+        }
+
+        @Limiter(qps = 2)
+        public void files() {
+        }
+
+        @Limiter(qps = 3)
+        public void json() {
+        }
+
+        @Limiter(qps = 4)
+        public void createItem() {
+        }
+
+        @Limiter(qps = 5)
+        public void listItems() {
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.opsli.limiter.core.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimiterIndexTests {
+
+    @Test
+    void putGetRemove() {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        for (long k = 0; k < 500; k++) {
+            index.putIfAbsent(new LimiterSlot(LimiterKeys.mix64(k), 1, 0d, null));
+        }
+        assertEquals(500, index.size());
+        for (long k = 0; k < 500; k++) {
+            assertNotNull(index.get(LimiterKeys.mix64(k)));
+        }
+        for (long k = 0; k < 500; k += 2) {
+            assertTrue(index.remove(LimiterKeys.mix64(k)));
+        }
+        assertEquals(250, index.size());
+        for (long k = 0; k < 500; k++) {
+            assertEquals(k % 2 == 1, index.get(LimiterKeys.mix64(k)) != null);
+        }
+        assertFalse(index.remove(LimiterKeys.mix64(0)));
+    }
+
+    @Test
+    void putIfAbsentKeepsExisting() {
+        LimiterIndex index = new LimiterIndex(10, TimeUnit.MINUTES.toNanos(5));
+        LimiterSlot first = index.putIfAbsent(new LimiterSlot(42L, 1, 0d, null));
+        assertSame(first, index.putIfAbsent(new LimiterSlot(42L, 1, 0d, null)));
+    }
+
+    @Test
+    void evictWhenFull() {
+        LimiterIndex index = new LimiterIndex(100, TimeUnit.MINUTES.toNanos(5));
+        for (long k = 0; k < 1000; k++) {
+            index.putIfAbsent(new LimiterSlot(LimiterKeys.mix64(k), 1, 0d, null));
+        }
+        assertEquals(100, index.size());
+    }
+
+    @Test
+    void expireAfterIdle() throws InterruptedException {
+        LimiterIndex index = new LimiterIndex(10, TimeUnit.MILLISECONDS.toNanos(300));
+        index.putIfAbsent(new LimiterSlot(7L, 1, 0d, null));
+        Thread.sleep(200);
+        assertNotNull(index.get(7L));
+        // 写入已超过 300ms, 但最近一次访问没有
+        Thread.sleep(200);
+        assertNotNull(index.get(7L));
+        Thread.sleep(400);
+        assertNull(index.get(7L));
+    }
+
+    @Test
+    void scanDoesNotEvictFrequentKeys() {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5), 1);
+        for (int round = 0; round < 5; round++) {
+            for (long k = 0; k < 500; k++) {
+                getOrCreate(index, LimiterKeys.mix64(k));
+            }
+        }
+        // 只来一次的扫描 Key 是容量的 10 倍
+        for (long k = 1_000_000; k < 1_010_000; k++) {
+            getOrCreate(index, LimiterKeys.mix64(k));
+        }
+        assertEquals(1000, index.size());
+        for (long k = 0; k < 500; k++) {
+            assertNotNull(index.get(LimiterKeys.mix64(k)));
+        }
+        assertTrue(index.evictionCount() >= 9_000);
+    }
+
+    @Test
+    void removeIfCollisionChain() {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        // 低位相同 全部落在同一探测链上
+        for (long k = 1; k <= 64; k++) {
+            index.putIfAbsent(new LimiterSlot(k << 40, (int) k, 0d, null));
+        }
+        assertEquals(32, index.removeIf(slot -> slot.getResourceId() % 2 == 0));
+        for (long k = 1; k <= 64; k++) {
+            assertEquals(k % 2 == 1, index.get(k << 40) != null);
+        }
+    }
+
+    @Test
+    void stripesBoundedBySize() {
+        assertEquals(8, new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5), 5).stripes());
+        assertEquals(4, new LimiterIndex(4, TimeUnit.MINUTES.toNanos(5), 64).stripes());
+        assertEquals(1, new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5), 1).stripes());
+    }
+
+    @Test
+    void concurrentGetOrCreateSingleWinner() throws InterruptedException {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5), 16);
+        Set<LimiterSlot> winners = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long k = 0; k < 200; k++) {
+                    long key = LimiterKeys.mix64(k);
+                    LimiterSlot slot = index.get(key);
+                    if (slot == null) {
+                        slot = index.putIfAbsent(new LimiterSlot(key, 1, 0d, null));
+                    }
+                    winners.add(slot);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 每个 Key 所有线程拿到的都是同一个槽位
+        assertEquals(200, winners.size());
+        assertEquals(200, index.size());
+    }
+
+    @Test
+    void replaceOnlyObservedSlot() {
+        LimiterIndex index = new LimiterIndex(10, TimeUnit.MINUTES.toNanos(5));
+        LimiterSlot stale = index.putIfAbsent(new LimiterSlot(42L, 1, 0d, null));
+        LimiterSlot fresh = index.replace(stale, new LimiterSlot(42L, 1, 0d, null));
+        assertNotSame(stale, fresh);
+        assertSame(fresh, index.get(42L));
+        // 已被替换 再次替换拿到已生效的槽位
+        assertSame(fresh, index.replace(stale, new LimiterSlot(42L, 1, 0d, null)));
+        assertSame(fresh, index.get(42L));
+        assertEquals(1, index.size());
+
+        // 已删除 直接写入
+        index.remove(42L);
+        LimiterSlot added = index.replace(stale, new LimiterSlot(42L, 1, 0d, null));
+        assertSame(added, index.get(42L));
+    }
+
+    @Test
+    void concurrentReplaceSingleWinner() throws InterruptedException {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5), 16);
+        LimiterSlot[] stale = new LimiterSlot[200];
+        for (int k = 0; k < stale.length; k++) {
+            stale[k] = index.putIfAbsent(new LimiterSlot(LimiterKeys.mix64(k), 1, 0d, null));
+        }
+        Set<LimiterSlot> winners = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // 所有线程都看到同一个旧槽位 并发重建
+                for (LimiterSlot slot : stale) {
+                    winners.add(index.replace(slot, new LimiterSlot(slot.getKey(), 1, 0d, null)));
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200, winners.size());
+        assertEquals(200, index.size());
+        for (LimiterSlot slot : winners) {
+            assertSame(slot, index.get(slot.getKey()));
+        }
+    }
+
+    // ==============
+
+    private static LimiterSlot getOrCreate(LimiterIndex index, long key) {
+        LimiterSlot slot = index.get(key);
+        return slot != null ? slot : index.putIfAbsent(new LimiterSlot(key, 1, 0d, null));
+    }
+
+}
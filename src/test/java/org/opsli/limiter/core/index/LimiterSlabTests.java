@@ -0,0 +1,109 @@
+package org.opsli.limiter.core.index;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithms;
+import org.opsli.limiter.core.bucket.TokenBucket;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimiterSlabTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long INTERVAL = SECOND / 10;
+    private static final long BURST = SECOND;
+
+    @Test
+    void behavesLikeTokenBucket() {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        index.setOffHeap(1000);
+        LimiterGroup group = new LimiterGroup(index, 5d, 10d, LimiterAlgorithms.TOKEN_BUCKET, SECOND);
+        TokenBucket reference = new TokenBucket(5d, 10d);
+        int admitted = 0;
+        int expected = 0;
+        for (int i = 0; i < 50; i++) {
+            admitted += group.getSlot("192.0.2.7", "/slab").getBucket().tryAcquire() ? 1 : 0;
+            expected += reference.tryAcquire() ? 1 : 0;
+        }
+        assertEquals(expected, admitted);
+        assertEquals(0, group.getSlot("192.0.2.7", "/slab").getBucket().availablePermits());
+        // 不建限流器
+        assertEquals(0, index.size());
+        assertEquals(10, group.getSlot("192.0.2.8", "/slab").getBucket().availablePermits());
+    }
+
+    @Test
+    void fullBucketsAreReusedBeforeEviction() {
+        // 1 组 8 个槽位
+        LimiterSlab slab = new LimiterSlab(1);
+        assertEquals(8, slab.capacity());
+        long now = 0L;
+        for (long key = 1; key <= 8; key++) {
+            assertEquals(0L, slab.reserve(key, INTERVAL, BURST, 10, 0L, now));
+        }
+        // 组满 都欠令牌: 淘汰 TAT 最早的
+        assertEquals(0L, slab.reserve(9L, INTERVAL, BURST, 10, 0L, now));
+        assertEquals(1, slab.evictionCount());
+
+        // 两秒后都已补满 复用满桶不计淘汰
+        now += 2 * SECOND;
+        assertEquals(0L, slab.reserve(10L, INTERVAL, BURST, 1, 0L, now));
+        assertEquals(1, slab.evictionCount());
+    }
+
+    @Test
+    void rejectionDoesNotWrite() {
+        LimiterSlab slab = new LimiterSlab(16);
+        long now = -SECOND;
+        assertEquals(0L, slab.reserve(0L, INTERVAL, BURST, 10, 0L, now));
+        assertEquals(now + SECOND, slab.tat(0L, now));
+        assertEquals(-1L, slab.reserve(0L, INTERVAL, BURST, 1, 0L, now));
+        assertEquals(now + SECOND, slab.tat(0L, now));
+        // 可以等待时预定
+        assertEquals(INTERVAL, slab.reserve(0L, INTERVAL, BURST, 1, SECOND, now));
+        // 不存在为满桶
+        assertEquals(now, slab.tat(42L, now));
+    }
+
+    @Test
+    void restorerRunsOnlyForNewKeys() {
+        LimiterSlab slab = new LimiterSlab(16);
+        int[] calls = new int[1];
+        LimiterSlab.Restorer restorer = key -> {
+            calls[0]++;
+            // 恢复时已欠满一个突发
+            return BURST;
+        };
+        long now = 0L;
+        // 恢复的 TAT 拒绝时也写入
+        assertEquals(-1L, slab.reserve(7L, INTERVAL, BURST, 1, 0L, now, restorer));
+        assertEquals(now + BURST, slab.tat(7L, now));
+        assertEquals(INTERVAL, slab.reserve(7L, INTERVAL, BURST, 1, SECOND, now, restorer));
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    void slabSlotIsReusedPerThread() {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        index.setOffHeap(1000);
+        LimiterGroup group = new LimiterGroup(index, 5d, 10d, LimiterAlgorithms.TOKEN_BUCKET, SECOND);
+        LimiterSlot first = group.getSlot("192.0.2.20", "/slab");
+        long firstKey = first.getKey();
+        LimiterSlot detached = first.detach();
+        assertSame(first, group.getSlot("192.0.2.21", "/slab"));
+        assertNotEquals(firstKey, first.getKey());
+
+        // 复制的限流器仍指向原来的 Key
+        assertNotSame(first, detached);
+        assertEquals(firstKey, detached.getKey());
+        assertTrue(detached.getBucket().tryAcquire());
+        assertEquals(9, group.getSlot("192.0.2.20", "/slab").getBucket().availablePermits());
+        assertEquals(10, group.getSlot("192.0.2.21", "/slab").getBucket().availablePermits());
+    }
+
+}
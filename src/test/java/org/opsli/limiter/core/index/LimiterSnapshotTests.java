@@ -0,0 +1,106 @@
+package org.opsli.limiter.core.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithms;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimiterSnapshotTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final String IP = "192.0.2.7";
+    private static final String RESOURCE = "/snapshot";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void drainedBucketSurvivesRestart() throws IOException {
+        Path file = dir.resolve("limiter.snapshot");
+        LimiterIndex before = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        drain(group(before));
+        assertEquals(1, before.writeSnapshot(file));
+
+        LimiterIndex after = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        assertTrue(after.restoreSnapshot(file));
+        LimiterGroup group = group(after);
+        LimiterSlot slot = group.getSlot(IP, RESOURCE);
+        assertFalse(slot.getBucket().tryAcquire());
+        // 不在快照中的 Key 为满桶
+        assertEquals(10, group.getSlot("192.0.2.8", RESOURCE).getBucket().availablePermits());
+
+        // 每条记录只恢复一次
+        after.remove(slot.getKey());
+        assertTrue(group.getSlot(IP, RESOURCE).getBucket().tryAcquire());
+    }
+
+    @Test
+    void unrestoredEntriesAreCarriedForward() throws IOException {
+        Path file = dir.resolve("limiter.snapshot");
+        LimiterIndex first = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        drain(group(first));
+        first.writeSnapshot(file);
+
+        // 第二次运行期间这个 Key 没有出现
+        LimiterIndex second = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        assertTrue(second.restoreSnapshot(file));
+        assertEquals(1, second.writeSnapshot(file));
+
+        LimiterIndex third = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        assertTrue(third.restoreSnapshot(file));
+        assertFalse(group(third).getSlot(IP, RESOURCE).getBucket().tryAcquire());
+    }
+
+    @Test
+    void offHeapStateSurvivesRestart() throws IOException {
+        Path file = dir.resolve("limiter.snapshot");
+        LimiterIndex before = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        before.setOffHeap(1000);
+        drain(group(before));
+        assertEquals(1, before.writeSnapshot(file));
+
+        LimiterIndex after = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        after.setOffHeap(1000);
+        assertTrue(after.restoreSnapshot(file));
+        assertFalse(group(after).getSlot(IP, RESOURCE).getBucket().tryAcquire());
+        assertEquals(0, after.size());
+    }
+
+    @Test
+    void expiredOrInvalidFilesAreIgnored() throws IOException {
+        Path file = dir.resolve("limiter.snapshot");
+        // 没有未满的限流桶 打开时已过期
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        group(index).getSlot(IP, RESOURCE);
+        assertEquals(0, index.writeSnapshot(file));
+        assertFalse(index.restoreSnapshot(file));
+
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+                17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32});
+        assertFalse(index.restoreSnapshot(file));
+        assertTrue(group(index).getSlot(IP, RESOURCE).getBucket().tryAcquire());
+    }
+
+    // ==============
+
+    private static LimiterGroup group(LimiterIndex index) {
+        return new LimiterGroup(index, 5d, 10d, LimiterAlgorithms.TOKEN_BUCKET, SECOND);
+    }
+
+    private static void drain(LimiterGroup group) {
+        int admitted = 0;
+        while (group.getSlot(IP, RESOURCE).getBucket().tryAcquire()) {
+            admitted++;
+        }
+        assertTrue(admitted >= 10);
+    }
+
+}
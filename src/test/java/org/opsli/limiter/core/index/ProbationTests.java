@@ -0,0 +1,144 @@
+package org.opsli.limiter.core.index;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.algorithm.LimiterAlgorithms;
+import org.opsli.limiter.core.bucket.TokenBucket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProbationTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void lowRateKeysAllocateNothing() {
+        LimiterIndex index = new LimiterIndex(80_000, TimeUnit.MINUTES.toNanos(5));
+        LimiterGroup group = group(index, 10d, 10d);
+        for (int i = 0; i < 5000; i++) {
+            String ip = "10.1." + (i >>> 8) + "." + (i & 0xff);
+            for (int n = 0; n < 2; n++) {
+                assertTrue(group.getSlot(ip, "/probation").getBucket().tryAcquire());
+            }
+        }
+        assertEquals(0, index.size());
+
+        // 关闭后直接建限流器
+        index.setProbation(false);
+        group.getSlot("10.2.0.1", "/probation");
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void overloadedSketchStillAdmits() {
+        // 每秒 Key 数远超预计: 计数偏大提前建桶, 但不误拒
+        LimiterIndex index = new LimiterIndex(100, TimeUnit.MINUTES.toNanos(5));
+        LimiterGroup group = group(index, 10d, 10d);
+        for (int i = 0; i < 5000; i++) {
+            String ip = "10.3." + (i >>> 8) + "." + (i & 0xff);
+            for (int n = 0; n < 2; n++) {
+                assertTrue(group.getSlot(ip, "/probation").getBucket().tryAcquire());
+            }
+        }
+    }
+
+    @Test
+    void promotedBucketIsPreCharged() {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        LimiterGroup group = group(index, 5d, 10d);
+        TokenBucket reference = new TokenBucket(5d, 10d);
+        int admitted = 0;
+        int expected = 0;
+        for (int i = 0; i < 50; i++) {
+            admitted += group.getSlot("192.0.2.7", "/probation").getBucket().tryAcquire() ? 1 : 0;
+            expected += reference.tryAcquire() ? 1 : 0;
+        }
+        // 阈值 min(10, 5) / 2 = 2, 第 3 次建桶, 预扣 2 个
+        assertEquals(1, index.size());
+        assertEquals(expected, admitted);
+        LimiterSlot slot = group.getSlot("192.0.2.7", "/probation");
+        assertSame(slot, group.getSlot("192.0.2.7", "/probation"));
+        assertFalse(slot.getBucket().tryAcquire());
+    }
+
+    @Test
+    void probationSlotIsReusedPerThreadAndFollowsGroupClock() {
+        LimiterIndex index = new LimiterIndex(1000, TimeUnit.MINUTES.toNanos(5));
+        AtomicLong time = new AtomicLong();
+        LimiterGroup group = new LimiterGroup(index, 5d, 10d, LimiterAlgorithms.TOKEN_BUCKET, SECOND, time::get);
+        LimiterSlot first = group.getSlot("192.0.2.10", "/probation");
+        long firstKey = first.getKey();
+        LimiterSlot second = group.getSlot("192.0.2.11", "/probation");
+        assertSame(first, second);
+        assertNotEquals(firstKey, second.getKey());
+
+        // 复制后不受后续请求影响
+        LimiterSlot detached = group.getSlot("192.0.2.10", "/probation").detach();
+        assertNotSame(first, detached);
+        group.getSlot("192.0.2.11", "/probation");
+        assertEquals(firstKey, detached.getKey());
+
+        // 阈值 2: 时钟不动时第 3 次建桶; 按组的时钟过了 2 秒, 一级计数重新开始
+        for (int i = 0; i < 2; i++) {
+            assertTrue(group.getSlot("192.0.2.12", "/probation").getBucket().tryAcquire());
+        }
+        time.addAndGet(2 * SECOND);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(group.getSlot("192.0.2.12", "/probation").getBucket().tryAcquire());
+        }
+        assertEquals(0, index.size());
+        assertTrue(group.getSlot("192.0.2.12", "/probation").getBucket().tryAcquire());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void sketchNeverUnderestimates() {
+        ProbationSketch sketch = new ProbationSketch(256);
+        Map<Long, Integer> exact = new HashMap<>();
+        Random random = new Random(7L);
+        long now = 0L;
+        for (int i = 0; i < 20_000; i++) {
+            long key = LimiterKeys.mix64(random.nextInt(2_000));
+            int permits = 1 + random.nextInt(3);
+            exact.merge(key, permits, Integer::sum);
+            assertTrue(sketch.add(key, permits, now) >= exact.get(key));
+        }
+        for (Map.Entry<Long, Integer> e : exact.entrySet()) {
+            assertTrue(sketch.estimate(e.getKey(), now) >= Math.min(ProbationSketch.MAX_COUNT, e.getValue()));
+        }
+    }
+
+    @Test
+    void sketchRollsWindows() {
+        ProbationSketch sketch = new ProbationSketch(16);
+        long now = 10 * SECOND;
+        assertEquals(3, sketch.add(42L, 3, now));
+        assertEquals(5, sketch.add(42L, 2, now + SECOND / 2));
+        // 下一秒: 上一秒 5 + 本秒
+        assertEquals(5, sketch.estimate(42L, now + SECOND));
+        assertEquals(6, sketch.add(42L, 1, now + SECOND));
+        // 再下一秒: 上一秒 1
+        assertEquals(1, sketch.estimate(42L, now + 2 * SECOND));
+        assertEquals(0, sketch.estimate(42L, now + 4 * SECOND));
+        // 负的 nanoTime
+        assertEquals(1, sketch.add(7L, 1, -SECOND / 2));
+        assertEquals(1, sketch.estimate(7L, SECOND / 4));
+    }
+
+    // ==============
+
+    private static LimiterGroup group(LimiterIndex index, double qps, double burst) {
+        return new LimiterGroup(index, qps, burst, LimiterAlgorithms.TOKEN_BUCKET, SECOND);
+    }
+
+}
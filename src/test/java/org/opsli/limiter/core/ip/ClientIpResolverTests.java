@@ -0,0 +1,85 @@
+package org.opsli.limiter.core.ip;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientIpResolverTests {
+
+    @Test
+    void scanIpv4AndIpv6() {
+        assertEquals("1.2.3.4", IpAddress.parse(" 1.2.3.4 ").toString());
+        assertEquals("1.2.3.4", IpAddress.parse("1.2.3.4:8080").toString());
+        assertEquals("2001:db8::1", IpAddress.parse("2001:0db8:0:0:0:0:0:1").toString());
+        assertEquals("2001:db8::1", IpAddress.parse("[2001:db8::1]:443").toString());
+        assertEquals("fe80::1", IpAddress.parse("fe80::1%eth0").toString());
+        assertEquals("::", IpAddress.parse("::").toString());
+        assertEquals("1::", IpAddress.parse("1::").toString());
+        assertEquals("1:2:3:4:5:6:7:8", IpAddress.parse("1:2:3:4:5:6:7:8").toString());
+        // IPv4 映射地址与 IPv4 相同
+        assertEquals(IpAddress.parse("10.0.0.1"), IpAddress.parse("::ffff:10.0.0.1"));
+        assertTrue(IpAddress.parse("::ffff:10.0.0.1").isIpv4());
+    }
+
+    @Test
+    void scanRejectsInvalid() {
+        for (String text : Arrays.asList("unknown", "", "1.2.3", "1.2.3.256", "1.2.3.4.5", "1..2.3",
+                "1:2:3:4:5:6:7:8:9", "1::2::3", ":1:2", "1:2:", "12345::", "[::1")) {
+            assertNull(IpAddress.parse(text), text);
+        }
+    }
+
+    @Test
+    void rangeContains() {
+        IpAddress address = new IpAddress();
+        IpScanner.scan("172.20.1.1", 0, 10, address);
+        assertTrue(IpRange.parse("172.16.0.0/12").contains(address));
+        assertFalse(IpRange.parse("172.32.0.0/12").contains(address));
+        assertTrue(IpRange.parse("0.0.0.0/0").contains(address));
+        assertTrue(IpRange.parse("fc00::/7").contains(IpAddress.parse("fd12::1")));
+    }
+
+    @Test
+    void untrustedRemoteIgnoresHeaders() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("203.0.113.9");
+        request.addHeader("X-Forwarded-For", "1.1.1.1");
+        assertEquals("203.0.113.9", new ClientIpResolver().resolve(request));
+    }
+
+    @Test
+    void forwardedListSkipsTrustedProxies() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.2");
+        // 最左侧的地址由客户端伪造, 取第一个不可信的地址
+        request.addHeader("X-Forwarded-For", "6.6.6.6, 198.51.100.7 , 10.0.0.1");
+        assertEquals("198.51.100.7", new ClientIpResolver().resolve(request));
+
+        MockHttpServletRequest same = new MockHttpServletRequest();
+        same.setRemoteAddr("10.0.0.2");
+        same.addHeader("X-Forwarded-For", "198.51.100.7");
+        IpAddress a = new IpAddress();
+        IpAddress b = new IpAddress();
+        new ClientIpResolver().resolve(request, a);
+        new ClientIpResolver().resolve(same, b);
+        assertEquals(a, b);
+    }
+
+    @Test
+    void trustAllTakesFirstValid() {
+        ClientIpResolver resolver = new ClientIpResolver(ClientIpResolver.DEFAULT_HEADERS,
+                Collections.singletonList(ClientIpResolver.TRUST_ALL));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("203.0.113.9");
+        request.addHeader("X-Forwarded-For", "unknown, 6.6.6.6, 10.0.0.1");
+        assertEquals("6.6.6.6", resolver.resolve(request));
+    }
+
+}
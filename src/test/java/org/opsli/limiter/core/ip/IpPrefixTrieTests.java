@@ -0,0 +1,187 @@
+package org.opsli.limiter.core.ip;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.enums.PrefixAction;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IpPrefixTrieTests {
+
+    @Test
+    void longestMatchWithNestedPrefixes() {
+        IpPrefixTrie trie = IpPrefixTrie.builder()
+                .put(IpRange.parse("10.0.0.0/8"), 1)
+                .put(IpRange.parse("10.1.0.0/16"), 2)
+                .put(IpRange.parse("10.1.2.0/24"), 3)
+                .put(IpRange.parse("10.1.2.3"), 4)
+                .put(IpRange.parse("2001:db8::/32"), 5)
+                .build();
+        assertEquals(4, trie.longestMatch(IpAddress.parse("10.1.2.3")));
+        assertEquals(3, trie.longestMatch(IpAddress.parse("10.1.2.4")));
+        assertEquals(2, trie.longestMatch(IpAddress.parse("10.1.3.1")));
+        assertEquals(1, trie.longestMatch(IpAddress.parse("10.200.0.1")));
+        assertEquals(IpPrefixTrie.NONE, trie.longestMatch(IpAddress.parse("11.0.0.1")));
+        assertEquals(5, trie.longestMatch(IpAddress.parse("2001:db8:1::1")));
+
+        int[] out = new int[IpPrefixTrie.MAX_DEPTH];
+        assertEquals(4, trie.matchAll(IpAddress.parse("10.1.2.3"), out));
+        assertEquals(1, out[0]);
+        assertEquals(4, out[3]);
+    }
+
+    @Test
+    void randomPrefixesMatchLinearScan() {
+        Random random = new Random(42);
+        IpRange[] ranges = new IpRange[2000];
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        for (int i = 0; i < ranges.length; i++) {
+            int v4 = random.nextInt();
+            String cidr = (v4 >>> 24) + "." + ((v4 >>> 16) & 0xff) + "." + ((v4 >>> 8) & 0xff) + "." + (v4 & 0xff)
+                    + "/" + (4 + random.nextInt(29));
+            ranges[i] = IpRange.parse(cidr);
+            builder.put(ranges[i], i);
+        }
+        IpPrefixTrie trie = builder.build();
+        IpAddress address = new IpAddress();
+        for (int n = 0; n < 20000; n++) {
+            address.setIpv4(random.nextInt());
+            int expected = IpPrefixTrie.NONE;
+            int best = -1;
+            for (int i = 0; i < ranges.length; i++) {
+                // 同一前缀后写入的覆盖
+                if (ranges[i].contains(address) && ranges[i].getPrefix() >= best) {
+                    best = ranges[i].getPrefix();
+                    expected = i;
+                }
+            }
+            assertEquals(expected, trie.longestMatch(address));
+        }
+    }
+
+    @Test
+    void subnetLimiterLayers() {
+        SubnetLimiter limiter = SubnetLimiter.builder()
+                .deny("203.0.113.0/24")
+                .allow("203.0.113.7")
+                .limit("198.51.100.0/24", 2d)
+                .build();
+        SubnetMatch match = new SubnetMatch();
+
+        assertEquals(PrefixAction.DENY, limiter.screen(IpAddress.parse("203.0.113.8"), match));
+        // 更长的白名单覆盖黑名单
+        assertEquals(PrefixAction.ALLOW, limiter.screen(IpAddress.parse("203.0.113.7"), match));
+
+        // 同一 /24 内轮换地址 共用一个桶
+        int admitted = 0;
+        for (int i = 1; i <= 10; i++) {
+            IpAddress address = IpAddress.parse("198.51.100." + i);
+            assertNull(limiter.screen(address, match));
+            if (limiter.tryAcquire(address, match)) {
+                admitted++;
+            }
+        }
+        assertEquals(2, admitted);
+    }
+
+    @Test
+    void aggregatePerSubnet() {
+        SubnetLimiter limiter = SubnetLimiter.builder()
+                .aggregate(24, 64, 1d)
+                .build();
+        SubnetMatch match = new SubnetMatch();
+        IpAddress a = IpAddress.parse("192.0.2.1");
+        IpAddress b = IpAddress.parse("192.0.2.200");
+        IpAddress c = IpAddress.parse("192.0.3.1");
+        limiter.screen(a, match);
+        assertTrue(limiter.tryAcquire(a, match));
+        assertFalse(limiter.tryAcquire(b, match));
+        assertTrue(limiter.tryAcquire(c, match));
+    }
+
+    @Test
+    void subnetLayersAreAllOrNothing() {
+        SubnetMatch match = new SubnetMatch();
+
+        // 外层网段拒绝 内层网段归还
+        IpAddress address = IpAddress.parse("198.51.100.1");
+        SubnetLimiter nested = SubnetLimiter.builder()
+                .limit("198.51.100.0/24", 3d)
+                .limit("198.51.100.0/28", 5d)
+                .build();
+        nested.screen(address, match);
+        assertFalse(nested.tryAcquire(address, match, 4));
+        assertTrue(nested.tryAcquire(address, match, 3));
+
+        // 聚合网段拒绝 网段规则归还
+        address = IpAddress.parse("203.0.113.1");
+        SubnetLimiter aggregated = SubnetLimiter.builder()
+                .limit("203.0.113.0/28", 5d)
+                .aggregate(24, 64, 3d)
+                .build();
+        aggregated.screen(address, match);
+        assertFalse(aggregated.tryAcquire(address, match, 4));
+        assertTrue(aggregated.tryAcquire(address, match, 3));
+
+        // 全局拒绝 前面各层归还; release 归还全部
+        address = IpAddress.parse("198.18.0.1");
+        SubnetLimiter global = SubnetLimiter.builder()
+                .limit("198.18.0.0/28", 5d)
+                .aggregate(24, 64, 5d)
+                .global(3d)
+                .build();
+        global.screen(address, match);
+        assertFalse(global.tryAcquire(address, match, 4));
+        assertTrue(global.tryAcquire(address, match, 3));
+        assertFalse(global.tryAcquire(address, match, 1));
+        global.release(address, match, 3);
+        assertTrue(global.tryAcquire(address, match, 3));
+    }
+
+    @Test
+    void subnetRejectionLeavesIpBucketUntouched() {
+        LimiterGroup group = RateLimiterUtil.newGroup(2d, 2d);
+        RateLimiterUtil.setSubnetLimiter(SubnetLimiter.builder()
+                .limit("192.0.2.0/24", 4d)
+                .build());
+        try {
+            // 网段按令牌数扣减: 4 个令牌 2 + 2 放行后拒绝
+            assertTrue(RateLimiterUtil.enter(request("192.0.2.1", "/subnet/a"), group, 2, AcquireMode.REJECT, 0L));
+            assertTrue(RateLimiterUtil.enter(request("192.0.2.2", "/subnet/a"), group, 2, AcquireMode.REJECT, 0L));
+            // 网段拒绝 单 IP 的桶不扣减
+            assertFalse(RateLimiterUtil.enter(request("192.0.2.3", "/subnet/b"), group, AcquireMode.REJECT, 0L));
+            RateLimiterUtil.setSubnetLimiter(null);
+            assertTrue(RateLimiterUtil.enter(request("192.0.2.3", "/subnet/b"), group, AcquireMode.REJECT, 0L));
+            assertTrue(RateLimiterUtil.enter(request("192.0.2.3", "/subnet/b"), group, AcquireMode.REJECT, 0L));
+
+            // 单 IP 拒绝 网段令牌归还 (同步、异步一致)
+            RateLimiterUtil.setSubnetLimiter(SubnetLimiter.builder()
+                    .limit("192.0.2.0/24", 2d)
+                    .build());
+            assertFalse(RateLimiterUtil.enter(request("192.0.2.3", "/subnet/b"), group, AcquireMode.REJECT, 0L));
+            assertFalse(RateLimiterUtil.enterAsync(request("192.0.2.3", "/subnet/b"), group,
+                    AcquireMode.REJECT, 0L).join());
+            assertTrue(RateLimiterUtil.enter(request("192.0.2.4", "/subnet/b"), group, AcquireMode.REJECT, 0L));
+            assertTrue(RateLimiterUtil.enter(request("192.0.2.5", "/subnet/b"), group, AcquireMode.REJECT, 0L));
+        } finally {
+            RateLimiterUtil.setSubnetLimiter(null);
+        }
+    }
+
+    // ==============
+
+    private static MockHttpServletRequest request(String remoteAddr, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.opsli.limiter.core.log;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.enums.RejectReason;
+import org.opsli.limiter.core.ip.IpAddress;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RejectionLogTests {
+
+    @Test
+    void aggregatesPerKey() {
+        RejectionLog log = new RejectionLog(64, 1000);
+        // 线程内复用的地址 写入后被修改不影响已记录的事件
+        IpAddress scratch = IpAddress.parse("203.0.113.1");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(log.offer(RejectReason.RATE, 1L, scratch, "/a", 0L));
+        }
+        scratch.set(IpAddress.parse("2001:db8::1"));
+        log.offer(RejectReason.RATE, 2L, scratch, "/a", 2_000_000L);
+        log.offer(RejectReason.DENY, 3L, "198.51.100.7", "/b", 0L);
+
+        assertEquals(7, log.drain());
+        List<String> lines = log.flush();
+        assertEquals(3, lines.size());
+        assertEquals("限流器 - 访问频繁 IP地址: 203.0.113.1, URI: /a, 拒绝: 5 次", lines.get(0));
+        assertTrue(lines.contains("限流器 - 访问频繁 IP地址: 2001:db8::1, URI: /a, 拒绝: 1 次, 最长等待: 2ms"));
+        assertTrue(lines.contains("限流器 - 黑名单 IP地址: 198.51.100.7, URI: /b, 拒绝: 1 次"));
+        // 新窗口
+        assertTrue(log.flush().isEmpty());
+    }
+
+    @Test
+    void dropsWhenFull() {
+        RejectionLog log = new RejectionLog(4, 1000);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(log.offer(RejectReason.RATE, i, "10.0.0.1", "/a", 0L));
+        }
+        assertFalse(log.offer(RejectReason.RATE, 9L, "10.0.0.1", "/a", 0L));
+        assertFalse(log.offer(RejectReason.RATE, 9L, "10.0.0.1", "/a", 0L));
+        assertEquals(2, log.getDropped());
+
+        // 取走后可以继续写入
+        assertEquals(4, log.drain());
+        assertTrue(log.offer(RejectReason.RATE, 9L, "10.0.0.1", "/a", 0L));
+        assertEquals(1, log.drain());
+        List<String> lines = log.flush();
+        assertEquals("限流器 - 拒绝日志队列已满 丢弃: 2 条", lines.get(lines.size() - 1));
+        assertTrue(log.flush().isEmpty());
+    }
+
+    @Test
+    void concurrentProducers() throws Exception {
+        int threads = 4;
+        int perThread = 5000;
+        RejectionLog log = new RejectionLog(threads * perThread, 1000);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long key = t;
+            producers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    log.offer(RejectReason.RATE, key, "10.0.0." + key, "/a", 0L);
+                }
+            });
+            producers[t].start();
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(threads * perThread, log.drain());
+        assertEquals(0, log.getDropped());
+        List<String> lines = log.flush();
+        assertEquals(threads, lines.size());
+        for (String line : lines) {
+            assertTrue(line.endsWith("拒绝: " + perThread + " 次"), line);
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package org.opsli.limiter.core.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimiterMetricsTests {
+
+    private static final String COUNTED = LimiterMetricsTests.class.getName() + "#counted()";
+
+    @SuppressWarnings("unused")
+    static void counted() {
+    }
+
+    @SuppressWarnings("unused")
+    static void counted(String overload) {
+    }
+
+    @SuppressWarnings("unused")
+    static void waited() {
+    }
+
+    @Test
+    void countsPerPolicy() throws Exception {
+        LimiterPolicy policy = policy("counted", AcquireMode.REJECT, 0);
+        LimiterStats stats = policy.getStats();
+        assertSame(stats, LimiterMetrics.of(COUNTED));
+        assertEquals("LimiterMetricsTests#counted", stats.getLabel());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new LimiterMetricsBinder().bindTo(registry);
+
+        assertTrue(RateLimiterUtil.enter(request("203.0.113.10"), policy));
+        assertFalse(RateLimiterUtil.enter(request("203.0.113.10"), policy));
+        assertFalse(RateLimiterUtil.enter(request("203.0.113.10"), policy));
+        assertTrue(RateLimiterUtil.enter(request("203.0.113.11"), policy));
+        assertEquals(2, stats.getAccepted());
+        assertEquals(2, stats.getRejected());
+        assertEquals(0, stats.getWaited());
+
+        assertEquals(2d, registry.get("opsli.limiter.requests")
+                .tag("policy", COUNTED).tag("method", "LimiterMetricsTests#counted").tag("result", "rejected")
+                .functionCounter().count());
+        assertTrue(registry.get("opsli.limiter.global.requests").tag("result", "accepted")
+                .functionCounter().count() >= 2d);
+
+        List<TopKeys.Entry> top = LimiterMetrics.topThrottled(100);
+        assertTrue(top.stream().anyMatch(e -> e.getLabel().equals("203.0.113.10 /metrics")));
+    }
+
+    @Test
+    void waitsRecorded() throws Exception {
+        LimiterPolicy policy = policy("waited", AcquireMode.WAIT, 1000);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new LimiterMetricsBinder().bindTo(registry);
+
+        assertTrue(RateLimiterUtil.enter(request("203.0.113.20"), policy));
+        // 20 QPS 第二次约等待 50ms
+        assertTrue(RateLimiterUtil.enter(request("203.0.113.20"), policy));
+        LimiterStats stats = policy.getStats();
+        assertEquals(2, stats.getAccepted());
+        assertEquals(1, stats.getWaited());
+        assertTrue(stats.getWaitNanos() > 0);
+        assertEquals(1, registry.get("opsli.limiter.wait")
+                .tag("policy", LimiterMetricsTests.class.getName() + "#waited()").timer().count());
+    }
+
+    @Test
+    void overloadsCountedSeparately() throws Exception {
+        Method overload = LimiterMetricsTests.class.getDeclaredMethod("counted", String.class);
+        LimiterPolicy policy = LimiterPolicy.builder().qps(20).burst(1).method(overload).build();
+        LimiterStats stats = policy.getStats();
+        assertEquals(LimiterMetricsTests.class.getName() + "#counted(java.lang.String)", stats.getName());
+        assertEquals("LimiterMetricsTests#counted", stats.getLabel());
+        assertNotSame(LimiterMetrics.of(COUNTED), stats);
+    }
+
+    @Test
+    void topKeysFindHeavyHitters() {
+        TopKeys topKeys = new TopKeys(16);
+        Random random = new Random(7);
+        long[] exact = new long[4];
+        // 3 个高频 Key 混在大量只出现一次的 Key 中
+        for (int i = 0; i < 20000; i++) {
+            int r = random.nextInt(10);
+            long key = r < 2 ? 1L : r < 3 ? 2L : r < 4 ? 3L : 100 + i;
+            if (key <= 3L) {
+                exact[(int) key]++;
+            }
+            topKeys.add(key, "k" + key, null);
+        }
+        List<TopKeys.Entry> top = topKeys.top(3);
+        assertEquals(3, top.size());
+        assertEquals("k1", top.get(0).getLabel());
+        for (TopKeys.Entry entry : top) {
+            assertTrue(entry.getKey() <= 3L);
+            // 计数偏大 不超过误差
+            long actual = exact[(int) entry.getKey()];
+            assertTrue(entry.getCount() >= actual);
+            assertTrue(entry.getCount() - entry.getError() <= actual);
+        }
+        topKeys.clear();
+        assertTrue(topKeys.top(3).isEmpty());
+    }
+
+    @Test
+    void topKeysMergeThreadsAndKeepCountsOfFinishedThreads() throws InterruptedException {
+        TopKeys topKeys = new TopKeys(4);
+        // 线程依次结束, 后面的线程接管前面的分段 计数不丢
+        for (int t = 0; t < 3; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    topKeys.add(1L, "k1", null);
+                }
+                topKeys.add(2L, "k2", null);
+            });
+            thread.start();
+            thread.join();
+        }
+        topKeys.add(1L, "k1", null);
+        List<TopKeys.Entry> top = topKeys.top(2);
+        assertEquals(2, top.size());
+        assertEquals("k1", top.get(0).getLabel());
+        assertEquals(301L, top.get(0).getCount());
+        assertEquals(3L, top.get(1).getCount());
+
+        // 清空后各分段下次写入时自己清零
+        topKeys.clear();
+        assertTrue(topKeys.top(2).isEmpty());
+        topKeys.add(2L, "k2", null);
+        top = topKeys.top(2);
+        assertEquals(1, top.size());
+        assertEquals(1L, top.get(0).getCount());
+    }
+
+    // ==============
+
+    private static LimiterPolicy policy(String method, AcquireMode acquireMode, long timeout) throws Exception {
+        Method m = LimiterMetricsTests.class.getDeclaredMethod(method);
+        return LimiterPolicy.builder().qps(20).burst(1).acquireMode(acquireMode).timeout(timeout).method(m).build();
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/metrics");
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+}
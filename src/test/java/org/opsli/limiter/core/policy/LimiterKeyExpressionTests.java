@@ -0,0 +1,140 @@
+package org.opsli.limiter.core.policy;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.index.LimiterKeys;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimiterKeyExpressionTests {
+
+    @SuppressWarnings("unused")
+    static void handle(Long userId, String name) {
+    }
+
+    @SuppressWarnings("unused")
+    static void export(List<Long> ids) {
+    }
+
+    @Test
+    void dimensionsHashByValue() throws Exception {
+        Method method = LimiterKeyExpressionTests.class.getDeclaredMethod("handle", Long.class, String.class);
+        LimiterKeyExpression key = LimiterKeyExpression.of(method, "request.getHeader('X-Tenant-Id')", "#userId");
+        LimiterKeyExpression byIndex = LimiterKeyExpression.of(method, "request.getHeader('X-Tenant-Id')", "#p0");
+
+        long h = key.hash(tenant("t1"), null, new Object[]{1L, "a"});
+        assertEquals(h, key.hash(tenant("t1"), null, new Object[]{1L, "b"}));
+        assertEquals(h, byIndex.hash(tenant("t1"), null, new Object[]{1L, "b"}));
+        assertNotEquals(h, key.hash(tenant("t1"), null, new Object[]{2L, "a"}));
+        assertNotEquals(h, key.hash(tenant("t2"), null, new Object[]{1L, "a"}));
+        // 维度有顺序
+        assertNotEquals(LimiterKeyExpression.of(method, "'x'", "'y'").hash(tenant("t1"), null, null),
+                LimiterKeyExpression.of(method, "'y'", "'x'").hash(tenant("t1"), null, null));
+    }
+
+    @Test
+    void compiledMatchesInterpreted() throws Exception {
+        Method method = LimiterKeyExpressionTests.class.getDeclaredMethod("handle", Long.class, String.class);
+        LimiterKeyExpression key = LimiterKeyExpression.of(method, "request.getHeader('X-Tenant-Id')", "#userId");
+        long first = key.hash(tenant("t1"), null, new Object[]{7L, null});
+        // MIXED 模式解释执行若干次后编译
+        for (int i = 0; i < 500; i++) {
+            assertEquals(first, key.hash(tenant("t1"), null, new Object[]{7L, null}));
+        }
+    }
+
+    @Test
+    void argsRequired() {
+        assertNull(LimiterKeyExpression.of(null));
+        assertFalse(LimiterKeyExpression.of(null, "request.getHeader('X-Api-Key')").isArgsRequired());
+        assertFalse(LimiterKeyExpression.of(null, "#root.ip").isArgsRequired());
+        assertTrue(LimiterKeyExpression.of(null, "#userId").isArgsRequired());
+        assertTrue(LimiterKeyExpression.of(null, "ip", "args[0]").isArgsRequired());
+    }
+
+    @Test
+    void hashValueIgnoresRepresentation() {
+        assertEquals(LimiterKeys.hashValue("abc"), LimiterKeys.hashValue(new StringBuilder("abc")));
+        assertEquals(LimiterKeys.hashValue(5), LimiterKeys.hashValue(5L));
+        assertEquals(LimiterKeys.hashValue(new Object[]{"a", 1}), LimiterKeys.hashValue(Arrays.asList("a", 1)));
+        // 按文本哈希 规则中的字面量可以匹配数字参数
+        assertEquals(LimiterKeys.hashValue("42"), LimiterKeys.hashValue(42L));
+        for (long v : new long[]{0, 7, 10, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(LimiterKeys.hash(Long.toString(v)), LimiterKeys.hashDecimal(v));
+        }
+        assertEquals(LimiterKeys.hashValue("x"), LimiterKeys.hashValue('x'));
+        assertEquals(LimiterKeys.hashValue("true"), LimiterKeys.hashValue(true));
+        assertNotEquals(LimiterKeys.hashValue("1"), LimiterKeys.hashValue(2));
+    }
+
+    @Test
+    void resourceNormalizedToPattern() {
+        LimiterPolicy policy = LimiterPolicy.builder().qps(1).burst(1).timeout(0).build();
+        // 同一 IP 不同路径变量 共用 /orders/{id} 的限流器
+        assertTrue(RateLimiterUtil.enter(pathRequest("/orders/1", "198.51.100.1"), policy));
+        assertFalse(RateLimiterUtil.enter(pathRequest("/orders/2", "198.51.100.1"), policy));
+
+        LimiterPolicy keyed = LimiterPolicy.builder().qps(1).burst(1).timeout(0)
+                .key(LimiterKeyExpression.of(null, "request.getHeader('X-Tenant-Id')"))
+                .build();
+        // 按租户限流 与 IP 无关
+        MockHttpServletRequest request = pathRequest("/orders/1", "198.51.100.2");
+        request.addHeader("X-Tenant-Id", "t1");
+        assertTrue(RateLimiterUtil.enter(request, keyed));
+        request = pathRequest("/orders/1", "198.51.100.3");
+        request.addHeader("X-Tenant-Id", "t1");
+        assertFalse(RateLimiterUtil.enter(request, keyed));
+        request.removeHeader("X-Tenant-Id");
+        request.addHeader("X-Tenant-Id", "t2");
+        assertTrue(RateLimiterUtil.enter(request, keyed));
+    }
+
+    @Test
+    void costConsumesPermitsAtomically() throws Exception {
+        Method method = LimiterKeyExpressionTests.class.getDeclaredMethod("export", List.class);
+        LimiterCostExpression cost = LimiterCostExpression.of(method, "#ids");
+        assertTrue(cost.isArgsRequired());
+        assertEquals(3, cost.evaluate(null, null, new Object[]{Arrays.asList(1L, 2L, 3L)}));
+        assertEquals(1, cost.evaluate(null, null, new Object[]{null}));
+        assertEquals(4, LimiterCostExpression.of(null, "'4'").evaluate(null, null, null));
+        assertEquals(1, LimiterCostExpression.of(null, "-2").evaluate(null, null, null));
+        assertNull(LimiterCostExpression.of(null, " "));
+
+        // 5 个令牌的桶 每次按批量大小消耗
+        LimiterPolicy policy = LimiterPolicy.builder().qps(1).burst(5).timeout(0)
+                .method(method).cost(cost).build();
+        assertTrue(policy.isArgsRequired());
+        MockHttpServletRequest request = pathRequest("/export", "198.51.100.9");
+        assertTrue(RateLimiterUtil.enter(request, policy, new Object[]{Arrays.asList(1L, 2L, 3L)}));
+        // 剩余 2 个 拿不全时不扣减
+        assertFalse(RateLimiterUtil.enter(request, policy, new Object[]{Arrays.asList(1L, 2L, 3L)}));
+        assertTrue(RateLimiterUtil.enter(request, policy, new Object[]{Arrays.asList(1L, 2L)}));
+        assertFalse(RateLimiterUtil.enter(request, policy, new Object[]{Arrays.asList(1L)}));
+    }
+
+    // ==============
+
+    private static MockHttpServletRequest tenant(String tenant) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-Tenant-Id", tenant);
+        return request;
+    }
+
+    private static MockHttpServletRequest pathRequest(String uri, String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr(remoteAddr);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/orders/{id}");
+        return request;
+    }
+
+}
@@ -0,0 +1,229 @@
+package org.opsli.limiter.core.rule;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opsli.limiter.core.enums.AcquireMode;
+import org.opsli.limiter.core.enums.AlgorithmType;
+import org.opsli.limiter.core.index.LimiterSlot;
+import org.opsli.limiter.core.policy.LimiterKeyExpression;
+import org.opsli.limiter.core.policy.LimiterPolicy;
+import org.opsli.limiter.core.util.RateLimiterUtil;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimiterRuleTests {
+
+    @SuppressWarnings("unused")
+    static void handle(String apiKey) {
+    }
+
+    static void list() {
+    }
+
+    static void create() {
+    }
+
+    @AfterEach
+    void reset() {
+        LimiterRuleRegistry.apply(Collections.emptyList());
+    }
+
+    @Test
+    void rateChangeKeepsBucketState() {
+        LimiterPolicy policy = policy(1, 1, null, null);
+        LimiterSlot slot = policy.getGroup().getSlot("203.0.113.1", "/rules/rate");
+        assertTrue(slot.getBucket().tryAcquire());
+        assertFalse(slot.getBucket().tryAcquire());
+
+        LimiterRuleRegistry.apply(Collections.singletonList(rule("/rules/**", 2d, null)));
+        LimiterPolicy effective = LimiterRuleRegistry.resolve(policy, "/rules/rate");
+        assertNotSame(policy, effective);
+        assertSame(effective, LimiterRuleRegistry.resolve(policy, "/rules/rate"));
+
+        // 同一个桶 令牌仍然用完
+        LimiterSlot adopted = effective.getGroup().getSlot("203.0.113.1", "/rules/rate");
+        assertSame(slot, adopted);
+        assertEquals(2d, adopted.getQps());
+        assertEquals(2d, adopted.getBucket().getRate(), 0.01);
+        assertFalse(adopted.getBucket().tryAcquire());
+
+        // 规则删除后 回到注解的 QPS
+        LimiterRuleRegistry.apply(Collections.emptyList());
+        assertSame(policy, LimiterRuleRegistry.resolve(policy, "/rules/rate"));
+        assertSame(slot, policy.getGroup().getSlot("203.0.113.1", "/rules/rate"));
+        assertEquals(1d, slot.getQps());
+    }
+
+    @Test
+    void bucketChangeRebuilds() {
+        LimiterPolicy policy = policy(1, 1, null, null);
+        LimiterSlot slot = policy.getGroup().getSlot("203.0.113.2", "/rules/burst");
+        assertTrue(slot.getBucket().tryAcquire());
+
+        LimiterRule rule = rule("/rules/**", null, null);
+        rule.setBurst(5d);
+        LimiterRuleRegistry.apply(Collections.singletonList(rule));
+        LimiterSlot rebuilt = LimiterRuleRegistry.resolve(policy, "/rules/burst")
+                .getGroup().getSlot("203.0.113.2", "/rules/burst");
+        assertNotSame(slot, rebuilt);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rebuilt.getBucket().tryAcquire());
+        }
+        assertFalse(rebuilt.getBucket().tryAcquire());
+    }
+
+    @Test
+    void distinctPoliciesDoNotShareSlots() throws Exception {
+        // 同一路径的两个方法 (如 GET / POST) 交替访问
+        Method list = LimiterRuleTests.class.getDeclaredMethod("list");
+        Method create = LimiterRuleTests.class.getDeclaredMethod("create");
+        LimiterPolicy strict = policy(1, 1, list, null);
+        // 突发不同: 共享时每次切换都会重建 满桶放行
+        LimiterPolicy loose = policy(10, 10, create, null);
+        // 突发相同: 共享时来回调整 QPS 共用一个桶
+        LimiterPolicy same = policy(2, 1, null, null);
+        int strictAdmitted = 0;
+        int looseAdmitted = 0;
+        int sameAdmitted = 0;
+        for (int i = 0; i < 5; i++) {
+            if (RateLimiterUtil.enter(request("203.0.113.3", "/rules/items"), strict)) {
+                strictAdmitted++;
+            }
+            if (RateLimiterUtil.enter(request("203.0.113.3", "/rules/items"), loose)) {
+                looseAdmitted++;
+            }
+            if (RateLimiterUtil.enter(request("203.0.113.3", "/rules/items"), same)) {
+                sameAdmitted++;
+            }
+        }
+        assertEquals(1, strictAdmitted);
+        assertEquals(5, looseAdmitted);
+        assertEquals(1, sameAdmitted);
+        assertEquals(1d, strict.getGroup().getSlot("203.0.113.3", "/rules/items").getQps());
+        assertEquals(10d, loose.getGroup().getSlot("203.0.113.3", "/rules/items").getQps());
+
+        // 注解相同的方法 (重启后重新解析) 标识相同
+        assertEquals(strict.getGroup().getScope(), policy(2, 1, list, null).getGroup().getScope());
+    }
+
+    @Test
+    void rulesCascadeInOrder() {
+        LimiterPolicy policy = policy(1, 0, null, null);
+        LimiterRule first = rule("/orders/**", 10d, null);
+        first.setBurst(3d);
+        first.setAcquireMode(AcquireMode.WAIT);
+        LimiterRule second = rule("/orders/{id}", 20d, null);
+        LimiterRule other = rule("/users/**", 30d, null);
+        LimiterRuleRegistry.apply(Arrays.asList(first, second, other));
+
+        LimiterPolicy effective = LimiterRuleRegistry.resolve(policy, "/orders/{id}");
+        assertEquals(20d, effective.getQps());
+        assertEquals(3d, effective.getBurst());
+        assertEquals(AcquireMode.WAIT, effective.getAcquireMode());
+        assertEquals(10d, LimiterRuleRegistry.resolve(policy, "/orders/{id}/items").getQps());
+        assertSame(policy, LimiterRuleRegistry.resolve(policy, "/items"));
+    }
+
+    @Test
+    void methodAndKeyRules() throws Exception {
+        Method method = LimiterRuleTests.class.getDeclaredMethod("handle", String.class);
+        LimiterPolicy policy = policy(1, 0, method,
+                LimiterKeyExpression.of(method, "request.getHeader('X-Api-Key')"));
+        LimiterRule byMethod = rule(null, 5d, null);
+        byMethod.setMethod("LimiterRuleTests#handle");
+        LimiterRule byKey = rule(null, 50d, Collections.singletonList("vip"));
+        LimiterRule otherMethod = rule(null, 7d, null);
+        otherMethod.setMethod("LimiterRuleTests#other");
+        LimiterRuleRegistry.apply(Arrays.asList(byMethod, byKey, otherMethod));
+
+        LimiterPolicy effective = LimiterRuleRegistry.resolve(policy, "/keys");
+        assertEquals(5d, effective.getQps());
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-Api-Key", "vip");
+        long vip = policy.getKey().hash(request, null, null);
+        assertEquals(LimiterKeyExpression.hashLiterals(Collections.singletonList("vip")), vip);
+        assertEquals(50d, effective.getGroup().getSlot(vip, "/keys").getQps());
+        assertEquals(5d, effective.getGroup().getSlot(vip + 1, "/keys").getQps());
+    }
+
+    @Test
+    void invalidRulesRejected() {
+        LimiterRule rule = rule(null, 1d, null);
+        rule.setWindow(0L);
+        LimiterRuleRegistry.apply(Collections.singletonList(rule("/a", 1d, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> LimiterRuleRegistry.apply(Collections.singletonList(rule)));
+        assertEquals(1, LimiterRuleRegistry.getRules().size());
+        assertEquals("/a", LimiterRuleRegistry.getRules().get(0).getPattern());
+    }
+
+    @Test
+    void watcherReloadsFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rules.yaml");
+        write(file, "rules:\n  - pattern: /a/**\n    qps: 3\n");
+        LimiterRuleWatcher watcher = new LimiterRuleWatcher(
+                Collections.singletonList(rule("/base", 1d, null)), file, 0);
+        watcher.start();
+        assertEquals(2, LimiterRuleRegistry.getRules().size());
+        assertEquals(3d, LimiterRuleRegistry.getRules().get(1).getQps());
+        assertFalse(watcher.check());
+
+        write(file, "rules:\n  - pattern: /a/**\n    qps: 30\n    algorithm: sliding-window\n    window: 500\n");
+        assertTrue(watcher.check());
+        assertEquals(30d, LimiterRuleRegistry.getRules().get(1).getQps());
+        assertEquals(AlgorithmType.SLIDING_WINDOW, LimiterRuleRegistry.getRules().get(1).getAlgorithm());
+
+        // 校验失败 保留原规则
+        write(file, "rules:\n  - pattern: /a/**\n    window: -1\n");
+        assertFalse(watcher.check());
+        assertEquals(30d, LimiterRuleRegistry.getRules().get(1).getQps());
+
+        Files.delete(file);
+        assertTrue(watcher.check());
+        assertEquals(1, LimiterRuleRegistry.getRules().size());
+        watcher.stop();
+    }
+
+    // ==============
+
+    private static MockHttpServletRequest request(String remoteAddr, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    private static LimiterPolicy policy(double qps, double burst, Method method, LimiterKeyExpression key) {
+        return LimiterPolicy.builder().qps(qps).burst(burst).timeout(0).key(key).method(method).build();
+    }
+
+    private static LimiterRule rule(String pattern, Double qps, List<String> key) {
+        LimiterRule rule = new LimiterRule();
+        rule.setPattern(pattern);
+        rule.setQps(qps);
+        if (key != null) {
+            rule.setKey(key);
+        }
+        return rule;
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.opsli.limiter.core.store;
+
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.bucket.LeasedBucket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeasedBucketTests {
+
+    @Test
+    void nodesShareOneBudget() {
+        LocalLimiterStore store = new LocalLimiterStore();
+        // 4 个节点 共用 100 qps / 100 突发
+        LeasedBucket[] nodes = new LeasedBucket[4];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new LeasedBucket(store, "127.0.0.1:/test", 100d, 0d, 10);
+        }
+        int admitted = 0;
+        for (int round = 0; round < 100; round++) {
+            for (LeasedBucket node : nodes) {
+                if (node.tryAcquire()) {
+                    admitted++;
+                }
+            }
+        }
+        // 测试期间最多补充少量令牌
+        assertTrue(admitted >= 100 && admitted <= 110, "admitted " + admitted);
+    }
+
+    @Test
+    void rejectionStaysLocal() {
+        AtomicInteger calls = new AtomicInteger();
+        LocalLimiterStore local = new LocalLimiterStore();
+        LimiterStore store = (key, qps, burst, permits) -> {
+            calls.incrementAndGet();
+            return local.lease(key, qps, burst, permits);
+        };
+        LeasedBucket bucket = new LeasedBucket(store, "127.0.0.1:/test", 1d, 0d, 10);
+        assertTrue(bucket.tryAcquire());
+        for (int i = 0; i < 1000; i++) {
+            bucket.tryAcquire();
+        }
+        // 租用 1 次 + 无令牌时 1 次, 之后 1 秒内本地拒绝
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void storeFailureFallsBackToLocal() {
+        LimiterStore store = (key, qps, burst, permits) -> {
+            throw new IllegalStateException("connection refused");
+        };
+        LeasedBucket bucket = new LeasedBucket(store, "127.0.0.1:/test", 10d, 0d, 10);
+        int admitted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (bucket.tryAcquire()) {
+                admitted++;
+            }
+        }
+        assertEquals(10, admitted);
+    }
+
+}
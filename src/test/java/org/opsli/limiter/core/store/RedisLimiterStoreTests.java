@@ -0,0 +1,218 @@
+package org.opsli.limiter.core.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.ZeroArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 租用脚本在进程内 Lua 解释器中执行, redis.call 由内存表模拟 (TIME / GET / SET PX)
+ */
+class RedisLimiterStoreTests {
+
+    /** 2021-01-28 的 Unix 秒 微秒时间戳超过 2^53 的一半, 能暴露科学计数法写回 */
+    private static final long EPOCH_SECONDS = 1611800000L;
+
+    private FakeRedis redis;
+
+    private RedisLimiterStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redis = new FakeRedis();
+        redis.micros = EPOCH_SECONDS * 1_000_000L;
+        store = new RedisLimiterStore(redis, "limiter:");
+    }
+
+    @Test
+    void argumentsAreEncodedInMicros() {
+        store.lease("k1", 10d, 5d, 3L);
+        assertEquals("limiter:k1", redis.lastKey);
+        assertArrayEquals(new String[]{"100000", "500000", "3"}, redis.lastArgs);
+
+        // 非整除的速率取整; 突发为 0 时至少 1 个令牌
+        store.lease("k2", 3d, 0d, 1L);
+        assertArrayEquals(new String[]{"333333", "333333", "1"}, redis.lastArgs);
+
+        // 超过 1e6 qps 间隔至少 1 微秒
+        store.lease("k3", 1e7, 2d, 1L);
+        assertArrayEquals(new String[]{"1", "2", "1"}, redis.lastArgs);
+    }
+
+    @Test
+    void timeIsSecondsPlusMicros() {
+        // 距离下一秒 50 毫秒
+        redis.micros += 950_000L;
+        assertEquals(5L, store.lease("k", 10d, 5d, 10L));
+        assertEquals(0L, store.lease("k", 10d, 5d, 1L));
+
+        // 跨秒 100 毫秒: TIME 的秒、微秒两部分都要参与计算
+        redis.micros += 100_000L;
+        assertEquals(1L, store.lease("k", 10d, 5d, 10L));
+        assertEquals(0L, store.lease("k", 10d, 5d, 1L));
+
+        // TAT 以完整微秒整数写回 (突发已用尽, TAT = 现在 + 突发)
+        long now = redis.micros;
+        assertEquals(String.valueOf(now + 500_000L), redis.get("limiter:k"));
+    }
+
+    @Test
+    void keyExpiresWithPxOnceFull() {
+        assertEquals(5L, store.lease("k", 10d, 5d, 5L));
+        // TAT 比现在晚 500 毫秒 多留 1 毫秒
+        assertEquals(501L, redis.lastPx);
+
+        redis.micros += 500_000L;
+        assertEquals(String.valueOf(redis.micros), redis.get("limiter:k"));
+        redis.micros += 1_000L;
+        assertNull(redis.get("limiter:k"));
+
+        // 过期后桶是满的
+        assertEquals(5L, store.lease("k", 10d, 5d, 10L));
+    }
+
+    @Test
+    void rejectionDoesNotWrite() {
+        assertEquals(1L, store.lease("k", 1d, 1d, 1L));
+        long px = redis.lastPx;
+        String tat = redis.get("limiter:k");
+        redis.micros += 10_000L;
+        assertEquals(0L, store.lease("k", 1d, 1d, 1L));
+        assertEquals(tat, redis.get("limiter:k"));
+        assertEquals(px, redis.lastPx);
+    }
+
+    // ==============
+
+    /**
+     * 内存模拟的 Redis 只实现脚本用到的命令
+     */
+    private static final class FakeRedis extends StringRedisTemplate {
+
+        private final String script;
+
+        private final Map<String, String> values = new HashMap<>();
+
+        private final Map<String, Long> expireAt = new HashMap<>();
+
+        /** Redis 服务端时间 微秒 */
+        private long micros;
+
+        private String lastKey;
+
+        private String[] lastArgs;
+
+        private long lastPx = -1L;
+
+        private FakeRedis() throws IOException {
+            this.script = StreamUtils.copyToString(
+                    new ClassPathResource("scripts/limiter_lease.lua").getInputStream(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> redisScript, List<String> keys, Object... args) {
+            assertEquals(Long.class, redisScript.getResultType());
+            lastKey = keys.get(0);
+            lastArgs = new String[args.length];
+            for (int i = 0; i < args.length; i++) {
+                // StringRedisTemplate 只能序列化字符串参数
+                lastArgs[i] = (String) args[i];
+            }
+
+            Globals globals = JsePlatform.standardGlobals();
+            globals.set("KEYS", table(keys.toArray(new String[0])));
+            globals.set("ARGV", table(lastArgs));
+            LuaTable redisLib = new LuaTable();
+            redisLib.set("replicate_commands", new ZeroArgFunction() {
+                @Override
+                public LuaValue call() {
+                    return LuaValue.TRUE;
+                }
+            });
+            redisLib.set("call", new VarArgFunction() {
+                @Override
+                public Varargs invoke(Varargs command) {
+                    return redisCall(command);
+                }
+            });
+            globals.set("redis", redisLib);
+            // luaj 的 %f 对大数输出科学计数法, 与 Redis (C printf) 不同, 按 C 的语义替换
+            LuaValue format = globals.get("string").get("format");
+            globals.get("string").set("format", new VarArgFunction() {
+                @Override
+                public Varargs invoke(Varargs formatArgs) {
+                    if ("%.0f".equals(formatArgs.checkjstring(1))) {
+                        return LuaValue.valueOf(String.format("%.0f", formatArgs.checkdouble(2)));
+                    }
+                    return format.invoke(formatArgs);
+                }
+            });
+            LuaValue result = globals.load(script, "limiter_lease.lua").call();
+            // Redis 把 Lua 数字截断为整数返回
+            return (T) Long.valueOf((long) result.todouble());
+        }
+
+        private String get(String key) {
+            Long deadline = expireAt.get(key);
+            if (deadline != null && deadline <= micros) {
+                values.remove(key);
+                expireAt.remove(key);
+            }
+            return values.get(key);
+        }
+
+        private Varargs redisCall(Varargs command) {
+            String name = command.checkjstring(1);
+            switch (name) {
+                case "TIME":
+                    return table(String.valueOf(micros / 1_000_000L), String.valueOf(micros % 1_000_000L));
+                case "GET":
+                    String value = get(command.checkjstring(2));
+                    // nil 回复在脚本中为 false
+                    return value == null ? LuaValue.FALSE : LuaValue.valueOf(value);
+                case "SET":
+                    String key = command.checkjstring(2);
+                    // Redis 只接受整数字符串作为 PX 参数
+                    assertEquals("PX", command.checkjstring(4));
+                    lastPx = Long.parseLong(command.arg(5).tojstring());
+                    values.put(key, command.checkjstring(3));
+                    expireAt.put(key, micros + lastPx * 1_000L);
+                    LuaTable ok = new LuaTable();
+                    ok.set("ok", "OK");
+                    return ok;
+                default:
+                    throw new IllegalArgumentException("unsupported command " + name);
+            }
+        }
+
+        private static LuaTable table(String... items) {
+            List<LuaValue> values = new ArrayList<>(items.length);
+            for (String item : items) {
+                values.add(LuaValue.valueOf(item));
+            }
+            return LuaValue.listOf(values.toArray(new LuaValue[0]));
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.opsli.limiter.core.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.opsli.limiter.core.enums.AlertType;
+import org.opsli.limiter.core.exception.LimiterException;
+import org.opsli.limiter.core.handle.GlobalExceptionHandler;
+import org.opsli.limiter.core.index.LimiterGroup;
+import org.opsli.limiter.core.index.LimiterQuota;
+import org.opsli.limiter.core.msg.CommonMsg;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutputStreamUtilTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void jsonRejectMatchesResultVo() throws Exception {
+        long before = System.currentTimeMillis();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        OutputStreamUtil.rejectResponse(AlertType.JSON, response);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("application/json;charset=utf-8", response.getContentType());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        JsonNode json = mapper.readTree(response.getContentAsByteArray());
+        assertFalse(json.get("success").asBoolean());
+        assertEquals(CommonMsg.OTHER_EXCEPTION_LIMITER.getCode().intValue(), json.get("code").asInt());
+        assertEquals(CommonMsg.OTHER_EXCEPTION_LIMITER.getMessage(), json.get("msg").asText());
+        // 时间戳每次重新写入
+        long timestamp = json.get("timestamp").asLong();
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+    }
+
+    @Test
+    void alertReject() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        OutputStreamUtil.rejectResponse(AlertType.ALERT, response);
+        assertEquals(429, response.getStatus());
+        assertEquals("<script type=\"text/javascript\">alert('"
+                + CommonMsg.OTHER_EXCEPTION_LIMITER.getMessage() + "');</script>",
+                response.getContentAsString());
+    }
+
+    @Test
+    void rateLimitHeadersFromQuota() {
+        LimiterGroup group = RateLimiterUtil.newGroup(2d, 2d);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/headers");
+        request.setRemoteAddr("198.51.100.18");
+
+        assertTrue(RateLimiterUtil.enter(request, group, RateLimiterUtil.DEFAULT_ACQUIRE_MODE, 0L));
+        MockHttpServletResponse accepted = new MockHttpServletResponse();
+        OutputStreamUtil.rateLimitHeaders(RateLimiterUtil.quota(), accepted);
+        assertEquals("2", accepted.getHeader(OutputStreamUtil.HEADER_LIMIT));
+        assertEquals("1", accepted.getHeader(OutputStreamUtil.HEADER_REMAINING));
+        assertEquals("1", accepted.getHeader(OutputStreamUtil.HEADER_RESET));
+        assertNull(accepted.getHeader("Retry-After"));
+
+        assertTrue(RateLimiterUtil.enter(request, group, RateLimiterUtil.DEFAULT_ACQUIRE_MODE, 0L));
+        assertFalse(RateLimiterUtil.enter(request, group, RateLimiterUtil.DEFAULT_ACQUIRE_MODE, 0L));
+        LimiterQuota quota = RateLimiterUtil.quota();
+        assertEquals(0, quota.getRemaining());
+        assertTrue(quota.getRetryAfterNanos() > 0);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        OutputStreamUtil.rateLimitHeaders(quota, rejected);
+        assertEquals("0", rejected.getHeader(OutputStreamUtil.HEADER_REMAINING));
+        assertEquals("1", rejected.getHeader("Retry-After"));
+
+        // 常见值不生成字符串
+        assertSame(OutputStreamUtil.decimal(42), OutputStreamUtil.decimal(42));
+        assertEquals("123456", OutputStreamUtil.decimal(123456));
+        // 不限流不输出
+        assertTrue(RateLimiterUtil.enter(request, RateLimiterUtil.newGroup(0d, 0d),
+                RateLimiterUtil.DEFAULT_ACQUIRE_MODE, 0L));
+        assertNull(RateLimiterUtil.quota());
+    }
+
+    @Test
+    void limiterExceptionHandled() throws Exception {
+        LimiterException e = new LimiterException(AlertType.JSON);
+        assertEquals(0, e.getStackTrace().length);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new GlobalExceptionHandler().limiterException(e, response);
+        assertEquals(429, response.getStatus());
+        assertEquals(429, mapper.readTree(response.getContentAsByteArray()).get("code").asInt());
+    }
+
+}